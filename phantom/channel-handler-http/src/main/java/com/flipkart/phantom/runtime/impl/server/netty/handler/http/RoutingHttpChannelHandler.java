@@ -19,10 +19,9 @@ package com.flipkart.phantom.runtime.impl.server.netty.handler.http;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -59,6 +58,7 @@ import com.flipkart.phantom.event.ServiceProxyEventProducer;
 import com.flipkart.phantom.http.impl.ConfigService;
 import com.flipkart.phantom.http.impl.HttpProxy;
 import com.flipkart.phantom.http.impl.HttpRequestWrapper;
+import com.flipkart.phantom.task.impl.RequestDeadline;
 import com.flipkart.phantom.task.impl.collector.EventDispatchingSpanCollector;
 import com.flipkart.phantom.task.impl.interceptor.ServerRequestInterceptor;
 import com.flipkart.phantom.task.spi.Executor;
@@ -66,7 +66,6 @@ import com.flipkart.phantom.task.spi.RequestContext;
 import com.flipkart.phantom.task.spi.repository.ExecutorRepository;
 import com.github.kristofa.brave.Brave;
 import com.github.kristofa.brave.FixedSampleRateTraceFilter;
-import com.github.kristofa.brave.ServerSpan;
 import com.github.kristofa.brave.ServerTracer;
 import com.github.kristofa.brave.TraceFilter;
 import com.google.common.base.Optional;
@@ -107,6 +106,7 @@ public abstract class RoutingHttpChannelHandler extends SimpleChannelUpstreamHan
     	RoutingHttpChannelHandler.REMOVE_HEADERS.add("TE");
     	RoutingHttpChannelHandler.REMOVE_HEADERS.add("Trailers");
     	RoutingHttpChannelHandler.REMOVE_HEADERS.add("Upgrade");
+    	RoutingHttpChannelHandler.REMOVE_HEADERS.add(RequestDeadline.BUDGET_HEADER);
     }
 
     /** Event Type for publishing all events which are generated here */
@@ -155,6 +155,9 @@ public abstract class RoutingHttpChannelHandler extends SimpleChannelUpstreamHan
     
     /** The EventDispatchingSpanCollector instance used in tracing requests*/
     private EventDispatchingSpanCollector eventDispatchingSpanCollector;    
+
+    /** The ServerRequestInterceptor used in tracing requests, shared by all requests*/
+    private volatile ServerRequestInterceptor<HttpRequestWrapper, HttpResponse> serverRequestInterceptor;
 	
     /**
      * Interface method implementation. Checks if all mandatory properties have been set
@@ -196,6 +199,8 @@ public abstract class RoutingHttpChannelHandler extends SimpleChannelUpstreamHan
         HttpRequest request = (HttpRequest) messageEvent.getMessage();
         LOGGER.debug("Request is: " + request.getMethod() + " " + request.getUri());
 
+        // read the budget before the header is removed. The remaining budget is forwarded when the request is proxied
+        Optional<Long> deadline = RequestDeadline.fromBudget(request.getHeader(RequestDeadline.BUDGET_HEADER), receiveTime);
         this.processRequestHeaders(request);
 
         ChannelBuffer inputBuffer = request.getContent();
@@ -211,8 +216,14 @@ public abstract class RoutingHttpChannelHandler extends SimpleChannelUpstreamHan
         executorHttpRequest.setProtocol(request.getProtocolVersion().getProtocolName());
         executorHttpRequest.setMajorVersion(request.getProtocolVersion().getMajorVersion());
         executorHttpRequest.setMinorVersion(request.getProtocolVersion().getMinorVersion());
+        executorHttpRequest.setDeadline(deadline);
         // set the service name for the request
         executorHttpRequest.setServiceName(Optional.of(this.serviceName));
+        if (RequestDeadline.isExpired(executorHttpRequest, this.serviceName)) {
+        	// the client has given up on the request, shed it before it is queued for execution
+        	messageEvent.getChannel().write(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.GATEWAY_TIMEOUT)).addListener(ChannelFutureListener.CLOSE);
+        	return;
+        }
 
         // Create and process a Server request interceptor. This will initialize the server tracing
         ServerRequestInterceptor<HttpRequestWrapper, HttpResponse> serverRequestInterceptor = this.initializeServerTracing(executorHttpRequest);
@@ -239,7 +250,9 @@ public abstract class RoutingHttpChannelHandler extends SimpleChannelUpstreamHan
             throw runtimeException;
         } finally {
         	// finally inform the server request tracer
-        	serverRequestInterceptor.process(response, transportError);
+        	if (serverRequestInterceptor != null) {
+        		serverRequestInterceptor.process(response, transportError);
+        	}
             if (eventProducer != null) {
                 // Publishes event both in case of success and failure.
                 ServiceProxyEvent.Builder eventBuilder;
@@ -288,27 +301,44 @@ public abstract class RoutingHttpChannelHandler extends SimpleChannelUpstreamHan
     /**
      * Initializes server tracing for the specified request
      * @param executorHttpRequest the Http request 
-     * @return the initialized ServerRequestInterceptor
+     * @return the initialized ServerRequestInterceptor, null if the request is not traced
      */
     private ServerRequestInterceptor<HttpRequestWrapper, HttpResponse> initializeServerTracing(HttpRequestWrapper executorRequest) {
-        ServerRequestInterceptor<HttpRequestWrapper, HttpResponse> serverRequestInterceptor = new ServerRequestInterceptor<HttpRequestWrapper, HttpResponse>();
-    	List<TraceFilter> traceFilters = Arrays.<TraceFilter>asList(this.traceFilter);    
-    	ServerTracer serverTracer = Brave.getServerTracer(this.eventDispatchingSpanCollector, traceFilters);
-    	serverRequestInterceptor.setEndPointSubmitter(Brave.getEndPointSubmitter());
-        serverRequestInterceptor.setServerTracer(serverTracer);
-        serverRequestInterceptor.setServiceHost(RoutingHttpChannelHandler.hostName);
-        serverRequestInterceptor.setServicePort(this.hostPort);
-        serverRequestInterceptor.setServiceName(this.serviceName);   
-        // now process the request to initialize tracing
-        serverRequestInterceptor.process(executorRequest); 
-		// set the server request context on the received request
-    	ServerSpan serverSpan = Brave.getServerSpanThreadBinder().getCurrentServerSpan();
     	RequestContext serverRequestContext = new RequestContext();
-    	serverRequestContext.setCurrentServerSpan(serverSpan);	
     	executorRequest.setRequestContext(Optional.of(serverRequestContext));
+    	ServerRequestInterceptor<HttpRequestWrapper, HttpResponse> serverRequestInterceptor = this.getServerRequestInterceptor();
+    	// decide once if the request is traced, requests that are not traced skip all span and annotation work
+    	if (!serverRequestInterceptor.isTraced(executorRequest)) {
+    		serverRequestContext.setTraced(false);
+    		return null;
+    	}
+        // now process the request to initialize tracing
+        serverRequestInterceptor.process(executorRequest); 
+		// set the server span on the request context of the received request
+    	serverRequestContext.setCurrentServerSpan(Brave.getServerSpanThreadBinder().getCurrentServerSpan());
         return serverRequestInterceptor;
     }
 
+    /**
+     * Helper method to return the ServerRequestInterceptor, creating it on first use. The interceptor is shared by all requests
+     * @return the ServerRequestInterceptor
+     */
+    private ServerRequestInterceptor<HttpRequestWrapper, HttpResponse> getServerRequestInterceptor() {
+    	if (this.serverRequestInterceptor == null) {
+	        ServerRequestInterceptor<HttpRequestWrapper, HttpResponse> serverRequestInterceptor = new ServerRequestInterceptor<HttpRequestWrapper, HttpResponse>();
+	        // requests are sampled by the interceptor using the trace filter, and not again by the server tracer
+	    	ServerTracer serverTracer = Brave.getServerTracer(this.eventDispatchingSpanCollector, Collections.<TraceFilter>emptyList());
+	    	serverRequestInterceptor.setEndPointSubmitter(Brave.getEndPointSubmitter());
+	        serverRequestInterceptor.setServerTracer(serverTracer);
+	        serverRequestInterceptor.setTraceFilter(this.traceFilter);
+	        serverRequestInterceptor.setServiceHost(RoutingHttpChannelHandler.hostName);
+	        serverRequestInterceptor.setServicePort(this.hostPort);
+	        serverRequestInterceptor.setServiceName(this.serviceName);
+	        this.serverRequestInterceptor = serverRequestInterceptor;
+    	}
+    	return this.serverRequestInterceptor;
+    }
+
     /**
      * Writes the specified TaskResult data to the channel output. Only the raw output data is written and rest of the TaskResult fields are ignored 
      * @param ctx the ChannelHandlerContext
@@ -18,8 +18,7 @@ package com.flipkart.phantom.runtime.impl.server.netty.handler.thrift;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
-import java.util.Arrays;
-import java.util.List;
+import java.util.Collections;
 
 import org.apache.thrift.protocol.TBinaryProtocol;
 import org.apache.thrift.protocol.TMessage;
@@ -42,9 +41,12 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.util.Assert;
 
+import rx.Observer;
+
 import com.flipkart.phantom.event.ServiceProxyEvent;
 import com.flipkart.phantom.event.ServiceProxyEventProducer;
 import com.flipkart.phantom.runtime.impl.server.netty.channel.thrift.ThriftNettyChannelBuffer;
+import com.flipkart.phantom.runtime.impl.server.netty.handler.OrderedResponseDispatcher;
 import com.flipkart.phantom.task.impl.collector.EventDispatchingSpanCollector;
 import com.flipkart.phantom.task.impl.interceptor.ServerRequestInterceptor;
 import com.flipkart.phantom.task.spi.Executor;
@@ -55,7 +57,6 @@ import com.flipkart.phantom.thrift.impl.ThriftProxyExecutor;
 import com.flipkart.phantom.thrift.impl.ThriftRequestWrapper;
 import com.github.kristofa.brave.Brave;
 import com.github.kristofa.brave.FixedSampleRateTraceFilter;
-import com.github.kristofa.brave.ServerSpan;
 import com.github.kristofa.brave.ServerTracer;
 import com.github.kristofa.brave.TraceFilter;
 import com.google.common.base.Optional;
@@ -63,6 +64,8 @@ import com.google.common.base.Optional;
 /**
  * <code>ThriftChannelHandler</code> is a sub-type of {@link SimpleChannelHandler} that acts as a proxy for Apache Thrift calls using the binary protocol.
  * It wraps the Thrift call using a {@link ThriftProxyExecutor} that provides useful features like monitoring, fallback etc.
+ * Calls are executed on the I/O thread by default. When {@link #setNonBlocking(boolean)} is turned on, calls are dispatched to the executor and the 
+ * I/O thread is returned at once - responses are written from the execution completion callback, in the order in which calls were received on a channel.
  *
  * @author Regunath B
  * @version 1.0, 26 Mar 2013
@@ -128,6 +131,12 @@ public class ThriftChannelHandler extends SimpleChannelUpstreamHandler implement
     /** The EventDispatchingSpanCollector instance used in tracing requests*/
     private EventDispatchingSpanCollector eventDispatchingSpanCollector;    
 
+    /** The ServerRequestInterceptor used in tracing requests, shared by all requests*/
+    private volatile ServerRequestInterceptor<ThriftRequestWrapper, TTransport> serverRequestInterceptor;
+
+    /** Flag to execute calls without blocking the I/O thread. Responses are written from the completion callback, in the order calls were received on a channel*/
+    private boolean nonBlocking;
+
     /**
      * Interface method implementation. Checks if all mandatory properties have been set
      * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
@@ -194,32 +203,29 @@ public class ThriftChannelHandler extends SimpleChannelUpstreamHandler implement
             // set the service name for the request
             thriftRequestWrapper.setServiceName(executor.getServiceName());
             
-            Optional<RuntimeException> transportError = Optional.absent();            
-            try {
-                executor.execute();
-            } catch (Exception e) {
-            	RuntimeException runtimeException = new RuntimeException("Error in executing Thrift request: " + thriftProxy + ":" + message.name, e);
-            	transportError = Optional.of(runtimeException);
-                throw runtimeException;
-            } finally {
-            	// finally inform the server request tracer
-            	serverRequestInterceptor.process(clientTransport, transportError);            	
-                if (eventProducer != null) {
-                    // Publishes event both in case of success and failure.
-                    ServiceProxyEvent.Builder eventBuilder;
-                    if (executor == null) {
-                        eventBuilder = new ServiceProxyEvent.Builder(thriftProxy + ":" + message.name, THRIFT_HANDLER).withEventSource(getClass().getName());
-                    } else {
-                        eventBuilder = executor.getEventBuilder().withCommandData(executor).withEventSource(executor.getClass().getName());
-                    }
-                    eventBuilder.withRequestReceiveTime(receiveTime);
-                    eventProducer.publishEvent(eventBuilder.build());
-                } else {
-                    LOGGER.debug("eventProducer not set, not publishing event");
-                }
+            if (this.nonBlocking) {
+            	// dont wait for the result, return the I/O thread. The response is written when the executor completes, in the order of requests received
+            	ThriftExecutionObserver observer = new ThriftExecutionObserver(ctx, message.name, executor, clientTransport, thriftRequestWrapper, 
+            			serverRequestInterceptor, receiveTime);
+            	((ThriftProxyExecutor) executor).observe().subscribe(observer);
+            } else {
+	            Optional<RuntimeException> transportError = Optional.absent();            
+	            try {
+	                executor.execute();
+	            } catch (Exception e) {
+	            	RuntimeException runtimeException = new RuntimeException("Error in executing Thrift request: " + thriftProxy + ":" + message.name, e);
+	            	transportError = Optional.of(runtimeException);
+	                throw runtimeException;
+	            } finally {
+	            	// finally inform the server request tracer
+	            	if (serverRequestInterceptor != null) {
+	            		serverRequestInterceptor.process(clientTransport, transportError);
+	            	}
+	            	this.publishEvent(message.name, executor, receiveTime);
+	            }
+	            // write the result to the output channel buffer
+	            Channels.write(ctx, event.getFuture(), ((ThriftNettyChannelBuffer) clientTransport).getOutputBuffer());
             }
-            // write the result to the output channel buffer
-            Channels.write(ctx, event.getFuture(), ((ThriftNettyChannelBuffer) clientTransport).getOutputBuffer());
         }
         super.handleUpstream(ctx, event);
     }
@@ -234,30 +240,144 @@ public class ThriftChannelHandler extends SimpleChannelUpstreamHandler implement
         super.exceptionCaught(ctx, event);
     }
     
+    /**
+     * Helper method to publish the execution event for the specified Thrift method. Publishes event both in case of success and failure.
+     * @param methodName the Thrift method name
+     * @param executor the executor used to execute the Thrift call, may be null
+     * @param receiveTime the time at which the Thrift call was received
+     */
+    private void publishEvent(String methodName, Executor<ThriftRequestWrapper,TTransport> executor, long receiveTime) {
+        if (eventProducer != null) {
+            ServiceProxyEvent.Builder eventBuilder;
+            if (executor == null) {
+                eventBuilder = new ServiceProxyEvent.Builder(thriftProxy + ":" + methodName, THRIFT_HANDLER).withEventSource(getClass().getName());
+            } else {
+                eventBuilder = executor.getEventBuilder().withCommandData(executor).withEventSource(executor.getClass().getName());
+            }
+            eventBuilder.withRequestReceiveTime(receiveTime);
+            eventProducer.publishEvent(eventBuilder.build());
+        } else {
+            LOGGER.debug("eventProducer not set, not publishing event");
+        }
+    }
+
+    /**
+     * Helper method to get the dispatcher that writes responses in order for the channel of the specified context. The dispatcher is created on the
+     * first call received on the channel and held as the context attachment, contexts being created per channel pipeline. A null response 
+     * indicates execution failure and closes the channel, same as in blocking mode.
+     * @param ctx the ChannelHandlerContext of the channel
+     * @return the OrderedResponseDispatcher for the channel
+     */
+    @SuppressWarnings("unchecked")
+    private OrderedResponseDispatcher<ChannelBuffer> getResponseDispatcher(final ChannelHandlerContext ctx) {
+    	if (ctx.getAttachment() == null) {
+    		ctx.setAttachment(new OrderedResponseDispatcher<ChannelBuffer>() {
+				protected void dispatch(ChannelBuffer response) {
+					if (response == null) {
+						ctx.getChannel().close();
+					} else {
+						Channels.write(ctx, Channels.future(ctx.getChannel()), response);
+					}
+				}
+    		});
+    	}
+    	return (OrderedResponseDispatcher<ChannelBuffer>) ctx.getAttachment();
+    }
+
     /**
      * Initializes server tracing for the specified request
      * @param executorHttpRequest the Http request 
-     * @return the initialized ServerRequestInterceptor
+     * @return the initialized ServerRequestInterceptor, null if the request is not traced
      */
     private ServerRequestInterceptor<ThriftRequestWrapper, TTransport> initializeServerTracing(ThriftRequestWrapper executorRequest) {
-        ServerRequestInterceptor<ThriftRequestWrapper, TTransport> serverRequestInterceptor = new ServerRequestInterceptor<ThriftRequestWrapper, TTransport>();
-    	List<TraceFilter> traceFilters = Arrays.<TraceFilter>asList(this.traceFilter);    
-    	ServerTracer serverTracer = Brave.getServerTracer(this.eventDispatchingSpanCollector, traceFilters);
-    	serverRequestInterceptor.setEndPointSubmitter(Brave.getEndPointSubmitter());
-        serverRequestInterceptor.setServerTracer(serverTracer);
-        serverRequestInterceptor.setServiceHost(ThriftChannelHandler.hostName);
-        serverRequestInterceptor.setServicePort(this.hostPort);
-        serverRequestInterceptor.setServiceName(this.serviceName);   
-        // now process the request to initialize tracing
-        serverRequestInterceptor.process(executorRequest); 
-		// set the server request context on the received request
-    	ServerSpan serverSpan = Brave.getServerSpanThreadBinder().getCurrentServerSpan();
     	RequestContext serverRequestContext = new RequestContext();
-    	serverRequestContext.setCurrentServerSpan(serverSpan);	
     	executorRequest.setRequestContext(Optional.of(serverRequestContext));
+    	ServerRequestInterceptor<ThriftRequestWrapper, TTransport> serverRequestInterceptor = this.getServerRequestInterceptor();
+    	// decide once if the request is traced, requests that are not traced skip all span and annotation work
+    	if (!serverRequestInterceptor.isTraced(executorRequest)) {
+    		serverRequestContext.setTraced(false);
+    		return null;
+    	}
+        // now process the request to initialize tracing
+        serverRequestInterceptor.process(executorRequest); 
+		// set the server span on the request context of the received request
+    	serverRequestContext.setCurrentServerSpan(Brave.getServerSpanThreadBinder().getCurrentServerSpan());
         return serverRequestInterceptor;
     }
+
+    /**
+     * Helper method to return the ServerRequestInterceptor, creating it on first use. The interceptor is shared by all requests
+     * @return the ServerRequestInterceptor
+     */
+    private ServerRequestInterceptor<ThriftRequestWrapper, TTransport> getServerRequestInterceptor() {
+    	if (this.serverRequestInterceptor == null) {
+	        ServerRequestInterceptor<ThriftRequestWrapper, TTransport> serverRequestInterceptor = new ServerRequestInterceptor<ThriftRequestWrapper, TTransport>();
+	        // requests are sampled by the interceptor using the trace filter, and not again by the server tracer
+	    	ServerTracer serverTracer = Brave.getServerTracer(this.eventDispatchingSpanCollector, Collections.<TraceFilter>emptyList());
+	    	serverRequestInterceptor.setEndPointSubmitter(Brave.getEndPointSubmitter());
+	        serverRequestInterceptor.setServerTracer(serverTracer);
+	        serverRequestInterceptor.setTraceFilter(this.traceFilter);
+	        serverRequestInterceptor.setServiceHost(ThriftChannelHandler.hostName);
+	        serverRequestInterceptor.setServicePort(this.hostPort);
+	        serverRequestInterceptor.setServiceName(this.serviceName);
+	        this.serverRequestInterceptor = serverRequestInterceptor;
+    	}
+    	return this.serverRequestInterceptor;
+    }
     
+    /**
+     * Observer of a Thrift call execution that does not block the I/O thread. Hands over the response to the channel's {@link OrderedResponseDispatcher}
+     * when execution completes - on the thread that completes the execution.
+     */
+    private class ThriftExecutionObserver implements Observer<TTransport> {
+    	private ChannelHandlerContext ctx;
+    	private String methodName;
+    	private Executor<ThriftRequestWrapper,TTransport> executor;
+    	private TTransport clientTransport;
+    	private ThriftRequestWrapper thriftRequestWrapper;
+    	private ServerRequestInterceptor<ThriftRequestWrapper, TTransport> serverRequestInterceptor;
+    	private long receiveTime;
+    	private OrderedResponseDispatcher<ChannelBuffer> responseDispatcher;
+    	private long responseSequence;
+    	ThriftExecutionObserver(ChannelHandlerContext ctx, String methodName, Executor<ThriftRequestWrapper,TTransport> executor, TTransport clientTransport,
+    			ThriftRequestWrapper thriftRequestWrapper, ServerRequestInterceptor<ThriftRequestWrapper, TTransport> serverRequestInterceptor, long receiveTime) {
+    		this.ctx = ctx;
+    		this.methodName = methodName;
+    		this.executor = executor;
+    		this.clientTransport = clientTransport;
+    		this.thriftRequestWrapper = thriftRequestWrapper;
+    		this.serverRequestInterceptor = serverRequestInterceptor;
+    		this.receiveTime = receiveTime;
+			// reserve the response slot now, on the I/O thread, in the order of calls received
+    		this.responseDispatcher = ThriftChannelHandler.this.getResponseDispatcher(ctx);
+    		this.responseSequence = this.responseDispatcher.reserve();
+    	}
+		public void onNext(TTransport transport) {
+			// the response is available in the output buffer of the client transport
+		}
+		public void onCompleted() {
+			this.complete(((ThriftNettyChannelBuffer) this.clientTransport).getOutputBuffer(), Optional.<RuntimeException>absent());
+		}
+		public void onError(Throwable e) {
+			LOGGER.error("Error in executing Thrift request: " + thriftProxy + ":" + this.methodName, e);
+			this.complete(null, Optional.of(new RuntimeException("Error in executing Thrift request: " + thriftProxy + ":" + this.methodName, e)));
+		}
+		private void complete(ChannelBuffer response, Optional<RuntimeException> transportError) {
+			// bind the server span of the request to this thread, as completion happens on a thread other than the one that received the call
+			if (this.thriftRequestWrapper.getRequestContext().isPresent() && this.thriftRequestWrapper.getRequestContext().get().getCurrentServerSpan() != null) {
+				Brave.getServerSpanThreadBinder().setCurrentSpan(this.thriftRequestWrapper.getRequestContext().get().getCurrentServerSpan());
+			}
+			try {
+				this.responseDispatcher.complete(this.responseSequence, response);
+			} finally {
+				if (this.serverRequestInterceptor != null) {
+					this.serverRequestInterceptor.process(this.clientTransport, transportError);
+				}
+				ThriftChannelHandler.this.publishEvent(this.methodName, this.executor, this.receiveTime);
+			}
+		}
+    }
+
     /** Start Getter/Setter methods*/
 	public ChannelGroup getDefaultChannelGroup() {
 		return this.defaultChannelGroup;
@@ -295,5 +415,11 @@ public class ThriftChannelHandler extends SimpleChannelUpstreamHandler implement
 	public void setEventDispatchingSpanCollector(EventDispatchingSpanCollector eventDispatchingSpanCollector) {
 		this.eventDispatchingSpanCollector = eventDispatchingSpanCollector;
 	}    
+	public boolean isNonBlocking() {
+		return this.nonBlocking;
+	}
+	public void setNonBlocking(boolean nonBlocking) {
+		this.nonBlocking = nonBlocking;
+	}
     /** End Getter/Setter methods */
 }
@@ -15,13 +15,13 @@
  */
 package com.flipkart.phantom.runtime.impl.server.oio;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
-import java.util.Arrays;
-import java.util.List;
+import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -29,6 +29,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.io.IOUtils;
 import org.newsclub.net.unix.AFUNIXServerSocket;
 import org.newsclub.net.unix.AFUNIXSocketAddress;
 import org.slf4j.Logger;
@@ -41,6 +42,7 @@ import com.flipkart.phantom.event.ServiceProxyEventProducer;
 import com.flipkart.phantom.runtime.impl.server.AbstractNetworkServer;
 import com.flipkart.phantom.runtime.impl.server.concurrent.NamedThreadFactory;
 import com.flipkart.phantom.runtime.impl.server.netty.handler.command.CommandInterpreter;
+import com.flipkart.phantom.task.impl.RequestDeadline;
 import com.flipkart.phantom.task.impl.TaskHandler;
 import com.flipkart.phantom.task.impl.TaskHandlerExecutor;
 import com.flipkart.phantom.task.impl.collector.EventDispatchingSpanCollector;
@@ -51,7 +53,6 @@ import com.flipkart.phantom.task.spi.TaskResult;
 import com.flipkart.phantom.task.spi.repository.ExecutorRepository;
 import com.github.kristofa.brave.Brave;
 import com.github.kristofa.brave.FixedSampleRateTraceFilter;
-import com.github.kristofa.brave.ServerSpan;
 import com.github.kristofa.brave.ServerTracer;
 import com.github.kristofa.brave.TraceFilter;
 import com.google.common.base.Optional;
@@ -110,6 +111,9 @@ public class UDSOIOServer extends AbstractNetworkServer {
     /** The port where the server for this handler is listening on*/
     private int hostPort;
     
+    /** The command data length beyond which data is streamed to TaskHandlers off the client socket. See TaskHandler#executeStreaming*/
+    private int streamingThreshold = CommandInterpreter.NO_STREAMING;
+
     /** The worker thread pool sizes*/
     private int workerPoolSize = INVALID_POOL_SIZE;
 
@@ -148,6 +152,9 @@ public class UDSOIOServer extends AbstractNetworkServer {
     
     /** The EventDispatchingSpanCollector instance used in tracing requests*/
     private EventDispatchingSpanCollector eventDispatchingSpanCollector;    
+
+    /** The ServerRequestInterceptor used in tracing requests, shared by all requests*/
+    private volatile ServerRequestInterceptor<TaskRequestWrapper, TaskResult> serverRequestInterceptor;
     
     /**
      * Interface method implementation. Returns {@link TRANSMISSION_PROTOCOL#UDS} (Unix domain Sockets)
@@ -281,7 +288,7 @@ public class UDSOIOServer extends AbstractNetworkServer {
             ServerRequestInterceptor<TaskRequestWrapper, TaskResult> serverRequestInterceptor = null;
             try {
                 CommandInterpreter commandInterpreter = new CommandInterpreter();
-                readCommand = commandInterpreter.readCommand(client.getInputStream());
+                readCommand = commandInterpreter.readCommand(client.getInputStream(), streamingThreshold);
                 LOGGER.debug("Read Command : " + readCommand);
                 String pool = readCommand.getCommandParams().get("pool");
 
@@ -289,7 +296,10 @@ public class UDSOIOServer extends AbstractNetworkServer {
                 TaskRequestWrapper taskRequestWrapper = new TaskRequestWrapper();
                 taskRequestWrapper.setCommandName(readCommand.getCommand());
                 taskRequestWrapper.setData(readCommand.getCommandData());
+                // large data is streamed off the client socket, see CommandInterpreter#readCommand(InputStream, int)
+                taskRequestWrapper.setDataStream(readCommand.getCommandDataStream());
                 taskRequestWrapper.setParams(readCommand.getCommandParams());
+                taskRequestWrapper.setDeadline(RequestDeadline.fromParams(readCommand.getCommandParams(), receiveTime));
                 // set the service name for the request
                 taskRequestWrapper.setServiceName(Optional.of(serviceName));
 
@@ -302,18 +312,24 @@ public class UDSOIOServer extends AbstractNetworkServer {
                 } else {
                     executor = (TaskHandlerExecutor) repository.getExecutor(readCommand.getCommand(), readCommand.getCommand(), taskRequestWrapper);
                 }
-                /* execute */
-                if (executor.getCallInvocationType() == TaskHandler.SYNC_CALL) {
-                    result = executor.execute();
+                /* execute, unless the client has given up on the command */
+                if (RequestDeadline.isExpired(taskRequestWrapper, readCommand.getCommand())) {
+                    result = new TaskResult(false, RequestDeadline.EXPIRED_MESSAGE);
+                } else if (executor.getCallInvocationType() == TaskHandler.SYNC_CALL) {
+                    result = executor.dispatchAndWait();
                 } else {
+                    if (taskRequestWrapper.getDataStream() != null) {
+                        /* the client socket is closed once the async call is dispatched. Read the streamed data before that */
+                        taskRequestWrapper.setDataStream(new ByteArrayInputStream(IOUtils.toByteArray(taskRequestWrapper.getDataStream())));
+                    }
                     /* dont wait for the result. send back a response that the call has been dispatched for async execution */
-                    executor.queue();
+                    executor.dispatch();
                     result = new TaskResult(true, TaskHandlerExecutor.ASYNC_QUEUED);
                 }
                 LOGGER.debug("The output is: " + result);
 
                 // write the results to the socket output
-                commandInterpreter.writeCommandExecutionResponse(client.getOutputStream(), result);
+                commandInterpreter.writeCommandExecutionResponse(client.getOutputStream(), readCommand, result);
             } catch (Exception e) {
             	RuntimeException runtimeException = new RuntimeException("Error in executing command : " + readCommand, e);
             	transportError = Optional.of(runtimeException);
@@ -354,26 +370,43 @@ public class UDSOIOServer extends AbstractNetworkServer {
     /**
      * Initializes server tracing for the specified request
      * @param executorHttpRequest the Http request 
-     * @return the initialized ServerRequestInterceptor
+     * @return the initialized ServerRequestInterceptor, null if the request is not traced
      */
     private ServerRequestInterceptor<TaskRequestWrapper, TaskResult> initializeServerTracing(TaskRequestWrapper executorRequest) {
-		// set the server request context on the received request
-    	ServerSpan serverSpan = Brave.getServerSpanThreadBinder().getCurrentServerSpan();
     	RequestContext serverRequestContext = new RequestContext();
-    	serverRequestContext.setCurrentServerSpan(serverSpan);	
     	executorRequest.setRequestContext(Optional.of(serverRequestContext));
-        ServerRequestInterceptor<TaskRequestWrapper, TaskResult> serverRequestInterceptor = new ServerRequestInterceptor<TaskRequestWrapper, TaskResult>();
-    	List<TraceFilter> traceFilters = Arrays.<TraceFilter>asList(this.traceFilter);    
-    	ServerTracer serverTracer = Brave.getServerTracer(this.eventDispatchingSpanCollector, traceFilters);
-    	serverRequestInterceptor.setEndPointSubmitter(Brave.getEndPointSubmitter());
-        serverRequestInterceptor.setServerTracer(serverTracer);
-        serverRequestInterceptor.setServiceHost(UDSOIOServer.hostName);
-        serverRequestInterceptor.setServicePort(this.hostPort);
-        serverRequestInterceptor.setServiceName(this.serviceName);   
+    	ServerRequestInterceptor<TaskRequestWrapper, TaskResult> serverRequestInterceptor = this.getServerRequestInterceptor();
+    	// decide once if the request is traced, requests that are not traced skip all span and annotation work
+    	if (!serverRequestInterceptor.isTraced(executorRequest)) {
+    		serverRequestContext.setTraced(false);
+    		return null;
+    	}
         // now process the request to initialize tracing
         serverRequestInterceptor.process(executorRequest); 
+		// set the server span on the request context of the received request
+    	serverRequestContext.setCurrentServerSpan(Brave.getServerSpanThreadBinder().getCurrentServerSpan());
         return serverRequestInterceptor;
     }
+
+    /**
+     * Helper method to return the ServerRequestInterceptor, creating it on first use. The interceptor is shared by all requests
+     * @return the ServerRequestInterceptor
+     */
+    private ServerRequestInterceptor<TaskRequestWrapper, TaskResult> getServerRequestInterceptor() {
+    	if (this.serverRequestInterceptor == null) {
+	        ServerRequestInterceptor<TaskRequestWrapper, TaskResult> serverRequestInterceptor = new ServerRequestInterceptor<TaskRequestWrapper, TaskResult>();
+	        // requests are sampled by the interceptor using the trace filter, and not again by the server tracer
+	    	ServerTracer serverTracer = Brave.getServerTracer(this.eventDispatchingSpanCollector, Collections.<TraceFilter>emptyList());
+	    	serverRequestInterceptor.setEndPointSubmitter(Brave.getEndPointSubmitter());
+	        serverRequestInterceptor.setServerTracer(serverTracer);
+	        serverRequestInterceptor.setTraceFilter(this.traceFilter);
+	        serverRequestInterceptor.setServiceHost(UDSOIOServer.hostName);
+	        serverRequestInterceptor.setServicePort(this.hostPort);
+	        serverRequestInterceptor.setServiceName(this.serviceName);
+	        this.serverRequestInterceptor = serverRequestInterceptor;
+    	}
+    	return this.serverRequestInterceptor;
+    }
     
     /** Start Getter/Setter methods */
     public void setServiceName(String serviceName) {
@@ -424,6 +457,12 @@ public class UDSOIOServer extends AbstractNetworkServer {
     public void setEventProducer(ServiceProxyEventProducer eventProducer) {
         this.eventProducer = eventProducer;
     }
+    public int getStreamingThreshold() {
+        return this.streamingThreshold;
+    }
+    public void setStreamingThreshold(int streamingThreshold) {
+        this.streamingThreshold = streamingThreshold;
+    }
     public int getExecutorQueueSize() {
         return executorQueueSize;
     }
@@ -16,6 +16,7 @@
 package com.flipkart.phantom.runtime.impl.hystrix.impl;
 
 import com.flipkart.phantom.runtime.impl.hystrix.MetricsSnapshotReporter;
+import com.flipkart.phantom.task.impl.metrics.ProxyMetrics;
 import com.netflix.hystrix.HystrixCommandMetrics;
 import com.netflix.hystrix.HystrixThreadPoolMetrics;
 import com.netflix.hystrix.util.HystrixRollingNumberEvent;
@@ -83,6 +84,14 @@ public class MetricsSnapshotReporterDefault implements MetricsSnapshotReporter {
             lastOneMinMetrics.get("HystrixThreadPool").put(commandName, currStats);
         }
 
+        /* proxy metrics are reported as-is, grouped by their metrics group */
+        for (ProxyMetrics proxyMetrics : ProxyMetrics.getInstances()) {
+            if (lastOneMinMetrics.get(proxyMetrics.getGroup()) == null) {
+                lastOneMinMetrics.put(proxyMetrics.getGroup(), new HashMap<String, Map<String, Long>>());
+            }
+            lastOneMinMetrics.get(proxyMetrics.getGroup()).put(proxyMetrics.getName(), proxyMetrics.getSnapshot());
+        }
+
         return lastOneMinMetrics;
     }
 }
\ No newline at end of file
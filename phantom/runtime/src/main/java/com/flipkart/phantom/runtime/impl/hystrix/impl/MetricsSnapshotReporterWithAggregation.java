@@ -16,6 +16,7 @@
 package com.flipkart.phantom.runtime.impl.hystrix.impl;
 
 import com.flipkart.phantom.runtime.impl.hystrix.MetricsSnapshotReporter;
+import com.flipkart.phantom.task.impl.metrics.ProxyMetrics;
 import com.netflix.hystrix.HystrixCommandMetrics;
 import com.netflix.hystrix.HystrixThreadPoolMetrics;
 import com.netflix.hystrix.util.HystrixRollingNumberEvent;
@@ -110,6 +111,13 @@ public class MetricsSnapshotReporterWithAggregation implements Runnable, Metrics
             currentMetrics.get("HystrixThreadPool").put(commandName, currStats);
         }
         if (counter == frequency) {
+            /* proxy metrics are cumulative counters and gauges and are not aggregated. The values at the end of the duration are reported */
+            for (ProxyMetrics proxyMetrics : ProxyMetrics.getInstances()) {
+                if (currentMetrics.get(proxyMetrics.getGroup()) == null) {
+                    currentMetrics.put(proxyMetrics.getGroup(), new HashMap<String, Map<String, Long>>());
+                }
+                currentMetrics.get(proxyMetrics.getGroup()).put(proxyMetrics.getName(), proxyMetrics.getSnapshot());
+            }
                     /* copying metrics to last one min */
             lastDurationMetrics = new HashMap<String, Map<String, Map<String, Long>>>(currentMetrics);
             currentMetrics = new HashMap<String, Map<String, Map<String, Long>>>();
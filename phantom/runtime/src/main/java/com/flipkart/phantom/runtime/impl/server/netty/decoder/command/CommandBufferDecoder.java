@@ -30,7 +30,7 @@ import org.slf4j.LoggerFactory;
  * before the {@link MessageEvent} is constructed for use by other upstream channel handlers.
  * The Command protocol does not indicate length of bytes relayed up front. Occurrence of a line feed ({@link CommandInterpreter#LINE_FEED}) or total byte size 
  * equal to or greater than {@link CommandInterpreter#MAX_COMMAND_INPUT} is treated as end of input bytes. The {@link CommandInterpreter} is used to interpret
- * the protocol bytes. Any Exception in reading the Command is caught
+ * the protocol bytes and the interpreted {@link CommandInterpreter.ProxyCommand} is sent upstream so that the Command is parsed only once. 
  * 
  * @author Regunath B
  * @version 1.0, 12 April, 2013
@@ -40,23 +40,22 @@ public class CommandBufferDecoder extends FrameDecoder {
     /** Logger for this class*/
     private static final Logger LOGGER = LoggerFactory.getLogger(CommandBufferDecoder.class);
 
+    /** The CommandInterpreter for interpreting Command protocol bytes*/
+    private static final CommandInterpreter COMMAND_INTERPRETER = new CommandInterpreter(); // shared as the CommandInterpreter is stateless
+
 	/**
-	 * Overriden super class method. Uses the {@link CommandInterpreter#readCommand(MessageEvent)} to interpret the Command and thereby check if all bytes have
+	 * Overriden super class method. Uses the {@link CommandInterpreter#interpretCommand(ChannelBuffer)} to interpret the Command and thereby check if all bytes have
 	 * been received, returns a null otherwise.
 	 * @see org.jboss.netty.handler.codec.frame.FrameDecoder#decode(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.Channel, org.jboss.netty.buffer.ChannelBuffer)
 	 */
 	protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
-		int beginIndex = buffer.readerIndex();
-		buffer.markReaderIndex();
-		CommandInterpreter.ProxyCommand proxyCommand = new CommandInterpreter().interpretCommand(buffer);
+		CommandInterpreter.ProxyCommand proxyCommand = COMMAND_INTERPRETER.interpretCommand(buffer);
 		if (proxyCommand.getReadFailure() != null && proxyCommand.getReadFailure() == ReadFailure.INSUFFICIENT_DATA) {
 			LOGGER.debug("Frame decode failed due to insufficient data. Message is : " + proxyCommand.getReadFailureDescription());
-            buffer.resetReaderIndex();
 			return null; // we return null here and Netty will call this decoder again when more data is available
 		}
-	    int endIndex = buffer.readerIndex();
-	    buffer.resetReaderIndex();
-	    return buffer.readSlice(endIndex - beginIndex);		
+		// the buffer reader index has been moved past the Command bytes by the CommandInterpreter
+		return proxyCommand;
 	}
 
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.runtime.impl.server.netty.handler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <code>OrderedResponseDispatcher</code> dispatches responses in the order in which the corresponding requests were received, irrespective of the order
+ * in which the requests complete execution. Used by channel handlers that execute requests asynchronously but must preserve response ordering on a
+ * connection. One instance is used per connection.
+ *
+ * A slot is reserved via {@link #reserve()} when a request is received and the response is handed over via {@link #complete(long, Object)} when
+ * execution completes. Responses are dispatched via {@link #dispatch(Object)}, as and when all responses ahead of them have been dispatched.
+ * Dispatch happens outside the lock of this dispatcher, on one thread at a time : the thread that completes the head of the line dispatches it and
+ * any responses that become ready while it does so, while other completing threads return at once. A response that fails to dispatch is logged
+ * and does not hold up the responses behind it.
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public abstract class OrderedResponseDispatcher<R> {
+
+	/** Logger for this class*/
+	private static final Logger LOGGER = LoggerFactory.getLogger(OrderedResponseDispatcher.class);
+
+	/** The sequence number of the next reserved slot*/
+	private long nextSequence;
+
+	/** The sequence number of the next response to be dispatched*/
+	private long nextDispatchSequence;
+
+	/** Completed responses that are waiting on responses ahead of them*/
+	private Map<Long, R> completedResponses = new HashMap<Long, R>();
+
+	/** Flag to indicate a thread is dispatching responses*/
+	private boolean dispatching;
+
+	/**
+	 * Reserves a slot for a response. Must be called in the order in which requests are received
+	 * @return the sequence number of the reserved slot
+	 */
+	public synchronized long reserve() {
+		return this.nextSequence++;
+	}
+
+	/**
+	 * Completes the slot identified by the specified sequence number and dispatches all responses that are now at the head of the line
+	 * @param sequence the sequence number returned by {@link #reserve()}
+	 * @param response the response, may be null
+	 */
+	public void complete(long sequence, R response) {
+		synchronized(this) {
+			this.completedResponses.put(sequence, response);
+			if (this.dispatching) {
+				return; // the dispatching thread picks up this response, if it is at the head of the line
+			}
+			this.dispatching = true;
+		}
+		while (true) {
+			List<R> responses = new ArrayList<R>();
+			synchronized(this) {
+				while (this.completedResponses.containsKey(this.nextDispatchSequence)) {
+					responses.add(this.completedResponses.remove(this.nextDispatchSequence++));
+				}
+				if (responses.isEmpty()) {
+					this.dispatching = false;
+					return;
+				}
+			}
+			for (R nextResponse : responses) {
+				try {
+					this.dispatch(nextResponse);
+				} catch (RuntimeException e) {
+					// the responses behind this one are dispatched regardless, and the thread that completed the request is not failed
+					LOGGER.error("Error dispatching response : " + e.getMessage(), e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Dispatches the specified response. Calls are serialized and made in request order, without holding the lock on this dispatcher.
+	 * Exceptions thrown are logged, and dispatch continues with the next response
+	 * @param response the response to dispatch, may be null
+	 */
+	protected abstract void dispatch(R response);
+
+}
@@ -18,9 +18,16 @@ package com.flipkart.phantom.runtime.impl.server.netty.handler.command;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
-import java.util.Arrays;
-import java.util.List;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
 
+import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelEvent;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelStateEvent;
@@ -33,18 +40,21 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.util.Assert;
 
+import rx.Observer;
+
 import com.flipkart.phantom.event.ServiceProxyEvent;
 import com.flipkart.phantom.event.ServiceProxyEventProducer;
+import com.flipkart.phantom.task.impl.RequestDeadline;
 import com.flipkart.phantom.task.impl.TaskHandlerExecutor;
 import com.flipkart.phantom.task.impl.TaskHandlerExecutorRepository;
 import com.flipkart.phantom.task.impl.collector.EventDispatchingSpanCollector;
 import com.flipkart.phantom.task.impl.interceptor.ServerRequestInterceptor;
+import com.flipkart.phantom.task.impl.metrics.ProxyMetrics;
 import com.flipkart.phantom.task.spi.RequestContext;
 import com.flipkart.phantom.task.spi.TaskRequestWrapper;
 import com.flipkart.phantom.task.spi.TaskResult;
 import com.github.kristofa.brave.Brave;
 import com.github.kristofa.brave.FixedSampleRateTraceFilter;
-import com.github.kristofa.brave.ServerSpan;
 import com.github.kristofa.brave.ServerTracer;
 import com.github.kristofa.brave.TraceFilter;
 import com.google.common.base.Optional;
@@ -71,6 +81,22 @@ public class AsyncCommandProcessingChannelHandler extends SimpleChannelUpstreamH
     /** The default name of the server/service this channel handler is serving*/
     private static final String DEFAULT_SERVICE_NAME = "Async Command Proxy";
 
+    /** The default maximum number of in-flight async commands of a pool*/
+    private static final int DEFAULT_MAX_IN_FLIGHT_COMMANDS = 1000;
+
+    /** The default maximum number of deferred async commands of a pool*/
+    private static final int DEFAULT_MAX_DEFERRED_COMMANDS = 1000;
+
+    /** The metrics group and metric names of the async command pools*/
+    private static final String METRICS_GROUP = "AsyncCommandPool";
+    private static final String IN_FLIGHT_COUNT = "inFlightCount";
+    private static final String SUSPENDED_READ_COUNT = "suspendedReadCount";
+    private static final String DEFERRED_COUNT = "deferredCount";
+    private static final String REJECTED_COUNT = "rejectedCount";
+
+    /** The in-flight commands of each pool. Shared by all instances of this handler, as an instance is created per channel*/
+    private static final ConcurrentMap<String, PoolInFlightCommands> IN_FLIGHT_COMMANDS = new ConcurrentHashMap<String, PoolInFlightCommands>();
+
     /** The default value for tracing frequency. This value indicates that tracing if OFF*/
     private static final TraceFilter NO_TRACING = new FixedSampleRateTraceFilter(-1);    
     
@@ -109,6 +135,15 @@ public class AsyncCommandProcessingChannelHandler extends SimpleChannelUpstreamH
     /** The EventDispatchingSpanCollector instance used in tracing requests*/
     private EventDispatchingSpanCollector eventDispatchingSpanCollector;    
 
+    /** The ServerRequestInterceptor used in tracing requests, shared by all requests*/
+    private volatile ServerRequestInterceptor<TaskRequestWrapper, TaskResult> serverRequestInterceptor;
+
+    /** The maximum number of in-flight async commands of a pool*/
+    private int maxInFlightCommands = DEFAULT_MAX_IN_FLIGHT_COMMANDS;
+
+    /** The maximum number of async commands of a pool deferred because the pool is at its in-flight limit*/
+    private int maxDeferredCommands = DEFAULT_MAX_DEFERRED_COMMANDS;
+
     /**
      * Interface method implementation. Checks if all mandatory properties have been set
      * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
@@ -140,6 +175,10 @@ public class AsyncCommandProcessingChannelHandler extends SimpleChannelUpstreamH
     /**
 	 * Overridden method. Reads and processes commands sent to the service proxy. Expects data in the command protocol defined in the class summary.
 	 * Discards commands that do not have a {@link com.flipkart.phantom.task.impl.TaskHandler} mapping.
+	 * Commands are dispatched for execution without waiting on their completion. Reading from the channel is suspended while the number of in-flight 
+	 * commands of the command's pool is at the limit and resumed once commands of the pool complete. Commands beyond the limit i.e. decoded from reads
+	 * that were in progress when the channel was suspended, are deferred and dispatched as commands of the pool complete. Commands beyond the deferral
+	 * limit are rejected and reported to the server tracer as errors.
 	 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#handleUpstream(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelEvent)
 	 */
 	public void handleUpstream(ChannelHandlerContext ctx, ChannelEvent event) throws Exception {
@@ -162,40 +201,52 @@ public class AsyncCommandProcessingChannelHandler extends SimpleChannelUpstreamH
             taskRequestWrapper.setCommandName(commandName);
             taskRequestWrapper.setData(readCommand.getCommandData());
             taskRequestWrapper.setParams(readCommand.getCommandParams());
+            taskRequestWrapper.setDeadline(RequestDeadline.fromParams(readCommand.getCommandParams(), receiveTime));
+            taskRequestWrapper.setClientId(CommandProcessingChannelHandler.getClientId(ctx.getChannel()));
             // set the service name for the request
             taskRequestWrapper.setServiceName(Optional.of(this.serviceName));
 
             // Create and process a Server request interceptor. This will initialize the server tracing
             ServerRequestInterceptor<TaskRequestWrapper, TaskResult> serverRequestInterceptor = this.initializeServerTracing(taskRequestWrapper);
             
-            TaskHandlerExecutor executor = (TaskHandlerExecutor) this.repository.getExecutor(commandName, poolName, taskRequestWrapper);
-
             /** Execute */
+            TaskHandlerExecutor executor = null;
             Optional<RuntimeException> transportError = Optional.absent();            
+            PoolInFlightCommands inFlightCommands = this.getInFlightCommands(poolName);
+            boolean admitted = false;
             try {
-                this.repository.executeAsyncCommand(commandName, poolName, taskRequestWrapper);
-                LOGGER.debug("Successfully started execution for async command " + commandName);
+                executor = (TaskHandlerExecutor) this.repository.getExecutor(commandName, poolName, taskRequestWrapper);
+                if (executor == null) {
+                	throw new UnsupportedOperationException("Invoked unsupported command : " + commandName);
+                }
+                // the client has given up on the command, shed it before it is queued for execution
+                RequestDeadline.checkExpired(taskRequestWrapper, commandName);
+                AsyncCommandObserver observer = new AsyncCommandObserver(readCommand, executor, inFlightCommands, receiveTime);
+                boolean acquired = inFlightCommands.acquire(ctx.getChannel(), this.maxInFlightCommands, this.maxDeferredCommands, executor, observer);
+                admitted = true;
+                if (acquired) {
+                	executor.dispatch(observer);
+                	LOGGER.debug("Successfully started execution for async command " + commandName);
+                } else {
+                	LOGGER.debug("Deferred async command " + commandName + ". In-flight commands of pool : " + poolName + " at limit : " + this.maxInFlightCommands);
+                }
             } catch (Exception e) {
+            	if (admitted) {
+            		inFlightCommands.release(this.maxInFlightCommands);
+            		admitted = false;
+            	}
             	RuntimeException runtimeException = new RuntimeException("Error asynchronously executing the command : " + readCommand, e);
             	transportError = Optional.of(runtimeException);
                 LOGGER.error("Error asynchronously executing the command", e); // we just log the error as it is async anyway and callee will not be able to do much
             } finally {
             	// finally inform the server request tracer
-            	serverRequestInterceptor.process(new TaskResult(true, TaskHandlerExecutor.ASYNC_QUEUED), transportError);
-                if (eventProducer != null) {
-                    // Publishes event both in case of success and failure.
-                    final String requestID = readCommand.getCommandParams().get("requestID");
-                    ServiceProxyEvent.Builder eventBuilder;
-                    if (executor == null) {
-                        eventBuilder = new ServiceProxyEvent.Builder(readCommand.getCommand(), ASYNC_COMMAND_HANDLER).withEventSource(getClass().getName());
-                    } else {
-                        eventBuilder = executor.getEventBuilder().withCommandData(executor).withEventSource(executor.getClass().getName());
-                    }
-                    eventBuilder.withRequestId(requestID).withRequestReceiveTime(receiveTime);
-                    eventProducer.publishEvent(eventBuilder.build());
-                } else {
-                    LOGGER.debug("eventProducer not set, not publishing event");
-                }
+            	if (serverRequestInterceptor != null) {
+            		serverRequestInterceptor.process(new TaskResult(true, TaskHandlerExecutor.ASYNC_QUEUED), transportError);
+            	}
+            	// events of admitted commands are published on completion
+            	if (!admitted) {
+            		this.publishEvent(readCommand, executor, receiveTime);
+            	}
             }
         }
         super.handleUpstream(ctx, event);
@@ -210,29 +261,82 @@ public class AsyncCommandProcessingChannelHandler extends SimpleChannelUpstreamH
 		event.getChannel().close();
 	}
 
+    /**
+     * Helper method to publish an event for the specified command. Publishes events both in case of success and failure
+     * @param readCommand the executed ProxyCommand
+     * @param executor the executor of the command, may be null
+     * @param receiveTime the time at which the command was received
+     */
+    private void publishEvent(CommandInterpreter.ProxyCommand readCommand, TaskHandlerExecutor executor, long receiveTime) {
+        if (eventProducer != null) {
+            final String requestID = readCommand.getCommandParams().get("requestID");
+            ServiceProxyEvent.Builder eventBuilder;
+            if (executor == null) {
+                eventBuilder = new ServiceProxyEvent.Builder(readCommand.getCommand(), ASYNC_COMMAND_HANDLER).withEventSource(getClass().getName());
+            } else {
+                eventBuilder = executor.getEventBuilder().withCommandData(executor).withEventSource(executor.getClass().getName());
+            }
+            eventBuilder.withRequestId(requestID).withRequestReceiveTime(receiveTime);
+            eventProducer.publishEvent(eventBuilder.build());
+        } else {
+            LOGGER.debug("eventProducer not set, not publishing event");
+        }
+    }
+
+    /**
+     * Helper method to return the in-flight commands tracker for the specified pool, creating it if required
+     * @param poolName the pool name
+     * @return the PoolInFlightCommands of the pool
+     */
+    private PoolInFlightCommands getInFlightCommands(String poolName) {
+    	PoolInFlightCommands inFlightCommands = IN_FLIGHT_COMMANDS.get(poolName);
+    	if (inFlightCommands == null) {
+    		IN_FLIGHT_COMMANDS.putIfAbsent(poolName, new PoolInFlightCommands(poolName));
+    		inFlightCommands = IN_FLIGHT_COMMANDS.get(poolName);
+    	}
+    	return inFlightCommands;
+    }
+
     /**
      * Initializes server tracing for the specified request
      * @param executorHttpRequest the Http request 
-     * @return the initialized ServerRequestInterceptor
+     * @return the initialized ServerRequestInterceptor, null if the request is not traced
      */
     private ServerRequestInterceptor<TaskRequestWrapper, TaskResult> initializeServerTracing(TaskRequestWrapper executorRequest) {
-        ServerRequestInterceptor<TaskRequestWrapper, TaskResult> serverRequestInterceptor = new ServerRequestInterceptor<TaskRequestWrapper, TaskResult>();
-    	List<TraceFilter> traceFilters = Arrays.<TraceFilter>asList(this.traceFilter);    
-    	ServerTracer serverTracer = Brave.getServerTracer(this.eventDispatchingSpanCollector, traceFilters);
-    	serverRequestInterceptor.setEndPointSubmitter(Brave.getEndPointSubmitter());
-        serverRequestInterceptor.setServerTracer(serverTracer);
-        serverRequestInterceptor.setServiceHost(AsyncCommandProcessingChannelHandler.hostName);
-        serverRequestInterceptor.setServicePort(this.hostPort);
-        serverRequestInterceptor.setServiceName(this.serviceName);   
-        // now process the request to initialize tracing
-        serverRequestInterceptor.process(executorRequest); 
-		// set the server request context on the received request
-    	ServerSpan serverSpan = Brave.getServerSpanThreadBinder().getCurrentServerSpan();
     	RequestContext serverRequestContext = new RequestContext();
-    	serverRequestContext.setCurrentServerSpan(serverSpan);	
     	executorRequest.setRequestContext(Optional.of(serverRequestContext));
+    	ServerRequestInterceptor<TaskRequestWrapper, TaskResult> serverRequestInterceptor = this.getServerRequestInterceptor();
+    	// decide once if the request is traced, requests that are not traced skip all span and annotation work
+    	if (!serverRequestInterceptor.isTraced(executorRequest)) {
+    		serverRequestContext.setTraced(false);
+    		return null;
+    	}
+        // now process the request to initialize tracing
+        serverRequestInterceptor.process(executorRequest); 
+		// set the server span on the request context of the received request
+    	serverRequestContext.setCurrentServerSpan(Brave.getServerSpanThreadBinder().getCurrentServerSpan());
         return serverRequestInterceptor;
     }
+
+    /**
+     * Helper method to return the ServerRequestInterceptor, creating it on first use. The interceptor is shared by all requests
+     * @return the ServerRequestInterceptor
+     */
+    private ServerRequestInterceptor<TaskRequestWrapper, TaskResult> getServerRequestInterceptor() {
+    	if (this.serverRequestInterceptor == null) {
+	        ServerRequestInterceptor<TaskRequestWrapper, TaskResult> serverRequestInterceptor = new ServerRequestInterceptor<TaskRequestWrapper, TaskResult>();
+	        // requests are sampled by the interceptor using the trace filter, and not again by the server tracer
+	    	ServerTracer serverTracer = Brave.getServerTracer(this.eventDispatchingSpanCollector, Collections.<TraceFilter>emptyList());
+	    	serverRequestInterceptor.setEndPointSubmitter(Brave.getEndPointSubmitter());
+	        serverRequestInterceptor.setServerTracer(serverTracer);
+	        serverRequestInterceptor.setTraceFilter(this.traceFilter);
+	        serverRequestInterceptor.setServiceHost(AsyncCommandProcessingChannelHandler.hostName);
+	        serverRequestInterceptor.setServicePort(this.hostPort);
+	        serverRequestInterceptor.setServiceName(this.serviceName);
+	        this.serverRequestInterceptor = serverRequestInterceptor;
+    	}
+    	return this.serverRequestInterceptor;
+    }
 	
 	/** Start Getter/Setter methods */
 	public ChannelGroup getDefaultChannelGroup() {
@@ -253,7 +357,188 @@ public class AsyncCommandProcessingChannelHandler extends SimpleChannelUpstreamH
     public void setEventProducer(final ServiceProxyEventProducer eventProducer) {
         this.eventProducer = eventProducer;
     }
+	public int getMaxInFlightCommands() {
+		return this.maxInFlightCommands;
+	}
+	public void setMaxInFlightCommands(int maxInFlightCommands) {
+		this.maxInFlightCommands = maxInFlightCommands;
+	}
+	public int getMaxDeferredCommands() {
+		return this.maxDeferredCommands;
+	}
+	public void setMaxDeferredCommands(int maxDeferredCommands) {
+		this.maxDeferredCommands = maxDeferredCommands;
+	}
     /** End Getter/Setter methods */
+
+    /**
+     * Tracks the in-flight async commands of a pool, the commands deferred because the pool is at its in-flight limit, and the channels whose reads 
+     * have been suspended because of it. Shared by all channels.
+     */
+    static class PoolInFlightCommands {
+    	
+    	/** The number of in-flight commands, guarded by this instance*/
+    	private int inFlightCount;
+    	
+    	/** Channels whose reads are suspended, in the order of suspension. Guarded by this instance*/
+    	private Set<Channel> suspendedChannels = new LinkedHashSet<Channel>();
+    	
+    	/** Commands decoded from reads that were in progress when the limit was reached, in the order received. Guarded by this instance*/
+    	private LinkedList<DeferredCommand> deferredCommands = new LinkedList<DeferredCommand>();
+    	
+    	/** The in-flight count, overload, deferral and rejection metrics of the pool*/
+    	private ProxyMetrics metrics;
+    	
+    	/** Constructor for this class*/
+    	PoolInFlightCommands(String poolName) {
+    		this.metrics = ProxyMetrics.getInstance(METRICS_GROUP, poolName);
+    	}
+    	
+    	/**
+    	 * Acquires an in-flight slot for a command read off the specified channel, or defers the command until a slot is released if the pool is at 
+    	 * the specified limit. Suspends reads on the channel if the pool is at the limit.
+    	 * Channel interest is changed holding the lock on this instance, so that suspends and resumes of a channel take effect in the order made
+    	 * @param channel the channel the command was read from
+    	 * @param maxInFlightCommands the in-flight limit
+    	 * @param maxDeferredCommands the deferral limit
+    	 * @param executor the executor of the command
+    	 * @param observer the observer of the command execution
+    	 * @return true if a slot was acquired and the command must be dispatched, false if the command was deferred
+    	 * @throws RejectedExecutionException if the pool is at the in-flight limit and the deferral limit
+    	 */
+    	synchronized boolean acquire(Channel channel, int maxInFlightCommands, int maxDeferredCommands, TaskHandlerExecutor executor, 
+    			Observer<TaskResult> observer) {
+    		boolean acquired = (this.inFlightCount < maxInFlightCommands);
+    		boolean rejected = false;
+    		if (acquired) {
+    			this.inFlightCount += 1;
+    			this.metrics.set(IN_FLIGHT_COUNT, this.inFlightCount);
+    		} else if (this.deferredCommands.size() < maxDeferredCommands) {
+    			this.deferredCommands.addLast(new DeferredCommand(executor, observer));
+    			this.metrics.increment(DEFERRED_COUNT);
+    		} else {
+    			rejected = true;
+    			this.metrics.increment(REJECTED_COUNT);
+    		}
+    		if (this.inFlightCount >= maxInFlightCommands && this.suspendedChannels.add(channel)) {
+    			channel.setReadable(false);
+    			this.metrics.increment(SUSPENDED_READ_COUNT);
+    		}
+    		if (rejected) {
+    			throw new RejectedExecutionException("Deferred commands of pool at limit : " + maxDeferredCommands);
+    		}
+    		return acquired;
+    	}
+    	
+    	/**
+    	 * Releases an in-flight slot. The slot is handed over to the next deferred command if any, else reads are resumed on one suspended channel
+    	 * while the pool is under the specified limit. Reads are resumed on all suspended channels once the pool has no in-flight commands, as no
+    	 * further releases would resume them
+    	 * @param maxInFlightCommands the in-flight limit
+    	 */
+    	void release(int maxInFlightCommands) {
+    		DeferredCommand deferredCommand = null;
+    		synchronized(this) {
+    			if (!this.deferredCommands.isEmpty()) {
+    				deferredCommand = this.deferredCommands.removeFirst();
+    			} else {
+    				this.inFlightCount -= 1;
+    				this.metrics.set(IN_FLIGHT_COUNT, this.inFlightCount);
+    				if (this.inFlightCount < maxInFlightCommands) {
+    					this.resumeChannels(this.inFlightCount == 0);
+    				}
+    			}
+    		}
+    		if (deferredCommand != null) {
+    			// dispatched outside the lock, a command that fails at once releases its slot again
+    			try {
+    				deferredCommand.executor.dispatch(deferredCommand.observer);
+    			} catch (RuntimeException e) {
+    				deferredCommand.observer.onError(e);
+    			}
+    		}
+    	}
+    	
+    	/**
+    	 * Helper method to resume reads on the next open suspended channel, or on all suspended channels. Must be called holding the lock on this instance
+    	 * @param all true to resume all suspended channels
+    	 */
+    	private void resumeChannels(boolean all) {
+    		Iterator<Channel> channels = this.suspendedChannels.iterator();
+    		while (channels.hasNext()) {
+    			Channel channel = channels.next();
+    			channels.remove();
+    			if (channel.isOpen()) {
+    				channel.setReadable(true);
+    				if (!all) {
+    					return;
+    				}
+    			}
+    		}
+    	}
+    }
+
+    /** A command deferred until an in-flight slot of its pool is released*/
+    static class DeferredCommand {
+    	private TaskHandlerExecutor executor;
+    	private Observer<TaskResult> observer;
+    	DeferredCommand(TaskHandlerExecutor executor, Observer<TaskResult> observer) {
+    		this.executor = executor;
+    		this.observer = observer;
+    	}
+    }
+
+    /**
+     * Observer of async command execution. Releases the in-flight slot of the command and publishes the command execution event on completion
+     */
+    private class AsyncCommandObserver implements Observer<TaskResult> {
+    	
+    	private CommandInterpreter.ProxyCommand readCommand;
+    	private TaskHandlerExecutor executor;
+    	private PoolInFlightCommands inFlightCommands;
+    	private long receiveTime;
+    	
+    	/** Constructor for this class*/
+    	AsyncCommandObserver(CommandInterpreter.ProxyCommand readCommand, TaskHandlerExecutor executor, PoolInFlightCommands inFlightCommands, long receiveTime) {
+    		this.readCommand = readCommand;
+    		this.executor = executor;
+    		this.inFlightCommands = inFlightCommands;
+    		this.receiveTime = receiveTime;
+    	}
+    	
+    	/**
+    	 * Interface method implementation. No-op as results of async commands are not returned to the client
+    	 * @see rx.Observer#onNext(java.lang.Object)
+    	 */
+    	public void onNext(TaskResult result) {
+    		// no op
+    	}
+    	
+    	/**
+    	 * Interface method implementation. Completes the command
+    	 * @see rx.Observer#onCompleted()
+    	 */
+    	public void onCompleted() {
+    		this.complete();
+    	}
+    	
+    	/**
+    	 * Interface method implementation. Logs the error and completes the command
+    	 * @see rx.Observer#onError(java.lang.Throwable)
+    	 */
+    	public void onError(Throwable error) {
+    		LOGGER.error("Error in processing async command " + this.readCommand.getCommand() + ": " + error.getMessage(), error);
+    		this.complete();
+    	}
+    	
+    	/**
+    	 * Helper method to release the in-flight slot and publish the command execution event
+    	 */
+    	private void complete() {
+    		this.inFlightCommands.release(maxInFlightCommands);
+    		publishEvent(this.readCommand, this.executor, this.receiveTime);
+    	}
+    }
 }
 
 
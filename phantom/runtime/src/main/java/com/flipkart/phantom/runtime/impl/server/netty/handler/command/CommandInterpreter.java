@@ -15,11 +15,20 @@
  */
 package com.flipkart.phantom.runtime.impl.server.netty.handler.command;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.io.input.BoundedInputStream;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferInputStream;
 import org.jboss.netty.buffer.ChannelBufferOutputStream;
@@ -31,6 +40,8 @@ import org.jboss.netty.channel.MessageEvent;
 import org.springframework.util.SerializationUtils;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flipkart.phantom.task.spi.Encoder;
+import com.flipkart.phantom.task.spi.EncoderRegistry;
 import com.flipkart.phantom.task.spi.TaskResult;
 
 /**
@@ -53,6 +64,7 @@ import com.flipkart.phantom.task.spi.TaskResult;
  * 	<li>'command' is an arbitrary sequence of characters</li>
  * 	<li>'param name'='param value' can repeat any number of times. Are of type : arbitrary sequence of characters</li>
  *	<li>'data' is an arbitrary sequence of bytes</li>
+ *	<li>the optional reserved param 'muxID' marks the command as multiplexed. Many such commands may be pipelined on a single connection without waiting for responses.</li>
  * </ul>
  * 
  * Response from Command execution is described as below
@@ -68,6 +80,53 @@ import com.flipkart.phantom.task.spi.TaskResult;
  * | data bytes |
  * +------------+
  * 
+ * Response to a multiplexed Command is prefixed with the 'muxID' value of the Command. Such responses are written as and when the
+ * respective Command completes execution and may therefore be out of order w.r.t the sequence in which the Commands were sent.
+ * 
+ * +--------+-------------+--------+----+
+ * | mux id | white space | status | \n |
+ * +--------+-------------+--------+----+
+ *  (or)
+ * +--------+-------------+--------+-------------+-------------+----+
+ * | mux id | white space | status | white space | data length | \n |
+ * +--------+-------------+--------+-------------+-------------+----+
+ * +------------+
+ * | data bytes |
+ * +------------+
+ * 
+ * 
+ * The reserved Command 'phantom.batch' carries a batch of Commands as its data bytes - each following the Command protocol, text or binary. The batched Commands
+ * are executed concurrently and the response is a single response with the message 'BATCH' whose data bytes are the responses to each of the batched
+ * Commands, in order, each following the Command protocol in the framing of the respective batched Command.
+ * 
+ * Commands may alternatively be sent in a binary length-prefixed framing, selected by the magic first byte 0xFE - a byte that never appears in UTF-8 
+ * encoded text and therefore cannot be the first byte of a text Command. Locating the command, params and data of a binary Command needs no scanning. 
+ * Responses to binary Commands are binary encoded. The binary Command is described as below
+ * 
+ * +-------+---------+---------------+-------------+--------------+------------+
+ * | magic | version | header length | data length | header bytes | data bytes |
+ * +-------+---------+---------------+-------------+--------------+------------+
+ * 
+ * where
+ * <ul>
+ *  <li>'magic' is the byte 0xFE and 'version' is a byte, presently 1</li>
+ *  <li>'header length' and 'data length' are 4 byte big-endian integers</li>
+ *  <li>'header bytes' are : varint command length, command, varint param count and for each param - varint name length, name, varint value length, value.
+ *  Varints are unsigned base 128 integers, least significant group first, and Strings are UTF-8 encoded</li>
+ * </ul>
+ * 
+ * Response from binary Command execution is described as below
+ * 
+ * +-------+--------+---------------+-------------+--------------+------------+
+ * | magic | status | header length | data length | header bytes | data bytes |
+ * +-------+--------+---------------+-------------+--------------+------------+
+ * 
+ * where
+ * <ul>
+ *  <li>'status' is 0 for success and 1 for error</li>
+ *  <li>'header bytes' are : varint mux id length, mux id, varint message length, message. The lengths are 0 when there is no mux id or message</li>
+ * </ul>
+ * 
  * <pre>
  * 
  * Command protocol interpretation code is based on the implementation in com.flipkart.w3.agent.W3Agent
@@ -79,6 +138,16 @@ import com.flipkart.phantom.task.spi.TaskResult;
 @SuppressWarnings("rawtypes")
 public class CommandInterpreter {
 
+	/** The reserved param key for the id of a multiplexed command. Responses to such commands are tagged with this id*/
+	public static final String MUX_ID_PARAM = "muxID";
+
+	/** The reserved command name for a batch of commands, and the message of the batch response*/
+	public static final String BATCH_COMMAND = "phantom.batch";
+	public static final String BATCH_RESPONSE = "BATCH";
+
+	/** Constant for the streaming threshold that disables streaming of command data*/
+	public static final int NO_STREAMING = Integer.MAX_VALUE;
+
 	/** Constant for max command input size*/
 	public static final int MAX_COMMAND_INPUT = 20480;
 
@@ -93,11 +162,36 @@ public class CommandInterpreter {
 
 	private static final String SUCCESS = "SUCCESS";
 	private static final String ERROR = "ERROR";
-	private static final String NULL_STRING = ""; 
+
+	/** Constants for the binary Command framing*/
+	public static final byte BINARY_MAGIC = (byte)0xFE;
+	public static final byte BINARY_VERSION = 1;
+	private static final int BINARY_FIXED_HEADER_LENGTH = 10;
+	private static final byte BINARY_SUCCESS = 0;
+	private static final byte BINARY_ERROR = 1;
+	private static final byte[] EMPTY_BYTES = new byte[0];
 
 	/** Default param value, when none is specified*/
 	private static final String DEFAULT_PARAM_VALUE = "true";
 
+	/** The charset for interpreting command line bytes in error messages*/
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	/** Pre-encoded response status lines and statuses*/
+	private static final byte[] SUCCESS_LINE = (SUCCESS + LINE_FEED).getBytes(CHARSET);
+	private static final byte[] ERROR_LINE = (ERROR + LINE_FEED).getBytes(CHARSET);
+	private static final byte[] SUCCESS_BYTES = SUCCESS.getBytes(CHARSET);
+	private static final byte[] ERROR_BYTES = ERROR.getBytes(CHARSET);
+
+	/** Initial size of an encoded response status line*/
+	private static final int RESPONSE_HEADER_SIZE = 32;
+
+	/** Initial size of the buffer for encoded result data*/
+	private static final int ENCODED_DATA_SIZE = 256;
+
+	/** Responses up to this size are written to an OutputStream in a single write*/
+	private static final int RESPONSE_COALESCING_LIMIT = 8192;
+
 	/** The Jackson ObjectMapper for writing output as JSON*/
 	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper(); // using an instance variable as this class is deemed to be thread-safe
 
@@ -114,29 +208,276 @@ public class CommandInterpreter {
 	 * @throws Exception in case of errors
 	 */
 	public ProxyCommand readCommand(InputStream inputStream) throws Exception {
-		return this.interpretCommand(inputStream, true);
+		return this.interpretCommand(inputStream, true, NO_STREAMING);
+	}
+
+	/**
+	 * Helper method to read and return a ProxyCommand from an {@link InputStream}, streaming the command data if it is larger than the specified threshold.
+	 * Streamed data is not read by this method and is available via {@link ProxyCommand#getCommandDataStream()}, to be read off the specified InputStream 
+	 * by the consumer of the command. Throws Exception for all data read errors including partial reads arising from insufficient data
+	 * @param inputStream the InputStream instance
+	 * @param streamingThreshold the data length beyond which command data is streamed, {@link #NO_STREAMING} to read data always
+	 * @return the read ProxyCommand
+	 * @throws Exception in case of errors
+	 */
+	public ProxyCommand readCommand(InputStream inputStream, int streamingThreshold) throws Exception {
+		return this.interpretCommand(inputStream, true, streamingThreshold);
 	}
 	
 	/**
 	 * Helper method to read and return a ProxyCommand from an input Channel {@link MessageEvent}. Throws Exception for all data read errors including partial
-	 * reads arising from insufficient data
+	 * reads arising from insufficient data. Returns the event message as-is if it has already been interpreted into a ProxyCommand, say by the 
+	 * {@link com.flipkart.phantom.runtime.impl.server.netty.decoder.command.CommandBufferDecoder}
 	 * @param event the MessageEvent instance
 	 * @return the read ProxyCommand
 	 * @throws Exception in case of errors
 	 */
 	public ProxyCommand readCommand(MessageEvent event) throws Exception {
-		return this.interpretCommand(new ChannelBufferInputStream((ChannelBuffer)event.getMessage()), true);
+		if (event.getMessage() instanceof ProxyCommand) {
+			return (ProxyCommand)event.getMessage();
+		}
+		ProxyCommand readCommand = this.interpretCommand((ChannelBuffer)event.getMessage());
+		if (readCommand.getReadFailure() != null) {
+			throw new IllegalArgumentException(readCommand.getReadFailureDescription());
+		}
+		return readCommand;
 	}
 
 	/**
 	 * Helper method to read and return a ProxyCommand from a ChannelBuffer {@link ChannelBuffer}. Returns a ProxyCommand for partial read errors and throws
-	 * Exception only for irrecoverable errors. Useful method to decode data frames from the raw input channel buffer.  
+	 * Exception only for irrecoverable errors. Useful method to decode data frames from the raw input channel buffer.
+	 * The buffer reader index is moved past the command only when the complete command has been read. The command data is not copied and is made available 
+	 * as a slice of the input buffer via {@link ProxyCommand#getCommandDataBuffer()}
 	 * @param buffer the input buffer
 	 * @return the read ProxyCommand
 	 * @throws Exception in case of errors
 	 */
 	public ProxyCommand interpretCommand(ChannelBuffer buffer) throws Exception {
-		return this.interpretCommand(new ChannelBufferInputStream(buffer), false);
+		if (!buffer.readable()) {
+			return new ProxyCommand(ReadFailure.INSUFFICIENT_DATA, "Invalid read. Encountered end of stream before reading a single byte");
+		}
+		int beginIndex = buffer.readerIndex();
+		if (buffer.getByte(beginIndex) == BINARY_MAGIC) {
+			return this.interpretBinaryCommand(buffer);
+		}
+		int searchEndIndex = Math.min(buffer.writerIndex(), beginIndex + MAX_COMMAND_INPUT);
+		int lineFeedIndex = buffer.indexOf(beginIndex, searchEndIndex, (byte)LINE_FEED);
+		if (lineFeedIndex < 0) {
+			if (searchEndIndex - beginIndex < MAX_COMMAND_INPUT) {
+				return new ProxyCommand(ReadFailure.INSUFFICIENT_DATA, "Stream ended before encountering a \\n. Bytes read : " + (searchEndIndex - beginIndex));
+			}
+			throw new IllegalArgumentException("Maximum command line size allowed: " + MAX_COMMAND_INPUT +" Command : "+ buffer.toString(beginIndex, MAX_COMMAND_INPUT, CHARSET));
+		}
+		// read only the command line bytes. The data bytes, if any, are not copied
+		byte[] commandLine = new byte[lineFeedIndex - beginIndex];
+		buffer.getBytes(beginIndex, commandLine);
+		ProxyCommand readCommand = this.interpretCommandLine(commandLine, commandLine.length);
+		int dataStartIndex = lineFeedIndex + 1;
+		int dataLength = readCommand.getCommandDataLength();
+		if (buffer.writerIndex() - dataStartIndex < dataLength) {
+			return new ProxyCommand(ReadFailure.INSUFFICIENT_DATA, "Stream ended before all data was read. Length of data bytes needed : " + 
+					(dataLength - (buffer.writerIndex() - dataStartIndex)));
+		}
+		buffer.readerIndex(dataStartIndex);
+		if (dataLength > 0) {
+			readCommand.setCommandDataBuffer(buffer.readSlice(dataLength));
+		}
+		return readCommand;
+	}
+
+	/**
+	 * Interprets and returns the Commands batched in the data of the specified batch Command
+	 * @param batchCommand the batch Command i.e. one with the command {@link #BATCH_COMMAND}
+	 * @return the batched Commands, in order
+	 * @throws Exception in case of errors, including batched Commands that are incomplete
+	 */
+	public List<ProxyCommand> interpretBatchCommands(ProxyCommand batchCommand) throws Exception {
+		List<ProxyCommand> batchedCommands = new LinkedList<ProxyCommand>();
+		ChannelBuffer batchData = batchCommand.getCommandDataBuffer();
+		if (batchData == null) {
+			byte[] commandData = batchCommand.getCommandData();
+			batchData = (commandData == null ? ChannelBuffers.EMPTY_BUFFER : ChannelBuffers.wrappedBuffer(commandData));
+		} else {
+			batchData = batchData.duplicate(); // dont move the reader index of the batch command's data
+		}
+		while (batchData.readable()) {
+			ProxyCommand batchedCommand = this.interpretCommand(batchData);
+			if (batchedCommand.getReadFailure() != null) {
+				throw new IllegalArgumentException("Invalid batched command at index " + batchedCommands.size() + " : " + batchedCommand.getReadFailureDescription());
+			}
+			batchedCommands.add(batchedCommand);
+		}
+		return batchedCommands;
+	}
+
+	/**
+	 * Returns the result of a batch Command. The result data are the responses to each of the batched Commands, following the Command protocol
+	 * in the framing of the respective batched Command
+	 * @param batchedCommands the batched Commands
+	 * @param results the results of the batched Commands, in the order of the batched Commands
+	 * @return the batch TaskResult
+	 * @throws Exception in case of any errors
+	 */
+	public TaskResult<byte[]> getBatchResult(List<ProxyCommand> batchedCommands, List<TaskResult> results) throws Exception {
+		ChannelBuffer[] batchedResponses = new ChannelBuffer[batchedCommands.size()];
+		Iterator<TaskResult> resultsIterator = results.iterator();
+		for (int i = 0; i < batchedResponses.length; i++) {
+			TaskResult result = resultsIterator.next();
+			// every batched command is responded to, as the client reads as many responses as it batched
+			batchedResponses[i] = this.getCommandExecutionResponse(batchedCommands.get(i), result == null ? new TaskResult(false, null) : result);
+		}
+		ChannelBuffer batchData = ChannelBuffers.wrappedBuffer(batchedResponses);
+		byte[] batchDataBytes = new byte[batchData.readableBytes()];
+		batchData.readBytes(batchDataBytes);
+		return new TaskResult<byte[]>(true, BATCH_RESPONSE, batchDataBytes);
+	}
+
+	/**
+	 * Helper method to read and return a binary ProxyCommand from the specified ChannelBuffer. The frame size is known from the fixed header and
+	 * the buffer reader index is moved past the command only when the complete frame is available. The command data is made available as a slice
+	 * of the input buffer.
+	 * @param buffer the input buffer, positioned at the magic byte
+	 * @return the read ProxyCommand
+	 * @throws Exception in case of errors
+	 */
+	private ProxyCommand interpretBinaryCommand(ChannelBuffer buffer) throws Exception {
+		int beginIndex = buffer.readerIndex();
+		if (buffer.readableBytes() < BINARY_FIXED_HEADER_LENGTH) {
+			return new ProxyCommand(ReadFailure.INSUFFICIENT_DATA, "Stream ended before binary command header was read. Bytes read : " + buffer.readableBytes());
+		}
+		int headerLength = this.validateBinaryHeader(buffer.getByte(beginIndex + 1), buffer.getInt(beginIndex + 2));
+		int dataLength = buffer.getInt(beginIndex + 6);
+		if (dataLength < 0) {
+			throw new IllegalArgumentException("Invalid binary command data length : " + dataLength);
+		}
+		int remainingBytes = buffer.readableBytes() - BINARY_FIXED_HEADER_LENGTH - headerLength;
+		if (remainingBytes < dataLength) {
+			return new ProxyCommand(ReadFailure.INSUFFICIENT_DATA, "Stream ended before all data was read. Length of data bytes needed : " + 
+					(dataLength - Math.max(remainingBytes, 0)));
+		}
+		buffer.skipBytes(BINARY_FIXED_HEADER_LENGTH);
+		ProxyCommand readCommand = this.interpretBinaryHeader(buffer.readSlice(headerLength));
+		readCommand.setCommandDataLength(dataLength);
+		if (dataLength > 0) {
+			readCommand.setCommandDataBuffer(buffer.readSlice(dataLength));
+		}
+		return readCommand;
+	}
+
+	/**
+	 * Helper method to read and return a binary ProxyCommand from the specified InputStream. The magic byte is expected to have been read already.
+	 * @param inputStream the InputStream instance
+	 * @param streamingThreshold the data length beyond which command data is streamed
+	 * @return the read ProxyCommand
+	 * @throws Exception in case of errors
+	 */
+	private ProxyCommand interpretBinaryCommand(InputStream inputStream, int streamingThreshold) throws Exception {
+		DataInputStream dataInputStream = new DataInputStream(inputStream);
+		byte version = dataInputStream.readByte();
+		int headerLength = this.validateBinaryHeader(version, dataInputStream.readInt());
+		int dataLength = dataInputStream.readInt();
+		if (dataLength < 0) {
+			throw new IllegalArgumentException("Invalid binary command data length : " + dataLength);
+		}
+		byte[] headerBytes = new byte[headerLength];
+		dataInputStream.readFully(headerBytes);
+		ProxyCommand readCommand = this.interpretBinaryHeader(ChannelBuffers.wrappedBuffer(headerBytes));
+		readCommand.setCommandDataLength(dataLength);
+		if (dataLength > streamingThreshold) {
+			readCommand.setCommandDataStream(this.getBoundedStream(inputStream, dataLength));
+		} else if (dataLength > 0) {
+			byte[] commandData = new byte[dataLength];
+			dataInputStream.readFully(commandData);
+			readCommand.setCommandData(commandData);
+		}
+		return readCommand;
+	}
+
+	/**
+	 * Helper method to validate the version and header length of a binary Command
+	 * @param version the binary framing version
+	 * @param headerLength the length of the binary Command header bytes
+	 * @return the validated header length
+	 */
+	private int validateBinaryHeader(byte version, int headerLength) {
+		if (version != BINARY_VERSION) {
+			throw new IllegalArgumentException("Unsupported binary command version : " + version);
+		}
+		if (headerLength <= 0 || headerLength > MAX_COMMAND_INPUT) {
+			throw new IllegalArgumentException("Invalid binary command header length : " + headerLength + ". Maximum header size allowed: " + MAX_COMMAND_INPUT);
+		}
+		return headerLength;
+	}
+
+	/**
+	 * Helper method to interpret the command and params from the header bytes of a binary Command
+	 * @param header the header bytes
+	 * @return the ProxyCommand containing the command and params
+	 */
+	private ProxyCommand interpretBinaryHeader(ChannelBuffer header) {
+		ProxyCommand readCommand = new ProxyCommand(this.readBinaryString(header));
+		readCommand.setBinary(true);
+		int paramCount = this.readVarInt(header);
+		Map<String,String> commandParams = new HashMap<String, String>();
+		for (int i = 0; i < paramCount; i++) {
+			String paramName = this.readBinaryString(header);
+			commandParams.put(paramName, this.readBinaryString(header));
+		}
+		readCommand.setCommandParams(commandParams);
+		return readCommand;
+	}
+
+	/**
+	 * Helper method to read a varint length prefixed UTF-8 String from the specified buffer
+	 * @param buffer the buffer to read from
+	 * @return the read String
+	 */
+	private String readBinaryString(ChannelBuffer buffer) {
+		int length = this.readVarInt(buffer);
+		if (length > buffer.readableBytes()) {
+			throw new IllegalArgumentException("Invalid binary command header. String length : " + length + " exceeds header bytes : " + buffer.readableBytes());
+		}
+		String value = buffer.toString(buffer.readerIndex(), length, CHARSET);
+		buffer.skipBytes(length);
+		return value;
+	}
+
+	/**
+	 * Helper method to read an unsigned varint from the specified buffer. Lengths and counts are read as varints, hence values that are negative
+	 * or do not fit in an int are rejected
+	 * @param buffer the buffer to read from
+	 * @return the read int value, not negative
+	 */
+	private int readVarInt(ChannelBuffer buffer) {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			if (!buffer.readable()) {
+				throw new IllegalArgumentException("Invalid binary command header. Header ended while reading a varint");
+			}
+			byte b = buffer.readByte();
+			if (shift == 28 && (b & 0xF8) != 0) {
+				// the fifth byte may only carry the 3 high bits of a non-negative int
+				throw new IllegalArgumentException("Invalid binary command header. Varint is negative or exceeds max int value");
+			}
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Invalid binary command header. Malformed varint");
+	}
+
+	/**
+	 * Helper method to write an unsigned varint to the specified buffer
+	 * @param buffer the buffer to write to
+	 * @param value the int value to write
+	 */
+	private void writeVarInt(ChannelBuffer buffer, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer.writeByte(value);
 	}
 
 	/**
@@ -147,9 +488,43 @@ public class CommandInterpreter {
 	 * @throws Exception in case of any errors
 	 */
 	public void writeCommandExecutionResponse(ChannelHandlerContext ctx, ChannelEvent event, TaskResult result) throws Exception {
-		ChannelBuffer writeBuffer = ChannelBuffers.dynamicBuffer();
-		this.writeCommandExecutionResponse(new ChannelBufferOutputStream(writeBuffer), result);
-		Channels.write(ctx, event.getFuture(), writeBuffer);    	
+		this.writeCommandExecutionResponse(ctx, event, null, result);
+	}
+
+	/**
+	 * Writes the specified TaskResult data to the channel output following the Command protocol, in the framing of the specified Command and tagged 
+	 * with its mux id, if any
+	 * @param ctx the ChannelHandlerContext
+	 * @param event the ChannelEvent
+	 * @param command the ProxyCommand that produced the result, may be null
+	 * @param result the TaskResult data written to the channel response
+	 * @throws Exception in case of any errors
+	 */
+	public void writeCommandExecutionResponse(ChannelHandlerContext ctx, ChannelEvent event, ProxyCommand command, TaskResult result) throws Exception {
+		Channels.write(ctx, event.getFuture(), this.getCommandExecutionResponse(command, result));    	
+	}
+
+	/**
+	 * Returns the specified TaskResult data encoded following the Command protocol, in the framing of the specified Command and tagged with its mux id, if any.
+	 * Useful for writing responses outside of the upstream event that carried the Command.
+	 * The returned buffer is a composite of the response header and the result metadata and data - byte array data is wrapped and not copied. The result 
+	 * data must therefore not be modified until the response has been written.
+	 * @param command the ProxyCommand that produced the result, may be null
+	 * @param result the TaskResult to encode
+	 * @return the encoded response, an empty buffer if the result is null
+	 * @throws Exception in case of any errors
+	 */
+	public ChannelBuffer getCommandExecutionResponse(ProxyCommand command, TaskResult result) throws Exception {
+		if (result == null) {
+			return ChannelBuffers.EMPTY_BUFFER;
+		}
+		ChannelBuffer resultData = this.getResultData(result);
+		// the length of encoded data is known only now. Not set on the result, as results may be shared by commands e.g. when cached
+		int resultDataLength = this.isEncodedData(result) ? resultData.readableBytes() : result.getLength();
+		String muxID = (command == null ? null : command.getCommandParams().get(MUX_ID_PARAM));
+		ChannelBuffer header = (command != null && command.isBinary()) ? this.getBinaryResponseHeader(muxID, result, resultDataLength) 
+				: this.getResponseHeader(muxID, result, resultDataLength);
+		return ChannelBuffers.wrappedBuffer(header, resultData);
 	}
 	
 	/**
@@ -159,61 +534,176 @@ public class CommandInterpreter {
 	 * @throws Exception in case of any errors
 	 */
 	public void writeCommandExecutionResponse(OutputStream outputStream, TaskResult result) throws Exception {
+		this.writeCommandExecutionResponse(outputStream, null, result);
+	}
+
+	/**
+	 *  Writes the specified TaskResult data to the Outputstream following the Command protocol, in the framing of the specified Command and prefixed with 
+	 *  its mux id, if any. Small responses are written to the Outputstream in a single write. Larger responses are written component by component, 
+	 *  without first copying the result data into a contiguous response.
+	 * @param outputStream the Outputstream to write result data to
+	 * @param command the ProxyCommand that produced the result, may be null
+	 * @param result the TaskResult to write
+	 * @throws Exception in case of any errors
+	 */
+	public void writeCommandExecutionResponse(OutputStream outputStream, ProxyCommand command, TaskResult result) throws Exception {
 		//Don't write anything if the result is null
 		if(result==null) {
 			return;
 		}
+		ChannelBuffer response = this.getCommandExecutionResponse(command, result);
+		if (response.readableBytes() <= RESPONSE_COALESCING_LIMIT) {
+			byte[] responseBytes = new byte[response.readableBytes()];
+			response.getBytes(response.readerIndex(), responseBytes);
+			outputStream.write(responseBytes);
+		} else {
+			response.getBytes(response.readerIndex(), outputStream, response.readableBytes());
+		}
+	}
+
+	/**
+	 * Helper method to encode the response status line, following the text Command protocol, for the specified TaskResult. The common status lines
+	 * are pre-encoded
+	 * @param muxID the mux id of the Command that produced the result, may be null
+	 * @param result the TaskResult
+	 * @param resultDatalength the length of the result data
+	 * @return the encoded status line
+	 */
+	private ChannelBuffer getResponseHeader(String muxID, TaskResult result, int resultDatalength) {
 		String message = result.getMessage();
-		boolean success = result.isSuccess();
-		int resultDatalength = result.getLength();
-		String metaContents = (message==null ? (success ? SUCCESS : ERROR) : message);
-		metaContents += (resultDatalength==0 ? LINE_FEED : (DEFAULT_DELIM + NULL_STRING + resultDatalength + NULL_STRING + LINE_FEED));
+		if (muxID == null && message == null && resultDatalength == 0) {
+			return ChannelBuffers.wrappedBuffer(result.isSuccess() ? SUCCESS_LINE : ERROR_LINE);
+		}
+		ChannelBuffer header = ChannelBuffers.dynamicBuffer(RESPONSE_HEADER_SIZE);
+		if (muxID != null) {
+			header.writeBytes(muxID.getBytes(CHARSET));
+			header.writeByte(DEFAULT_DELIM);
+		}
+		if (message == null) {
+			header.writeBytes(result.isSuccess() ? SUCCESS_BYTES : ERROR_BYTES);
+		} else {
+			header.writeBytes(message.getBytes(CHARSET));
+		}
+		if (resultDatalength != 0) {
+			header.writeByte(DEFAULT_DELIM);
+			String resultDatalengthString = String.valueOf(resultDatalength);
+			for (int i = 0; i < resultDatalengthString.length(); i++) {
+				header.writeByte(resultDatalengthString.charAt(i));
+			}
+		}
+		header.writeByte(LINE_FEED);
+		return header;
+	}
 
-		// write the meta contents
-		outputStream.write(metaContents.getBytes());
+	/**
+	 * Helper method to encode the response header, following the binary Command protocol, for the specified TaskResult
+	 * @param muxID the mux id of the Command that produced the result, may be null
+	 * @param result the TaskResult
+	 * @param resultDataLength the length of the result data
+	 * @return the encoded header
+	 */
+	private ChannelBuffer getBinaryResponseHeader(String muxID, TaskResult result, int resultDataLength) {
+		byte[] muxIDBytes = (muxID == null ? EMPTY_BYTES : muxID.getBytes(CHARSET));
+		byte[] messageBytes = (result.getMessage() == null ? EMPTY_BYTES : result.getMessage().getBytes(CHARSET));
+		ChannelBuffer header = ChannelBuffers.dynamicBuffer(BINARY_FIXED_HEADER_LENGTH + muxIDBytes.length + messageBytes.length + 10);
+		header.writerIndex(BINARY_FIXED_HEADER_LENGTH); // the fixed header is set once the header bytes have been written
+		this.writeVarInt(header, muxIDBytes.length);
+		header.writeBytes(muxIDBytes);
+		this.writeVarInt(header, messageBytes.length);
+		header.writeBytes(messageBytes);
+		header.setByte(0, BINARY_MAGIC);
+		header.setByte(1, result.isSuccess() ? BINARY_SUCCESS : BINARY_ERROR);
+		header.setInt(2, header.writerIndex() - BINARY_FIXED_HEADER_LENGTH);
+		header.setInt(6, resultDataLength);
+		return header;
+	}
 
-		// now write the result data
+	/**
+	 * Helper method to return the metadata and data bytes of the specified TaskResult, wrapping byte array data without copying
+	 * @param result the TaskResult
+	 * @return buffer containing the result metadata and data bytes
+	 * @throws Exception in case of errors encoding the result data
+	 */
+	private ChannelBuffer getResultData(TaskResult result) throws Exception {
 		if(result.isDataArray()) {
-			for(Object object : result.getDataArray()) {
-				if(object!=null) {
-					if(object instanceof byte[]) {
-						outputStream.write((byte[]) object);
-					} else {
-						outputStream.write(SerializationUtils.serialize(object));
-					}
-				}
+			List dataArray = result.getDataArray();
+			ChannelBuffer[] dataBuffers = new ChannelBuffer[dataArray.size()];
+			for (int i = 0; i < dataBuffers.length; i++) {
+				dataBuffers[i] = this.wrapResultData(dataArray.get(i), result.getEncoderRegistry());
 			}
-		} else {
-            byte[] metaData = result.getMetadata();
-            if(metaData != null && (metaData.length > 0)) {
-               outputStream.write(metaData);
-            }
-			Object data = result.getData();
-			if(data!=null) {
-				if(data instanceof byte[]) {
-					byte[] byteData = (byte[]) data;
-					if(byteData.length>0)  {
-						outputStream.write(byteData);
-					}
-				} else {
-					outputStream.write(SerializationUtils.serialize(data));
+			return ChannelBuffers.wrappedBuffer(dataBuffers);
+		}
+		return ChannelBuffers.wrappedBuffer(this.wrapResultData(result.getMetadata(), null), this.wrapResultData(result.getData(), result.getEncoderRegistry()));
+	}
+
+	/**
+	 * Helper method to wrap the specified result data in a buffer. Byte arrays are wrapped as-is and other objects are encoded straight into the 
+	 * buffer using the Encoder registered for the object's type, or serialized if none is registered
+	 * @param data the result data, may be null
+	 * @param encoderRegistry the EncoderRegistry of the result, may be null
+	 * @return buffer containing the data bytes
+	 * @throws Exception in case of errors encoding the data
+	 */
+	private ChannelBuffer wrapResultData(Object data, EncoderRegistry encoderRegistry) throws Exception {
+		if (data == null) {
+			return ChannelBuffers.EMPTY_BUFFER;
+		}
+		if (data instanceof byte[]) {
+			return ChannelBuffers.wrappedBuffer((byte[]) data);
+		}
+		Encoder encoder = (encoderRegistry == null ? null : encoderRegistry.getEncoder(data.getClass()));
+		if (encoder == null) {
+			return ChannelBuffers.wrappedBuffer(SerializationUtils.serialize(data));
+		}
+		ChannelBuffer encodedData = ChannelBuffers.dynamicBuffer(ENCODED_DATA_SIZE);
+		encoder.encode(data, new ChannelBufferOutputStream(encodedData));
+		return encodedData;
+	}
+
+	/**
+	 * Helper method to determine if the specified TaskResult has data that is encoded i.e. is not a byte array
+	 * @param result the TaskResult
+	 * @return true if any of the result data is not a byte array
+	 */
+	private boolean isEncodedData(TaskResult result) {
+		if (result.isDataArray()) {
+			for (Object data : result.getDataArray()) {
+				if (data != null && !(data instanceof byte[])) {
+					return true;
 				}
 			}
-		}					
+			return false;
+		}
+		return result.getData() != null && !(result.getData() instanceof byte[]);
 	}
 
 	/**
 	 * Helper method to read and return a ProxyCommand from an input {@link InputStream}
 	 * @param inputStream the InputStream instance
 	 * @param isFramedTransport boolean indicator that defines mechanism for reporting errors - Exceptions vs a ProxyCommand with error description
+	 * @param streamingThreshold the data length beyond which command data is streamed
 	 * @return the read ProxyCommand
 	 * @throws Exception in case of errors
 	 */    
-	private ProxyCommand interpretCommand(InputStream inputStream, boolean isFramedTransport) throws Exception {
+	private ProxyCommand interpretCommand(InputStream inputStream, boolean isFramedTransport, int streamingThreshold) throws Exception {
         ProxyCommand readCommand = null;
 		byte[] readBytes = new byte[MAX_COMMAND_INPUT];
 
-		int byteReadIndex=0, commandEndIndex=0, dataStartIndex=0, dataLength=0;
+		// read the first byte to identify the framing of the command
+		int firstByte = inputStream.read();
+		if (firstByte < 0) {
+			if (isFramedTransport) {
+				throw new IllegalArgumentException("Invalid read. Encountered end of stream before reading a single byte");
+			} else {
+				return new ProxyCommand(ReadFailure.INSUFFICIENT_DATA, "Invalid read. Encountered end of stream before reading a single byte");
+			}
+		}
+		if ((byte)firstByte == BINARY_MAGIC) {
+			return this.interpretBinaryCommand(inputStream, streamingThreshold);
+		}
+		readBytes[0] = (byte)firstByte;
+
+		int byteReadIndex=1, commandEndIndex=0, dataStartIndex=0, dataLength=0;
 		while(byteReadIndex < MAX_COMMAND_INPUT) {
 			int bytesRead = inputStream.read(readBytes, byteReadIndex, MAX_COMMAND_INPUT-byteReadIndex); // try to read as much as is available into the byte array
 			if(bytesRead <= 0){ // check if no data was read at all. Throw an IllegalArgumentException to indicate unexpected end of stream
@@ -251,6 +741,61 @@ public class CommandInterpreter {
 
 		// The input data appears to adhere to the command protocol. Proceed to read the command, params and data
 		dataStartIndex = commandEndIndex+1;
+		// the command line is copied as the params retain it, and the read buffer is sized for the maximum command line
+		readCommand = this.interpretCommandLine(Arrays.copyOf(readBytes, commandEndIndex), commandEndIndex);
+		dataLength = readCommand.getCommandDataLength();
+
+		if(dataLength > streamingThreshold) {
+			// stream the data bytes already read followed by the remaining ones off the input stream
+			int dataBytesRead = Math.min(byteReadIndex-dataStartIndex, dataLength);
+			readCommand.setCommandDataStream(new SequenceInputStream(new ByteArrayInputStream(readBytes, dataStartIndex, dataBytesRead), 
+					this.getBoundedStream(inputStream, dataLength-dataBytesRead)));
+		} else if(dataLength > 0) {
+			byte[] commandData = new byte[dataLength];
+			int dataByteReadIndex = byteReadIndex-dataStartIndex;
+			if(dataStartIndex < byteReadIndex){
+				System.arraycopy(readBytes, dataStartIndex, commandData, 0, dataByteReadIndex);
+			}
+			while(dataByteReadIndex<dataLength){
+				if (inputStream.available() < (dataLength-dataByteReadIndex)) { 
+					if (!isFramedTransport) { // check if all data bytes have been received. Return immediately for non framed transports
+						return new ProxyCommand(ReadFailure.INSUFFICIENT_DATA, "Stream ended before all data was read. Length of data bytes needed : " + (dataLength-dataByteReadIndex));
+					}
+				}
+				int actualBytesRead = inputStream.read(commandData, dataByteReadIndex, dataLength-dataByteReadIndex);
+				if (actualBytesRead <= 0) { // 0 bytes not possible because dataLength-dataByteReadIndex is non-zero, -1 is returned if no byte is available because the stream is at end of file (as per Javadocs)
+					throw new IllegalArgumentException("Insufficient bytes read for command : " + readCommand.getCommand() + ". Expected : " + (dataLength-dataByteReadIndex) + " but read : " + actualBytesRead);
+				}
+				dataByteReadIndex += actualBytesRead;					
+			}
+			// set the command data on the ProxyCommand object
+			readCommand.setCommandData(commandData);
+		}
+		return readCommand;
+	}
+	
+	/**
+	 * Helper method to return a stream of the specified length off the specified InputStream. Closing the returned stream does not close the InputStream
+	 * @param inputStream the InputStream to stream from
+	 * @param length the number of bytes to stream
+	 * @return the bounded InputStream
+	 */
+	private InputStream getBoundedStream(InputStream inputStream, int length) {
+		BoundedInputStream boundedStream = new BoundedInputStream(inputStream, length);
+		boundedStream.setPropagateClose(false);
+		return boundedStream;
+	}
+
+	/**
+	 * Helper method to interpret the command, params and data length from the command line bytes i.e. bytes preceding the {@link #LINE_FEED}
+	 * @param readBytes the command line bytes
+	 * @param commandEndIndex the index of the {@link #LINE_FEED} in the command line bytes, or the length of bytes if the line feed is not included
+	 * @return the ProxyCommand containing the command, params and data length
+	 */
+	private ProxyCommand interpretCommandLine(byte[] readBytes, int commandEndIndex) {
+		if (commandEndIndex == 0) {
+			throw new IllegalArgumentException("Invalid syntax in command. Command line is empty");
+		}
 		if (readBytes[commandEndIndex-1] == CARRIAGE_RETURN) {
 			commandEndIndex--;	// handle the CR for people who still haven't moved on from telnet to netcat
 		}
@@ -262,9 +807,10 @@ public class CommandInterpreter {
 			fragmentStart=1;
 		}
 		int fragmentIndex = this.getNextCommandFragmentPosition(readBytes, fragmentStart, commandEndIndex, delimiter);
-		readCommand = new ProxyCommand(new String(readBytes, fragmentStart, fragmentIndex-fragmentStart));
+		ProxyCommand readCommand = new ProxyCommand(new String(readBytes, fragmentStart, fragmentIndex-fragmentStart));
 
-		Map<String,String> commandParams = new HashMap<String, String>();
+		// params are decoded lazily off the command line bytes
+		CommandParams commandParams = new CommandParams(readBytes, DEFAULT_PARAM_VALUE);
 		// gather params
 		while(fragmentIndex < commandEndIndex) {
 			// skip initial delims
@@ -278,10 +824,10 @@ public class CommandInterpreter {
 			if(Character.isDigit((char)readBytes[fragmentIndex])) {
 				// this is the datalen
 				try {
-					dataLength = Integer.parseInt(new String(readBytes, fragmentIndex, commandEndIndex-fragmentIndex));
+					readCommand.setCommandDataLength(Integer.parseInt(new String(readBytes, fragmentIndex, commandEndIndex-fragmentIndex)));
 					break;
 				} catch (Exception e) {
-					throw new IllegalArgumentException("Invalid syntax in command: "+new String(readBytes), e);
+					throw new IllegalArgumentException("Invalid syntax in command: "+new String(readBytes, 0, commandEndIndex), e);
 				}
 			} else {
 				fragmentStart = fragmentIndex;
@@ -294,40 +840,17 @@ public class CommandInterpreter {
 					}
 				}
 				if (paramValueSepIndex > 0) {
-					commandParams.put(new String(readBytes, fragmentStart, paramValueSepIndex-fragmentStart), 
-							new String(readBytes, paramValueSepIndex+1, fragmentIndex-paramValueSepIndex-1));
+					commandParams.addParam(fragmentStart, paramValueSepIndex-fragmentStart, paramValueSepIndex+1, fragmentIndex-paramValueSepIndex-1);
 				} else {
-					commandParams.put(new String(readBytes, fragmentStart, fragmentIndex-fragmentStart), DEFAULT_PARAM_VALUE); // initialize with default value if none specified
+					commandParams.addParam(fragmentStart, fragmentIndex-fragmentStart, -1, 0); // initialize with default value if none specified
 				}
-				// set the params on the ProxyCommand object
-				readCommand.setCommandParams(commandParams);
 			}        	
 		}
-
-		if(dataLength > 0) {
-			byte[] commandData = new byte[dataLength];
-			int dataByteReadIndex = byteReadIndex-dataStartIndex;
-			if(dataStartIndex < byteReadIndex){
-				System.arraycopy(readBytes, dataStartIndex, commandData, 0, dataByteReadIndex);
-			}
-			while(dataByteReadIndex<dataLength){
-				if (inputStream.available() < (dataLength-dataByteReadIndex)) { 
-					if (!isFramedTransport) { // check if all data bytes have been received. Return immediately for non framed transports
-						return new ProxyCommand(ReadFailure.INSUFFICIENT_DATA, "Stream ended before all data was read. Length of data bytes needed : " + (dataLength-dataByteReadIndex));
-					}
-				}
-				int actualBytesRead = inputStream.read(commandData, dataByteReadIndex, dataLength-dataByteReadIndex);
-				if (actualBytesRead <= 0) { // 0 bytes not possible because dataLength-dataByteReadIndex is non-zero, -1 is returned if no byte is available because the stream is at end of file (as per Javadocs)
-					throw new IllegalArgumentException("Insufficient bytes read for command : " + readCommand.getCommand() + ". Expected : " + (dataLength-dataByteReadIndex) + " but read : " + actualBytesRead);
-				}
-				dataByteReadIndex += actualBytesRead;					
-			}
-			// set the command data on the ProxyCommand object
-			readCommand.setCommandData(commandData);
-		}
+		// set the params on the ProxyCommand object
+		readCommand.setCommandParams(commandParams);
 		return readCommand;
 	}
-	
+
 	/**
 	 * Helper method to return the next command fragment position in the input byte array. Considers the start index to skip bytes and the delim char to
 	 * identify the next fragment
@@ -360,6 +883,18 @@ public class CommandInterpreter {
 		/** The command data*/
 		private byte[] commandData;
 
+		/** The command data as a slice of the input channel buffer, when read from one*/
+		private ChannelBuffer commandDataBuffer;
+
+		/** The length of command data as specified in the command line*/
+		private int commandDataLength;
+
+		/** The command data stream, when the command data is streamed*/
+		private InputStream commandDataStream;
+
+		/** Flag to indicate that the command was read from the binary framing*/
+		private boolean binary;
+
 		/**
 		 * Constructor for this class
 		 * @param command the command string
@@ -409,11 +944,45 @@ public class CommandInterpreter {
 			this.commandParams = commandParams;
 		}
 		public byte[] getCommandData() {
+			if (this.commandData == null && this.commandDataBuffer != null) {
+				// copy the data bytes out of the input buffer only when asked for
+				byte[] data = new byte[this.commandDataBuffer.readableBytes()];
+				this.commandDataBuffer.getBytes(this.commandDataBuffer.readerIndex(), data);
+				this.commandData = data;
+			}
 			return this.commandData;
 		}
 		public void setCommandData(byte[] commandData) {
 			this.commandData = commandData;
 		}    	
+		public InputStream getCommandDataStream() {
+			if (this.commandDataStream == null && this.commandDataBuffer != null) {
+				// the input buffer is reused for frames read after this one, the data bytes are copied out of it before the command is dispatched
+				return new ChannelBufferInputStream(ChannelBuffers.copiedBuffer(this.commandDataBuffer));
+			}
+			return this.commandDataStream;
+		}
+		public void setCommandDataStream(InputStream commandDataStream) {
+			this.commandDataStream = commandDataStream;
+		}
+		public ChannelBuffer getCommandDataBuffer() {
+			return this.commandDataBuffer;
+		}
+		public void setCommandDataBuffer(ChannelBuffer commandDataBuffer) {
+			this.commandDataBuffer = commandDataBuffer;
+		}
+		public int getCommandDataLength() {
+			return this.commandDataLength;
+		}
+		public void setCommandDataLength(int commandDataLength) {
+			this.commandDataLength = commandDataLength;
+		}
+		public boolean isBinary() {
+			return this.binary;
+		}
+		public void setBinary(boolean binary) {
+			this.binary = binary;
+		}
 		/** End setter/getter methods*/
 
 	}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.runtime.impl.server.netty.handler.command;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * <code>CommandParams</code> is a compact {@link Map} of the params of a Command, backed by the command line bytes the params were read from.
+ * Param names of the command protocol are resolved to shared String instances and are not decoded. Param values are decoded on first access.
+ * The map may be modified, in which case the params are copied to a regular Map and this instance behaves like one thereafter. Modifications are
+ * copy-on-write i.e. each modification copies the params and publishes the modified copy, so that readers on other threads, say of a command that is
+ * executed asynchronously, see either the params before or after a modification. Params are added via {@link #addParam(int, int, int, int)} only
+ * while the command is read, before the params are shared with other threads.
+ * Lazy decoding of values is not synchronized as decoding is idempotent - concurrent readers may decode a value more than once.
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class CommandParams extends AbstractMap<String, String> {
+
+	/** Param names of the command protocol, resolved to these String instances when read*/
+	private static final String[] KNOWN_KEYS = {CommandInterpreter.MUX_ID_PARAM, "pool", "requestID", "requestSentTime"};
+	private static final byte[][] KNOWN_KEY_BYTES = new byte[KNOWN_KEYS.length][];
+	static {
+		for (int i = 0; i < KNOWN_KEYS.length; i++) {
+			KNOWN_KEY_BYTES[i] = KNOWN_KEYS[i].getBytes();
+		}
+	}
+
+	/** Initial capacity for the number of params*/
+	private static final int INITIAL_CAPACITY = 4;
+
+	/** The command line bytes*/
+	private byte[] bytes;
+
+	/** The value of params that do not have one specified*/
+	private String defaultValue;
+
+	/** The number of params*/
+	private int size;
+
+	/** The param names*/
+	private String[] keys = new String[INITIAL_CAPACITY];
+
+	/** The start offset and length of each param value in the command line bytes. Start offset is -1 for params that use the default value*/
+	private int[] valueOffsets = new int[INITIAL_CAPACITY * 2];
+
+	/** The decoded param values*/
+	private String[] values = new String[INITIAL_CAPACITY];
+
+	/** The params, once this Map has been modified. Replaced with a modified copy on each modification*/
+	private volatile Map<String, String> modifiedParams;
+
+	/**
+	 * Constructor for this class
+	 * @param bytes the command line bytes. Must not be modified once params have been added
+	 * @param defaultValue the value of params that do not have one specified
+	 */
+	public CommandParams(byte[] bytes, String defaultValue) {
+		this.bytes = bytes;
+		this.defaultValue = defaultValue;
+	}
+
+	/**
+	 * Adds a param read from the command line bytes. A param that has been added before is replaced. Must be called only by the thread reading the
+	 * command, before the params are shared
+	 * @param keyStart start offset of the param name
+	 * @param keyLength length of the param name
+	 * @param valueStart start offset of the param value, -1 if the param has no value specified
+	 * @param valueLength length of the param value
+	 */
+	public void addParam(int keyStart, int keyLength, int valueStart, int valueLength) {
+		String key = this.getKey(keyStart, keyLength);
+		int index = this.indexOf(key);
+		if (index < 0) {
+			if (this.size == this.keys.length) {
+				this.keys = Arrays.copyOf(this.keys, this.size * 2);
+				this.values = Arrays.copyOf(this.values, this.size * 2);
+				this.valueOffsets = Arrays.copyOf(this.valueOffsets, this.size * 4);
+			}
+			index = this.size++;
+			this.keys[index] = key;
+		}
+		this.valueOffsets[index * 2] = valueStart;
+		this.valueOffsets[index * 2 + 1] = valueLength;
+		this.values[index] = null;
+	}
+
+	/**
+	 * Overriden super class method. Looks up the param, decoding its value if it has not been already
+	 * @see java.util.AbstractMap#get(java.lang.Object)
+	 */
+	public String get(Object key) {
+		Map<String, String> modifiedParams = this.modifiedParams;
+		if (modifiedParams != null) {
+			return modifiedParams.get(key);
+		}
+		int index = this.indexOf(key);
+		return index < 0 ? null : this.getValue(index);
+	}
+
+	/**
+	 * Overriden super class method. Looks up the param without decoding its value
+	 * @see java.util.AbstractMap#containsKey(java.lang.Object)
+	 */
+	public boolean containsKey(Object key) {
+		Map<String, String> modifiedParams = this.modifiedParams;
+		if (modifiedParams != null) {
+			return modifiedParams.containsKey(key);
+		}
+		return this.indexOf(key) >= 0;
+	}
+
+	/**
+	 * Overriden super class method. Returns the number of params
+	 * @see java.util.AbstractMap#size()
+	 */
+	public int size() {
+		Map<String, String> modifiedParams = this.modifiedParams;
+		return modifiedParams != null ? modifiedParams.size() : this.size;
+	}
+
+	/**
+	 * Overriden super class method. Copies the params, adds the specified param to the copy and publishes it
+	 * @see java.util.AbstractMap#put(java.lang.Object, java.lang.Object)
+	 */
+	public synchronized String put(String key, String value) {
+		Map<String, String> params = this.copyParams();
+		String previousValue = params.put(key, value);
+		this.modifiedParams = Collections.unmodifiableMap(params);
+		return previousValue;
+	}
+
+	/**
+	 * Overriden super class method. Copies the params, removes the specified param from the copy and publishes it
+	 * @see java.util.AbstractMap#remove(java.lang.Object)
+	 */
+	public synchronized String remove(Object key) {
+		Map<String, String> params = this.copyParams();
+		String previousValue = params.remove(key);
+		this.modifiedParams = Collections.unmodifiableMap(params);
+		return previousValue;
+	}
+
+	/**
+	 * Overriden super class method. Publishes an empty copy of the params
+	 * @see java.util.AbstractMap#clear()
+	 */
+	public synchronized void clear() {
+		this.modifiedParams = Collections.unmodifiableMap(new HashMap<String, String>());
+	}
+
+	/**
+	 * Overriden super class method. Returns a Set view of the params. Iterating over the entries decodes all param values
+	 * @see java.util.AbstractMap#entrySet()
+	 */
+	public Set<Map.Entry<String, String>> entrySet() {
+		Map<String, String> modifiedParams = this.modifiedParams;
+		if (modifiedParams != null) {
+			return modifiedParams.entrySet();
+		}
+		return new AbstractSet<Map.Entry<String, String>>() {
+			public int size() {
+				return CommandParams.this.size();
+			}
+			public Iterator<Map.Entry<String, String>> iterator() {
+				return new Iterator<Map.Entry<String, String>>() {
+					private int index;
+					public boolean hasNext() {
+						return this.index < CommandParams.this.size;
+					}
+					public Map.Entry<String, String> next() {
+						if (!this.hasNext()) {
+							throw new NoSuchElementException();
+						}
+						int entryIndex = this.index++;
+						return new AbstractMap.SimpleImmutableEntry<String, String>(CommandParams.this.keys[entryIndex], CommandParams.this.getValue(entryIndex));
+					}
+					public void remove() {
+						throw new UnsupportedOperationException("Params may be removed only via Map#remove()");
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Helper method to return the param name at the specified offset, resolving it to a known param name where possible
+	 * @param start start offset of the param name
+	 * @param length length of the param name
+	 * @return the param name
+	 */
+	private String getKey(int start, int length) {
+		for (int i = 0; i < KNOWN_KEY_BYTES.length; i++) {
+			byte[] knownKey = KNOWN_KEY_BYTES[i];
+			if (knownKey.length == length) {
+				int j = 0;
+				while (j < length && knownKey[j] == this.bytes[start + j]) {
+					j++;
+				}
+				if (j == length) {
+					return KNOWN_KEYS[i];
+				}
+			}
+		}
+		return new String(this.bytes, start, length);
+	}
+
+	/**
+	 * Helper method to return the index of the specified param name
+	 * @param key the param name
+	 * @return the index or -1 if the param does not exist
+	 */
+	private int indexOf(Object key) {
+		for (int i = 0; i < this.size; i++) {
+			// known param names are mostly looked up using the same String instance
+			if (this.keys[i] == key || this.keys[i].equals(key)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Helper method to return the value of the param at the specified index, decoding it if required
+	 * @param index the param index
+	 * @return the param value
+	 */
+	private String getValue(int index) {
+		String value = this.values[index];
+		if (value == null) {
+			int valueStart = this.valueOffsets[index * 2];
+			value = (valueStart < 0 ? this.defaultValue : new String(this.bytes, valueStart, this.valueOffsets[index * 2 + 1]));
+			this.values[index] = value;
+		}
+		return value;
+	}
+
+	/**
+	 * Helper method to return a modifiable copy of the params. The command line bytes are retained, as readers may still be decoding values from them
+	 * @return copy of the params
+	 */
+	private Map<String, String> copyParams() {
+		if (this.modifiedParams != null) {
+			return new HashMap<String, String>(this.modifiedParams);
+		}
+		Map<String, String> params = new HashMap<String, String>();
+		for (int i = 0; i < this.size; i++) {
+			params.put(this.keys[i], this.getValue(i));
+		}
+		return params;
+	}
+
+}
@@ -18,12 +18,16 @@ package com.flipkart.phantom.runtime.impl.server.netty.handler.command;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelEvent;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.ExceptionEvent;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelHandler;
@@ -34,10 +38,15 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.util.Assert;
 
+import rx.Observer;
+
 import com.flipkart.phantom.event.ServiceProxyEvent;
 import com.flipkart.phantom.event.ServiceProxyEventProducer;
+import com.flipkart.phantom.runtime.impl.server.netty.handler.OrderedResponseDispatcher;
+import com.flipkart.phantom.task.impl.RequestDeadline;
 import com.flipkart.phantom.task.impl.TaskHandler;
 import com.flipkart.phantom.task.impl.TaskHandlerExecutor;
+import com.flipkart.phantom.task.impl.TaskHandlerExecutorRepository;
 import com.flipkart.phantom.task.impl.collector.EventDispatchingSpanCollector;
 import com.flipkart.phantom.task.impl.interceptor.ServerRequestInterceptor;
 import com.flipkart.phantom.task.spi.RequestContext;
@@ -46,7 +55,6 @@ import com.flipkart.phantom.task.spi.TaskResult;
 import com.flipkart.phantom.task.spi.repository.ExecutorRepository;
 import com.github.kristofa.brave.Brave;
 import com.github.kristofa.brave.FixedSampleRateTraceFilter;
-import com.github.kristofa.brave.ServerSpan;
 import com.github.kristofa.brave.ServerTracer;
 import com.github.kristofa.brave.TraceFilter;
 import com.google.common.base.Optional;
@@ -55,6 +63,9 @@ import com.google.common.base.Optional;
  * <code>CommandProcessingChannelHandler</code> is a sub-type of {@link SimpleChannelHandler} that implements command processing of the service proxy.
  * The command protocol is described in {@link CommandInterpreter}.
  * It wraps the service call using a {@link TaskHandlerExecutor} that provides useful features like monitoring, fallback etc.
+ * Commands are executed on the I/O thread by default. When {@link #setNonBlocking(boolean)} is turned on, commands are dispatched to the executor
+ * and the I/O thread is returned at once - responses are written from the execution completion callback, in the order in which commands were received
+ * on a channel. Multiplexed commands (see {@link CommandInterpreter#MUX_ID_PARAM}) are always executed this way, but their responses are not ordered.
  * 
  * @author Regunath B
  * @version 1.0, 18 Mar 2013
@@ -74,6 +85,9 @@ public class CommandProcessingChannelHandler extends SimpleChannelUpstreamHandle
     /** Event Type for publishing all events which are generated here */
     private final static String COMMAND_HANDLER = "COMMAND_HANDLER";
     
+    /** The response for failed command executions*/
+    private static final TaskResult FAILED_EXECUTION = new TaskResult(false, null);
+    
     /** The default value for tracing frequency. This value indicates that tracing if OFF*/
     private static final TraceFilter NO_TRACING = new FixedSampleRateTraceFilter(-1);    
     
@@ -112,6 +126,16 @@ public class CommandProcessingChannelHandler extends SimpleChannelUpstreamHandle
     /** The EventDispatchingSpanCollector instance used in tracing requests*/
     private EventDispatchingSpanCollector eventDispatchingSpanCollector;    
 
+    /** The ServerRequestInterceptor used in tracing requests, shared by all requests*/
+    private volatile ServerRequestInterceptor<TaskRequestWrapper, TaskResult> serverRequestInterceptor;
+
+    /** The command data length beyond which data is streamed to TaskHandlers. See TaskHandler#executeStreaming. Frames are fully buffered by the
+     * decoder, the data of a streamed command is still copied out of the frame before it is dispatched*/
+    private int streamingThreshold = CommandInterpreter.NO_STREAMING;
+
+    /** Flag to execute commands without blocking the I/O thread. Responses are written from the completion callback, in the order commands were received on a channel*/
+    private boolean nonBlocking;
+
     /**
      * Interface method implementation. Checks if all mandatory properties have been set
      * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
@@ -151,16 +175,16 @@ public class CommandProcessingChannelHandler extends SimpleChannelUpstreamHandle
             CommandInterpreter commandInterpreter = new CommandInterpreter();
             CommandInterpreter.ProxyCommand readCommand = commandInterpreter.readCommand((MessageEvent) event);
             LOGGER.debug("Read Command : " + readCommand);
+            if (CommandInterpreter.BATCH_COMMAND.equals(readCommand.getCommand())) {
+            	this.processBatchCommand(ctx, event, commandInterpreter, readCommand, receiveTime);
+            	super.handleUpstream(ctx, event);
+            	return;
+            }
             String pool = readCommand.getCommandParams().get("pool");
             TaskHandlerExecutor executor;
 
             // Prepare the request Wrapper
-            TaskRequestWrapper taskRequestWrapper = new TaskRequestWrapper();
-            taskRequestWrapper.setCommandName(readCommand.getCommand());
-            taskRequestWrapper.setData(readCommand.getCommandData());
-            taskRequestWrapper.setParams(readCommand.getCommandParams());
-            // set the service name for the request
-            taskRequestWrapper.setServiceName(Optional.of(this.serviceName));
+            TaskRequestWrapper taskRequestWrapper = this.createTaskRequestWrapper(readCommand, ctx.getChannel());
 
             // Create and process a Server request interceptor. This will initialize the server tracing
             ServerRequestInterceptor<TaskRequestWrapper, TaskResult> serverRequestInterceptor = this.initializeServerTracing(taskRequestWrapper);
@@ -173,44 +197,160 @@ public class CommandProcessingChannelHandler extends SimpleChannelUpstreamHandle
             }
             // set the service name for the request
             taskRequestWrapper.setServiceName(executor.getServiceName());
-            
+
+            String muxID = readCommand.getCommandParams().get(CommandInterpreter.MUX_ID_PARAM);
+            if (RequestDeadline.isExpired(taskRequestWrapper, readCommand.getCommand())) {
+            	// the client has given up on the command, shed it before it is queued for execution
+            	CommandExecutionObserver observer = new CommandExecutionObserver(ctx, commandInterpreter, readCommand, muxID, executor, 
+            			taskRequestWrapper, serverRequestInterceptor, receiveTime);
+            	observer.onNext(new TaskResult(false, RequestDeadline.EXPIRED_MESSAGE));
+            	observer.onCompleted();
+            } else if (muxID != null || this.nonBlocking) {
+            	// dont wait for the result, return the I/O thread. The response is written when the executor completes - tagged with the mux id
+            	// for multiplexed commands, else in the order in which commands were received on the channel
+            	CommandExecutionObserver observer = new CommandExecutionObserver(ctx, commandInterpreter, readCommand, muxID, executor, 
+            			taskRequestWrapper, serverRequestInterceptor, receiveTime);
+            	if (executor.getCallInvocationType() == TaskHandler.SYNC_CALL) {
+            		executor.dispatch(observer);
+            	} else {
+            		try {
+            			executor.dispatch(); // send back a response that the call has been dispatched for async execution
+            			observer.onNext(new TaskResult(true, TaskHandlerExecutor.ASYNC_QUEUED));
+            			observer.onCompleted();
+            		} catch (RuntimeException e) {
+            			// the response slot must be completed, else responses to subsequent commands on the channel are held up
+            			observer.onError(e);
+            		}
+            	}
+            } else {
+	            TaskResult result = null;
+	            Optional<RuntimeException> transportError = Optional.absent();
+	            try {
+	                if (executor.getCallInvocationType() == TaskHandler.SYNC_CALL) {
+	                    result = executor.dispatchAndWait();
+	                } else {
+	                    executor.dispatch(); // dont wait for the result. send back a response that the call has been dispatched for async execution
+	                    result = new TaskResult(true, TaskHandlerExecutor.ASYNC_QUEUED);
+	                }
+	                LOGGER.debug("The output is: " + result);
+	                // write the results to the channel output
+	                commandInterpreter.writeCommandExecutionResponse(ctx, event, readCommand, result);
+	            } catch (Exception e) {
+	            	RuntimeException runtimeException = new RuntimeException("Error in executing command : " + readCommand, e);
+	            	transportError = Optional.of(runtimeException);
+	                throw runtimeException;
+	            } finally {
+	            	// finally inform the server request tracer
+	            	if (serverRequestInterceptor != null) {
+	            		serverRequestInterceptor.process(result, transportError);
+	            	}
+	            	this.publishEvent(readCommand, executor, receiveTime);
+	            }
+            }
+        }
+        super.handleUpstream(ctx, event);
+    }
+
+	/**
+	 * Helper method to process a batch Command. The batched Commands are executed concurrently by the {@link TaskHandlerExecutorRepository} and a single 
+	 * batch response is written. Tracing and non-blocking execution behave the same as for any other Command.
+	 * @param ctx the ChannelHandlerContext
+	 * @param event the ChannelEvent that carried the batch Command
+	 * @param commandInterpreter the CommandInterpreter to use
+	 * @param readCommand the batch Command
+	 * @param receiveTime the time at which the batch Command was received
+	 * @throws Exception in case of errors
+	 */
+	private void processBatchCommand(ChannelHandlerContext ctx, ChannelEvent event, final CommandInterpreter commandInterpreter, 
+			CommandInterpreter.ProxyCommand readCommand, long receiveTime) throws Exception {
+		final List<CommandInterpreter.ProxyCommand> batchedCommands = commandInterpreter.interpretBatchCommands(readCommand);
+		TaskRequestWrapper batchRequestWrapper = this.createTaskRequestWrapper(readCommand, ctx.getChannel());
+        ServerRequestInterceptor<TaskRequestWrapper, TaskResult> serverRequestInterceptor = this.initializeServerTracing(batchRequestWrapper);
+        List<TaskRequestWrapper> batchedRequestWrappers = new ArrayList<TaskRequestWrapper>(batchedCommands.size());
+        for (CommandInterpreter.ProxyCommand batchedCommand : batchedCommands) {
+        	TaskRequestWrapper batchedRequestWrapper = this.createTaskRequestWrapper(batchedCommand, ctx.getChannel());
+        	// batched commands are traced as part of the batch request
+        	batchedRequestWrapper.setRequestContext(batchRequestWrapper.getRequestContext());
+        	batchedRequestWrapper.setDeadline(RequestDeadline.earliest(batchedRequestWrapper.getDeadline(), batchRequestWrapper.getDeadline()));
+        	batchedRequestWrappers.add(batchedRequestWrapper);
+        }
+        if (!(this.repository instanceof TaskHandlerExecutorRepository)) {
+        	// batch execution is supported only by the task handler repository, respond with an error rather than fail the channel
+        	this.writeBatchUnsupportedResponse(ctx, event, commandInterpreter, readCommand, batchRequestWrapper, serverRequestInterceptor, receiveTime);
+        	return;
+        }
+        TaskHandlerExecutorRepository batchRepository = (TaskHandlerExecutorRepository) this.repository;
+        if (readCommand.getCommandParams().get(CommandInterpreter.MUX_ID_PARAM) != null || this.nonBlocking) {
+        	final CommandExecutionObserver observer = new CommandExecutionObserver(ctx, commandInterpreter, readCommand, 
+        			readCommand.getCommandParams().get(CommandInterpreter.MUX_ID_PARAM), null, batchRequestWrapper, serverRequestInterceptor, receiveTime);
+        	batchRepository.executeBatch(batchedRequestWrappers, new Observer<List<TaskResult>>() {
+				public void onNext(List<TaskResult> results) {
+					try {
+						observer.onNext(commandInterpreter.getBatchResult(batchedCommands, results));
+					} catch (Exception e) {
+						observer.onError(e);
+					}
+				}
+				public void onCompleted() {
+					observer.onCompleted();
+				}
+				public void onError(Throwable e) {
+					observer.onError(e);
+				}
+        	});
+        } else {
             TaskResult result = null;
             Optional<RuntimeException> transportError = Optional.absent();
             try {
-                if (executor.getCallInvocationType() == TaskHandler.SYNC_CALL) {
-                    result = executor.execute();
-                } else {
-                    executor.queue(); // dont wait for the result. send back a response that the call has been dispatched for async execution
-                    result = new TaskResult(true, TaskHandlerExecutor.ASYNC_QUEUED);
-                }
-                LOGGER.debug("The output is: " + result);
-                // write the results to the channel output
-                commandInterpreter.writeCommandExecutionResponse(ctx, event, result);
+            	result = commandInterpreter.getBatchResult(batchedCommands, batchRepository.executeBatch(batchedRequestWrappers));
+                commandInterpreter.writeCommandExecutionResponse(ctx, event, readCommand, result);
             } catch (Exception e) {
             	RuntimeException runtimeException = new RuntimeException("Error in executing command : " + readCommand, e);
             	transportError = Optional.of(runtimeException);
                 throw runtimeException;
             } finally {
-            	// finally inform the server request tracer
-            	serverRequestInterceptor.process(result, transportError);
-                if (eventProducer != null) {
-                    // Publishes event both in case of success and failure.
-                    final String requestID = readCommand.getCommandParams().get("requestID");
-                    ServiceProxyEvent.Builder eventBuilder;
-                    if (executor == null) {
-                        eventBuilder = new ServiceProxyEvent.Builder(readCommand.getCommand(), COMMAND_HANDLER).withEventSource(getClass().getName());
-                    } else {
-                        eventBuilder = executor.getEventBuilder().withCommandData(executor).withEventSource(executor.getClass().getName());
-                    }
-                    eventBuilder.withRequestId(requestID).withRequestReceiveTime(receiveTime);
-                    eventProducer.publishEvent(eventBuilder.build());
-                } else {
-                    LOGGER.debug("eventProducer not set, not publishing event");
-                }
+            	if (serverRequestInterceptor != null) {
+            		serverRequestInterceptor.process(result, transportError);
+            	}
+            	this.publishEvent(readCommand, null, receiveTime);
             }
         }
-        super.handleUpstream(ctx, event);
-    }
+	}
+
+	/**
+	 * Helper method to respond to a batch Command with an error when the configured repository does not support batch execution
+	 * @param ctx the ChannelHandlerContext
+	 * @param event the ChannelEvent that carried the batch Command
+	 * @param commandInterpreter the CommandInterpreter to use
+	 * @param readCommand the batch Command
+	 * @param batchRequestWrapper the TaskRequestWrapper of the batch Command
+	 * @param serverRequestInterceptor the server tracing interceptor, may be null
+	 * @param receiveTime the time at which the batch Command was received
+	 * @throws Exception in case of errors
+	 */
+	private void writeBatchUnsupportedResponse(ChannelHandlerContext ctx, ChannelEvent event, CommandInterpreter commandInterpreter, 
+			CommandInterpreter.ProxyCommand readCommand, TaskRequestWrapper batchRequestWrapper, 
+			ServerRequestInterceptor<TaskRequestWrapper, TaskResult> serverRequestInterceptor, long receiveTime) throws Exception {
+		LOGGER.error("Batch command : {} is not supported by repository : {}", readCommand.getCommand(), this.repository.getClass().getName());
+		TaskResult result = new TaskResult(false, "Batch commands are not supported by repository : " + this.repository.getClass().getName());
+		String muxID = readCommand.getCommandParams().get(CommandInterpreter.MUX_ID_PARAM);
+		if (muxID != null || this.nonBlocking) {
+			// the response is written in order with the responses to other commands on the channel
+			CommandExecutionObserver observer = new CommandExecutionObserver(ctx, commandInterpreter, readCommand, muxID, null, batchRequestWrapper, 
+					serverRequestInterceptor, receiveTime);
+			observer.onNext(result);
+			observer.onCompleted();
+			return;
+		}
+		try {
+			commandInterpreter.writeCommandExecutionResponse(ctx, event, readCommand, result);
+		} finally {
+			if (serverRequestInterceptor != null) {
+				serverRequestInterceptor.process(result, Optional.<RuntimeException>absent());
+			}
+			this.publishEvent(readCommand, null, receiveTime);
+		}
+	}
 
 	/**
 	 * Interface method implementation. Closes the underlying channel after logging a warning message
@@ -221,30 +361,202 @@ public class CommandProcessingChannelHandler extends SimpleChannelUpstreamHandle
 		event.getChannel().close();
 	}
 
+    /**
+     * Helper method to create a TaskRequestWrapper for the specified command
+     * @param readCommand the command to be executed
+     * @param channel the channel the command was received on
+     * @return the TaskRequestWrapper with the command, data and params
+     */
+    private TaskRequestWrapper createTaskRequestWrapper(CommandInterpreter.ProxyCommand readCommand, Channel channel) {
+        TaskRequestWrapper taskRequestWrapper = new TaskRequestWrapper();
+        taskRequestWrapper.setCommandName(readCommand.getCommand());
+        if (readCommand.getCommandDataLength() > this.streamingThreshold) {
+        	// the data is copied off the input buffer here, on the I/O thread, as the buffer is reused once this frame has been handled
+        	taskRequestWrapper.setDataStream(readCommand.getCommandDataStream());
+        } else {
+        	taskRequestWrapper.setData(readCommand.getCommandData());
+        }
+        taskRequestWrapper.setParams(readCommand.getCommandParams());
+        taskRequestWrapper.setDeadline(RequestDeadline.fromParams(readCommand.getCommandParams(), System.currentTimeMillis()));
+        taskRequestWrapper.setClientId(CommandProcessingChannelHandler.getClientId(channel));
+        // set the service name for the request
+        taskRequestWrapper.setServiceName(Optional.of(this.serviceName));
+        return taskRequestWrapper;
+    }
+
+    /**
+     * Returns the identity of the client connected on the specified channel i.e. the remote host address. Connections from a host are of the same client
+     * @param channel the channel
+     * @return the client identity, absent if the remote address is not an internet address
+     */
+    static Optional<String> getClientId(Channel channel) {
+    	if (channel.getRemoteAddress() instanceof InetSocketAddress) {
+    		InetSocketAddress remoteAddress = (InetSocketAddress) channel.getRemoteAddress();
+    		return Optional.of(remoteAddress.getAddress() != null ? remoteAddress.getAddress().getHostAddress() : remoteAddress.getHostName());
+    	}
+    	return Optional.absent();
+    }
+
+    /**
+     * Helper method to publish the execution event for the specified command. Publishes event both in case of success and failure.
+     * @param readCommand the executed command
+     * @param executor the executor used to execute the command, may be null
+     * @param receiveTime the time at which the command was received
+     */
+    private void publishEvent(CommandInterpreter.ProxyCommand readCommand, TaskHandlerExecutor executor, long receiveTime) {
+        if (eventProducer != null) {
+            final String requestID = readCommand.getCommandParams().get("requestID");
+            ServiceProxyEvent.Builder eventBuilder;
+            if (executor == null) {
+                eventBuilder = new ServiceProxyEvent.Builder(readCommand.getCommand(), COMMAND_HANDLER).withEventSource(getClass().getName());
+            } else {
+                eventBuilder = executor.getEventBuilder().withCommandData(executor).withEventSource(executor.getClass().getName());
+            }
+            eventBuilder.withRequestId(requestID).withRequestReceiveTime(receiveTime);
+            eventProducer.publishEvent(eventBuilder.build());
+        } else {
+            LOGGER.debug("eventProducer not set, not publishing event");
+        }
+    }
+
     /**
      * Initializes server tracing for the specified request
      * @param executorHttpRequest the Http request 
-     * @return the initialized ServerRequestInterceptor
+     * @return the initialized ServerRequestInterceptor, null if the request is not traced
      */
     private ServerRequestInterceptor<TaskRequestWrapper, TaskResult> initializeServerTracing(TaskRequestWrapper executorRequest) {
-        ServerRequestInterceptor<TaskRequestWrapper, TaskResult> serverRequestInterceptor = new ServerRequestInterceptor<TaskRequestWrapper, TaskResult>();
-    	List<TraceFilter> traceFilters = Arrays.<TraceFilter>asList(this.traceFilter);    
-    	ServerTracer serverTracer = Brave.getServerTracer(this.eventDispatchingSpanCollector, traceFilters);
-    	serverRequestInterceptor.setEndPointSubmitter(Brave.getEndPointSubmitter());
-        serverRequestInterceptor.setServerTracer(serverTracer);
-        serverRequestInterceptor.setServiceHost(CommandProcessingChannelHandler.hostName);
-        serverRequestInterceptor.setServicePort(this.hostPort);
-        serverRequestInterceptor.setServiceName(this.serviceName);   
-        // now process the request to initialize tracing
-        serverRequestInterceptor.process(executorRequest); 
-		// set the server request context on the received request
-    	ServerSpan serverSpan = Brave.getServerSpanThreadBinder().getCurrentServerSpan();
     	RequestContext serverRequestContext = new RequestContext();
-    	serverRequestContext.setCurrentServerSpan(serverSpan);	
     	executorRequest.setRequestContext(Optional.of(serverRequestContext));
+    	ServerRequestInterceptor<TaskRequestWrapper, TaskResult> serverRequestInterceptor = this.getServerRequestInterceptor();
+    	// decide once if the request is traced, requests that are not traced skip all span and annotation work
+    	if (!serverRequestInterceptor.isTraced(executorRequest)) {
+    		serverRequestContext.setTraced(false);
+    		return null;
+    	}
+        // now process the request to initialize tracing
+        serverRequestInterceptor.process(executorRequest); 
+		// set the server span on the request context of the received request
+    	serverRequestContext.setCurrentServerSpan(Brave.getServerSpanThreadBinder().getCurrentServerSpan());
         return serverRequestInterceptor;
     }
+
+    /**
+     * Helper method to return the ServerRequestInterceptor, creating it on first use. The interceptor is shared by all requests
+     * @return the ServerRequestInterceptor
+     */
+    private ServerRequestInterceptor<TaskRequestWrapper, TaskResult> getServerRequestInterceptor() {
+    	if (this.serverRequestInterceptor == null) {
+	        ServerRequestInterceptor<TaskRequestWrapper, TaskResult> serverRequestInterceptor = new ServerRequestInterceptor<TaskRequestWrapper, TaskResult>();
+	        // requests are sampled by the interceptor using the trace filter, and not again by the server tracer
+	    	ServerTracer serverTracer = Brave.getServerTracer(this.eventDispatchingSpanCollector, Collections.<TraceFilter>emptyList());
+	    	serverRequestInterceptor.setEndPointSubmitter(Brave.getEndPointSubmitter());
+	        serverRequestInterceptor.setServerTracer(serverTracer);
+	        serverRequestInterceptor.setTraceFilter(this.traceFilter);
+	        serverRequestInterceptor.setServiceHost(CommandProcessingChannelHandler.hostName);
+	        serverRequestInterceptor.setServicePort(this.hostPort);
+	        serverRequestInterceptor.setServiceName(this.serviceName);
+	        this.serverRequestInterceptor = serverRequestInterceptor;
+    	}
+    	return this.serverRequestInterceptor;
+    }
 	
+    /**
+     * Helper method to get the dispatcher that writes responses in order for the channel of the specified context. The dispatcher is created on the
+     * first command received on the channel and held as the context attachment, contexts being created per channel pipeline. A null response
+     * indicates execution failure and closes the channel.
+     * @param ctx the ChannelHandlerContext of the channel
+     * @return the OrderedResponseDispatcher for the channel
+     */
+    @SuppressWarnings("unchecked")
+    private OrderedResponseDispatcher<ChannelBuffer> getResponseDispatcher(final ChannelHandlerContext ctx) {
+    	if (ctx.getAttachment() == null) {
+    		ctx.setAttachment(new OrderedResponseDispatcher<ChannelBuffer>() {
+				protected void dispatch(ChannelBuffer response) {
+					if (response == null) {
+						// same as in blocking mode : the channel is closed on execution failure. Responses ahead of this have been written
+						ctx.getChannel().close();
+					} else if (response.readable()) {
+						Channels.write(ctx, Channels.future(ctx.getChannel()), response);
+					}
+				}
+    		});
+    	}
+    	return (OrderedResponseDispatcher<ChannelBuffer>) ctx.getAttachment();
+    }
+
+    /**
+     * Observer of a command execution that does not block the I/O thread. For multiplexed commands, writes the response tagged with the command's mux id
+     * when execution completes - on the thread that completes the execution. Failures are reported to the client as an error response for the mux id, and
+     * do not close the channel which may be carrying other multiplexed commands. For other commands, hands over the response to the channel's 
+     * {@link OrderedResponseDispatcher} so that responses are written in the order in which commands were received.
+     */
+    private class CommandExecutionObserver implements Observer<TaskResult> {
+    	private ChannelHandlerContext ctx;
+    	private CommandInterpreter commandInterpreter;
+    	private CommandInterpreter.ProxyCommand readCommand;
+    	private String muxID;
+    	private TaskHandlerExecutor executor;
+    	private TaskRequestWrapper taskRequestWrapper;
+    	private ServerRequestInterceptor<TaskRequestWrapper, TaskResult> serverRequestInterceptor;
+    	private long receiveTime;
+    	private OrderedResponseDispatcher<ChannelBuffer> responseDispatcher;
+    	private long responseSequence;
+    	private TaskResult result;
+    	CommandExecutionObserver(ChannelHandlerContext ctx, CommandInterpreter commandInterpreter, CommandInterpreter.ProxyCommand readCommand, String muxID,
+    			TaskHandlerExecutor executor, TaskRequestWrapper taskRequestWrapper, ServerRequestInterceptor<TaskRequestWrapper, TaskResult> serverRequestInterceptor, 
+    			long receiveTime) {
+    		this.ctx = ctx;
+    		this.commandInterpreter = commandInterpreter;
+    		this.readCommand = readCommand;
+    		this.muxID = muxID;
+    		this.executor = executor;
+    		this.taskRequestWrapper = taskRequestWrapper;
+    		this.serverRequestInterceptor = serverRequestInterceptor;
+    		this.receiveTime = receiveTime;
+    		if (muxID == null) {
+    			// reserve the response slot now, on the I/O thread, in the order of commands received
+    			this.responseDispatcher = CommandProcessingChannelHandler.this.getResponseDispatcher(ctx);
+    			this.responseSequence = this.responseDispatcher.reserve();
+    		}
+    	}
+		public void onNext(TaskResult result) {
+			this.result = result;
+		}
+		public void onCompleted() {
+			LOGGER.debug("The output is: " + this.result);
+			this.complete(this.result, Optional.<RuntimeException>absent());
+		}
+		public void onError(Throwable e) {
+			LOGGER.error("Error in executing command : " + this.readCommand, e);
+			this.complete(FAILED_EXECUTION, Optional.of(new RuntimeException("Error in executing command : " + this.readCommand, e)));
+		}
+		private void complete(TaskResult response, Optional<RuntimeException> transportError) {
+			// bind the server span of the request to this thread, as completion happens on a thread other than the one that received the command
+			if (this.taskRequestWrapper.getRequestContext().isPresent() && this.taskRequestWrapper.getRequestContext().get().getCurrentServerSpan() != null) {
+				Brave.getServerSpanThreadBinder().setCurrentSpan(this.taskRequestWrapper.getRequestContext().get().getCurrentServerSpan());
+			}
+			try {
+				if (this.muxID == null) {
+					// a failed execution is dispatched as a null response, which closes the channel
+					this.responseDispatcher.complete(this.responseSequence, 
+							response == FAILED_EXECUTION ? null : this.commandInterpreter.getCommandExecutionResponse(this.readCommand, response));
+				} else {
+					// a null result i.e. from fallback is still responded to, as the client is waiting on the mux id
+					Channels.write(this.ctx, Channels.future(this.ctx.getChannel()), 
+							this.commandInterpreter.getCommandExecutionResponse(this.readCommand, response == null ? FAILED_EXECUTION : response));
+				}
+			} catch (Exception e) {
+				LOGGER.error("Error writing response for command : " + this.readCommand + ". Closing channel.", e);
+				this.ctx.getChannel().close();
+			} finally {
+				if (this.serverRequestInterceptor != null) {
+					this.serverRequestInterceptor.process(this.result, transportError);
+				}
+				CommandProcessingChannelHandler.this.publishEvent(this.readCommand, this.executor, this.receiveTime);
+			}
+		}
+    }
+
 	/** Start Getter/Setter methods */
 	public ChannelGroup getDefaultChannelGroup() {
 		return this.defaultChannelGroup;
@@ -270,6 +582,18 @@ public class CommandProcessingChannelHandler extends SimpleChannelUpstreamHandle
 	public void setEventDispatchingSpanCollector(EventDispatchingSpanCollector eventDispatchingSpanCollector) {
 		this.eventDispatchingSpanCollector = eventDispatchingSpanCollector;
 	}    
+	public boolean isNonBlocking() {
+		return this.nonBlocking;
+	}
+	public void setNonBlocking(boolean nonBlocking) {
+		this.nonBlocking = nonBlocking;
+	}
+	public int getStreamingThreshold() {
+		return this.streamingThreshold;
+	}
+	public void setStreamingThreshold(int streamingThreshold) {
+		this.streamingThreshold = streamingThreshold;
+	}
     /** End Getter/Setter methods */
 }
 
@@ -141,6 +141,25 @@ public class HystrixMetricsSnapshotController<T extends AbstractHandler> {
         }
         responseJson.writeEndObject();
 
+        /* proxy metrics groups: an object for each group, containing an object for each entity */
+        if (lastOneMinuteMetrics != null) {
+            for (String group : lastOneMinuteMetrics.keySet()) {
+                if (group.equals("HystrixCommand") || group.equals("HystrixThreadPool")) {
+                    continue;
+                }
+                responseJson.writeObjectFieldStart(group);
+                for (String name : lastOneMinuteMetrics.get(group).keySet()) {
+                    responseJson.writeObjectFieldStart(name);
+                    responseJson.writeStringField("name", name);
+                    for (Map.Entry<String, Long> metric : lastOneMinuteMetrics.get(group).get(name).entrySet()) {
+                        responseJson.writeNumberField(metric.getKey(), metric.getValue());
+                    }
+                    responseJson.writeEndObject();
+                }
+                responseJson.writeEndObject();
+            }
+        }
+
         responseJson.writeEndObject();
         responseJson.close();
 
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.runtime.impl.server.netty.handler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link OrderedResponseDispatcher}
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class OrderedResponseDispatcherTest {
+
+    @Test
+    public void testOutOfOrderCompletion() {
+        RecordingDispatcher dispatcher = new RecordingDispatcher();
+        long first = dispatcher.reserve();
+        long second = dispatcher.reserve();
+        long third = dispatcher.reserve();
+        dispatcher.complete(third, "3");
+        dispatcher.complete(second, "2");
+        assertTrue("Responses dispatched ahead of the first : " + dispatcher.dispatched, dispatcher.dispatched.isEmpty());
+        dispatcher.complete(first, "1");
+        assertTrue("Responses out of order : " + dispatcher.dispatched, dispatcher.dispatched.toString().equals("[1, 2, 3]"));
+    }
+
+    @Test
+    public void testConcurrentCompletion() throws Exception {
+        final RecordingDispatcher dispatcher = new RecordingDispatcher();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 100; i++) {
+            final long sequence = dispatcher.reserve();
+            threads.add(new Thread() {
+                public void run() {
+                    dispatcher.complete(sequence, String.valueOf(sequence));
+                }
+            });
+        }
+        // completed in reverse order of receipt, from many threads
+        Collections.reverse(threads);
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue("Responses not dispatched : " + dispatcher.dispatched.size(), dispatcher.dispatched.size() == 100);
+        for (int i = 0; i < 100; i++) {
+            assertTrue("Responses out of order : " + dispatcher.dispatched, dispatcher.dispatched.get(i).equals(String.valueOf(i)));
+        }
+    }
+
+    @Test
+    public void testFailedDispatchDoesNotDropLaterResponses() {
+        RecordingDispatcher dispatcher = new RecordingDispatcher();
+        long first = dispatcher.reserve();
+        long failing = dispatcher.reserve();
+        long third = dispatcher.reserve();
+        dispatcher.complete(failing, RecordingDispatcher.FAIL);
+        dispatcher.complete(third, "3");
+        // the failure is not thrown to the completing thread
+        dispatcher.complete(first, "1");
+        assertTrue("Responses dropped : " + dispatcher.dispatched, dispatcher.dispatched.toString().equals("[1, 3]"));
+        long fourth = dispatcher.reserve();
+        dispatcher.complete(fourth, "4");
+        assertTrue("Dispatcher stalled : " + dispatcher.dispatched, dispatcher.dispatched.toString().equals("[1, 3, 4]"));
+    }
+
+    /** OrderedResponseDispatcher that records the dispatched responses, and fails to dispatch the {@link #FAIL} response*/
+    private static class RecordingDispatcher extends OrderedResponseDispatcher<String> {
+        private static final String FAIL = "fail";
+        private List<String> dispatched = Collections.synchronizedList(new ArrayList<String>());
+        protected void dispatch(String response) {
+            if (FAIL.equals(response)) {
+                throw new IllegalStateException("Channel closed");
+            }
+            this.dispatched.add(response);
+        }
+    }
+
+}
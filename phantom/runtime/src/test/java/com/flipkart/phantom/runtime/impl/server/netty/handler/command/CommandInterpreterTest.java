@@ -15,11 +15,29 @@
  */
 package com.flipkart.phantom.runtime.impl.server.netty.handler.command;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
 import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.util.CharsetUtil;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.util.SerializationUtils;
+
+import com.flipkart.phantom.task.impl.encoder.StringEncoder;
+import com.flipkart.phantom.task.spi.Encoder;
+import com.flipkart.phantom.task.spi.EncoderRegistry;
+import com.flipkart.phantom.task.spi.TaskResult;
 
 import static org.junit.Assert.assertTrue;
 
@@ -85,6 +103,295 @@ public class CommandInterpreterTest {
 
     }
 
+    @Test
+    public void testInterpretCommandFromBuffer() throws Exception {
+
+        // complete command - data is a slice of the input buffer and the reader index is moved past the command
+        ChannelBuffer buffer = ChannelBuffers.copiedBuffer("testCommand p1=v1 8\ntestDatanextCommand".getBytes());
+        CommandInterpreter.ProxyCommand command = commandInterpreter.interpretCommand(buffer);
+        assertTrue("Command parsing failed", command.getReadFailure() == null);
+        assertTrue("Command data buffer not set", command.getCommandDataBuffer() != null && command.getCommandDataBuffer().readableBytes() == 8);
+        assertTrue("Command data mismatch: "+command.getCommandData(), "testData".equals(new String(command.getCommandData())));
+        assertTrue("Reader index mismatch: "+buffer.readerIndex(), buffer.readerIndex() == "testCommand p1=v1 8\ntestData".length());
+
+        // incomplete command - reader index is left unchanged
+        buffer = ChannelBuffers.copiedBuffer("testCommand p1=v1 10\ntestData".getBytes());
+        command = commandInterpreter.interpretCommand(buffer);
+        assertTrue("Command parsing passed (which should not)", command.getReadFailure() == CommandInterpreter.ReadFailure.INSUFFICIENT_DATA);
+        assertTrue("Reader index moved on partial read: "+buffer.readerIndex(), buffer.readerIndex() == 0);
+
+    }
+
+    @Test
+    public void testInterpretPartialFrames() throws Exception {
+
+        // the frame arrives in parts - the command line without its line feed, then without the data, then with some of the data
+        ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+        String[] parts = {"testCommand p1", "=v1 8", "\r\n", "test"};
+        for (String part : parts) {
+            buffer.writeBytes(part.getBytes());
+            CommandInterpreter.ProxyCommand command = commandInterpreter.interpretCommand(buffer);
+            assertTrue("Partial frame parsed (which should not): "+part, command.getReadFailure() == CommandInterpreter.ReadFailure.INSUFFICIENT_DATA);
+            assertTrue("Reader index moved on partial read: "+buffer.readerIndex(), buffer.readerIndex() == 0);
+        }
+
+        // the rest of the data, followed by the next frame. The CR preceding the line feed is not part of the command line
+        buffer.writeBytes("DatanextCommand\n".getBytes());
+        CommandInterpreter.ProxyCommand command = commandInterpreter.interpretCommand(buffer);
+        assertTrue("Command parsing failed", command.getReadFailure() == null);
+        assertTrue("Command params mismatch: "+command.getCommandParams(), "v1".equals(command.getCommandParams().get("p1")));
+        assertTrue("Command data mismatch: "+command.getCommandData(), "testData".equals(new String(command.getCommandData())));
+        command = commandInterpreter.interpretCommand(buffer);
+        assertTrue("Next command mismatch: "+command.getCommand(), "nextCommand".equals(command.getCommand()) && command.getCommandData() == null);
+        assertTrue("Buffer not fully read", !buffer.readable());
+
+        // a command line longer than the max without a line feed is not waited on
+        buffer = ChannelBuffers.wrappedBuffer(new byte[CommandInterpreter.MAX_COMMAND_INPUT]);
+        buffer.setByte(0, 'c');
+        try {
+            commandInterpreter.interpretCommand(buffer);
+            assertTrue("Oversized command line parsed (which should not)", false);
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+    }
+
+    @Test
+    public void testCommandParams() throws Exception {
+
+        CommandInterpreter.ProxyCommand command = getCommand("cmd pool=p1 p2=v2 flag pool=p3\n");
+        Map<String, String> params = command.getCommandParams();
+        assertTrue("Params size mismatch: "+params, params.size() == 3);
+        assertTrue("Param value mismatch: "+params, "p3".equals(params.get("pool")) && "v2".equals(params.get("p2")) && "true".equals(params.get("flag")));
+        assertTrue("Param found (which should not)", params.get("p1") == null && !params.containsKey("p1"));
+
+        // params behave like a regular Map, including once modified
+        Map<String, String> expectedParams = new HashMap<String, String>();
+        expectedParams.put("pool", "p3");
+        expectedParams.put("p2", "v2");
+        expectedParams.put("flag", "true");
+        assertTrue("Params mismatch: "+params, expectedParams.equals(params) && params.equals(expectedParams));
+        params.put("p4", "v4");
+        expectedParams.put("p4", "v4");
+        assertTrue("Modified params mismatch: "+params, expectedParams.equals(params) && "v4".equals(params.get("p4")));
+
+        // modifications are copy-on-write, params read before a modification do not change
+        Set<Map.Entry<String, String>> entries = params.entrySet();
+        params.remove("p2");
+        assertTrue("Params read before modification changed: "+entries, entries.size() == 4 && params.size() == 3 && !params.containsKey("p2"));
+
+    }
+
+    @Test
+    public void testMultiplexedCommandResponse() throws Exception {
+
+        // pipelined multiplexed commands are read one after the other from the same buffer
+        ChannelBuffer buffer = ChannelBuffers.copiedBuffer("cmd1 muxID=1\ncmd2 muxID=2 4\ndata".getBytes());
+        CommandInterpreter.ProxyCommand command = commandInterpreter.interpretCommand(buffer);
+        assertTrue("Mux id mismatch: "+command.getCommandParams(), "1".equals(command.getCommandParams().get(CommandInterpreter.MUX_ID_PARAM)));
+        command = commandInterpreter.interpretCommand(buffer);
+        assertTrue("Mux id mismatch: "+command.getCommandParams(), "2".equals(command.getCommandParams().get(CommandInterpreter.MUX_ID_PARAM)));
+        assertTrue("Command data mismatch: "+command.getCommandData(), "data".equals(new String(command.getCommandData())));
+
+        // responses are tagged with the mux id
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        commandInterpreter.writeCommandExecutionResponse(outputStream, command, new TaskResult<byte[]>(true, null, "data".getBytes()));
+        assertTrue("Tagged response mismatch: "+outputStream, "2 SUCCESS 4\ndata".equals(outputStream.toString()));
+        outputStream = new ByteArrayOutputStream();
+        commandInterpreter.writeCommandExecutionResponse(outputStream, new TaskResult<byte[]>(true, null, "data".getBytes()));
+        assertTrue("Untagged response mismatch: "+outputStream, "SUCCESS 4\ndata".equals(outputStream.toString()));
+
+    }
+
+    @Test
+    public void testCompositeResponse() throws Exception {
+
+        // metadata precedes the data, and byte array data is wrapped and not copied
+        byte[] data = "data".getBytes();
+        ChannelBuffer response = commandInterpreter.getCommandExecutionResponse(null, new TaskResult<byte[]>(true, null, data, "meta".getBytes()));
+        data[0] = 'D';
+        assertTrue("Composite response mismatch: "+response.toString(CharsetUtil.UTF_8), "SUCCESS 8\nmetaData".equals(response.toString(CharsetUtil.UTF_8)));
+
+        // data array items are written in order
+        List<byte[]> dataArray = new LinkedList<byte[]>();
+        dataArray.add("ab".getBytes());
+        dataArray.add(null);
+        dataArray.add("cd".getBytes());
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        commandInterpreter.writeCommandExecutionResponse(outputStream, new TaskResult<byte[]>(false, "FAILED", dataArray, 4));
+        assertTrue("Data array response mismatch: "+outputStream, "FAILED 4\nabcd".equals(outputStream.toString()));
+
+    }
+
+    @Test
+    public void testEncodedResponse() throws Exception {
+
+        // non byte array data is encoded with the registered Encoder and the length is computed
+        Map<Class<?>, Encoder> encoders = new HashMap<Class<?>, Encoder>();
+        encoders.put(Number.class, new StringEncoder());
+        TaskResult<Object> result = new TaskResult<Object>(true, null, 1234);
+        result.setEncoderRegistry(new EncoderRegistry(encoders));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        commandInterpreter.writeCommandExecutionResponse(outputStream, result);
+        assertTrue("Encoded response mismatch: "+outputStream, "SUCCESS 4\n1234".equals(outputStream.toString()));
+        // the result is not modified, as results may be shared by commands
+        assertTrue("Result length modified: "+result.getLength(), result.getLength() == 0);
+
+        // data of types that have no Encoder is serialized, with the length computed
+        result = new TaskResult<Object>(true, null, "1234");
+        result.setEncoderRegistry(new EncoderRegistry(encoders));
+        ChannelBuffer response = commandInterpreter.getCommandExecutionResponse(null, result);
+        int serializedLength = SerializationUtils.serialize("1234").length;
+        assertTrue("Serialized length mismatch: "+response.toString(CharsetUtil.UTF_8), 
+                response.toString(CharsetUtil.UTF_8).startsWith("SUCCESS " + serializedLength + "\n"));
+        assertTrue("Serialized response mismatch", response.readableBytes() == ("SUCCESS " + serializedLength + "\n").length() + serializedLength);
+
+    }
+
+    @Test
+    public void testInterpretBinaryCommand() throws Exception {
+
+        // magic, version, header length, data length, header : command, param count, param name and value. Followed by data
+        byte[] header = {4,'c','m','d','1',1,5,'m','u','x','I','D',2,'4','2'};
+        ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+        buffer.writeByte(CommandInterpreter.BINARY_MAGIC);
+        buffer.writeByte(CommandInterpreter.BINARY_VERSION);
+        buffer.writeInt(header.length);
+        buffer.writeInt(4);
+        buffer.writeBytes(header);
+        buffer.writeBytes("da".getBytes());
+
+        // incomplete frame - reader index is left unchanged
+        CommandInterpreter.ProxyCommand command = commandInterpreter.interpretCommand(buffer);
+        assertTrue("Binary command parsing passed (which should not)", command.getReadFailure() == CommandInterpreter.ReadFailure.INSUFFICIENT_DATA);
+        assertTrue("Reader index moved on partial read: "+buffer.readerIndex(), buffer.readerIndex() == 0);
+
+        // complete frame
+        buffer.writeBytes("ta".getBytes());
+        command = commandInterpreter.interpretCommand(buffer);
+        assertTrue("Binary command parsing failed", command.getReadFailure() == null && command.isBinary());
+        assertTrue("Parsed command mismatch: "+command.getCommand(), "cmd1".equals(command.getCommand()));
+        assertTrue("Mux id mismatch: "+command.getCommandParams(), "42".equals(command.getCommandParams().get(CommandInterpreter.MUX_ID_PARAM)));
+        assertTrue("Command data mismatch: "+command.getCommandData(), "data".equals(new String(command.getCommandData())));
+        assertTrue("Buffer not fully read", !buffer.readable());
+
+        // same frame from an input stream
+        buffer.readerIndex(0);
+        command = commandInterpreter.readCommand(new ChannelBufferInputStream(buffer));
+        assertTrue("Parsed command mismatch: "+command.getCommand(), "cmd1".equals(command.getCommand()) && command.isBinary());
+        assertTrue("Command data mismatch: "+command.getCommandData(), "data".equals(new String(command.getCommandData())));
+
+        // binary response : magic, status, header length, data length, header : mux id, message. Followed by data
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        commandInterpreter.writeCommandExecutionResponse(outputStream, command, new TaskResult<byte[]>(true, null, "data".getBytes()));
+        ChannelBuffer response = ChannelBuffers.wrappedBuffer(outputStream.toByteArray());
+        assertTrue("Response magic mismatch", response.readByte() == CommandInterpreter.BINARY_MAGIC);
+        assertTrue("Response status mismatch", response.readByte() == 0);
+        assertTrue("Response header length mismatch", response.readInt() == 4);
+        assertTrue("Response data length mismatch", response.readInt() == 4);
+        assertTrue("Response mux id length mismatch", response.readByte() == 2);
+        assertTrue("Response mux id mismatch", "42".equals(response.readBytes(2).toString(CharsetUtil.UTF_8)));
+        assertTrue("Response message length mismatch", response.readByte() == 0);
+        assertTrue("Response data mismatch", "data".equals(response.toString(CharsetUtil.UTF_8)));
+
+        // negative command length, encoded as a 5 byte varint
+        header = new byte[] {(byte) 0xFF,(byte) 0xFF,(byte) 0xFF,(byte) 0xFF,0x0F,'c','m','d','1',0};
+        buffer = ChannelBuffers.dynamicBuffer();
+        buffer.writeByte(CommandInterpreter.BINARY_MAGIC);
+        buffer.writeByte(CommandInterpreter.BINARY_VERSION);
+        buffer.writeInt(header.length);
+        buffer.writeInt(0);
+        buffer.writeBytes(header);
+        try {
+            commandInterpreter.interpretCommand(buffer);
+            assertTrue("Binary command with negative length parsed (which should not)", false);
+        } catch (IllegalArgumentException e) {
+            assertTrue("Unexpected failure message: "+e.getMessage(), e.getMessage().indexOf("negative") > 0);
+        }
+
+    }
+
+    @Test
+    public void testBatchCommand() throws Exception {
+
+        // batch of two commands
+        CommandInterpreter.ProxyCommand command = getCommand("phantom.batch 30\ncmd1 p1=v1\ncmd2 pool=p2 4\ndata");
+        assertTrue("Batch command parsing failed", command != null && CommandInterpreter.BATCH_COMMAND.equals(command.getCommand()));
+        List<CommandInterpreter.ProxyCommand> batchedCommands = commandInterpreter.interpretBatchCommands(command);
+        assertTrue("Batched commands mismatch: "+batchedCommands.size(), batchedCommands.size() == 2);
+        assertTrue("Batched command mismatch: "+batchedCommands.get(0), "cmd1".equals(batchedCommands.get(0).getCommand()));
+        assertTrue("Batched command mismatch: "+batchedCommands.get(1), "p2".equals(batchedCommands.get(1).getCommandParams().get("pool")));
+        assertTrue("Batched command data mismatch", "data".equals(new String(batchedCommands.get(1).getCommandData())));
+
+        // batch result carries a response per batched command, including failed ones
+        List<TaskResult> results = new LinkedList<TaskResult>();
+        results.add(new TaskResult<byte[]>(true, null, "ok".getBytes()));
+        results.add(null);
+        TaskResult<byte[]> batchResult = commandInterpreter.getBatchResult(batchedCommands, results);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        commandInterpreter.writeCommandExecutionResponse(outputStream, command, batchResult);
+        assertTrue("Batch response mismatch: "+outputStream, "BATCH 18\nSUCCESS 2\nokERROR\n".equals(outputStream.toString()));
+
+        // incomplete batched command
+        command = getCommand("phantom.batch 12\ncmd1 10\ndata");
+        try {
+            commandInterpreter.interpretBatchCommands(command);
+            assertTrue("Batch command parsing passed (which should not)", false);
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+    }
+
+    @Test
+    public void testBatchResultEncoding() throws Exception {
+
+        // a tagged batch of tagged and untagged commands
+        CommandInterpreter.ProxyCommand command = getCommand("phantom.batch muxID=b 31\ncmd1 muxID=a\ncmd2\ncmd3 muxID=c\n");
+        List<CommandInterpreter.ProxyCommand> batchedCommands = commandInterpreter.interpretBatchCommands(command);
+        assertTrue("Batched commands mismatch: "+batchedCommands.size(), batchedCommands.size() == 3);
+
+        // each response is tagged with the mux id of its batched command, and encoded data is encoded per result
+        Map<Class<?>, Encoder> encoders = new HashMap<Class<?>, Encoder>();
+        encoders.put(Number.class, new StringEncoder());
+        TaskResult<Object> encodedResult = new TaskResult<Object>(true, null, 1234);
+        encodedResult.setEncoderRegistry(new EncoderRegistry(encoders));
+        List<TaskResult> results = new LinkedList<TaskResult>();
+        results.add(new TaskResult<byte[]>(true, null, "ok".getBytes()));
+        results.add(new TaskResult<byte[]>(false, "Timed out"));
+        results.add(encodedResult);
+        TaskResult<byte[]> batchResult = commandInterpreter.getBatchResult(batchedCommands, results);
+        assertTrue("Batch result failed", batchResult.isSuccess() && CommandInterpreter.BATCH_RESPONSE.equals(batchResult.getMessage()));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        commandInterpreter.writeCommandExecutionResponse(outputStream, command, batchResult);
+        assertTrue("Batch response mismatch: "+outputStream, "b BATCH 40\na SUCCESS 2\nokTimed out\nc SUCCESS 4\n1234".equals(outputStream.toString()));
+
+    }
+
+    @Test
+    public void testStreamCommandData() throws Exception {
+
+        // data larger than the threshold is streamed off the input stream
+        ByteArrayInputStream inputStream = new ByteArrayInputStream("testCommand p1=v1 8\ntestDatanextCommand".getBytes());
+        CommandInterpreter.ProxyCommand command = commandInterpreter.readCommand(inputStream, 4);
+        assertTrue("Command data read (which should not)", command.getCommandData() == null);
+        assertTrue("Streamed data mismatch", "testData".equals(new String(IOUtils.toByteArray(command.getCommandDataStream()))));
+
+        // data within the threshold is read
+        inputStream = new ByteArrayInputStream("testCommand p1=v1 8\ntestData".getBytes());
+        command = commandInterpreter.readCommand(inputStream, 8);
+        assertTrue("Command data mismatch: "+command.getCommandData(), "testData".equals(new String(command.getCommandData())));
+
+        // data read from a buffer is copied out of it, as the buffer is reused once the command is dispatched
+        ChannelBuffer buffer = ChannelBuffers.copiedBuffer("testCommand p1=v1 8\ntestData".getBytes());
+        command = commandInterpreter.interpretCommand(buffer);
+        InputStream dataStream = command.getCommandDataStream();
+        buffer.setBytes(0, new byte[buffer.capacity()]);
+        assertTrue("Streamed data mismatch", "testData".equals(new String(IOUtils.toByteArray(dataStream))));
+
+    }
+
     private CommandInterpreter.ProxyCommand getCommand(String command) {
         ChannelBuffer buffer = ChannelBuffers.copiedBuffer(command.getBytes());
         try {
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.runtime.impl.server.netty.handler.command;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.jboss.netty.channel.Channel;
+import org.junit.Test;
+
+import rx.Observer;
+
+import com.flipkart.phantom.runtime.impl.server.netty.handler.command.AsyncCommandProcessingChannelHandler.PoolInFlightCommands;
+import com.flipkart.phantom.task.impl.HystrixTaskHandler;
+import com.flipkart.phantom.task.impl.TaskHandlerExecutor;
+import com.flipkart.phantom.task.spi.TaskContext;
+import com.flipkart.phantom.task.spi.TaskRequestWrapper;
+import com.flipkart.phantom.task.spi.TaskResult;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link AsyncCommandProcessingChannelHandler.PoolInFlightCommands}
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class PoolInFlightCommandsTest {
+
+    @Test
+    public void testAcquireDeferAndRelease() {
+        PoolInFlightCommands inFlightCommands = new PoolInFlightCommands("PoolInFlightCommandsTest.defer");
+        ChannelInterest channelInterest = new ChannelInterest();
+        Channel channel = channelInterest.createChannel();
+        List<String> dispatched = new ArrayList<String>();
+        assertTrue("Slot not acquired under the limit", inFlightCommands.acquire(channel, 1, 1, this.createExecutor("first", dispatched), null));
+        assertTrue("Reads not suspended at the limit", !channelInterest.readable);
+        assertTrue("Command not deferred at the limit", !inFlightCommands.acquire(channel, 1, 1, this.createExecutor("second", dispatched), null));
+        // the released slot is handed over to the deferred command, and reads stay suspended
+        inFlightCommands.release(1);
+        assertTrue("Deferred command not dispatched : " + dispatched, dispatched.toString().equals("[second]"));
+        assertTrue("Reads resumed with a deferred command in flight", !channelInterest.readable);
+        inFlightCommands.release(1);
+        assertTrue("Reads not resumed under the limit", channelInterest.readable);
+        assertTrue("Slot not acquired after release", inFlightCommands.acquire(channel, 1, 1, this.createExecutor("third", dispatched), null));
+        inFlightCommands.release(1);
+    }
+
+    @Test
+    public void testRejectedBeyondDeferralLimit() {
+        PoolInFlightCommands inFlightCommands = new PoolInFlightCommands("PoolInFlightCommandsTest.reject");
+        ChannelInterest channelInterest = new ChannelInterest();
+        Channel channel = channelInterest.createChannel();
+        List<String> dispatched = new ArrayList<String>();
+        assertTrue(inFlightCommands.acquire(channel, 1, 1, this.createExecutor("first", dispatched), null));
+        assertTrue(!inFlightCommands.acquire(channel, 1, 1, this.createExecutor("second", dispatched), null));
+        try {
+            inFlightCommands.acquire(channel, 1, 1, this.createExecutor("third", dispatched), null);
+            assertTrue("Command deferred beyond the deferral limit", false);
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        // the rejected command holds no slot and is not dispatched
+        inFlightCommands.release(1);
+        inFlightCommands.release(1);
+        assertTrue("Rejected command dispatched : " + dispatched, dispatched.toString().equals("[second]"));
+        assertTrue("Reads not resumed once the pool is idle", channelInterest.readable);
+    }
+
+    /**
+     * Helper method to create an executor that records its name when dispatched
+     */
+    private TaskHandlerExecutor createExecutor(final String name, final List<String> dispatched) {
+        TaskRequestWrapper taskRequestWrapper = new TaskRequestWrapper();
+        taskRequestWrapper.setCommandName("defer");
+        taskRequestWrapper.setParams(new HashMap<String, String>());
+        return new TaskHandlerExecutor(new DeferringTaskHandler(), null, "defer", 1000, taskRequestWrapper) {
+            public void dispatch(Observer<TaskResult> observer) {
+                dispatched.add(name);
+            }
+        };
+    }
+
+    /** Records the read interest of a channel that is otherwise not used by the tests*/
+    private static class ChannelInterest implements InvocationHandler {
+        private volatile boolean readable = true;
+        Channel createChannel() {
+            return (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[] {Channel.class}, this);
+        }
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("setReadable")) {
+                this.readable = (Boolean) args[0];
+            } else if (method.getName().equals("isOpen")) {
+                return true;
+            } else if (method.getName().equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            } else if (method.getName().equals("equals")) {
+                return proxy == args[0];
+            }
+            return null;
+        }
+    }
+
+    /** HystrixTaskHandler for the executors created by the tests, that are never executed*/
+    private static class DeferringTaskHandler extends HystrixTaskHandler {
+        public String getName() {
+            return "DeferringTaskHandler";
+        }
+        public String[] getCommands() {
+            return new String[] {"defer"};
+        }
+        public void shutdown(TaskContext taskContext) throws Exception {
+        }
+        public TaskResult<byte[]> execute(TaskContext taskContext, String command, Map<String,String> params, byte[] data) throws RuntimeException {
+            return new TaskResult<byte[]>(true, null);
+        }
+        public TaskResult<byte[]> getFallBack(TaskContext taskContext, String command, Map<String,String> params, byte[] data) {
+            return null;
+        }
+    }
+
+}
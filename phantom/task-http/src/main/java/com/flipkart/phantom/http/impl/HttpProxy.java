@@ -16,6 +16,7 @@
 
 package com.flipkart.phantom.http.impl;
 
+import com.flipkart.phantom.task.impl.RequestDeadline;
 import com.flipkart.phantom.task.spi.AbstractHandler;
 import com.flipkart.phantom.task.spi.TaskContext;
 import org.apache.http.HttpResponse;
@@ -78,12 +79,16 @@ public abstract class HttpProxy extends AbstractHandler {
     }
     
     /**
-     * The main method which makes the HTTP request
+     * The main method which makes the HTTP request. The remaining budget of requests that have a deadline is forwarded as the 
+     * {@link RequestDeadline#BUDGET_HEADER} header
      */
     public HttpResponse doRequest(HttpRequestWrapper httpRequestWrapper) throws Exception {
         /** get necessary data required for the output */
-        return pool.execute(createRequest(httpRequestWrapper.getMethod(),httpRequestWrapper.getUri(),
-                httpRequestWrapper.getData()), httpRequestWrapper.getHeaders().get());
+        HttpRequestBase request = createRequest(httpRequestWrapper.getMethod(),httpRequestWrapper.getUri(), httpRequestWrapper.getData());
+        if (request != null && httpRequestWrapper.getDeadline().isPresent()) {
+            request.setHeader(RequestDeadline.BUDGET_HEADER, String.valueOf(RequestDeadline.getRemaining(httpRequestWrapper)));
+        }
+        return pool.execute(request, httpRequestWrapper.getHeaders().get());
     }
 
     /**
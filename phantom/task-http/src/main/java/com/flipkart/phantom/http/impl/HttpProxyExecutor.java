@@ -16,14 +16,21 @@
 
 package com.flipkart.phantom.http.impl;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import org.apache.http.HttpResponse;
+import org.apache.http.util.EntityUtils;
+
+import rx.Observable;
 
 import com.flipkart.phantom.event.ServiceProxyEvent;
+import com.flipkart.phantom.task.impl.HedgingPolicy;
+import com.flipkart.phantom.task.impl.RequestDeadline;
+import com.flipkart.phantom.task.impl.ThreadPoolQueue;
 import com.flipkart.phantom.task.spi.Executor;
 import com.flipkart.phantom.task.spi.TaskContext;
+import com.flipkart.phantom.task.spi.interceptor.InterceptorChain;
 import com.flipkart.phantom.task.spi.interceptor.RequestInterceptor;
 import com.flipkart.phantom.task.spi.interceptor.ResponseInterceptor;
 import com.github.kristofa.brave.Brave;
@@ -33,7 +40,6 @@ import com.netflix.hystrix.HystrixCommandGroupKey;
 import com.netflix.hystrix.HystrixCommandKey;
 import com.netflix.hystrix.HystrixCommandProperties;
 import com.netflix.hystrix.HystrixThreadPoolKey;
-import com.netflix.hystrix.HystrixThreadPoolProperties;
 
 
 /**
@@ -57,17 +63,26 @@ public class HttpProxyExecutor extends HystrixCommand<HttpResponse> implements E
     /** Event which records various parameters of this request execution & published later */
     protected ServiceProxyEvent.Builder eventBuilder;
 
-    /** List of request and response interceptors */
-    private List<RequestInterceptor<HttpRequestWrapper>> requestInterceptors = new LinkedList<RequestInterceptor<HttpRequestWrapper>>();
-    private List<ResponseInterceptor<HttpResponse>> responseInterceptors = new LinkedList<ResponseInterceptor<HttpResponse>>();
+    /** The chain of request and response interceptors */
+    private InterceptorChain<HttpRequestWrapper, HttpResponse> interceptorChain = InterceptorChain.emptyChain();
+
+    /** Releases the connection held by responses of hedged requests that are not used */
+    private static final HedgingPolicy.Discarder<HttpResponse> RESPONSE_DISCARDER = new HedgingPolicy.Discarder<HttpResponse>() {
+        public void discard(HttpResponse response) {
+            EntityUtils.consumeQuietly(response.getEntity());
+        }
+    };
     
+    /** The time in nanos at which the request was submitted to its pool i.e. queued for execution. The time at which this executor was created until then */
+    private volatile long queueTime = System.nanoTime();
+
     /** only constructor uses the proxy client, task context and the http requestWrapper */
     public HttpProxyExecutor(HttpProxy proxy, TaskContext taskContext, HttpRequestWrapper httpRequestWrapper) {
         super(
             Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey(proxy.getGroupKey()))
                     .andCommandKey(HystrixCommandKey.Factory.asKey(proxy.getCommandKey()))
                     .andThreadPoolKey(HystrixThreadPoolKey.Factory.asKey(proxy.getThreadPoolKey()))
-                    .andThreadPoolPropertiesDefaults(HystrixThreadPoolProperties.Setter().withCoreSize(proxy.getThreadPoolSize()))
+                    .andThreadPoolPropertiesDefaults(ThreadPoolQueue.getThreadPoolProperties(proxy.getThreadPoolKey(), proxy.getThreadPoolSize(), proxy))
                     .andCommandPropertiesDefaults(HystrixCommandProperties.Setter().withExecutionIsolationThreadTimeoutInMilliseconds
                             (proxy.getPool().getOperationTimeout())));
         this.proxy = proxy;
@@ -76,34 +91,63 @@ public class HttpProxyExecutor extends HystrixCommand<HttpResponse> implements E
     }
 
     /**
-     * Interface method implementation
+     * Interface method implementation. The time the request waited in the pool queue is recorded, and requests whose deadline expired while
+     * queued are rejected
      * @return response HttpResponse for the give request
      * @throws Exception
      */
     @Override
     protected HttpResponse run() throws Exception {
+        ThreadPoolQueue.recordQueueWait(this, this.queueTime);
+        RequestDeadline.checkExpired(this.httpRequestWrapper, this.proxy.getName());
         this.eventBuilder.withRequestExecutionStartTime(System.currentTimeMillis());
         if (this.httpRequestWrapper.getRequestContext().isPresent() && this.httpRequestWrapper.getRequestContext().get().getCurrentServerSpan() != null) {
         	Brave.getServerSpanThreadBinder().setCurrentSpan(this.httpRequestWrapper.getRequestContext().get().getCurrentServerSpan());
         }
-        for (RequestInterceptor<HttpRequestWrapper> requestInterceptor : this.requestInterceptors) {
-        	requestInterceptor.process(this.httpRequestWrapper);
-        }
+        this.interceptorChain.processRequest(this.httpRequestWrapper);
         Optional<RuntimeException> transportException = Optional.absent();
         HttpResponse response = null;
         try {
-        	response = this.proxy.doRequest(this.httpRequestWrapper);
+        	if (this.proxy.isIdempotent(this.httpRequestWrapper.getMethod())) {
+        		// the request is hedged if slow, the response of whichever request completes first is used
+        		response = this.proxy.getHedgingPolicy().execute(this.httpRequestWrapper.getMethod(), new Callable<HttpResponse>() {
+        			public HttpResponse call() throws Exception {
+        				return proxy.doRequest(httpRequestWrapper);
+        			}
+        		}, RESPONSE_DISCARDER);
+        	} else {
+        		response = this.proxy.doRequest(this.httpRequestWrapper);
+        	}
         } catch (RuntimeException e) {
         	transportException = Optional.of(e);
         	throw e; // rethrow this for it to handled by other layers in the call stack
         } finally {
-	        for (ResponseInterceptor<HttpResponse> responseInterceptor : this.responseInterceptors) {
-	        	responseInterceptor.process(response, transportException);
-	        }
+	        this.interceptorChain.processResponse(response, transportException);
         }
         return response;
     }
     
+    /**
+     * Overriden superclass method. Records the time at which the request is submitted to its pool, see {@link ThreadPoolQueue#recordQueueWait(HystrixCommand, long)}.
+     * Synchronous execution also submits the request through this method
+     * @see HystrixCommand#queue()
+     */
+    @Override
+    public Future<HttpResponse> queue() {
+        this.queueTime = System.nanoTime();
+        return super.queue();
+    }
+
+    /**
+     * Overriden superclass method. Records the time at which the request is submitted to its pool, see {@link ThreadPoolQueue#recordQueueWait(HystrixCommand, long)}
+     * @see HystrixCommand#observe()
+     */
+    @Override
+    public Observable<HttpResponse> observe() {
+        this.queueTime = System.nanoTime();
+        return super.observe();
+    }
+
     /**
      * Interface method implementation. Returns the name of the {@link HttpProxy} used by this Executor
      * @see com.flipkart.phantom.task.spi.Executor#getServiceName()
@@ -121,19 +165,27 @@ public class HttpProxyExecutor extends HystrixCommand<HttpResponse> implements E
     }
     
     /**
-     * Interface method implementation. Adds the RequestInterceptor to the list of request interceptors that will be invoked
+     * Interface method implementation. Adds the RequestInterceptor to the chain of request interceptors that will be invoked
      * @see com.flipkart.phantom.task.spi.Executor#addRequestInterceptor(com.flipkart.phantom.task.spi.interceptor.RequestInterceptor)
      */
     public void addRequestInterceptor(RequestInterceptor<HttpRequestWrapper> requestInterceptor) {    	
-    	this.requestInterceptors.add(requestInterceptor);
+    	this.interceptorChain = this.interceptorChain.withRequestInterceptor(requestInterceptor);
     }
 
     /**
-     * Interface method implementation. Adds the ResponseInterceptor to the list of response interceptors that will be invoked
+     * Interface method implementation. Adds the ResponseInterceptor to the chain of response interceptors that will be invoked
      * @see com.flipkart.phantom.task.spi.Executor#addResponseInterceptor(com.flipkart.phantom.task.spi.interceptor.ResponseInterceptor)
      */
     public void addResponseInterceptor(ResponseInterceptor<HttpResponse> responseInterceptor){
-    	this.responseInterceptors.add(responseInterceptor);
+    	this.interceptorChain = this.interceptorChain.withResponseInterceptor(responseInterceptor);
+    }
+
+    /**
+     * Interface method implementation. Sets the chain of request and response interceptors that will be invoked
+     * @see com.flipkart.phantom.task.spi.Executor#setInterceptorChain(com.flipkart.phantom.task.spi.interceptor.InterceptorChain)
+     */
+    public void setInterceptorChain(InterceptorChain<HttpRequestWrapper, HttpResponse> interceptorChain) {
+    	this.interceptorChain = interceptorChain;
     }
     
     /**
@@ -20,6 +20,7 @@ import org.apache.http.HttpResponse;
 
 import com.flipkart.phantom.http.impl.interceptor.HttpClientRequestInterceptor;
 import com.flipkart.phantom.http.impl.interceptor.HttpClientResponseInterceptor;
+import com.flipkart.phantom.task.impl.interceptor.AbstractClientResponseInterceptor;
 import com.flipkart.phantom.task.impl.interceptor.ClientRequestInterceptor;
 import com.flipkart.phantom.task.impl.repository.AbstractExecutorRepository;
 import com.flipkart.phantom.task.spi.Executor;
@@ -61,12 +62,19 @@ public class HttpProxyExecutorRepository extends AbstractExecutorRepository<Http
     }
 
     /**
-     * Helper method to wrap the Executor with request and response interceptors 
+     * Abstract method implementation. Returns a HttpClientRequestInterceptor
+     * @see com.flipkart.phantom.task.impl.repository.AbstractExecutorRepository#createTracingRequestInterceptor()
      */
-    private Executor<HttpRequestWrapper,HttpResponse> wrapExecutorWithInterceptors(Executor<HttpRequestWrapper,HttpResponse> executor, HttpProxy proxy) {
-        ClientRequestInterceptor<HttpRequestWrapper> tracingRequestInterceptor = new HttpClientRequestInterceptor<HttpRequestWrapper>();
-        HttpClientResponseInterceptor<HttpResponse> tracingResponseInterceptor = new HttpClientResponseInterceptor<HttpResponse>();
-        return this.wrapExecutorWithInterceptors(executor, proxy, tracingRequestInterceptor, tracingResponseInterceptor);
+    protected ClientRequestInterceptor<HttpRequestWrapper> createTracingRequestInterceptor() {
+        return new HttpClientRequestInterceptor<HttpRequestWrapper>();
+    }
+
+    /**
+     * Abstract method implementation. Returns a HttpClientResponseInterceptor
+     * @see com.flipkart.phantom.task.impl.repository.AbstractExecutorRepository#createTracingResponseInterceptor()
+     */
+    protected AbstractClientResponseInterceptor<HttpResponse> createTracingResponseInterceptor() {
+        return new HttpClientResponseInterceptor<HttpResponse>();
     }
     
 }
@@ -71,6 +71,19 @@ public class ProxyServiceClient extends TServiceClient {
 	 * @see org.apache.thrift.TServiceClient#receiveBase(org.apache.thrift.TBase, String)
 	 */
 	public void receiveBase(TBase result, String methodName) throws TException {
+		TMessage msg = this.receiveResult(result, methodName);
+	    // now relay the response to the client
+		ProxyServiceClient.relayResult(this.clientProtocol, msg, result);
+	}
+
+	/**
+	 * Receives the service response into the specified result, without relaying it to the client
+	 * @param result the empty result instance to read the response into
+	 * @param methodName the invoked method name
+	 * @return the TMessage of the service response
+	 * @throws TException in case of errors in receiving the response or if the service returned an exception
+	 */
+	public TMessage receiveResult(TBase result, String methodName) throws TException {
 		// Read the service response - same as in TServiceClient#receiveBase
 	    TMessage msg = iprot_.readMessageBegin();
 	    if (msg.type == TMessageType.EXCEPTION) {
@@ -82,9 +95,18 @@ public class ProxyServiceClient extends TServiceClient {
 	      throw new TApplicationException(TApplicationException.BAD_SEQUENCE_ID, methodName + " failed: out of sequence response");
 	    }
 	    result.read(iprot_);
-	    iprot_.readMessageEnd();	
-	    
-	    // now relay the response to the client
+	    iprot_.readMessageEnd();
+	    return msg;
+	}
+
+	/**
+	 * Relays the specified service response to the client
+	 * @param clientProtocol the client's TProtocol instance
+	 * @param msg the TMessage of the service response
+	 * @param result the result read from the service response
+	 * @throws TException in case of errors in writing to the client
+	 */
+	public static void relayResult(TProtocol clientProtocol, TMessage msg, TBase result) throws TException {
 	    clientProtocol.writeMessageBegin(msg);
 	    result.write(clientProtocol);
 	    clientProtocol.writeMessageEnd();
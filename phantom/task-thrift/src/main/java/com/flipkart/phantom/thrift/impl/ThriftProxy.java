@@ -20,12 +20,14 @@ import java.lang.reflect.Method;
 import java.net.Socket;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.pool.impl.GenericObjectPool;
 import org.apache.thrift.ProcessFunction;
 import org.apache.thrift.TBase;
 import org.apache.thrift.protocol.TBinaryProtocol;
 import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
 import org.apache.thrift.protocol.TProtocol;
 import org.apache.thrift.protocol.TProtocolFactory;
 import org.apache.thrift.transport.TSocket;
@@ -144,41 +146,56 @@ public abstract class ThriftProxy extends AbstractHandler implements Initializin
      * @return transport {@link TTransport} containing clientOutput
      * @throws Exception
      */
+    public TTransport doRequest(TTransport clientTransport) {
+        return this.doRequest(clientTransport, Long.MAX_VALUE);
+    }
+
+    /**
+     * Processes the request read from the specified client transport, limiting the time spent on the service call to the specified budget.
+     * The Thrift protocol does not support headers and the budget cannot be forwarded to the service, so it is used as the socket timeout of the
+     * service call if it is less than {@link #getThriftTimeoutMillis()}, or the latter is infinite i.e. zero
+     * @param clientTransport the client TTransport
+     * @param budget the time in millis remaining till the deadline of the request
+     * @return transport {@link TTransport} containing clientOutput
+     */
     @SuppressWarnings("rawtypes")
-    public TTransport doRequest(TTransport clientTransport)
+    public TTransport doRequest(TTransport clientTransport, long budget)
     {
-        TSocket serviceSocket = null;
+        int socketTimeout = this.getThriftTimeoutMillis();
+        if (budget < Long.MAX_VALUE && (socketTimeout == 0 || budget < socketTimeout)) {
+            socketTimeout = (int) Math.max(Math.min(budget, Integer.MAX_VALUE), 1); // zero is an infinite socket timeout
+        }
+        final int timeoutMillis = socketTimeout;
         try
         {
             //Get Protocol from transport
             TProtocol clientProtocol = this.protocolFactory.getProtocol(clientTransport);
 
-            TMessage message = clientProtocol.readMessageBegin();
+            final TMessage message = clientProtocol.readMessageBegin();
             //Arguments
             ProcessFunction invokedProcessFunction = this.getProcessMap().get(message.name);
             if (invokedProcessFunction == null) {
                 throw new RuntimeException("Unable to find a matching ProcessFunction for invoked method : " + message.name);
             }
-            TBase args = invokedProcessFunction.getEmptyArgsInstance(); // get the empty args. The values will then be read from the client's TProtocol
+            final TBase args = invokedProcessFunction.getEmptyArgsInstance(); // get the empty args. The values will then be read from the client's TProtocol
             //Read the argument values from the client's TProtocol
             args.read(clientProtocol);
             clientProtocol.readMessageEnd();
 
-            // Instantiate the call result object using the Thrift naming convention used for classes
-            TBase result = (TBase) Class.forName( this.getThriftServiceClass() + "$" + message.name + DEFAULT_RESULT_CLASS_NAME).newInstance();
-
-            serviceSocket = new TSocket(this.getThriftServer(), this.getThriftPort(), this.getThriftTimeoutMillis());
-            TProtocol serviceProtocol = new TBinaryProtocol(serviceSocket);
-            serviceSocket.open();
-
-            //Send the arguments to the server and relay the response back
-            //Create the custom TServiceClient client which sends request to actual Thrift servers and relays the response back to the client
-            ProxyServiceClient proxyClient = new ProxyServiceClient(clientProtocol,serviceProtocol,serviceProtocol);
-
-            //Send the request
-            proxyClient.sendBase(message.name, args, message.seqid);
-            //Get the response back (it is written to client's TProtocol)
-            proxyClient.receiveBase(result, message.name);
+            //Send the arguments to the server and read the response
+            TBase result;
+            if (this.isIdempotent(message.name)) {
+            	// the call is hedged if slow, the response of whichever call completes first is relayed
+            	result = this.getHedgingPolicy().execute(message.name, new Callable<TBase>() {
+            		public TBase call() throws Exception {
+            			return callService(message, args, timeoutMillis);
+            		}
+            	});
+            } else {
+            	result = this.callService(message, args, timeoutMillis);
+            }
+            //Relay the response back to the client
+            ProxyServiceClient.relayResult(clientProtocol, new TMessage(message.name, TMessageType.REPLY, message.seqid), result);
 
             LOGGER.debug("Processed message : " + this.getThriftServiceClass() + "." + message.name);
         } catch (Exception e) {
@@ -189,12 +206,42 @@ public abstract class ThriftProxy extends AbstractHandler implements Initializin
             } else {
                 throw new RuntimeException("Exception executing the proxy service call : " + e.getMessage(), e);
             }
+        }
+        return clientTransport;
+    }
+
+    /**
+     * Helper method to call the service with the specified message and arguments, on a connection of its own
+     * @param message the TMessage of the invoked method
+     * @param args the arguments of the invoked method
+     * @param timeoutMillis the socket timeout of the call
+     * @return the call result read from the service response
+     * @throws Exception in case of errors in calling the service
+     */
+    @SuppressWarnings("rawtypes")
+    private TBase callService(TMessage message, TBase args, int timeoutMillis) throws Exception {
+        TSocket serviceSocket = null;
+        try {
+            // Instantiate the call result object using the Thrift naming convention used for classes
+            TBase result = (TBase) Class.forName( this.getThriftServiceClass() + "$" + message.name + DEFAULT_RESULT_CLASS_NAME).newInstance();
+
+            serviceSocket = new TSocket(this.getThriftServer(), this.getThriftPort(), timeoutMillis);
+            TProtocol serviceProtocol = new TBinaryProtocol(serviceSocket);
+            serviceSocket.open();
+
+            //Create the custom TServiceClient client which sends request to actual Thrift servers
+            ProxyServiceClient proxyClient = new ProxyServiceClient(null, serviceProtocol, serviceProtocol);
+
+            //Send the request
+            proxyClient.sendBase(message.name, args, message.seqid);
+            //Get the response back
+            proxyClient.receiveResult(result, message.name);
+            return result;
         } finally {
             if (serviceSocket != null) {
                 serviceSocket.close();
             }
         }
-        return clientTransport;
     }
 
     /**
@@ -15,14 +15,18 @@
  */
 package com.flipkart.phantom.thrift.impl;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.concurrent.Future;
 
 import org.apache.thrift.transport.TTransport;
 
+import rx.Observable;
+
 import com.flipkart.phantom.event.ServiceProxyEvent;
+import com.flipkart.phantom.task.impl.RequestDeadline;
+import com.flipkart.phantom.task.impl.ThreadPoolQueue;
 import com.flipkart.phantom.task.spi.Executor;
 import com.flipkart.phantom.task.spi.TaskContext;
+import com.flipkart.phantom.task.spi.interceptor.InterceptorChain;
 import com.flipkart.phantom.task.spi.interceptor.RequestInterceptor;
 import com.flipkart.phantom.task.spi.interceptor.ResponseInterceptor;
 import com.github.kristofa.brave.Brave;
@@ -32,7 +36,6 @@ import com.netflix.hystrix.HystrixCommandGroupKey;
 import com.netflix.hystrix.HystrixCommandKey;
 import com.netflix.hystrix.HystrixCommandProperties;
 import com.netflix.hystrix.HystrixThreadPoolKey;
-import com.netflix.hystrix.HystrixThreadPoolProperties;
 
 /**
  * <code>ThriftProxyExecutor</code> is an extension of {@link com.netflix.hystrix.HystrixCommand}. It is essentially a
@@ -71,9 +74,11 @@ public class ThriftProxyExecutor extends HystrixCommand<TTransport> implements E
     /** Event which records various paramenters of this request execution & published later */
     protected ServiceProxyEvent.Builder eventBuilder;
 
-    /** List of request and response interceptors */
-    private List<RequestInterceptor<ThriftRequestWrapper>> requestInterceptors = new LinkedList<RequestInterceptor<ThriftRequestWrapper>>();
-    private List<ResponseInterceptor<TTransport>> responseInterceptors = new LinkedList<ResponseInterceptor<TTransport>>();
+    /** The chain of request and response interceptors */
+    private InterceptorChain<ThriftRequestWrapper, TTransport> interceptorChain = InterceptorChain.emptyChain();
+
+    /** The time in nanos at which the request was submitted to its pool i.e. queued for execution. The time at which this executor was created until then */
+    private volatile long queueTime = System.nanoTime();
     
     /**
      * Constructor for this class.
@@ -95,28 +100,48 @@ public class ThriftProxyExecutor extends HystrixCommand<TTransport> implements E
      */
     @Override
     protected TTransport run() {
+        ThreadPoolQueue.recordQueueWait(this, this.queueTime);
+        // requests whose deadline expired while queued are rejected
+        RequestDeadline.checkExpired(this.thriftRequestWrapper, this.thriftProxy.getName());
         this.eventBuilder.withRequestExecutionStartTime(System.currentTimeMillis());
         if (this.thriftRequestWrapper.getRequestContext().isPresent() && this.thriftRequestWrapper.getRequestContext().get().getCurrentServerSpan() != null) {
         	Brave.getServerSpanThreadBinder().setCurrentSpan(this.thriftRequestWrapper.getRequestContext().get().getCurrentServerSpan());
         }
-        for (RequestInterceptor<ThriftRequestWrapper> requestInterceptor : this.requestInterceptors) {
-        	requestInterceptor.process(this.thriftRequestWrapper);
-        }
+        this.interceptorChain.processRequest(this.thriftRequestWrapper);
         TTransport response = null;
         Optional<RuntimeException> transportException = Optional.absent();
         try {
-        	response = thriftProxy.doRequest(this.clientTransport);
+        	response = thriftProxy.doRequest(this.clientTransport, RequestDeadline.getRemaining(this.thriftRequestWrapper));
         }  catch (RuntimeException e) {
         	transportException = Optional.of(e);
         	throw e; // rethrow this for it to handled by other layers in the call stack
         } finally {
-	        for (ResponseInterceptor<TTransport> responseInterceptor : this.responseInterceptors) {
-	        	responseInterceptor.process(response, transportException);
-	        }   
+	        this.interceptorChain.processResponse(response, transportException);   
         }
         return response;
     }
 
+    /**
+     * Overriden superclass method. Records the time at which the request is submitted to its pool, see {@link ThreadPoolQueue#recordQueueWait(HystrixCommand, long)}.
+     * Synchronous execution also submits the request through this method
+     * @see HystrixCommand#queue()
+     */
+    @Override
+    public Future<TTransport> queue() {
+        this.queueTime = System.nanoTime();
+        return super.queue();
+    }
+
+    /**
+     * Overriden superclass method. Records the time at which the request is submitted to its pool, see {@link ThreadPoolQueue#recordQueueWait(HystrixCommand, long)}
+     * @see HystrixCommand#observe()
+     */
+    @Override
+    public Observable<TTransport> observe() {
+        this.queueTime = System.nanoTime();
+        return super.observe();
+    }
+
     /**
      * Interface method implementation. @see HystrixCommand#getFallback()
      */
@@ -145,13 +170,15 @@ public class ThriftProxyExecutor extends HystrixCommand<TTransport> implements E
             setter = Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey(hystrixThriftProxy.getName()));
         }
         setter = setter.andCommandKey(HystrixCommandKey.Factory.asKey(commandName));
+        String threadPoolName;
         if((hystrixThriftProxy.getThreadPoolName()!=null) || !hystrixThriftProxy.getThreadPoolName().equals("")) {
-            setter = setter.andThreadPoolKey(HystrixThreadPoolKey.Factory.asKey(hystrixThriftProxy.getThreadPoolName()));
+            threadPoolName = hystrixThriftProxy.getThreadPoolName();
         } else {
-            setter = setter.andThreadPoolKey(HystrixThreadPoolKey.Factory.asKey(DEFAULT_HYSTRIX_THREAD_POOL));
+            threadPoolName = DEFAULT_HYSTRIX_THREAD_POOL;
         }
+        setter = setter.andThreadPoolKey(HystrixThreadPoolKey.Factory.asKey(threadPoolName));
         Integer threadPoolSize = hystrixThriftProxy.getProxyThreadPoolSize() == null ? ThriftProxyExecutor.DEFAULT_HYSTRIX_THREAD_POOL_SIZE :  hystrixThriftProxy.getProxyThreadPoolSize();
-        setter = setter.andThreadPoolPropertiesDefaults(HystrixThreadPoolProperties.Setter().withCoreSize(threadPoolSize));
+        setter = setter.andThreadPoolPropertiesDefaults(ThreadPoolQueue.getThreadPoolProperties(threadPoolName, threadPoolSize, hystrixThriftProxy));
         setter = setter.andCommandPropertiesDefaults(HystrixCommandProperties.Setter().withExecutionIsolationThreadTimeoutInMilliseconds(hystrixThriftProxy.getExecutorTimeout(commandName)));
         if((hystrixThriftProxy.getHystrixProperties()!=null)) {
             setter = setter.andCommandPropertiesDefaults(hystrixThriftProxy.getHystrixProperties());
@@ -160,19 +187,27 @@ public class ThriftProxyExecutor extends HystrixCommand<TTransport> implements E
     }
 
     /**
-     * Interface method implementation. Adds the RequestInterceptor to the list of request interceptors that will be invoked
+     * Interface method implementation. Adds the RequestInterceptor to the chain of request interceptors that will be invoked
      * @see com.flipkart.phantom.task.spi.Executor#addRequestInterceptor(com.flipkart.phantom.task.spi.interceptor.RequestInterceptor)
      */
     public void addRequestInterceptor(RequestInterceptor<ThriftRequestWrapper> requestInterceptor) {    	
-    	this.requestInterceptors.add(requestInterceptor);
+    	this.interceptorChain = this.interceptorChain.withRequestInterceptor(requestInterceptor);
     }
 
     /**
-     * Interface method implementation. Adds the ResponseInterceptor to the list of response interceptors that will be invoked
+     * Interface method implementation. Adds the ResponseInterceptor to the chain of response interceptors that will be invoked
      * @see com.flipkart.phantom.task.spi.Executor#addResponseInterceptor(com.flipkart.phantom.task.spi.interceptor.ResponseInterceptor)
      */
     public void addResponseInterceptor(ResponseInterceptor<TTransport> responseInterceptor){
-    	this.responseInterceptors.add(responseInterceptor);
+    	this.interceptorChain = this.interceptorChain.withResponseInterceptor(responseInterceptor);
+    }
+
+    /**
+     * Interface method implementation. Sets the chain of request and response interceptors that will be invoked
+     * @see com.flipkart.phantom.task.spi.Executor#setInterceptorChain(com.flipkart.phantom.task.spi.interceptor.InterceptorChain)
+     */
+    public void setInterceptorChain(InterceptorChain<ThriftRequestWrapper, TTransport> interceptorChain) {
+    	this.interceptorChain = interceptorChain;
     }
     
     /**
@@ -17,6 +17,7 @@ package com.flipkart.phantom.thrift.impl;
 
 import org.apache.thrift.transport.TTransport;
 
+import com.flipkart.phantom.task.impl.interceptor.AbstractClientResponseInterceptor;
 import com.flipkart.phantom.task.impl.interceptor.ClientRequestInterceptor;
 import com.flipkart.phantom.task.impl.repository.AbstractExecutorRepository;
 import com.flipkart.phantom.task.spi.Executor;
@@ -50,12 +51,19 @@ public class ThriftProxyExecutorRepository extends AbstractExecutorRepository<Th
      }
 
      /**
-      * Helper method to wrap the Executor with request and response interceptors 
+      * Abstract method implementation. Returns a ClientRequestInterceptor
+      * @see com.flipkart.phantom.task.impl.repository.AbstractExecutorRepository#createTracingRequestInterceptor()
       */
-     private Executor<ThriftRequestWrapper,TTransport> wrapExecutorWithInterceptors(Executor<ThriftRequestWrapper,TTransport> executor, HystrixThriftProxy proxy) {
-         ClientRequestInterceptor<ThriftRequestWrapper> tracingRequestInterceptor = new ClientRequestInterceptor<ThriftRequestWrapper>();
-         ThriftClientResponseInterceptor<TTransport> tracingResponseInterceptor = new ThriftClientResponseInterceptor<TTransport>();
-         return this.wrapExecutorWithInterceptors(executor, proxy, tracingRequestInterceptor, tracingResponseInterceptor);
+     protected ClientRequestInterceptor<ThriftRequestWrapper> createTracingRequestInterceptor() {
+         return new ClientRequestInterceptor<ThriftRequestWrapper>();
+     }
+
+     /**
+      * Abstract method implementation. Returns a ThriftClientResponseInterceptor
+      * @see com.flipkart.phantom.task.impl.repository.AbstractExecutorRepository#createTracingResponseInterceptor()
+      */
+     protected AbstractClientResponseInterceptor<TTransport> createTracingResponseInterceptor() {
+         return new ThriftClientResponseInterceptor<TTransport>();
      }
      
 }
\ No newline at end of file
@@ -2,13 +2,12 @@ package com.flipkart.phantom.task.impl;
 
 
 import com.flipkart.phantom.task.spi.Decoder;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 
 /**
  * This is a ByteArrayDecoder which is the default implementation for  {@link ByteArrayDecoder}
@@ -33,15 +32,12 @@ public class ByteArrayDecoder implements Decoder<byte[]>
     @Override
     public byte[] decode(InputStream is)
     {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-        StringBuilder sb = new StringBuilder();
-        String line;
         try {
-            while ((line = reader.readLine()) != null) {
-                sb.append((line + "\n"));
-            }
+            // read the bytes as-is, data may not be line oriented text
+            return IOUtils.toByteArray(is);
         } catch (IOException e) {
             logger.warn(e.getMessage());
+            return new byte[0];
         } finally {
             try {
                 is.close();
@@ -49,6 +45,5 @@ public class ByteArrayDecoder implements Decoder<byte[]>
                 e.printStackTrace();
             }
         }
-        return sb.toString().getBytes();
     }
 }
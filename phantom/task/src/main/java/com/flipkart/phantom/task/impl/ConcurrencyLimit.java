@@ -0,0 +1,153 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.flipkart.phantom.task.impl.metrics.ProxyMetrics;
+
+/**
+ * <code>ConcurrencyLimit</code> limits the number of in-flight requests to a command on a pool. The limit is either fixed, or adaptive in which case
+ * it is adjusted using AIMD (additive increase, multiplicative decrease) between 1 and the configured max : it grows by about one for every limit
+ * number of requests that succeed within the latency threshold, and is reduced by {@value ConcurrencyLimit#BACKOFF_RATIO} of itself for every request
+ * that fails or exceeds the threshold. Requests over the limit are rejected by the caller, before they are submitted for execution.
+ * The current limit and the rejected count are recorded as {@link ProxyMetrics} in the {@value ConcurrencyLimit#METRICS_GROUP} group.
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class ConcurrencyLimit {
+
+	/** The metrics group and metric names*/
+	public static final String METRICS_GROUP = "ConcurrencyLimit";
+	public static final String LIMIT = "limit";
+	public static final String REJECTED_COUNT = "rejectedCount";
+
+	/** The ratio by which an adaptive limit is reduced on a failed or slow request*/
+	public static final double BACKOFF_RATIO = 0.1;
+
+	/** The least value of an adaptive limit*/
+	private static final double MIN_LIMIT = 1;
+
+	/** The configured max limit*/
+	private final int maxLimit;
+
+	/** Flag to indicate the limit is adaptive*/
+	private final boolean adaptive;
+
+	/** The latency in nanos beyond which a request is considered slow*/
+	private final long latencyThresholdNanos;
+
+	/** The current limit, as the bits of a double so that it may be updated without locking*/
+	private final AtomicLong limit;
+
+	/** The number of in-flight requests*/
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	/** The metrics of this limit*/
+	private final ProxyMetrics metrics;
+
+	/**
+	 * Constructor for this class
+	 * @param name the name of the limit, used as the metrics name
+	 * @param maxLimit the max in-flight requests
+	 * @param adaptive true if the limit is to be adapted to observed latency and errors, false for a fixed limit
+	 * @param latencyThreshold the latency in millis beyond which a request is considered slow, not used for fixed limits
+	 */
+	public ConcurrencyLimit(String name, int maxLimit, boolean adaptive, long latencyThreshold) {
+		this.maxLimit = Math.max(maxLimit, 1);
+		this.adaptive = adaptive;
+		this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThreshold);
+		this.limit = new AtomicLong(Double.doubleToLongBits(this.maxLimit));
+		this.metrics = ProxyMetrics.getInstance(METRICS_GROUP, name);
+		this.metrics.set(LIMIT, this.maxLimit);
+	}
+
+	/**
+	 * Acquires a permit for a request if the number of in-flight requests is under the limit
+	 * @return true if the permit was acquired, false if the request must be rejected
+	 */
+	public boolean tryAcquire() {
+		int limit = (int) this.getLimit();
+		while (true) {
+			int inFlight = this.inFlight.get();
+			if (inFlight >= limit) {
+				this.metrics.increment(REJECTED_COUNT);
+				return false;
+			}
+			if (this.inFlight.compareAndSet(inFlight, inFlight + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Releases the permit acquired for a request, adapting the limit to the outcome of the request if the limit is adaptive
+	 * @param latencyNanos the time taken by the request in nanos
+	 * @param success true if the request succeeded
+	 */
+	public void release(long latencyNanos, boolean success) {
+		this.inFlight.decrementAndGet();
+		if (!this.adaptive) {
+			return;
+		}
+		boolean backoff = !success || latencyNanos > this.latencyThresholdNanos;
+		while (true) {
+			long current = this.limit.get();
+			double currentLimit = Double.longBitsToDouble(current);
+			double newLimit = backoff ? Math.max(MIN_LIMIT, currentLimit * (1 - BACKOFF_RATIO)) : Math.min(this.maxLimit, currentLimit + 1 / currentLimit);
+			if (newLimit == currentLimit) {
+				return;
+			}
+			if (this.limit.compareAndSet(current, Double.doubleToLongBits(newLimit))) {
+				if ((int) newLimit != (int) currentLimit) {
+					this.metrics.set(LIMIT, (int) newLimit);
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Releases the permit acquired for a request that was not executed, without adapting the limit
+	 */
+	public void release() {
+		this.inFlight.decrementAndGet();
+	}
+
+	/**
+	 * Returns the current limit
+	 * @return the current limit, fractional for adaptive limits
+	 */
+	public double getLimit() {
+		return Double.longBitsToDouble(this.limit.get());
+	}
+
+	/** Start Getter/Setter methods */
+	public int getMaxLimit() {
+		return this.maxLimit;
+	}
+	public boolean isAdaptive() {
+		return this.adaptive;
+	}
+	public int getInFlight() {
+		return this.inFlight.get();
+	}
+	/** End Getter/Setter methods */
+
+}
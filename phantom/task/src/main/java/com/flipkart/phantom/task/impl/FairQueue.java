@@ -0,0 +1,310 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observer;
+
+import com.flipkart.phantom.task.impl.metrics.ProxyMetrics;
+import com.flipkart.phantom.task.spi.RequestWrapper;
+import com.flipkart.phantom.task.spi.TaskResult;
+
+/**
+ * <code>FairQueue</code> queues requests to a thread pool per client and dispatches them to the pool in deficit round-robin order, so that clients
+ * that send many requests cannot starve those that send a few. Requests are dispatched while the number of in-flight requests dispatched by this
+ * queue is under the pool size, and wait in the queue of their client otherwise. Each turn of a client dispatches as many of its requests as its
+ * weight, the unused share of a client whose queue empties is not carried over.
+ * A client is identified by the {@value FairQueue#CLIENT_ID_PARAM} param of its requests, or else by the client identity set on the request by the
+ * channel handler i.e. the remote address of the connection. Requests that have neither share the default client queue.
+ * Requests are dispatched by a thread of the queue, and not by the threads that submit or complete requests, which may be I/O threads. The capacity
+ * used by a request is released once it completes running on its pool thread, or once it is known that it will not run - and not when its outcome
+ * is notified, which happens early for requests that time out.
+ * There is one instance per pool name, shared by all commands and handler versions that execute on the pool, with the settings of the command
+ * that last got it. The number of waiting requests and the count of requests rejected as the queue is full are recorded as {@link ProxyMetrics}
+ * in the {@value FairQueue#METRICS_GROUP} group.
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+@SuppressWarnings("rawtypes")
+public class FairQueue {
+
+	/** The metrics group and metric names*/
+	public static final String METRICS_GROUP = "FairQueue";
+	public static final String QUEUE_SIZE = "queueSize";
+	public static final String REJECTED_COUNT = "rejectedCount";
+
+	/** The param that identifies the client of a request*/
+	public static final String CLIENT_ID_PARAM = "clientId";
+
+	/** The client id of requests that do not identify their client*/
+	public static final String DEFAULT_CLIENT_ID = "default";
+
+	/** The default max number of requests waiting in the queue of a pool*/
+	public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+	/** The instances, keyed by pool name without the handler version*/
+	private static final ConcurrentMap<String, FairQueue> INSTANCES = new ConcurrentHashMap<String, FairQueue>();
+
+	/** The pool name*/
+	private final String poolName;
+
+	/** The max number of in-flight requests dispatched to the pool, as per the current settings*/
+	private volatile int poolSize;
+
+	/** The max number of waiting requests, as per the current settings*/
+	private volatile int queueSize;
+
+	/** The queues of clients that have waiting requests, keyed by client id, and the round-robin order of these queues*/
+	private final Map<String, ClientQueue> clientQueues = new HashMap<String, ClientQueue>();
+	private final LinkedList<ClientQueue> activeQueues = new LinkedList<ClientQueue>();
+
+	/** The number of waiting and in-flight requests, guarded by this instance*/
+	private int waiting;
+	private int inFlight;
+
+	/** Flag to indicate a dispatch of requests is scheduled or running, guarded by this instance*/
+	private boolean dispatching;
+
+	/** The executor of the thread that dispatches requests. The thread is stopped when the queue is idle*/
+	private final ThreadPoolExecutor dispatcher;
+
+	/** The task that dispatches requests*/
+	private final Runnable dispatchTask = new Runnable() {
+		public void run() {
+			FairQueue.this.dispatchWaiting();
+		}
+	};
+
+	/** The callback that releases the capacity used by a dispatched request*/
+	private final Runnable releaseCallback = new Runnable() {
+		public void run() {
+			FairQueue.this.release();
+		}
+	};
+
+	/** The metrics of the pool*/
+	private final ProxyMetrics metrics;
+
+	/**
+	 * Constructor for this class
+	 * @param poolName the pool name
+	 */
+	private FairQueue(final String poolName) {
+		this.poolName = poolName;
+		this.metrics = ProxyMetrics.getInstance(METRICS_GROUP, poolName);
+		this.dispatcher = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "FairQueue-" + poolName);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.dispatcher.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Returns the FairQueue of the specified pool, creating it if required, and applies the specified settings to it. The pool name must not include
+	 * the handler version, so that a handler that is reloaded shares the queue, and the in-flight requests, of its previous version
+	 * @param poolName the pool name
+	 * @param poolSize the max number of in-flight requests dispatched to the pool
+	 * @param queueSize the max number of waiting requests
+	 * @return the FairQueue of the pool
+	 */
+	public static FairQueue getInstance(String poolName, int poolSize, int queueSize) {
+		FairQueue fairQueue = INSTANCES.get(poolName);
+		if (fairQueue == null) {
+			INSTANCES.putIfAbsent(poolName, new FairQueue(poolName));
+			fairQueue = INSTANCES.get(poolName);
+		}
+		fairQueue.poolSize = Math.max(poolSize, 1);
+		fairQueue.queueSize = queueSize;
+		return fairQueue;
+	}
+
+	/**
+	 * Returns the client id of the specified request, as specified by the {@link #CLIENT_ID_PARAM} param or else the client identity of the request
+	 * @param requestWrapper the request
+	 * @param params the request params, may be null
+	 * @return the client id, {@link #DEFAULT_CLIENT_ID} if the request does not identify its client
+	 */
+	public static String getClientId(RequestWrapper requestWrapper, Map<String,String> params) {
+		String clientId = (params == null ? null : params.get(CLIENT_ID_PARAM));
+		if (clientId != null) {
+			return clientId;
+		}
+		return requestWrapper.getClientId().isPresent() ? requestWrapper.getClientId().get() : DEFAULT_CLIENT_ID;
+	}
+
+	/**
+	 * Queues the specified executor for dispatch to the pool in the turn of its client. The outcome is reported to the observer, on the thread
+	 * that completes the execution, or on the calling thread if the queue is full
+	 * @param clientId the client id of the request
+	 * @param weight the number of requests of the client dispatched per turn
+	 * @param executor the executor of the request
+	 * @param observer the observer of the execution outcome
+	 */
+	public void submit(String clientId, int weight, TaskHandlerExecutor executor, Observer<TaskResult> observer) {
+		boolean rejected = false;
+		synchronized(this) {
+			if (this.waiting >= this.queueSize) {
+				this.metrics.increment(REJECTED_COUNT);
+				rejected = true;
+			} else {
+				ClientQueue clientQueue = this.clientQueues.get(clientId);
+				if (clientQueue == null) {
+					clientQueue = new ClientQueue(clientId);
+					this.clientQueues.put(clientId, clientQueue);
+					this.activeQueues.addLast(clientQueue);
+				}
+				clientQueue.weight = Math.max(weight, 1);
+				clientQueue.requests.addLast(new QueuedRequest(executor, observer));
+				this.waiting += 1;
+				this.metrics.set(QUEUE_SIZE, this.waiting);
+			}
+		}
+		if (rejected) {
+			// notified outside the lock, as the observer may write the response
+			observer.onError(new RejectedExecutionException("Fair queue of pool : " + this.poolName + " is full"));
+			return;
+		}
+		this.dispatch();
+	}
+
+	/**
+	 * Helper method to schedule a dispatch of waiting requests, unless one is scheduled or running already. Requests made dispatchable meanwhile are
+	 * picked up by the scheduled or running dispatch
+	 */
+	private void dispatch() {
+		synchronized(this) {
+			if (this.dispatching) {
+				return;
+			}
+			this.dispatching = true;
+		}
+		this.dispatcher.execute(this.dispatchTask);
+	}
+
+	/**
+	 * Helper method to dispatch waiting requests to the pool while it has capacity. Runs on the dispatcher thread
+	 */
+	private void dispatchWaiting() {
+		while (true) {
+			QueuedRequest request;
+			synchronized(this) {
+				request = this.next();
+				if (request == null) {
+					this.dispatching = false;
+					return;
+				}
+			}
+			try {
+				request.executor.submit(request.observer, this.releaseCallback);
+			} catch (RuntimeException e) {
+				request.observer.onError(e);
+			}
+		}
+	}
+
+	/**
+	 * Helper method to remove the next request in deficit round-robin order, if the pool has capacity for it. Must be called holding the lock on
+	 * this instance
+	 * @return the next request, null if there is no waiting request or the pool is at capacity
+	 */
+	private QueuedRequest next() {
+		if (this.inFlight >= this.poolSize || this.activeQueues.isEmpty()) {
+			return null;
+		}
+		ClientQueue clientQueue = this.activeQueues.getFirst();
+		if (clientQueue.deficit == 0) {
+			clientQueue.deficit = clientQueue.weight; // start of the client's turn
+		}
+		QueuedRequest request = clientQueue.requests.removeFirst();
+		clientQueue.deficit -= 1;
+		if (clientQueue.requests.isEmpty()) {
+			// the client is idle, it does not keep the unused share of its turn
+			this.activeQueues.removeFirst();
+			this.clientQueues.remove(clientQueue.clientId);
+		} else if (clientQueue.deficit == 0) {
+			// end of the client's turn
+			this.activeQueues.addLast(this.activeQueues.removeFirst());
+		}
+		this.waiting -= 1;
+		this.inFlight += 1;
+		this.metrics.set(QUEUE_SIZE, this.waiting);
+		return request;
+	}
+
+	/**
+	 * Helper method to release the capacity used by a dispatched request and dispatch the next waiting request
+	 */
+	private void release() {
+		synchronized(this) {
+			this.inFlight -= 1;
+		}
+		this.dispatch();
+	}
+
+	/** Start Getter/Setter methods */
+	public String getPoolName() {
+		return this.poolName;
+	}
+	public int getPoolSize() {
+		return this.poolSize;
+	}
+	public int getQueueSize() {
+		return this.queueSize;
+	}
+	public synchronized int getWaiting() {
+		return this.waiting;
+	}
+	public synchronized int getInFlight() {
+		return this.inFlight;
+	}
+	/** End Getter/Setter methods */
+
+	/** The waiting requests of a client and its share of the current turn*/
+	private static class ClientQueue {
+		private String clientId;
+		private int weight = 1;
+		private int deficit;
+		private LinkedList<QueuedRequest> requests = new LinkedList<QueuedRequest>();
+		ClientQueue(String clientId) {
+			this.clientId = clientId;
+		}
+	}
+
+	/** A waiting request*/
+	private static class QueuedRequest {
+		private TaskHandlerExecutor executor;
+		private Observer<TaskResult> observer;
+		QueuedRequest(TaskHandlerExecutor executor, Observer<TaskResult> observer) {
+			this.executor = executor;
+			this.observer = observer;
+		}
+	}
+
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.flipkart.phantom.task.impl.metrics.ProxyMetrics;
+import com.github.kristofa.brave.Brave;
+import com.github.kristofa.brave.ServerSpan;
+import com.netflix.hystrix.strategy.concurrency.HystrixRequestContext;
+
+/**
+ * <code>HedgingPolicy</code> executes calls to idempotent commands of a handler with hedging : if a call has not completed within a percentile of the
+ * recent latency of the command, a second, identical call is started and the result of whichever succeeds first is used. The other call is cancelled.
+ * Hedged calls are capped by a budget that is earned as a ratio of all calls, so that hedging adds a bounded amount of load to the backend.
+ * Calls are executed on a pool shared by all policies, while the calling thread waits for the result. Calls are executed on the calling thread
+ * instead, and are not hedged, until enough latency samples have been recorded for the command or if the pool is exhausted. Calls executed on the
+ * pool are bound to the Hystrix request context and the trace server span of the calling thread. The latency of failed calls is recorded too, so
+ * that the hedge delay tracks the latency of all calls to the command.
+ * Hedge and hedge win counts are recorded as {@link ProxyMetrics} in the {@value HedgingPolicy#METRICS_GROUP} group.
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class HedgingPolicy {
+
+	/** The metrics group and metric names*/
+	public static final String METRICS_GROUP = "Hedging";
+	public static final String HEDGE_COUNT = "hedgeCount";
+	public static final String HEDGE_WIN_COUNT = "hedgeWinCount";
+
+	/** The max number of threads that execute calls*/
+	private static final int MAX_CALL_THREADS = 256;
+
+	/** The max budget, in number of hedges, that may be accumulated*/
+	private static final long MAX_BUDGET = 10;
+
+	/** The budget units per hedge. Budget is tracked in fractions of a hedge*/
+	private static final long HEDGE_COST = 1000;
+
+	/** The pool that executes calls that may be hedged*/
+	private static final ThreadPoolExecutor CALL_EXECUTOR = new ThreadPoolExecutor(0, MAX_CALL_THREADS, 60, TimeUnit.SECONDS,
+			new SynchronousQueue<Runnable>(), new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "HedgedCall-" + this.count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/** The latency percentile after which a call is hedged*/
+	private final int percentile;
+
+	/** The budget earned per call, in budget units*/
+	private final long budgetPerCall;
+
+	/** The available budget, in budget units*/
+	private final AtomicLong budget = new AtomicLong(HEDGE_COST);
+
+	/** The latency trackers, keyed by command*/
+	private final ConcurrentMap<String, LatencyTracker> latencyTrackers = new ConcurrentHashMap<String, LatencyTracker>();
+
+	/** The metrics of this policy*/
+	private final ProxyMetrics metrics;
+
+	/**
+	 * Constructor for this class
+	 * @param name the policy name, used as the metrics name
+	 * @param percentile the latency percentile after which a call is hedged, say 95
+	 * @param budgetRatio the max ratio of hedged calls to all calls, say 0.05
+	 */
+	public HedgingPolicy(String name, int percentile, double budgetRatio) {
+		this.percentile = Math.min(Math.max(percentile, 1), 100);
+		this.budgetPerCall = (long) (budgetRatio * HEDGE_COST);
+		this.metrics = ProxyMetrics.getInstance(METRICS_GROUP, name);
+	}
+
+	/**
+	 * Executes the specified call to the specified command, hedging it if it is slow
+	 * @param command the command that is called
+	 * @param call the call, executed once or twice
+	 * @return the result of the first successful call
+	 * @throws RuntimeException the failure of the call, or of the first call if both the call and its hedge failed
+	 */
+	public <V> V execute(String command, Callable<V> call) throws RuntimeException {
+		return this.execute(command, call, null);
+	}
+
+	/**
+	 * Executes the specified call to the specified command, hedging it if it is slow. Results that hold resources, say connections, are released 
+	 * by the specified Discarder if they are not used i.e. the other call succeeded first
+	 * @param command the command that is called
+	 * @param call the call, executed once or twice
+	 * @param discarder the Discarder of unused results, may be null
+	 * @return the result of the first successful call
+	 * @throws RuntimeException the failure of the call, or of the first call if both the call and its hedge failed
+	 */
+	public <V> V execute(String command, final Callable<V> call, final Discarder<V> discarder) throws RuntimeException {
+		LatencyTracker latencyTracker = this.getLatencyTracker(command);
+		long hedgeDelay = latencyTracker.getPercentileLatency();
+		this.earnBudget();
+		long startTime = System.nanoTime();
+		if (hedgeDelay < 0) {
+			try {
+				return this.call(call);
+			} finally {
+				latencyTracker.record(System.nanoTime() - startTime);
+			}
+		}
+		final AtomicBoolean completed = new AtomicBoolean();
+		final HystrixRequestContext requestContext = HystrixRequestContext.getContextForCurrentThread();
+		final ServerSpan serverSpan = Brave.getServerSpanThreadBinder().getCurrentServerSpan();
+		Callable<V> attempt = new Callable<V>() {
+			public V call() throws Exception {
+				// executed on a pool thread, bound to the request context and server span of the calling thread while the call runs
+				HystrixRequestContext previousRequestContext = HystrixRequestContext.getContextForCurrentThread();
+				ServerSpan previousServerSpan = Brave.getServerSpanThreadBinder().getCurrentServerSpan();
+				HystrixRequestContext.setContextOnCurrentThread(requestContext);
+				Brave.getServerSpanThreadBinder().setCurrentSpan(serverSpan);
+				V result;
+				try {
+					result = call.call();
+				} finally {
+					HystrixRequestContext.setContextOnCurrentThread(previousRequestContext);
+					Brave.getServerSpanThreadBinder().setCurrentSpan(previousServerSpan);
+				}
+				if (!completed.compareAndSet(false, true)) {
+					// the other call succeeded first
+					if (discarder != null) {
+						discarder.discard(result);
+					}
+					throw new CancellationException("Call completed after the result of the other call was used");
+				}
+				return result;
+			}
+		};
+		CompletionService<V> completionService = new ExecutorCompletionService<V>(CALL_EXECUTOR);
+		Future<V> primary;
+		try {
+			primary = completionService.submit(attempt);
+		} catch (RejectedExecutionException e) {
+			try {
+				return this.call(call);
+			} finally {
+				latencyTracker.record(System.nanoTime() - startTime);
+			}
+		}
+		Future<V> hedge = null;
+		try {
+			Future<V> done = completionService.poll(hedgeDelay, TimeUnit.NANOSECONDS);
+			if (done == null && this.spendBudget()) {
+				try {
+					hedge = completionService.submit(attempt);
+					this.metrics.increment(HEDGE_COUNT);
+				} catch (RejectedExecutionException e) {
+					this.budget.addAndGet(HEDGE_COST); // not hedged, return the budget
+				}
+			}
+			ExecutionException failure = null;
+			for (int pending = (hedge == null ? 1 : 2); pending > 0; pending--) {
+				if (done == null) {
+					done = completionService.take();
+				}
+				try {
+					V result = done.get();
+					latencyTracker.record(System.nanoTime() - startTime);
+					if (done == hedge) {
+						this.metrics.increment(HEDGE_WIN_COUNT);
+					}
+					return result;
+				} catch (ExecutionException e) {
+					failure = (failure == null ? e : failure);
+					done = null;
+				}
+			}
+			latencyTracker.record(System.nanoTime() - startTime);
+			throw HedgingPolicy.toRuntimeException(failure.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for call to command : " + command, e);
+		} finally {
+			primary.cancel(true);
+			if (hedge != null) {
+				hedge.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Helper method to execute the specified call on the calling thread
+	 */
+	private <V> V call(Callable<V> call) {
+		try {
+			return call.call();
+		} catch (Exception e) {
+			throw HedgingPolicy.toRuntimeException(e);
+		}
+	}
+
+	/**
+	 * Helper method to return the specified failure as a RuntimeException
+	 */
+	private static RuntimeException toRuntimeException(Throwable failure) {
+		if (failure instanceof RuntimeException) {
+			return (RuntimeException) failure;
+		}
+		return new RuntimeException(failure.getMessage(), failure);
+	}
+
+	/**
+	 * Helper method to add the budget earned by a call, up to the max budget
+	 */
+	private void earnBudget() {
+		long current = this.budget.get();
+		if (current < MAX_BUDGET * HEDGE_COST) {
+			this.budget.compareAndSet(current, Math.min(current + this.budgetPerCall, MAX_BUDGET * HEDGE_COST)); // lost updates are acceptable
+		}
+	}
+
+	/**
+	 * Helper method to spend the budget for a hedge, if available
+	 */
+	private boolean spendBudget() {
+		while (true) {
+			long current = this.budget.get();
+			if (current < HEDGE_COST) {
+				return false;
+			}
+			if (this.budget.compareAndSet(current, current - HEDGE_COST)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Helper method to return the latency tracker of the specified command, creating it if required
+	 */
+	private LatencyTracker getLatencyTracker(String command) {
+		LatencyTracker latencyTracker = this.latencyTrackers.get(command);
+		if (latencyTracker == null) {
+			this.latencyTrackers.putIfAbsent(command, new LatencyTracker(this.percentile));
+			latencyTracker = this.latencyTrackers.get(command);
+		}
+		return latencyTracker;
+	}
+
+	/**
+	 * Releases the resources held by the result of a call that was not used
+	 */
+	public interface Discarder<V> {
+		/**
+		 * Releases the resources held by the specified result
+		 * @param result the unused result
+		 */
+		void discard(V result);
+	}
+
+	/**
+	 * Tracks the latency of recent calls to a command in a ring of samples, and periodically computes the configured percentile from them
+	 */
+	private static class LatencyTracker {
+		private static final int SAMPLE_SIZE = 256;
+		private static final int RECOMPUTE_INTERVAL = 64;
+		private final int percentile;
+		private final AtomicLongArray samples = new AtomicLongArray(SAMPLE_SIZE);
+		private final AtomicInteger count = new AtomicInteger();
+		private volatile long percentileLatency = -1;
+		LatencyTracker(int percentile) {
+			this.percentile = percentile;
+		}
+		void record(long latencyNanos) {
+			int index = this.count.getAndIncrement() & Integer.MAX_VALUE;
+			this.samples.set(index % SAMPLE_SIZE, latencyNanos);
+			if (index % RECOMPUTE_INTERVAL == RECOMPUTE_INTERVAL - 1) {
+				int sampleCount = (index >= SAMPLE_SIZE - 1 ? SAMPLE_SIZE : index + 1);
+				long[] sorted = new long[sampleCount];
+				for (int i = 0; i < sampleCount; i++) {
+					sorted[i] = this.samples.get(i);
+				}
+				Arrays.sort(sorted);
+				this.percentileLatency = sorted[Math.max((int) Math.ceil(sampleCount * this.percentile / 100.0) - 1, 0)];
+			}
+		}
+		long getPercentileLatency() {
+			return this.percentileLatency;
+		}
+	}
+
+	/** Start Getter/Setter methods */
+	public int getPercentile() {
+		return this.percentile;
+	}
+	/** End Getter/Setter methods */
+
+}
@@ -17,6 +17,7 @@
 package com.flipkart.phantom.task.impl;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.flipkart.phantom.task.spi.Decoder;
@@ -37,6 +38,9 @@ public abstract class HystrixTaskHandler extends TaskHandler {
     /** The default executor timeout in millis*/
     public static final int DEFAULT_EXECUTOR_TIMEOUT = 1000;
 
+    /** The default time in millis for which requests are collapsed into a batch*/
+    public static final int DEFAULT_BATCH_WINDOW = 10;
+
     /**
      * These can be used to limit the maximum concurrent requests for a Proxy or a command
      * The key will be the Proxy name optionally overridden by a command name
@@ -65,6 +69,63 @@ public abstract class HystrixTaskHandler extends TaskHandler {
      */
     protected Map<String,Integer> executorTimeouts = new HashMap<String, Integer>();
 
+    /**
+     * Map of command names and the max number of concurrent requests to the command that are collapsed into a single call to
+     * {@link #executeBatch(TaskContext, String, List, List)}. Requests to commands that are not in this map are not collapsed.
+     */
+    private Map<String,Integer> batchSizes = new HashMap<String, Integer>();
+
+    /** The max time in millis for which requests wait to be collapsed into a batch, before the batch is executed*/
+    private int batchWindow = DEFAULT_BATCH_WINDOW;
+
+    /**
+     * Flag to run the commands of this handler on the thread pool shared by all such handlers, instead of a thread pool per proxy name or the
+     * caller's thread. Overrides the {@link #getIsolationStrategy()}. The concurrent pool sizes of the handler are then enforced as limits on
+     * concurrent requests, and executor timeouts and fallbacks apply as with thread isolation
+     */
+    private boolean sharedThreadPool;
+
+    /**
+     * Flag to adapt the limit on concurrent requests of each pool to the observed latency and errors of its requests. The concurrent pool sizes
+     * of the handler are then the max limits, and requests over the current limit are rejected with the fallback
+     */
+    private boolean adaptiveConcurrency;
+
+    /** The latency in millis beyond which requests reduce the adaptive concurrency limit. Half the executor timeout of the command if not set*/
+    private int adaptiveLatencyThreshold;
+
+    /**
+     * Flag to admit requests to the pools of this handler as per their priority - see {@link PriorityAdmission}. As a pool saturates, low priority
+     * requests are then shed first with the fallback, and capacity is reserved for high priority requests
+     */
+    private boolean priorityShedding;
+
+    /**
+     * Map of command names and their priority i.e. HIGH, NORMAL or LOW. Commands that are not in this map are of NORMAL priority. The priority
+     * of a request may be overridden using the {@link PriorityAdmission#PRIORITY_PARAM} param
+     */
+    private Map<String,String> commandPriorities = new HashMap<String, String>();
+
+    /** The share of a pool that low priority requests may use, and the share reserved for high priority requests*/
+    private double lowPriorityShare = PriorityAdmission.DEFAULT_LOW_PRIORITY_SHARE;
+    private double highPriorityReserve = PriorityAdmission.DEFAULT_HIGH_PRIORITY_RESERVE;
+
+    /**
+     * Flag to queue requests to the thread pools of this handler per client and dispatch them in deficit round-robin order - see {@link FairQueue}.
+     * A client that sends many requests then cannot starve the others of a shared pool. Applies to requests received by the command protocol
+     * channel handlers, and not to semaphore isolated commands
+     */
+    private boolean fairQueuing;
+
+    /**
+     * Map of client ids and their weights i.e. the number of their requests dispatched per round-robin turn. Clients that are not in this map
+     * have a weight of 1
+     */
+    private Map<String,Integer> clientWeights = new HashMap<String, Integer>();
+
+    /** The max number of requests waiting in the fair queue of a pool, requests over it are rejected*/
+    private int fairQueueSize = FairQueue.DEFAULT_QUEUE_SIZE;
+
     /**
      * This method will be executed if execute() fails.
      * @param command the command used
@@ -88,6 +149,22 @@ public abstract class HystrixTaskHandler extends TaskHandler {
         return null;
     }
 
+    /**
+     * Executes a batch of requests to the specified command in one go, say using a multi-get API of the backend. Called instead of
+     * {@link #execute(TaskContext, String, Map, byte[])} for commands that have a batch size configured in {@link #getBatchSizes()}, with the
+     * requests that were received concurrently. The default implementation is not supported, and commands that have a batch size configured fail
+     * to initialize unless this method is overriden.
+     * @param taskContext the TaskContext instance
+     * @param command the command used
+     * @param params the params of each request in the batch
+     * @param data the data of each request in the batch, entries may be null
+     * @return the results of the requests, in the order of the requests
+     * @throws RuntimeException if the batch failed - all requests in the batch fail with it
+     */
+    public List<TaskResult<byte[]>> executeBatch(TaskContext taskContext, String command, List<Map<String,String>> params, List<byte[]> data) throws RuntimeException {
+        throw new UnsupportedOperationException("Batch execution is not supported by TaskHandler : " + this.getName());
+    }
+
     /**
      * Return the ExecutionIsolationStrategy. Thread is the default.
      */
@@ -123,5 +200,104 @@ public abstract class HystrixTaskHandler extends TaskHandler {
     public void setExecutorTimeouts(Map<String, Integer> executorTimeouts) {
         this.executorTimeouts = executorTimeouts;
     }
+    /**
+     * Returns the max number of requests collapsed into a batch for the specified command
+     * @param commandName the command name
+     * @return the batch size, 0 if requests to the command are not collapsed
+     */
+    public int getBatchSize(String commandName) {
+        Integer batchSize = this.getBatchSizes().get(commandName);
+        return batchSize != null ? batchSize : 0;
+    }
+    public Map<String, Integer> getBatchSizes() {
+        return this.batchSizes;
+    }
+    public void setBatchSizes(Map<String, Integer> batchSizes) {
+        this.batchSizes = batchSizes;
+    }
+    public boolean isSharedThreadPool() {
+        return this.sharedThreadPool;
+    }
+    public void setSharedThreadPool(boolean sharedThreadPool) {
+        this.sharedThreadPool = sharedThreadPool;
+    }
+    public boolean isAdaptiveConcurrency() {
+        return this.adaptiveConcurrency;
+    }
+    public void setAdaptiveConcurrency(boolean adaptiveConcurrency) {
+        this.adaptiveConcurrency = adaptiveConcurrency;
+    }
+    public int getAdaptiveLatencyThreshold() {
+        return this.adaptiveLatencyThreshold;
+    }
+    public void setAdaptiveLatencyThreshold(int adaptiveLatencyThreshold) {
+        this.adaptiveLatencyThreshold = adaptiveLatencyThreshold;
+    }
+    /**
+     * Returns the priority of the specified command
+     * @param commandName the command name
+     * @return the Priority of the command, NORMAL if none or an invalid priority is configured
+     */
+    public PriorityAdmission.Priority getPriority(String commandName) {
+        String priority = this.getCommandPriorities().get(commandName);
+        return priority != null ? PriorityAdmission.toPriority(priority, PriorityAdmission.Priority.NORMAL) : PriorityAdmission.Priority.NORMAL;
+    }
+    public boolean isPriorityShedding() {
+        return this.priorityShedding;
+    }
+    public void setPriorityShedding(boolean priorityShedding) {
+        this.priorityShedding = priorityShedding;
+    }
+    public Map<String, String> getCommandPriorities() {
+        return this.commandPriorities;
+    }
+    public void setCommandPriorities(Map<String, String> commandPriorities) {
+        this.commandPriorities = commandPriorities;
+    }
+    public double getLowPriorityShare() {
+        return this.lowPriorityShare;
+    }
+    public void setLowPriorityShare(double lowPriorityShare) {
+        this.lowPriorityShare = lowPriorityShare;
+    }
+    public double getHighPriorityReserve() {
+        return this.highPriorityReserve;
+    }
+    public void setHighPriorityReserve(double highPriorityReserve) {
+        this.highPriorityReserve = highPriorityReserve;
+    }
+    /**
+     * Returns the weight of the specified client
+     * @param clientId the client id
+     * @return the weight of the client, 1 if none is configured
+     */
+    public int getClientWeight(String clientId) {
+        Integer weight = this.getClientWeights().get(clientId);
+        return weight != null ? weight : 1;
+    }
+    public boolean isFairQueuing() {
+        return this.fairQueuing;
+    }
+    public void setFairQueuing(boolean fairQueuing) {
+        this.fairQueuing = fairQueuing;
+    }
+    public Map<String, Integer> getClientWeights() {
+        return this.clientWeights;
+    }
+    public void setClientWeights(Map<String, Integer> clientWeights) {
+        this.clientWeights = clientWeights;
+    }
+    public int getFairQueueSize() {
+        return this.fairQueueSize;
+    }
+    public void setFairQueueSize(int fairQueueSize) {
+        this.fairQueueSize = fairQueueSize;
+    }
+    public int getBatchWindow() {
+        return this.batchWindow;
+    }
+    public void setBatchWindow(int batchWindow) {
+        this.batchWindow = batchWindow;
+    }
     /** End Getter/Setter methods */
 }
\ No newline at end of file
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.flipkart.phantom.task.impl.metrics.ProxyMetrics;
+
+/**
+ * <code>PriorityAdmission</code> admits requests to a pool as per their {@link Priority} so that, as the pool saturates, low priority requests are shed
+ * first and high priority requests have capacity reserved for them. Low priority requests are admitted only while the number of in-flight requests on
+ * the pool is under the low priority share of the pool, normal priority requests only while it is under the pool size less the capacity reserved for
+ * high priority requests, and high priority requests are always admitted i.e. are limited only by the pool itself. Requests are admitted before
+ * they are submitted to the pool, and those that are not admitted are rejected by the caller.
+ * There is one instance per pool name, shared by all commands and handler versions that execute on the pool, with the settings of the command
+ * that last got it. In-flight, queued (admitted but not yet running) and shed counts of each priority are recorded as {@link ProxyMetrics} in the
+ * {@value PriorityAdmission#METRICS_GROUP} group.
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class PriorityAdmission {
+
+	/** The metrics group and metric names*/
+	public static final String METRICS_GROUP = "PriorityAdmission";
+	public static final String IN_FLIGHT = "inFlight";
+	public static final String QUEUE_SIZE = "queueSize";
+	public static final String SHED_COUNT = "shedCount";
+
+	/** The param that specifies the priority of a request, overriding that of the command*/
+	public static final String PRIORITY_PARAM = "priority";
+
+	/** The default share of a pool that low priority requests may use*/
+	public static final double DEFAULT_LOW_PRIORITY_SHARE = 0.5;
+
+	/** The default share of a pool reserved for high priority requests*/
+	public static final double DEFAULT_HIGH_PRIORITY_RESERVE = 0.2;
+
+	/** The priority classes of requests*/
+	public enum Priority {
+		HIGH, NORMAL, LOW
+	}
+
+	/** The instances, keyed by pool name without the handler version*/
+	private static final ConcurrentMap<String, PriorityAdmission> INSTANCES = new ConcurrentHashMap<String, PriorityAdmission>();
+
+	/** The max in-flight requests on the pool at which normal and low priority requests are admitted, as per the current settings*/
+	private volatile int normalPriorityLimit;
+	private volatile int lowPriorityLimit;
+
+	/** The number of in-flight requests on the pool*/
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	/** The metrics of each priority, indexed by ordinal. The in-flight metric is the count of in-flight requests of the priority*/
+	private final ProxyMetrics[] metrics = new ProxyMetrics[Priority.values().length];
+
+	/**
+	 * Constructor for this class
+	 * @param poolName the pool name
+	 */
+	private PriorityAdmission(String poolName) {
+		for (Priority priority : Priority.values()) {
+			this.metrics[priority.ordinal()] = ProxyMetrics.getInstance(METRICS_GROUP, poolName + "." + priority.name());
+		}
+	}
+
+	/**
+	 * Returns the PriorityAdmission of the specified pool, creating it if required, and applies the specified settings to it. The pool name must not
+	 * include the handler version, so that a handler that is reloaded shares the instance, and the count of in-flight requests, of its previous version
+	 * @param poolName the pool name
+	 * @param poolSize the max concurrent requests on the pool
+	 * @param lowPriorityShare the share of the pool that low priority requests may use
+	 * @param highPriorityReserve the share of the pool reserved for high priority requests
+	 * @return the PriorityAdmission of the pool
+	 */
+	public static PriorityAdmission getInstance(String poolName, int poolSize, double lowPriorityShare, double highPriorityReserve) {
+		PriorityAdmission priorityAdmission = INSTANCES.get(poolName);
+		if (priorityAdmission == null) {
+			INSTANCES.putIfAbsent(poolName, new PriorityAdmission(poolName));
+			priorityAdmission = INSTANCES.get(poolName);
+		}
+		priorityAdmission.configure(poolSize, lowPriorityShare, highPriorityReserve);
+		return priorityAdmission;
+	}
+
+	/**
+	 * Returns the priority of a request, as specified by the {@link #PRIORITY_PARAM} param
+	 * @param params the request params, may be null
+	 * @param defaultPriority the priority of the command, used if the request does not specify a valid priority
+	 * @return the priority of the request
+	 */
+	public static Priority getPriority(Map<String,String> params, Priority defaultPriority) {
+		String priority = (params == null ? null : params.get(PRIORITY_PARAM));
+		return priority == null ? defaultPriority : PriorityAdmission.toPriority(priority, defaultPriority);
+	}
+
+	/**
+	 * Returns the priority of the specified name, ignoring case
+	 * @param name the priority name i.e. high, normal or low
+	 * @param defaultPriority the priority returned if the name is not valid
+	 * @return the Priority
+	 */
+	public static Priority toPriority(String name, Priority defaultPriority) {
+		for (Priority priority : Priority.values()) {
+			if (priority.name().equalsIgnoreCase(name)) {
+				return priority;
+			}
+		}
+		return defaultPriority;
+	}
+
+	/**
+	 * Admits a request of the specified priority if the pool has capacity for it. The request is counted as queued until it is started
+	 * @param priority the priority of the request
+	 * @return true if the request was admitted, false if it must be shed
+	 */
+	public boolean tryAcquire(Priority priority) {
+		int limit = (priority == Priority.HIGH ? Integer.MAX_VALUE : (priority == Priority.NORMAL ? this.normalPriorityLimit : this.lowPriorityLimit));
+		while (true) {
+			int inFlight = this.inFlight.get();
+			if (inFlight >= limit) {
+				this.metrics[priority.ordinal()].increment(SHED_COUNT);
+				return false;
+			}
+			if (this.inFlight.compareAndSet(inFlight, inFlight + 1)) {
+				this.metrics[priority.ordinal()].increment(IN_FLIGHT);
+				this.metrics[priority.ordinal()].increment(QUEUE_SIZE);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Marks an admitted request of the specified priority as started i.e. it is no longer queued
+	 * @param priority the priority of the request
+	 */
+	public void started(Priority priority) {
+		this.metrics[priority.ordinal()].add(QUEUE_SIZE, -1);
+	}
+
+	/**
+	 * Releases the capacity used by an admitted request of the specified priority
+	 * @param priority the priority of the request
+	 * @param started true if the request was started, false if it was released while queued
+	 */
+	public void release(Priority priority, boolean started) {
+		this.inFlight.decrementAndGet();
+		this.metrics[priority.ordinal()].add(IN_FLIGHT, -1);
+		if (!started) {
+			this.metrics[priority.ordinal()].add(QUEUE_SIZE, -1);
+		}
+	}
+
+	/**
+	 * Helper method to compute the limits of normal and low priority requests as per the specified settings
+	 */
+	private synchronized void configure(int poolSize, double lowPriorityShare, double highPriorityReserve) {
+		int normalPriorityLimit = Math.max((int) Math.ceil(poolSize * (1 - highPriorityReserve)), 1);
+		this.lowPriorityLimit = Math.max(Math.min((int) Math.ceil(poolSize * lowPriorityShare), normalPriorityLimit), 1);
+		this.normalPriorityLimit = normalPriorityLimit;
+	}
+
+	/** Start Getter/Setter methods */
+	public int getNormalPriorityLimit() {
+		return this.normalPriorityLimit;
+	}
+	public int getLowPriorityLimit() {
+		return this.lowPriorityLimit;
+	}
+	public int getInFlight() {
+		return this.inFlight.get();
+	}
+	/** End Getter/Setter methods */
+
+}
@@ -3,8 +3,71 @@ package com.flipkart.phantom.task.impl;
 
 import java.util.Map;
 
+import com.flipkart.phantom.task.impl.cache.ResultCache;
+import com.flipkart.phantom.task.spi.TaskContext;
+
 public abstract class RequestCacheableHystrixTaskHandler extends HystrixTaskHandler{
 
+    /** The default max size in bytes of the result data cached by the node level result cache*/
+    public static final long DEFAULT_RESULT_CACHE_MAX_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * The time-to-live in milliseconds of results in the node level result cache, shared by all requests to this handler. Results are cached
+     * against {@link #getCacheKey(Map, byte[])} and are served without invoking the handler until they expire. Only successful results whose data
+     * is a byte array, or that have no data, are cached. The node level cache is disabled when this is zero, which is the default
+     */
+    private long resultCacheTTL;
+
+    /** The time in milliseconds for which expired results are served while a single refresh of the result is in progress*/
+    private long resultCacheStaleTTL;
+
+    /** The max size in bytes of the result data cached, least recently used results are evicted beyond this*/
+    private long resultCacheMaxBytes = DEFAULT_RESULT_CACHE_MAX_BYTES;
+
+    /**
+     * Flag to enable single-flight execution - identical requests, as identified by {@link #getCacheKey(Map, byte[])}, that arrive while one of them
+     * is executing share its result instead of executing again. Disabled by default
+     */
+    private boolean singleFlight;
+
+    /** The node level result cache, created when first used*/
+    private volatile ResultCache resultCache;
+
+    /**
+     * Overriden super class method. Discards results cached before this handler was (re)initialized
+     * @see com.flipkart.phantom.task.impl.TaskHandler#init(com.flipkart.phantom.task.spi.TaskContext)
+     */
+    @Override
+    public void init(TaskContext taskContext) throws Exception {
+        ResultCache resultCache = this.resultCache;
+        this.resultCache = null;
+        if (resultCache != null) {
+            resultCache.invalidateAll();
+        }
+        super.init(taskContext);
+    }
+
+    /**
+     * Returns the node level result cache of this handler
+     * @return the ResultCache, or null if the node level cache is disabled
+     */
+    public ResultCache getResultCache() {
+        if (this.resultCacheTTL <= 0) {
+            return null;
+        }
+        ResultCache resultCache = this.resultCache;
+        if (resultCache == null) {
+            synchronized (this) {
+                resultCache = this.resultCache;
+                if (resultCache == null) {
+                    resultCache = new ResultCache(this.getName(), this.resultCacheTTL, this.resultCacheStaleTTL, this.resultCacheMaxBytes);
+                    this.resultCache = resultCache;
+                }
+            }
+        }
+        return resultCache;
+    }
+
     /**
      * This method returns a valid {@link com.netflix.hystrix.HystrixCommand} cache key
      * that is used to cache futures of requests, thereby eliminating redundant requests
@@ -19,4 +82,31 @@ public abstract class RequestCacheableHystrixTaskHandler extends HystrixTaskHand
         return null;
     }
 
+    /** Getter/Setter methods */
+    public long getResultCacheTTL() {
+        return this.resultCacheTTL;
+    }
+    public void setResultCacheTTL(long resultCacheTTL) {
+        this.resultCacheTTL = resultCacheTTL;
+    }
+    public long getResultCacheStaleTTL() {
+        return this.resultCacheStaleTTL;
+    }
+    public void setResultCacheStaleTTL(long resultCacheStaleTTL) {
+        this.resultCacheStaleTTL = resultCacheStaleTTL;
+    }
+    public boolean isSingleFlight() {
+        return this.singleFlight;
+    }
+    public void setSingleFlight(boolean singleFlight) {
+        this.singleFlight = singleFlight;
+    }
+    public long getResultCacheMaxBytes() {
+        return this.resultCacheMaxBytes;
+    }
+    public void setResultCacheMaxBytes(long resultCacheMaxBytes) {
+        this.resultCacheMaxBytes = resultCacheMaxBytes;
+    }
+    /** End Getter/Setter methods */
+
 }
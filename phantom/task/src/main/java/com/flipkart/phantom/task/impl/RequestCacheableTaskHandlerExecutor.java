@@ -16,9 +16,12 @@
 
 package com.flipkart.phantom.task.impl;
 
+import com.flipkart.phantom.task.impl.cache.ResultCache;
 import com.flipkart.phantom.task.spi.Decoder;
 import com.flipkart.phantom.task.spi.TaskContext;
 import com.flipkart.phantom.task.spi.TaskRequestWrapper;
+import com.flipkart.phantom.task.spi.TaskResult;
+import com.netflix.hystrix.strategy.concurrency.HystrixRequestContext;
 
 /**
  * <code> RequestCacheableTaskHandlerExecutor </code> is a {@link TaskHandlerExecutor} that implements
@@ -30,9 +33,20 @@ import com.flipkart.phantom.task.spi.TaskRequestWrapper;
  * The fundamental idea behind Request caching is to eliminate redundant outbound requests in the context of a single
  * Inbound request. Eg: a servlet executing on a single servlet container thread can eliminate redundant requests to
  * backend services in the context of a single servlet container request.
+ *
+ * Additionally, results are cached across inbound requests in the node level {@link ResultCache} of the handler, when one is configured. The cache
+ * is looked up before the command is dispatched for execution, see {@link #getCachedResult()}. Only successful results whose data is a byte array, 
+ * or that have no data, are cached - see {@link ResultCache#isCacheable(TaskResult)}.
  */
 public class RequestCacheableTaskHandlerExecutor extends TaskHandlerExecutor{
 
+    /** The Hystrix Setter this executor was created with, used to create executors that refresh stale cached results. May be null*/
+    private Setter setter;
+
+    /** The key of the request in the result cache, resolved on first use. Null if the request is not cached*/
+    private String resultCacheKey;
+    private boolean resultCacheKeyResolved;
+
     protected RequestCacheableTaskHandlerExecutor(RequestCacheableHystrixTaskHandler taskHandler, TaskContext taskContext,
                                                   String commandName, int timeout, String threadPoolName, int threadPoolSize,
                                                   TaskRequestWrapper taskRequestWrapper) {
@@ -59,6 +73,103 @@ public class RequestCacheableTaskHandlerExecutor extends TaskHandlerExecutor{
         super(taskHandler, taskContext, commandName, taskRequestWrapper, concurrentRequestSize, decoder);
     }
 
+    /**
+     * Constructor for {@link RequestCacheableHystrixTaskHandler} using the Hystrix Setter of a {@link TaskExecutionPlan}
+     * @param taskHandler The taskHandler to be wrapped
+     * @param taskContext The context (Unique context required by Handlers to communicate with the container.)
+     * @param commandName name of the command
+     * @param setter the pre-built Hystrix Setter
+     * @param taskRequestWrapper requestWrapper containing the data and the parameters
+     * @param decoder Decoder sent by the Client, may be null
+     */
+    @SuppressWarnings("rawtypes")
+    protected RequestCacheableTaskHandlerExecutor(RequestCacheableHystrixTaskHandler taskHandler, TaskContext taskContext,
+                                                  String commandName, Setter setter, TaskRequestWrapper taskRequestWrapper, Decoder decoder) {
+        super(taskHandler, taskContext, commandName, setter, taskRequestWrapper, decoder);
+        this.setter = setter;
+    }
+
+    /**
+     * Overriden super class method. Returns the result from the node level result cache of the handler if one is cached, scheduling a refresh
+     * if the cached result is stale.
+     * @see com.flipkart.phantom.task.impl.TaskHandlerExecutor#lookupCachedResult()
+     */
+    @Override
+    protected TaskResult lookupCachedResult() {
+        String resultCacheKey = this.getResultCacheKey();
+        if (resultCacheKey == null) {
+            return null;
+        }
+        ResultCache resultCache = ((RequestCacheableHystrixTaskHandler) this.taskHandler).getResultCache();
+        ResultCache.CachedResult cachedResult = resultCache.get(resultCacheKey);
+        if (cachedResult == null) {
+            return null;
+        }
+        if (cachedResult.isStale() && this.setter != null) {
+            resultCache.refresh(cachedResult, this.createRefresh());
+        }
+        return cachedResult.getResult();
+    }
+
+    /**
+     * Overriden super class method. Executes the command and caches its result in the node level result cache of the handler, if it is cacheable
+     * and was not a fallback returned for a rejected request
+     * @see com.flipkart.phantom.task.impl.TaskHandlerExecutor#run()
+     */
+    @Override
+    protected TaskResult run() throws Exception {
+        TaskResult result = super.run();
+        String resultCacheKey = this.getResultCacheKey();
+        if (resultCacheKey != null && this.isHandlerExecuted()) {
+            ((RequestCacheableHystrixTaskHandler) this.taskHandler).getResultCache().put(resultCacheKey, result);
+        }
+        return result;
+    }
+
+    /**
+     * Helper method to return the key of the request in the result cache. Requests that use a Decoder or stream their data are not cached
+     * @return the result cache key, null if the handler has no result cache or the request is not cached
+     */
+    private String getResultCacheKey() {
+        if (!this.resultCacheKeyResolved) {
+            if (((RequestCacheableHystrixTaskHandler) this.taskHandler).getResultCache() != null && this.decoder == null 
+                    && this.taskRequestWrapper.getDataStream() == null) {
+                String cacheKey = this.getCacheKey();
+                this.resultCacheKey = (cacheKey == null ? null : this.command + ":" + cacheKey);
+            }
+            this.resultCacheKeyResolved = true;
+        }
+        return this.resultCacheKey;
+    }
+
+    /**
+     * Helper method to create the task that refreshes the cached result of this executor's request by executing the command again
+     */
+    private Runnable createRefresh() {
+        return new Runnable() {
+            public void run() {
+                // created only when the refresh runs, as stale hits of a result that is already being refreshed do not run it
+                RequestCacheableTaskHandlerExecutor executor = createRefreshExecutor();
+                // the refresh is not part of any inbound request, so it gets a request context of its own
+                HystrixRequestContext requestContext = HystrixRequestContext.initializeContext();
+                try {
+                    executor.execute();
+                } finally {
+                    requestContext.shutdown();
+                }
+            }
+        };
+    }
+
+    /**
+     * Helper method to create the executor that refreshes the cached result. It is executed directly, and not dispatched, so that the cached result
+     * is not looked up
+     */
+    private RequestCacheableTaskHandlerExecutor createRefreshExecutor() {
+        return new RequestCacheableTaskHandlerExecutor((RequestCacheableHystrixTaskHandler) this.taskHandler, this.taskContext, this.command,
+                this.setter, this.taskRequestWrapper, null);
+    }
+
     /**
      * This method returns a valid {@link com.netflix.hystrix.HystrixCommand} cache key
      * from the underlying {@link HystrixTaskHandler} that is used to cache futures of requests,
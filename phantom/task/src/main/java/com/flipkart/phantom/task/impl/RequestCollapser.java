@@ -0,0 +1,211 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.flipkart.phantom.task.impl.metrics.ProxyMetrics;
+import com.flipkart.phantom.task.spi.TaskContext;
+import com.flipkart.phantom.task.spi.TaskResult;
+
+/**
+ * <code>RequestCollapser</code> collapses concurrent requests to a command of a {@link HystrixTaskHandler} into a single call to
+ * {@link HystrixTaskHandler#executeBatch(TaskContext, String, List, List)} and fans the results back to the requests.
+ * The first request of a batch leads it - it waits for the batch window or until the batch is full, whichever is earlier, and then executes the
+ * batch on its own thread while the other requests of the batch wait for the results. Batches are therefore executed on the threads (and within
+ * the isolation limits) of the Hystrix command that executes the leading request, and no threads of its own are used. Requests are hence not
+ * collapsed for semaphore isolated commands, as the leading request would hold up the calling thread for the batch window.
+ * The other requests wait for the results for at most the batch window and the execution timeout of the command.
+ * Batch and collapsed request counts are recorded as {@link ProxyMetrics} in the {@value RequestCollapser#METRICS_GROUP} group.
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class RequestCollapser {
+
+	/** The metrics group and metric names*/
+	public static final String METRICS_GROUP = "RequestCollapser";
+	public static final String BATCH_COUNT = "batchCount";
+	public static final String COLLAPSED_REQUEST_COUNT = "collapsedRequestCount";
+
+	/** The TaskHandler and command whose requests are collapsed*/
+	private final HystrixTaskHandler taskHandler;
+	private final String command;
+
+	/** The max number of requests in a batch*/
+	private final int maxBatchSize;
+
+	/** The max time in nanos for which the leading request of a batch waits for the batch to fill*/
+	private final long batchWindowNanos;
+
+	/** The max time in nanos for which the other requests of a batch wait for its results*/
+	private final long resultTimeoutNanos;
+
+	/** The batch that requests are currently added to, null if there is none*/
+	private Batch currentBatch;
+
+	/** The lock guarding the current batch and the condition signalled when it is full*/
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition batchFull = this.lock.newCondition();
+
+	/** The metrics of this collapser*/
+	private final ProxyMetrics metrics;
+
+	/**
+	 * Constructor for this class
+	 * @param taskHandler the TaskHandler that executes the batches
+	 * @param command the command whose requests are collapsed
+	 * @param maxBatchSize the max number of requests in a batch
+	 * @param batchWindow the max time in millis for which requests wait to be collapsed into a batch
+	 * @param executionTimeout the execution timeout in millis of the command
+	 */
+	public RequestCollapser(HystrixTaskHandler taskHandler, String command, int maxBatchSize, long batchWindow, long executionTimeout) {
+		this.taskHandler = taskHandler;
+		this.command = command;
+		this.maxBatchSize = maxBatchSize;
+		this.batchWindowNanos = TimeUnit.MILLISECONDS.toNanos(batchWindow);
+		this.resultTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(batchWindow + executionTimeout);
+		this.metrics = ProxyMetrics.getInstance(METRICS_GROUP, taskHandler.getName() + "." + command);
+	}
+
+	/**
+	 * Executes the specified request as part of a batch, waiting for the batch to be executed
+	 * @param taskContext the TaskContext instance
+	 * @param params the request params
+	 * @param data the request data, may be null
+	 * @return the result of the request, may be null
+	 * @throws RuntimeException if the batch failed, or the wait for its results timed out or was interrupted
+	 */
+	public TaskResult<byte[]> execute(TaskContext taskContext, Map<String,String> params, byte[] data) throws RuntimeException {
+		Batch batch;
+		int index;
+		boolean leader = false;
+		this.lock.lock();
+		try {
+			batch = this.currentBatch;
+			if (batch == null) {
+				batch = new Batch();
+				this.currentBatch = batch;
+				leader = true;
+			}
+			index = batch.add(params, data);
+			if (batch.params.size() >= this.maxBatchSize) {
+				this.currentBatch = null;
+				this.batchFull.signalAll();
+			}
+			if (leader) {
+				this.awaitBatch(batch);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+		if (leader) {
+			this.executeBatch(taskContext, batch);
+		} else {
+			try {
+				if (!batch.completion.await(this.resultTimeoutNanos, TimeUnit.NANOSECONDS)) {
+					throw new RuntimeException("Timed out waiting for batch of command : " + this.command);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while waiting for batch of command : " + this.command, e);
+			}
+		}
+		return batch.getResult(index);
+	}
+
+	/**
+	 * Helper method to wait, holding the lock, until the specified batch is full or the batch window has elapsed, and to close the batch.
+	 * The batch is closed even if the wait is interrupted, as the other requests in it wait for its results
+	 */
+	private void awaitBatch(Batch batch) {
+		long remainingNanos = this.batchWindowNanos;
+		try {
+			while (this.currentBatch == batch && remainingNanos > 0) {
+				remainingNanos = this.batchFull.awaitNanos(remainingNanos);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (this.currentBatch == batch) {
+			this.currentBatch = null;
+		}
+	}
+
+	/**
+	 * Helper method to execute the specified closed batch and release the requests waiting for its results. Errors fail the batch and are
+	 * rethrown to the leading request
+	 */
+	private void executeBatch(TaskContext taskContext, Batch batch) {
+		this.metrics.increment(BATCH_COUNT);
+		this.metrics.add(COLLAPSED_REQUEST_COUNT, batch.params.size());
+		try {
+			List<TaskResult<byte[]>> results = this.taskHandler.executeBatch(taskContext, this.command, batch.params, batch.data);
+			if (results == null || results.size() != batch.params.size()) {
+				throw new IllegalStateException("Batch of command : " + this.command + " returned " + (results == null ? 0 : results.size())
+						+ " results for " + batch.params.size() + " requests");
+			}
+			batch.results = results;
+		} catch (RuntimeException e) {
+			batch.error = e;
+		} catch (Error e) {
+			batch.error = e;
+			throw e;
+		} finally {
+			batch.completion.countDown();
+		}
+	}
+
+	/**
+	 * The requests collapsed into a batch and their results. Requests are added holding the collapser lock, results are published by the
+	 * completion latch
+	 */
+	private static class Batch {
+		private final List<Map<String,String>> params = new ArrayList<Map<String,String>>();
+		private final List<byte[]> data = new ArrayList<byte[]>();
+		private final CountDownLatch completion = new CountDownLatch(1);
+		private List<TaskResult<byte[]>> results;
+		private Throwable error;
+		int add(Map<String,String> params, byte[] data) {
+			this.params.add(params);
+			this.data.add(data);
+			return this.params.size() - 1;
+		}
+		TaskResult<byte[]> getResult(int index) {
+			if (this.error != null) {
+				// each request gets its own exception, with the batch failure as the cause
+				throw new RuntimeException("Batch execution failed : " + this.error.getMessage(), this.error);
+			}
+			return this.results.get(index);
+		}
+	}
+
+	/** Start Getter/Setter methods */
+	public String getCommand() {
+		return this.command;
+	}
+	public int getMaxBatchSize() {
+		return this.maxBatchSize;
+	}
+	/** End Getter/Setter methods */
+
+}
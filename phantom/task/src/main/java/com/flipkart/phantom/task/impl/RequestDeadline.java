@@ -0,0 +1,177 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl;
+
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.flipkart.phantom.task.impl.metrics.ProxyMetrics;
+import com.flipkart.phantom.task.spi.RequestWrapper;
+import com.google.common.base.Optional;
+
+/**
+ * <code>RequestDeadline</code> has helper methods for propagating the deadline of a request end-to-end. Clients specify a deadline as the
+ * {@value RequestDeadline#DEADLINE_PARAM} param (absolute time in epoch millis) or a budget as the {@value RequestDeadline#BUDGET_PARAM} param
+ * or {@value RequestDeadline#BUDGET_HEADER} header (millis remaining when the request is received). The deadline is held on the {@link RequestWrapper}
+ * and requests that have expired are shed before they are queued for execution, and again before they are executed.
+ * The deadline of the request being executed is bound to the executing thread, so that nested calls made via the TaskContext inherit it, and is
+ * forwarded as the remaining budget to upstream services.
+ * Counts of expired requests are recorded as {@link ProxyMetrics} in the {@value RequestDeadline#METRICS_GROUP} group.
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class RequestDeadline {
+
+	/** The param and header names of the deadline and budget*/
+	public static final String DEADLINE_PARAM = "deadline";
+	public static final String BUDGET_PARAM = "budget";
+	public static final String BUDGET_HEADER = "X-Request-Budget";
+
+	/** The metrics group and metric name*/
+	public static final String METRICS_GROUP = "RequestDeadline";
+	public static final String EXPIRED_COUNT = "expiredCount";
+
+	/** The message of results and exceptions of expired requests*/
+	public static final String EXPIRED_MESSAGE = "Request deadline expired";
+
+	/** The deadline of the request being executed by the current thread*/
+	private static final ThreadLocal<Long> CURRENT_DEADLINE = new ThreadLocal<Long>();
+
+	/**
+	 * Returns the deadline specified by the deadline or budget params
+	 * @param params the request params, may be null
+	 * @param receiveTime the time at which the request was received, the budget is counted from it
+	 * @return the deadline in epoch millis, absent if none was specified or the specified value is invalid
+	 */
+	public static Optional<Long> fromParams(Map<String,String> params, long receiveTime) {
+		if (params == null) {
+			return Optional.absent();
+		}
+		String deadline = params.get(DEADLINE_PARAM);
+		if (deadline != null) {
+			return RequestDeadline.parse(deadline, 0);
+		}
+		return RequestDeadline.fromBudget(params.get(BUDGET_PARAM), receiveTime);
+	}
+
+	/**
+	 * Returns the deadline specified by the budget
+	 * @param budget the budget in millis, may be null
+	 * @param receiveTime the time at which the request was received, the budget is counted from it
+	 * @return the deadline in epoch millis, absent if the budget is null or invalid
+	 */
+	public static Optional<Long> fromBudget(String budget, long receiveTime) {
+		return budget == null ? Optional.<Long>absent() : RequestDeadline.parse(budget, receiveTime);
+	}
+
+	/**
+	 * Returns the earlier of the specified deadlines
+	 * @param deadline a deadline, may be absent
+	 * @param otherDeadline another deadline, may be absent
+	 * @return the earlier deadline, absent if both are absent
+	 */
+	public static Optional<Long> earliest(Optional<Long> deadline, Optional<Long> otherDeadline) {
+		if (!deadline.isPresent()) {
+			return otherDeadline;
+		}
+		if (!otherDeadline.isPresent()) {
+			return deadline;
+		}
+		return deadline.get() <= otherDeadline.get() ? deadline : otherDeadline;
+	}
+
+	/**
+	 * Returns the time remaining till the deadline of the specified request
+	 * @param requestWrapper the request
+	 * @return the remaining time in millis, zero if expired and {@link Long#MAX_VALUE} if the request has no deadline
+	 */
+	public static long getRemaining(RequestWrapper requestWrapper) {
+		Optional<Long> deadline = requestWrapper.getDeadline();
+		return deadline.isPresent() ? Math.max(deadline.get() - System.currentTimeMillis(), 0) : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Checks if the deadline of the specified request has expired, recording the expiry against the specified name
+	 * @param requestWrapper the request
+	 * @param name the name of the handler or command the request is for, used as the metrics name
+	 * @return true if the request has expired and must be shed
+	 */
+	public static boolean isExpired(RequestWrapper requestWrapper, String name) {
+		if (RequestDeadline.getRemaining(requestWrapper) > 0) {
+			return false;
+		}
+		ProxyMetrics.getInstance(METRICS_GROUP, name).increment(EXPIRED_COUNT);
+		return true;
+	}
+
+	/**
+	 * Checks if the deadline of the specified request has expired
+	 * @param requestWrapper the request
+	 * @param name the name of the handler or command the request is for, used as the metrics name
+	 * @throws RejectedExecutionException if the request has expired
+	 */
+	public static void checkExpired(RequestWrapper requestWrapper, String name) throws RejectedExecutionException {
+		if (RequestDeadline.isExpired(requestWrapper, name)) {
+			throw new RejectedExecutionException(EXPIRED_MESSAGE + " for : " + name);
+		}
+	}
+
+	/**
+	 * Binds the deadline of the specified request to the current thread. The returned deadline must be restored using
+	 * {@link #restore(Optional)} once the request is executed, as requests may be executed on the thread of the request that calls them
+	 * i.e. when semaphore isolated
+	 * @param requestWrapper the request being executed by the current thread
+	 * @return the deadline that was bound to the current thread, absent if none was bound
+	 */
+	public static Optional<Long> bind(RequestWrapper requestWrapper) {
+		Optional<Long> previousDeadline = RequestDeadline.getCurrent();
+		RequestDeadline.restore(requestWrapper.getDeadline());
+		return previousDeadline;
+	}
+
+	/**
+	 * Restores the specified deadline, returned by {@link #bind(RequestWrapper)}, on the current thread
+	 * @param deadline the deadline to bind to the current thread, absent to unbind the deadline
+	 */
+	public static void restore(Optional<Long> deadline) {
+		if (deadline.isPresent()) {
+			CURRENT_DEADLINE.set(deadline.get());
+		} else {
+			CURRENT_DEADLINE.remove();
+		}
+	}
+
+	/**
+	 * Returns the deadline bound to the current thread
+	 * @return the deadline in epoch millis, absent if none is bound
+	 */
+	public static Optional<Long> getCurrent() {
+		return Optional.fromNullable(CURRENT_DEADLINE.get());
+	}
+
+	/**
+	 * Helper method to parse the specified value as millis and add it to the specified base time
+	 */
+	private static Optional<Long> parse(String value, long baseTime) {
+		try {
+			return Optional.of(baseTime + Long.parseLong(value.trim()));
+		} catch (NumberFormatException e) {
+			return Optional.absent(); // not a valid deadline, ignore it
+		}
+	}
+
+}
@@ -18,15 +18,18 @@ package com.flipkart.phantom.task.impl;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.flipkart.phantom.task.spi.Decoder;
+import com.flipkart.phantom.task.spi.GatherRequest;
+import com.flipkart.phantom.task.spi.GatherResult;
 import com.flipkart.phantom.task.spi.RequestContext;
 import com.flipkart.phantom.task.spi.TaskContext;
 import com.flipkart.phantom.task.spi.TaskRequestWrapper;
@@ -34,6 +37,7 @@ import com.flipkart.phantom.task.spi.TaskResult;
 import com.github.kristofa.brave.Brave;
 import com.github.kristofa.brave.ServerSpan;
 import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ListenableFuture;
 
 /**
  * Default implementation of {@link TaskContext}
@@ -103,23 +107,37 @@ public class TaskContextImpl implements TaskContext {
     }
 
     @Override
-    public Future<TaskResult> executeAsyncCommand(String commandName, byte[] data, Map<String, String> params, Decoder decoder) throws UnsupportedOperationException {
+    public ListenableFuture<TaskResult> executeAsyncCommand(String commandName, byte[] data, Map<String, String> params, Decoder decoder) throws UnsupportedOperationException {
         return this.executorRepository.executeAsyncCommand(commandName, this.createRequestFromParams(commandName, data, params),decoder);
     }
 
     /**
      * Executes a command asynchronously
      */
-    public Future<TaskResult> executeAsyncCommand(String commandName, byte[] data, Map<String, String> params) throws UnsupportedOperationException {
+    public ListenableFuture<TaskResult> executeAsyncCommand(String commandName, byte[] data, Map<String, String> params) throws UnsupportedOperationException {
         return this.executorRepository.executeAsyncCommand(commandName, this.createRequestFromParams(commandName, data, params));
     }
+
+    /**
+     * Interface method implementation. Executes the commands as a scatter-gather on the TaskHandlerExecutorRepository
+     * @see com.flipkart.phantom.task.spi.TaskContext#executeScatterGather(java.util.List, long)
+     */
+    public List<GatherResult> executeScatterGather(List<GatherRequest> requests, long timeout) {
+        List<TaskRequestWrapper> requestWrappers = new ArrayList<TaskRequestWrapper>(requests.size());
+        for (GatherRequest request : requests) {
+            requestWrappers.add(this.createRequestFromParams(request.getCommandName(), request.getData(), request.getParams()));
+        }
+        return this.executorRepository.executeScatterGather(requests, requestWrappers, timeout);
+    }
     
-    /** Creates a TaskRequestWrapper from passed in params and sets the current server span on it*/
+    /** Creates a TaskRequestWrapper from passed in params and sets the current server span and deadline on it*/
     private TaskRequestWrapper createRequestFromParams(String commandName, byte[] data, Map<String, String> params) {
         TaskRequestWrapper taskRequestWrapper = new TaskRequestWrapper();
         taskRequestWrapper.setCommandName(commandName);
         taskRequestWrapper.setData(data);
         taskRequestWrapper.setParams(params);
+        // the deadline is the earlier of the one specified in the params and the one of the request being executed, if any
+        taskRequestWrapper.setDeadline(RequestDeadline.earliest(RequestDeadline.fromParams(params, System.currentTimeMillis()), RequestDeadline.getCurrent()));
     	ServerSpan serverSpan = Brave.getServerSpanThreadBinder().getCurrentServerSpan();
     	if (serverSpan.getSpan() != null) {
     		// set the request context and the current server span on the received request only if a span exists
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.flipkart.phantom.task.spi.Decoder;
+import com.flipkart.phantom.task.spi.TaskContext;
+import com.flipkart.phantom.task.spi.TaskRequestWrapper;
+import com.netflix.hystrix.HystrixCommand.Setter;
+import com.netflix.hystrix.HystrixCommandGroupKey;
+import com.netflix.hystrix.HystrixCommandKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.netflix.hystrix.HystrixCommandProperties.ExecutionIsolationStrategy;
+import com.netflix.hystrix.HystrixThreadPoolKey;
+import com.netflix.hystrix.HystrixThreadPoolProperties;
+
+/**
+ * <code>TaskExecutionPlan</code> is the immutable, pre-resolved execution configuration of a command on a thread pool - the refined Hystrix command
+ * and thread pool names, the execution timeout, the max concurrency and the Hystrix Setter derived from these. Plans are created by the
+ * {@link com.flipkart.phantom.task.impl.registry.TaskHandlerRegistry} when a {@link TaskHandler} is inited and are discarded when it is reloaded.
+ * Executors for a command are created from its plan, without having to resolve the configuration on every request.
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class TaskExecutionPlan {
+
+	/** Logger for this class*/
+	private static final Logger LOGGER = LoggerFactory.getLogger(TaskExecutionPlan.class);
+
+	/** The name, size and queue size of the thread pool shared by handlers that use it*/
+	public static final String SHARED_THREAD_POOL = "SharedThreadPool";
+	public static final int SHARED_THREAD_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+	public static final int SHARED_THREAD_POOL_QUEUE_SIZE = 1000;
+
+	/** The TaskHandler that executes the command*/
+	private final TaskHandler taskHandler;
+
+	/** The refined command and thread pool names*/
+	private final String refinedCommandName;
+	private final String refinedProxyName;
+
+	/** The execution timeout in milliseconds*/
+	private final int executionTimeout;
+
+	/** The thread pool core size or max concurrent requests, as per the isolation strategy*/
+	private final int maxConcurrency;
+
+	/** Flag to indicate semaphore isolation*/
+	private final boolean semaphoreIsolation;
+
+	/** Flag to indicate execution on the shared thread pool*/
+	private final boolean sharedThreadPool;
+
+	/** The limit on concurrent requests to the command on the shared thread pool or the adaptive limit, null if the command is only isolated by Hystrix*/
+	private final ConcurrencyLimit concurrencyLimit;
+
+	/** The Hystrix Setter shared by all executors created from this plan*/
+	private final Setter setter;
+
+	/** The collapser of concurrent requests to the command, null if requests are not collapsed*/
+	private final RequestCollapser requestCollapser;
+
+	/** The priority admission of the pool and the priority of the command, null if requests are not admitted as per priority*/
+	private final PriorityAdmission priorityAdmission;
+	private final PriorityAdmission.Priority priority;
+
+	/** The fair queue of the pool, null if requests are not queued per client*/
+	private final FairQueue fairQueue;
+
+	/**
+	 * Constructor for this class
+	 * @param taskHandler the TaskHandler that executes the command
+	 * @param commandName the command name
+	 * @param proxyName the thread pool name
+	 * @param maxConcurrency the thread pool core size or max concurrent requests
+	 */
+	public TaskExecutionPlan(TaskHandler taskHandler, String commandName, String proxyName, int maxConcurrency) {
+		//Regex matching of threadPoolName and commandName
+		//(Hystrix dashboard requires names to be alphanumeric)
+		this.taskHandler = taskHandler;
+		this.refinedCommandName = TaskExecutionPlan.getRefinedName(commandName);
+		this.refinedProxyName = TaskExecutionPlan.getRefinedName(proxyName);
+		if (!commandName.equals(this.refinedCommandName)) {
+			LOGGER.debug("Command names are not allowed to have Special characters/ whitespaces. Replacing: " + commandName + " with " + this.refinedCommandName);
+		}
+		if (!proxyName.equals(this.refinedProxyName)) {
+			LOGGER.debug("Thread pool names are not allowed to have Special characters/ whitespaces. Replacing: " + proxyName + " with " + this.refinedProxyName);
+		}
+		this.maxConcurrency = maxConcurrency;
+		if (taskHandler instanceof HystrixTaskHandler) {
+			HystrixTaskHandler hystrixTaskHandler = (HystrixTaskHandler) taskHandler;
+			this.executionTimeout = hystrixTaskHandler.getExecutorTimeout(commandName);
+			this.sharedThreadPool = hystrixTaskHandler.isSharedThreadPool();
+			this.semaphoreIsolation = !this.sharedThreadPool && hystrixTaskHandler.getIsolationStrategy() == ExecutionIsolationStrategy.SEMAPHORE;
+			if (this.sharedThreadPool || hystrixTaskHandler.isAdaptiveConcurrency()) {
+				int latencyThreshold = hystrixTaskHandler.getAdaptiveLatencyThreshold() > 0 ? hystrixTaskHandler.getAdaptiveLatencyThreshold() : this.executionTimeout / 2;
+				this.concurrencyLimit = new ConcurrencyLimit(taskHandler.getName() + "." + this.refinedCommandName + "." + this.refinedProxyName, maxConcurrency,
+						hystrixTaskHandler.isAdaptiveConcurrency(), latencyThreshold);
+			} else {
+				this.concurrencyLimit = null;
+			}
+			this.requestCollapser = this.createRequestCollapser(hystrixTaskHandler, commandName);
+			// requests are admitted and queued per pool, which is a semaphore per command when semaphore isolated. The pool name excludes the handler
+			// version, so that reloaded handlers share the admission and queue of their previous version
+			String poolName = this.sharedThreadPool ? SHARED_THREAD_POOL : (this.semaphoreIsolation ? taskHandler.getName() + "." + this.refinedCommandName
+					: this.refinedProxyName);
+			if (hystrixTaskHandler.isPriorityShedding()) {
+				this.priorityAdmission = PriorityAdmission.getInstance(poolName, this.sharedThreadPool ? SHARED_THREAD_POOL_SIZE : maxConcurrency, 
+						hystrixTaskHandler.getLowPriorityShare(), hystrixTaskHandler.getHighPriorityReserve());
+				this.priority = hystrixTaskHandler.getPriority(commandName);
+			} else {
+				this.priorityAdmission = null;
+				this.priority = null;
+			}
+			// semaphore isolated commands execute on the calling thread, and are not queued
+			this.fairQueue = hystrixTaskHandler.isFairQueuing() && !this.semaphoreIsolation ? FairQueue.getInstance(poolName, 
+					this.sharedThreadPool ? SHARED_THREAD_POOL_SIZE : maxConcurrency, hystrixTaskHandler.getFairQueueSize()) : null;
+		} else {
+			this.executionTimeout = HystrixTaskHandler.DEFAULT_EXECUTOR_TIMEOUT;
+			this.sharedThreadPool = false;
+			this.semaphoreIsolation = false;
+			this.concurrencyLimit = null;
+			this.requestCollapser = null;
+			this.priorityAdmission = null;
+			this.priority = null;
+			this.fairQueue = null;
+		}
+		Setter setter = Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey(taskHandler.getName()))
+				.andCommandKey(HystrixCommandKey.Factory.asKey(this.refinedCommandName));
+		if (this.sharedThreadPool) {
+			// the shared pool is created with the properties of the first plan that uses it, hence all plans set the same properties
+			setter.andThreadPoolKey(HystrixThreadPoolKey.Factory.asKey(SHARED_THREAD_POOL))
+					.andThreadPoolPropertiesDefaults(HystrixThreadPoolProperties.Setter().withCoreSize(SHARED_THREAD_POOL_SIZE)
+							.withMaxQueueSize(SHARED_THREAD_POOL_QUEUE_SIZE).withQueueSizeRejectionThreshold(SHARED_THREAD_POOL_QUEUE_SIZE))
+					.andCommandPropertiesDefaults(HystrixCommandProperties.Setter().withExecutionIsolationThreadTimeoutInMilliseconds(this.executionTimeout));
+		} else if (this.semaphoreIsolation) {
+			setter.andCommandPropertiesDefaults(HystrixCommandProperties.Setter()
+					.withExecutionIsolationStrategy(ExecutionIsolationStrategy.SEMAPHORE)
+					.withExecutionIsolationSemaphoreMaxConcurrentRequests(maxConcurrency));
+		} else {
+			String threadPoolName = taskHandler.getVersionedThreadPoolName(this.refinedProxyName);
+			setter.andThreadPoolKey(HystrixThreadPoolKey.Factory.asKey(threadPoolName))
+					.andThreadPoolPropertiesDefaults(ThreadPoolQueue.getThreadPoolProperties(threadPoolName, maxConcurrency, taskHandler))
+					.andCommandPropertiesDefaults(HystrixCommandProperties.Setter().withExecutionIsolationThreadTimeoutInMilliseconds(this.executionTimeout));
+		}
+		this.setter = setter;
+	}
+
+	/**
+	 * Creates an executor for the specified request as per this plan
+	 * @param taskContext the TaskContext passed on to the TaskHandler
+	 * @param requestWrapper the request data and params
+	 * @param decoder the Decoder sent by the client, may be null
+	 * @return TaskHandlerExecutor, or RequestCacheableTaskHandlerExecutor if the TaskHandler supports request caching
+	 */
+	public TaskHandlerExecutor createExecutor(TaskContext taskContext, TaskRequestWrapper requestWrapper, Decoder decoder) {
+		TaskHandlerExecutor executor;
+		if (this.taskHandler instanceof RequestCacheableHystrixTaskHandler) {
+			executor = new RequestCacheableTaskHandlerExecutor((RequestCacheableHystrixTaskHandler) this.taskHandler, taskContext, this.refinedCommandName,
+					this.setter, requestWrapper, decoder);
+		} else {
+			executor = new TaskHandlerExecutor(this.taskHandler, taskContext, this.refinedCommandName, this.setter, requestWrapper, decoder);
+		}
+		executor.setRequestCollapser(this.requestCollapser);
+		executor.setConcurrencyLimit(this.concurrencyLimit);
+		if (this.priorityAdmission != null) {
+			executor.setPriorityAdmission(this.priorityAdmission, PriorityAdmission.getPriority(requestWrapper.getParams(), this.priority));
+		}
+		if (this.fairQueue != null) {
+			String clientId = FairQueue.getClientId(requestWrapper, requestWrapper.getParams());
+			executor.setFairQueue(this.fairQueue, clientId, ((HystrixTaskHandler) this.taskHandler).getClientWeight(clientId));
+		}
+		return executor;
+	}
+
+	/**
+	 * Helper method to create the collapser of requests to the specified command, if it has a batch size configured. Requests to semaphore isolated
+	 * commands are not collapsed, as the leading request of a batch would hold up the calling thread for the batch window
+	 * @throws IllegalArgumentException if a batch size is configured and the TaskHandler does not implement batch execution
+	 */
+	private RequestCollapser createRequestCollapser(HystrixTaskHandler hystrixTaskHandler, String commandName) {
+		int batchSize = hystrixTaskHandler.getBatchSize(commandName);
+		if (batchSize <= 1) {
+			return null;
+		}
+		if (this.semaphoreIsolation) {
+			LOGGER.warn("Requests to semaphore isolated command : " + commandName + " of TaskHandler : " + hystrixTaskHandler.getName() + " are not collapsed");
+			return null;
+		}
+		try {
+			if (hystrixTaskHandler.getClass().getMethod("executeBatch", TaskContext.class, String.class, List.class, List.class)
+					.getDeclaringClass() == HystrixTaskHandler.class) {
+				throw new IllegalArgumentException("Batch size is configured for command : " + commandName + " but TaskHandler : " 
+						+ hystrixTaskHandler.getName() + " does not implement executeBatch");
+			}
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException("HystrixTaskHandler#executeBatch not found", e); // not expected
+		}
+		return new RequestCollapser(hystrixTaskHandler, this.refinedCommandName, batchSize, hystrixTaskHandler.getBatchWindow(), this.executionTimeout);
+	}
+
+	/**
+	 * Returns the specified name with all characters that Hystrix does not permit removed
+	 * @param name the command or thread pool name
+	 * @return the refined name
+	 */
+	public static String getRefinedName(String name) {
+		return name.replaceAll(TaskHandlerExecutorRepository.ONLY_ALPHANUMERIC_REGEX, "").replaceAll(TaskHandlerExecutorRepository.WHITESPACE_REGEX, "");
+	}
+
+	/** Start Getter/Setter methods */
+	public TaskHandler getTaskHandler() {
+		return this.taskHandler;
+	}
+	public String getRefinedCommandName() {
+		return this.refinedCommandName;
+	}
+	public String getRefinedProxyName() {
+		return this.refinedProxyName;
+	}
+	public int getExecutionTimeout() {
+		return this.executionTimeout;
+	}
+	public int getMaxConcurrency() {
+		return this.maxConcurrency;
+	}
+	public boolean isSemaphoreIsolation() {
+		return this.semaphoreIsolation;
+	}
+	public boolean isSharedThreadPool() {
+		return this.sharedThreadPool;
+	}
+	public ConcurrencyLimit getConcurrencyLimit() {
+		return this.concurrencyLimit;
+	}
+	public RequestCollapser getRequestCollapser() {
+		return this.requestCollapser;
+	}
+	public PriorityAdmission getPriorityAdmission() {
+		return this.priorityAdmission;
+	}
+	public PriorityAdmission.Priority getPriority() {
+		return this.priority;
+	}
+	public FairQueue getFairQueue() {
+		return this.fairQueue;
+	}
+	/** End Getter/Setter methods */
+
+}
@@ -16,12 +16,15 @@
 
 package com.flipkart.phantom.task.impl;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
@@ -30,6 +33,8 @@ import org.trpr.platform.core.PlatformException;
 
 import com.flipkart.phantom.task.spi.AbstractHandler;
 import com.flipkart.phantom.task.spi.Decoder;
+import com.flipkart.phantom.task.spi.Encoder;
+import com.flipkart.phantom.task.spi.EncoderRegistry;
 import com.flipkart.phantom.task.spi.TaskContext;
 import com.flipkart.phantom.task.spi.TaskRequestWrapper;
 import com.flipkart.phantom.task.spi.TaskResult;
@@ -65,6 +70,9 @@ public abstract class TaskHandler extends AbstractHandler implements DisposableB
      */
     protected List<Map<String,String>> initializationCommands = new LinkedList<Map<String,String>>();
 
+    /** The Encoders for non byte array result data of this TaskHandler, keyed by data type. Java serialization is used for types that have no Encoder*/
+    protected EncoderRegistry encoderRegistry = new EncoderRegistry(new HashMap<Class<?>, Encoder>());
+
     /**
      * Abstract method implementation
      * @see AbstractHandler#getType()
@@ -137,6 +145,31 @@ public abstract class TaskHandler extends AbstractHandler implements DisposableB
      */
     public abstract TaskResult<byte[]> execute(TaskContext taskContext, String command, Map<String,String> params, byte[] data) throws RuntimeException;
 
+    /**
+     * Execute this task, using the specified parameters and streamed data. Called instead of {@link #execute(TaskContext, String, Map, byte[])} when 
+     * the request data is streamed i.e. is large enough to not be read fully into memory by the server. Sub-classes that handle large data may override 
+     * this method to consume the data incrementally, say using {@link Decoder#decode(InputStream)}. The default implementation reads the data stream 
+     * fully and calls {@link #execute(TaskContext, String, Map, byte[])}. Requests that use a Decoder are not streamed, their data is read fully and 
+     * set on the TaskRequestWrapper passed to {@link #execute(TaskContext, String, TaskRequestWrapper, Decoder)}.
+     * @param  taskContext taskContextInstance
+     * @param command the command used
+     * @param params thrift parameters
+     * @param dataStream the data stream, may be null
+     * @return response the TaskResult from thrift execution
+     * @throws RuntimeException runTimeException
+     */
+    public TaskResult<byte[]> executeStreaming(TaskContext taskContext, String command, Map<String,String> params, InputStream dataStream) throws RuntimeException {
+    	byte[] data = null;
+    	if (dataStream != null) {
+    		try {
+    			data = IOUtils.toByteArray(dataStream);
+    		} catch (IOException e) {
+    			throw new RuntimeException("Error reading data stream for command : " + command, e);
+    		}
+    	}
+    	return this.execute(taskContext, command, params, data);
+    }
+
     /**
      * This is a over-loaded method that needs to be implemented by sub-classes. The default implementation
      * is not supported.
@@ -176,5 +209,11 @@ public abstract class TaskHandler extends AbstractHandler implements DisposableB
     public void setInitializationCommands(List<Map<String, String>> initializationCommands) {
         this.initializationCommands = initializationCommands;
     }
+    public EncoderRegistry getEncoderRegistry() {
+        return encoderRegistry;
+    }
+    public void setEncoders(Map<Class<?>, Encoder> encoders) {
+        this.encoderRegistry = new EncoderRegistry(encoders);
+    }
     /** End Getter/Setter methods */
 }
\ No newline at end of file
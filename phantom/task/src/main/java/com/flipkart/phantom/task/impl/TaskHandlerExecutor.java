@@ -15,30 +15,41 @@
  */
 package com.flipkart.phantom.task.impl;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import rx.Observable;
+import rx.Observer;
+
 import com.flipkart.phantom.event.ServiceProxyEvent;
 import com.flipkart.phantom.task.spi.Decoder;
 import com.flipkart.phantom.task.spi.Executor;
 import com.flipkart.phantom.task.spi.TaskContext;
 import com.flipkart.phantom.task.spi.TaskRequestWrapper;
 import com.flipkart.phantom.task.spi.TaskResult;
+import com.flipkart.phantom.task.spi.interceptor.InterceptorChain;
 import com.flipkart.phantom.task.spi.interceptor.RequestInterceptor;
 import com.flipkart.phantom.task.spi.interceptor.ResponseInterceptor;
 import com.github.kristofa.brave.Brave;
 import com.google.common.base.Optional;
+import com.google.common.util.concurrent.SettableFuture;
 import com.netflix.hystrix.HystrixCommand;
 import com.netflix.hystrix.HystrixCommandGroupKey;
 import com.netflix.hystrix.HystrixCommandKey;
 import com.netflix.hystrix.HystrixCommandProperties;
 import com.netflix.hystrix.HystrixCommandProperties.ExecutionIsolationStrategy;
 import com.netflix.hystrix.HystrixThreadPoolKey;
-import com.netflix.hystrix.HystrixThreadPoolProperties;
+import com.netflix.hystrix.exception.HystrixBadRequestException;
 
 /**
  * <code>TaskHandlerExecutor</code> is an extension of {@link HystrixCommand}. It is essentially a
@@ -70,6 +81,11 @@ public class TaskHandlerExecutor extends HystrixCommand<TaskResult> implements E
     /** Event Type for publishing all events which are generated here */
     private final static String COMMAND_HANDLER = "COMMAND_HANDLER";
 
+    /** The states of the admission of a request : waiting to run, running and released */
+    private static final int ADMISSION_PENDING = 0;
+    private static final int ADMISSION_RUNNING = 1;
+    private static final int ADMISSION_RELEASED = 2;
+
     /** The {@link TaskHandler} or {@link HystrixTaskHandler} instance which this Command wraps around */
     protected TaskHandler taskHandler;
 
@@ -94,9 +110,40 @@ public class TaskHandlerExecutor extends HystrixCommand<TaskResult> implements E
     /** Event which records various paramenters of this request execution & published later */
     protected ServiceProxyEvent.Builder eventBuilder;
     
-    /** List of request and response interceptors */
-    private List<RequestInterceptor<TaskRequestWrapper>> requestInterceptors = new LinkedList<RequestInterceptor<TaskRequestWrapper>>();
-    private List<ResponseInterceptor<TaskResult>> responseInterceptors = new LinkedList<ResponseInterceptor<TaskResult>>();
+    /** The chain of request and response interceptors */
+    private InterceptorChain<TaskRequestWrapper, TaskResult> interceptorChain = InterceptorChain.emptyChain();
+
+    /** The collapser that batches this request with concurrent requests to the command, null if the request is executed by itself */
+    private RequestCollapser requestCollapser;
+
+    /** The limit on concurrent requests to the command when it runs on the shared thread pool or is adaptive, null otherwise */
+    private ConcurrencyLimit concurrencyLimit;
+
+    /** The priority admission of the pool and the priority of this request, null if requests are not admitted as per priority */
+    private PriorityAdmission priorityAdmission;
+    private PriorityAdmission.Priority priority;
+
+    /** Flag to indicate this request was admitted before it was submitted to Hystrix, and the state of its admission */
+    private volatile boolean admitted;
+    private final AtomicInteger admissionState = new AtomicInteger(ADMISSION_PENDING);
+
+    /** Flag to indicate the task handler executed this request, rather than it being rejected and the fallback returned*/
+    private volatile boolean handlerExecuted;
+
+    /** The callback run once this request no longer uses a thread of its pool i.e. it completed running or will not run, null if there is none */
+    private final AtomicReference<Runnable> releaseCallback = new AtomicReference<Runnable>();
+
+    /** The thread running this request, null if it is not running. Guarded by the runner lock */
+    private Thread runner;
+    private final Object runnerLock = new Object();
+
+    /** The time in nanos at which the request was submitted to its pool i.e. queued for execution. The time at which this executor was created until then */
+    private volatile long queueTime = System.nanoTime();
+
+    /** The fair queue of the pool, the client id and weight of this request, null if the request is dispatched to the pool directly */
+    private FairQueue fairQueue;
+    private String clientId;
+    private int clientWeight;
 
     /**
      * Basic constructor for {@link TaskHandler}. The Hystrix command name is commandName. The group name is the Handler Name
@@ -115,7 +162,8 @@ public class TaskHandlerExecutor extends HystrixCommand<TaskResult> implements E
         super(Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey(taskHandler.getName()))
                 .andCommandKey(HystrixCommandKey.Factory.asKey(commandName))
                 .andThreadPoolKey(HystrixThreadPoolKey.Factory.asKey(taskHandler.getVersionedThreadPoolName(threadPoolName)))
-                .andThreadPoolPropertiesDefaults(HystrixThreadPoolProperties.Setter().withCoreSize(threadPoolSize))
+                .andThreadPoolPropertiesDefaults(ThreadPoolQueue.getThreadPoolProperties(taskHandler.getVersionedThreadPoolName(threadPoolName), 
+                        threadPoolSize, taskHandler))
                 .andCommandPropertiesDefaults(HystrixCommandProperties.Setter().withExecutionIsolationThreadTimeoutInMilliseconds(timeout)));
         this.taskHandler = taskHandler;
         this.taskContext = taskContext;
@@ -144,7 +192,8 @@ public class TaskHandlerExecutor extends HystrixCommand<TaskResult> implements E
         super(Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey(taskHandler.getName()))
                 .andCommandKey(HystrixCommandKey.Factory.asKey(commandName))
                 .andThreadPoolKey(HystrixThreadPoolKey.Factory.asKey(taskHandler.getVersionedThreadPoolName(threadPoolName)))
-                .andThreadPoolPropertiesDefaults(HystrixThreadPoolProperties.Setter().withCoreSize(threadPoolSize))
+                .andThreadPoolPropertiesDefaults(ThreadPoolQueue.getThreadPoolProperties(taskHandler.getVersionedThreadPoolName(threadPoolName), 
+                        threadPoolSize, taskHandler))
                 .andCommandPropertiesDefaults(HystrixCommandProperties.Setter().withExecutionIsolationThreadTimeoutInMilliseconds(timeout)));
         this.taskHandler = taskHandler;
         this.taskContext = taskContext;
@@ -212,6 +261,30 @@ public class TaskHandlerExecutor extends HystrixCommand<TaskResult> implements E
         this.eventBuilder = new ServiceProxyEvent.Builder(commandName, COMMAND_HANDLER);
     }
 
+    /**
+     * Constructor for {@link TaskHandler} using the Hystrix Setter of a {@link TaskExecutionPlan}. The Setter defines the command, group, isolation
+     * and thread pool of the command
+     *
+     * @param taskHandler The taskHandler to be wrapped
+     * @param taskContext The context (Unique context required by Handlers to communicate with the container.)
+     * @param commandName name of the command
+     * @param setter the pre-built Hystrix Setter
+     * @param taskRequestWrapper requestWrapper containing the data and the parameters
+     * @param decoder Decoder sent by the Client, may be null
+     */
+    protected TaskHandlerExecutor(TaskHandler taskHandler, TaskContext taskContext, String commandName, Setter setter,
+                                  TaskRequestWrapper taskRequestWrapper, Decoder decoder) {
+        super(setter);
+        this.taskHandler = taskHandler;
+        this.taskContext = taskContext;
+        this.command = commandName;
+        this.data = taskRequestWrapper.getData();
+        this.params = taskRequestWrapper.getParams();
+        this.taskRequestWrapper = taskRequestWrapper;
+        this.decoder = decoder;
+        this.eventBuilder = new ServiceProxyEvent.Builder(commandName, COMMAND_HANDLER);
+    }
+
     /**
      * Constructor for TaskHandlerExecutor run through Default Hystrix Thread Pool ({@link TaskHandlerExecutor#DEFAULT_HYSTRIX_THREAD_POOL})
      * @param taskHandler The taskHandler to be wrapped
@@ -242,26 +315,196 @@ public class TaskHandlerExecutor extends HystrixCommand<TaskResult> implements E
 
     /**
      * Interface method implementation. @see HystrixCommand#run()
-     * If Decoder has not been set by the Client, it goes into the default Implementation, otherwise
-     * It calls the execute Method which handles decoder.
+     * If Decoder has not been set by the Client, it goes into the default Implementation - streaming if the request data is streamed, otherwise
+     * It calls the execute Method which handles decoder. The time the request waited in the pool queue is recorded. Requests are admitted before
+     * they are submitted to Hystrix (see {@link #admit()}), requests submitted to Hystrix directly are admitted here. Requests whose deadline expired
+     * while queued, and requests that are not admitted here, are not executed and return the fallback, as they do when rejected before submission.
      * @throws Exception
      */
-    @SuppressWarnings("unchecked")
-	@Override
+    @Override
     protected  TaskResult run() throws Exception {
-        this.eventBuilder.withRequestExecutionStartTime(System.currentTimeMillis());
-        if (this.taskRequestWrapper.getRequestContext().isPresent() && this.taskRequestWrapper.getRequestContext().get().getCurrentServerSpan() != null) {
-        	Brave.getServerSpanThreadBinder().setCurrentSpan(this.taskRequestWrapper.getRequestContext().get().getCurrentServerSpan());
+        ThreadPoolQueue.recordQueueWait(this, this.queueTime);
+        if (!this.admissionState.compareAndSet(ADMISSION_PENDING, ADMISSION_RUNNING)) {
+            // Hystrix gave up on the request, and returned its fallback, before it could run
+            throw new HystrixBadRequestException("Command : " + this.command + " was abandoned before it could run");
+        }
+        synchronized (this.runnerLock) {
+            this.runner = Thread.currentThread();
         }
-        for (RequestInterceptor<TaskRequestWrapper> requestInterceptor : this.requestInterceptors) {
-        	requestInterceptor.process(this.taskRequestWrapper);
-        }        
+        long startTime = System.nanoTime();
+        boolean executed = false;
+        boolean success = false;
+        try {
+            if (!this.admitted) {
+                this.admit();
+            }
+            if (this.priorityAdmission != null) {
+                this.priorityAdmission.started(this.priority);
+            }
+            RequestDeadline.checkExpired(this.taskRequestWrapper, this.command);
+            executed = true;
+            TaskResult result = this.executeHandler();
+            success = true;
+            this.handlerExecuted = true;
+            return result;
+        } catch (RejectedExecutionException e) {
+            if (executed) {
+                throw e; // thrown by the handler, and not a rejection of this request
+            }
+            return this.getRejectedResult(e);
+        } finally {
+            synchronized (this.runnerLock) {
+                this.runner = null;
+                Thread.interrupted(); // clear an interrupt from cancel(), the pool thread is reused
+            }
+            this.admissionState.set(ADMISSION_RELEASED);
+            this.releaseAdmission(executed, System.nanoTime() - startTime, success);
+            this.runReleaseCallback();
+        }
+    }
+
+    /**
+     * Cancels this request once its outcome is no longer required. A request that is yet to run is not run, and the thread running a request
+     * is interrupted
+     */
+    public void cancel() {
+        this.releaseUnusedAdmission();
+        synchronized (this.runnerLock) {
+            if (this.runner != null) {
+                this.runner.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Admits this request for execution. Requests whose deadline has expired are rejected, requests are then shed as per their priority if the
+     * pool is saturated, and commands that have a concurrency limit are then checked against it. Called before the request is submitted to Hystrix,
+     * so that rejected requests do not take up a thread of the pool and are not counted as failures of the command. The permits acquired are
+     * released when the request completes running, or when Hystrix returns its fallback if it does not run
+     * @throws RejectedExecutionException if the request is rejected
+     */
+    protected void admit() throws RejectedExecutionException {
+        RequestDeadline.checkExpired(this.taskRequestWrapper, this.command);
+        // admitted holding the runner lock, so that permits are not acquired for a request that is cancelled meanwhile
+        synchronized (this.runnerLock) {
+            if (this.admissionState.get() == ADMISSION_RELEASED) {
+                throw new RejectedExecutionException("Command : " + this.command + " was cancelled");
+            }
+            if (this.priorityAdmission != null && !this.priorityAdmission.tryAcquire(this.priority)) {
+                throw new RejectedExecutionException("Shed " + this.priority + " priority request to command : " + this.command);
+            }
+            if (this.concurrencyLimit != null && !this.concurrencyLimit.tryAcquire()) {
+                if (this.priorityAdmission != null) {
+                    this.priorityAdmission.release(this.priority, false);
+                }
+                throw new RejectedExecutionException("Max concurrent requests reached for command : " + this.command);
+            }
+            this.admitted = true;
+        }
+    }
+
+    /**
+     * Returns true if the task handler executed this request, false if it was rejected and the fallback was returned
+     * @return true if the task handler executed this request
+     */
+    protected boolean isHandlerExecuted() {
+        return this.handlerExecuted;
+    }
+
+    /**
+     * Helper method to release the permits acquired when this request was admitted, adapting the concurrency limit to the outcome if the request was executed
+     */
+    private void releaseAdmission(boolean executed, long latencyNanos, boolean success) {
+        if (!this.admitted) {
+            return;
+        }
+        if (this.concurrencyLimit != null) {
+            if (executed) {
+                this.concurrencyLimit.release(latencyNanos, success);
+            } else {
+                this.concurrencyLimit.release();
+            }
+        }
+        if (this.priorityAdmission != null) {
+            this.priorityAdmission.release(this.priority, executed);
+        }
+    }
+
+    /**
+     * Helper method to release the permits of this request if it has not run, and to not run it after that
+     */
+    private void releaseUnusedAdmission() {
+        synchronized (this.runnerLock) {
+            if (!this.admissionState.compareAndSet(ADMISSION_PENDING, ADMISSION_RELEASED)) {
+                return;
+            }
+            this.releaseAdmission(false, 0, false);
+        }
+        this.runReleaseCallback();
+    }
+
+    /**
+     * Helper method to run the release callback, if any and if it has not been run already
+     */
+    private void runReleaseCallback() {
+        Runnable releaseCallback = this.releaseCallback.getAndSet(null);
+        if (releaseCallback != null) {
+            releaseCallback.run();
+        }
+    }
+
+    /**
+     * Helper method to return the result of a request that was rejected when admitted i.e. its fallback, as is returned by Hystrix for requests
+     * that it rejects
+     * @throws RejectedExecutionException if there is no fallback
+     */
+    private TaskResult getRejectedResult(RejectedExecutionException rejection) throws RejectedExecutionException {
+        LOGGER.debug(rejection.getMessage());
+        try {
+            return this.getFallback();
+        } catch (RuntimeException e) {
+            LOGGER.error("Error getting fallback for rejected command : " + this.command + ": " + e.getMessage(), e);
+            throw rejection;
+        }
+    }
+
+    /**
+     * Helper method to execute the TaskHandler with the request, invoking the interceptors
+     */
+    @SuppressWarnings("unchecked")
+    private TaskResult executeHandler() throws Exception {
+        this.eventBuilder.withRequestExecutionStartTime(System.currentTimeMillis());
+        this.bindServerSpan();
+        this.interceptorChain.processRequest(this.taskRequestWrapper);        
         Optional<RuntimeException> transportException = Optional.absent();
         TaskResult result = null;
+        // nested commands executed by the handler via the TaskContext inherit the deadline of this request
+        Optional<Long> previousDeadline = RequestDeadline.bind(this.taskRequestWrapper);
         try {
 	        if(decoder == null) {
-	            result = this.taskHandler.execute(taskContext, command, params, data);
+	        	if (this.taskRequestWrapper.getDataStream() != null) {
+	        		result = this.taskHandler.executeStreaming(taskContext, command, params, this.taskRequestWrapper.getDataStream());
+	        	} else if (this.requestCollapser != null) {
+	        		result = this.requestCollapser.execute(taskContext, params, data);
+	        	} else if (this.taskHandler.isIdempotent(command)) {
+	        		result = this.taskHandler.getHedgingPolicy().execute(command, new Callable<TaskResult>() {
+	        			public TaskResult call() throws Exception {
+	        				Optional<Long> previousDeadline = RequestDeadline.bind(taskRequestWrapper);
+	        				try {
+	        					return taskHandler.execute(taskContext, command, params, data);
+	        				} finally {
+	        					RequestDeadline.restore(previousDeadline);
+	        				}
+	        			}
+	        		});
+	        	} else {
+	        		result = this.taskHandler.execute(taskContext, command, params, data);
+	        	}
 	        } else {
+	        	if (this.taskRequestWrapper.getDataStream() != null) {
+	        		// decoders are handed the request data as bytes, hence streamed data is not streamed to commands that use a decoder
+	        		this.readDataStream();
+	        	}
 	            result = this.taskHandler.execute(taskContext, command, taskRequestWrapper,decoder);
 	        }
 	        if (result == null) {
@@ -271,50 +514,277 @@ public class TaskHandlerExecutor extends HystrixCommand<TaskResult> implements E
         	transportException = Optional.of(e);
         	throw e; // rethrow this for it to handled by other layers in the call stack
         } finally {
-	        for (ResponseInterceptor<TaskResult> responseInterceptor : this.responseInterceptors) {
-	        	responseInterceptor.process(result, transportException);
-	        }
+        	RequestDeadline.restore(previousDeadline);
+	        this.interceptorChain.processResponse(result, transportException);
         }
         if (!result.isSuccess()) {
             throw new RuntimeException("Command returned FALSE: " + result.getMessage());
         }
+        return this.setEncoderRegistry(result);
+    }
+
+    /**
+     * Returns the result of this executor's request if it is cached, without executing the command. Called before the command is dispatched for
+     * execution, so that cached results do not take up a thread or permit of the command. The request and response interceptors are invoked for
+     * cached results, the same as for executed commands
+     * @return the cached TaskResult, null if the command must be executed
+     */
+    public TaskResult getCachedResult() {
+        TaskResult result = this.lookupCachedResult();
+        if (result == null) {
+            return null;
+        }
+        this.eventBuilder.withRequestExecutionStartTime(System.currentTimeMillis());
+        this.bindServerSpan();
+        this.interceptorChain.processRequest(this.taskRequestWrapper);
+        this.interceptorChain.processResponse(result, Optional.<RuntimeException>absent());
         return result;
     }
 
+    /**
+     * Looks up the result of this executor's request in a cache. Sub-types that cache results override this method, the default implementation
+     * returns null
+     * @return the cached TaskResult, null if there is none
+     */
+    protected TaskResult lookupCachedResult() {
+        return null;
+    }
+
+    /**
+     * Helper method to bind the server span of the request, if traced, to the current thread
+     */
+    private void bindServerSpan() {
+        if (this.taskRequestWrapper.getRequestContext().isPresent() && this.taskRequestWrapper.getRequestContext().get().getCurrentServerSpan() != null) {
+        	Brave.getServerSpanThreadBinder().setCurrentSpan(this.taskRequestWrapper.getRequestContext().get().getCurrentServerSpan());
+        }
+    }
+
+    /**
+     * Helper method to read the streamed request data fully and set it as the request data, for commands that decode the data using a Decoder
+     */
+    private void readDataStream() {
+        try {
+            this.data = IOUtils.toByteArray(this.taskRequestWrapper.getDataStream());
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading data stream for command : " + this.command, e);
+        }
+        this.taskRequestWrapper.setData(this.data);
+        this.taskRequestWrapper.setDataStream(null);
+    }
+
+    /**
+     * Overriden superclass method. Records the time at which the request is submitted to its pool, see {@link ThreadPoolQueue#recordQueueWait(HystrixCommand, long)}.
+     * Synchronous execution also submits the request through this method
+     * @see HystrixCommand#queue()
+     */
+    @Override
+    public Future<TaskResult> queue() {
+        this.queueTime = System.nanoTime();
+        return super.queue();
+    }
+
+    /**
+     * Overriden superclass method. Records the time at which the request is submitted to its pool, see {@link ThreadPoolQueue#recordQueueWait(HystrixCommand, long)}
+     * @see HystrixCommand#observe()
+     */
+    @Override
+    public Observable<TaskResult> observe() {
+        this.queueTime = System.nanoTime();
+        return super.observe();
+    }
+
     /**
      * Interface method implementation. @see HystrixCommand#getFallback()
+     * Releases the permits of the request if it did not run, as Hystrix rejected it or gave up on it. Requests that are running when they time
+     * out release their permits when they complete
      */
     @SuppressWarnings("unchecked")
 	@Override
     protected TaskResult getFallback() {
+        this.releaseUnusedAdmission();
         if(this.taskHandler instanceof HystrixTaskHandler) {
             HystrixTaskHandler hystrixTaskHandler = (HystrixTaskHandler) this.taskHandler;
             if(decoder == null) {
-                return hystrixTaskHandler.getFallBack(taskContext, command, params, data);
+                return this.setEncoderRegistry(hystrixTaskHandler.getFallBack(taskContext, command, params, data));
             }
             else {
-                return hystrixTaskHandler.getFallBack(taskContext, command, taskRequestWrapper, decoder);
+                return this.setEncoderRegistry(hystrixTaskHandler.getFallBack(taskContext, command, taskRequestWrapper, decoder));
             }
         }
         return null;
     }
 
     /**
-     * Interface method implementation. Adds the RequestInterceptor to the list of request interceptors that will be invoked
+     * Helper method to set the EncoderRegistry of the TaskHandler on the specified result, for encoding non byte array result data
+     * @param result the TaskResult, may be null
+     * @return the specified TaskResult
+     */
+    private TaskResult setEncoderRegistry(TaskResult result) {
+        if (result != null && result.getEncoderRegistry() == null && !this.taskHandler.getEncoderRegistry().isEmpty()) {
+            result.setEncoderRegistry(this.taskHandler.getEncoderRegistry());
+        }
+        return result;
+    }
+
+    /**
+     * Interface method implementation. Adds the RequestInterceptor to the chain of request interceptors that will be invoked
      * @see com.flipkart.phantom.task.spi.Executor#addRequestInterceptor(com.flipkart.phantom.task.spi.interceptor.RequestInterceptor)
      */
     public void addRequestInterceptor(RequestInterceptor<TaskRequestWrapper> requestInterceptor) {    	
-    	this.requestInterceptors.add(requestInterceptor);
+    	this.interceptorChain = this.interceptorChain.withRequestInterceptor(requestInterceptor);
     }
 
     /**
-     * Interface method implementation. Adds the ResponseInterceptor to the list of response interceptors that will be invoked
+     * Interface method implementation. Adds the ResponseInterceptor to the chain of response interceptors that will be invoked
      * @see com.flipkart.phantom.task.spi.Executor#addResponseInterceptor(com.flipkart.phantom.task.spi.interceptor.ResponseInterceptor)
      */
     public void addResponseInterceptor(ResponseInterceptor<TaskResult> responseInterceptor){
-    	this.responseInterceptors.add(responseInterceptor);
+    	this.interceptorChain = this.interceptorChain.withResponseInterceptor(responseInterceptor);
+    }
+
+    /**
+     * Interface method implementation. Sets the chain of request and response interceptors that will be invoked
+     * @see com.flipkart.phantom.task.spi.Executor#setInterceptorChain(com.flipkart.phantom.task.spi.interceptor.InterceptorChain)
+     */
+    public void setInterceptorChain(InterceptorChain<TaskRequestWrapper, TaskResult> interceptorChain) {
+    	this.interceptorChain = interceptorChain;
     }
     
+    /**
+     * Dispatches this executor for execution without blocking the calling thread, in the turn of its client if requests to the pool are queued
+     * per client. Else is the same as {@link #submit(Observer)}. Cached results are returned without dispatching the executor
+     * @param observer the observer of the execution outcome, notified on the thread that completes the execution
+     */
+    public void dispatch(Observer<TaskResult> observer) {
+        TaskResult cachedResult = this.getCachedResult();
+        if (cachedResult != null) {
+            observer.onNext(cachedResult);
+            observer.onCompleted();
+            return;
+        }
+        if (this.fairQueue == null) {
+            this.submit(observer);
+        } else {
+            this.fairQueue.submit(this.clientId, this.clientWeight, this, observer);
+        }
+    }
+
+    /**
+     * Dispatches this executor for execution without waiting for the outcome, for commands that are invoked asynchronously. Failures are logged
+     * @see #dispatch(Observer)
+     */
+    public void dispatch() {
+        this.dispatch(new Observer<TaskResult>() {
+            public void onNext(TaskResult result) {
+            }
+            public void onCompleted() {
+            }
+            public void onError(Throwable e) {
+                LOGGER.error("Error in processing async command " + command + ": " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Dispatches this executor for execution, in the turn of its client if requests to the pool are queued per client, and waits for the result.
+     * Else is the same as {@link #submitAndWait()}. Cached results are returned without dispatching the executor
+     * @return the TaskResult of the execution
+     * @throws RuntimeException if the execution failed and there was no fallback
+     */
+    public TaskResult dispatchAndWait() throws RuntimeException {
+        TaskResult cachedResult = this.getCachedResult();
+        if (cachedResult != null) {
+            return cachedResult;
+        }
+        if (this.fairQueue == null) {
+            return this.submitAndWait();
+        }
+        final SettableFuture<TaskResult> future = SettableFuture.create();
+        this.fairQueue.submit(this.clientId, this.clientWeight, this, new Observer<TaskResult>() {
+            private TaskResult result;
+            public void onNext(TaskResult result) {
+                this.result = result;
+            }
+            public void onCompleted() {
+                future.set(this.result);
+            }
+            public void onError(Throwable e) {
+                future.setException(e);
+            }
+        });
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for command : " + this.command, e);
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause() 
+                    : new RuntimeException("Error executing command : " + this.command, e.getCause());
+        }
+    }
+
+    /**
+     * Admits this executor and submits it to Hystrix without blocking the calling thread i.e. the same as subscribing to {@link #observe()}, except
+     * that requests rejected when admitted are not submitted and the observer is notified of their fallback instead
+     * @param observer the observer of the execution outcome, notified on the thread that completes the execution
+     */
+    public void submit(Observer<TaskResult> observer) {
+        this.submit(observer, null);
+    }
+
+    /**
+     * Admits this executor and submits it to Hystrix, as {@link #submit(Observer)}. The specified callback is run once the request no longer uses a
+     * thread of its pool i.e. once it completes running, which may be after the observer is notified of a timeout, or once it is known that it
+     * will not run
+     * @param observer the observer of the execution outcome
+     * @param releaseCallback the callback, run once
+     */
+    void submit(Observer<TaskResult> observer, Runnable releaseCallback) {
+        this.releaseCallback.set(releaseCallback);
+        try {
+            this.admit();
+        } catch (RejectedExecutionException e) {
+            TaskResult result;
+            try {
+                result = this.getRejectedResult(e);
+            } catch (RuntimeException fallbackException) {
+                observer.onError(fallbackException);
+                return;
+            } finally {
+                this.runReleaseCallback(); // not submitted, say as it was cancelled
+            }
+            observer.onNext(result);
+            observer.onCompleted();
+            return;
+        }
+        try {
+            this.observe().subscribe(observer);
+        } catch (RuntimeException e) {
+            this.releaseUnusedAdmission();
+            throw e;
+        }
+    }
+
+    /**
+     * Admits this executor and submits it to Hystrix, waiting for the result i.e. the same as {@link #execute()}, except that requests rejected
+     * when admitted are not submitted and their fallback is returned instead
+     * @return the TaskResult of the execution
+     * @throws RuntimeException if the execution failed and there was no fallback
+     */
+    public TaskResult submitAndWait() throws RuntimeException {
+        try {
+            this.admit();
+        } catch (RejectedExecutionException e) {
+            return this.getRejectedResult(e);
+        }
+        try {
+            return this.execute();
+        } catch (RuntimeException e) {
+            this.releaseUnusedAdmission();
+            throw e;
+        }
+    }
+
     /**
      * Interface method implementation. Returns the name of the TaskHandler used by this Executor
      * @see com.flipkart.phantom.task.spi.Executor#getServiceName()
@@ -354,4 +824,44 @@ public class TaskHandlerExecutor extends HystrixCommand<TaskResult> implements E
         return eventBuilder;
     }
 
+    /**
+     * Sets the collapser that batches this request with concurrent requests to the command. Requests that use a Decoder or stream their
+     * data are not collapsed
+     * @param requestCollapser the RequestCollapser, null to execute the request by itself
+     */
+    public void setRequestCollapser(RequestCollapser requestCollapser) {
+        this.requestCollapser = requestCollapser;
+    }
+
+    /**
+     * Sets the limit on concurrent requests to the command, for commands that run on a thread pool shared with other commands or that adapt
+     * their concurrency
+     * @param concurrencyLimit the ConcurrencyLimit, null if the command is only isolated by Hystrix
+     */
+    public void setConcurrencyLimit(ConcurrencyLimit concurrencyLimit) {
+        this.concurrencyLimit = concurrencyLimit;
+    }
+
+    /**
+     * Sets the priority admission of the pool that this request executes on, and the priority of this request
+     * @param priorityAdmission the PriorityAdmission of the pool, null if requests are not admitted as per priority
+     * @param priority the priority of this request
+     */
+    public void setPriorityAdmission(PriorityAdmission priorityAdmission, PriorityAdmission.Priority priority) {
+        this.priorityAdmission = priorityAdmission;
+        this.priority = priority;
+    }
+
+    /**
+     * Sets the fair queue of the pool that this request is dispatched to, and the client of this request
+     * @param fairQueue the FairQueue of the pool, null to dispatch the request to the pool directly
+     * @param clientId the client id of this request
+     * @param clientWeight the weight of the client
+     */
+    public void setFairQueue(FairQueue fairQueue, String clientId, int clientWeight) {
+        this.fairQueue = fairQueue;
+        this.clientId = clientId;
+        this.clientWeight = clientWeight;
+    }
+
 }
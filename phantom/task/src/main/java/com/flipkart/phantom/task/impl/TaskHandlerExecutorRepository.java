@@ -18,18 +18,34 @@ package com.flipkart.phantom.task.impl;
 
 import com.flipkart.phantom.event.ServiceProxyEvent;
 import com.flipkart.phantom.event.ServiceProxyEventProducer;
+import com.flipkart.phantom.task.impl.interceptor.AbstractClientResponseInterceptor;
 import com.flipkart.phantom.task.impl.interceptor.ClientRequestInterceptor;
 import com.flipkart.phantom.task.impl.interceptor.CommandClientResponseInterceptor;
+import com.flipkart.phantom.task.impl.metrics.ProxyMetrics;
 import com.flipkart.phantom.task.impl.registry.TaskHandlerRegistry;
 import com.flipkart.phantom.task.impl.repository.AbstractExecutorRepository;
 import com.flipkart.phantom.task.spi.*;
-import com.google.common.util.concurrent.MoreExecutors;
-import com.netflix.hystrix.HystrixCommandProperties.ExecutionIsolationStrategy;
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import rx.Observer;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * <code>TaskHandlerExecutorRepository</code> is a repository that searches for a {@link TaskHandler}
@@ -51,11 +67,21 @@ public class TaskHandlerExecutorRepository extends AbstractExecutorRepository<Ta
     /** Regex for finding all whitespace characters */
     public static final String WHITESPACE_REGEX = "\\s+";
 
-    /** The default thread pool core size*/
-    private static final int DEFAULT_THREAD_POOL_SIZE = 10;
+    /** The param key for the thread pool name of a command*/
+    public static final String POOL_PARAM = "pool";
+
+    /** The metrics group and metric name of requests that shared the result of an identical in-flight request */
+    public static final String SINGLE_FLIGHT_METRICS_GROUP = "SingleFlight";
+    public static final String COALESCED_COUNT = "coalescedCount";
+
+    /** Marker set on the results of a scatter-gather once they are gathered */
+    private static final GatherResult GATHERED = new GatherResult(GatherResult.Status.INCOMPLETE, null, null);
 
     /** The publisher used to broadcast events to Service Proxy Subscribers */
     private ServiceProxyEventProducer eventProducer;
+
+    /** The results of in-flight single-flight commands, keyed by handler, command and cache key */
+    private ConcurrentMap<String, SettableFuture<TaskResult>> inFlightCommands = new ConcurrentHashMap<String, SettableFuture<TaskResult>>();
     
     /**
      * Gets the TaskHandlerExecutor or RequestCacheableTaskHandlerExecutor for a commandName
@@ -65,27 +91,7 @@ public class TaskHandlerExecutorRepository extends AbstractExecutorRepository<Ta
      * @throws UnsupportedOperationException if doesn't find a TaskHandler in the registry corresponding to the command name
      */
     public Executor<TaskRequestWrapper,TaskResult> getExecutor(String commandName,String proxyName, TaskRequestWrapper requestWrapper) {
-    	Executor<TaskRequestWrapper,TaskResult> executor = null;
-        //Regex matching of threadPoolName and commandName
-        //(Hystrix dashboard requires names to be alphanumeric)    	
-    	String refinedCommandName = this.getRefinedName(commandName);
-    	String refinedProxyName = this.getRefinedName(proxyName);
-    	TaskHandler taskHandler = this.getTaskHandler(commandName, refinedCommandName, proxyName, refinedProxyName, requestWrapper);
-    	int maxConcurrency = this.getMaxConcurrency(taskHandler, proxyName);
-    	int executionTimeout = this.getExecutionTimeout(taskHandler, commandName);
-        if(taskHandler instanceof HystrixTaskHandler) {
-	        if(((HystrixTaskHandler)taskHandler).getIsolationStrategy()==ExecutionIsolationStrategy.SEMAPHORE) {
-	        	executor = getTaskHandlerExecutorWithSemaphoreIsolation(requestWrapper, refinedCommandName, 
-	        			taskHandler, maxConcurrency);
-	        } else {
-	        	executor = getTaskHandlerExecutor(requestWrapper, refinedCommandName,
-	                refinedProxyName, maxConcurrency,executionTimeout, taskHandler);
-	        }
-        } else { 
-        	executor = getTaskHandlerExecutor(requestWrapper, refinedCommandName, refinedProxyName,
-        			maxConcurrency, executionTimeout, taskHandler);
-        }
-        return this.wrapExecutorWithInterceptors(executor, taskHandler);
+        return this.getExecutor(commandName, proxyName, requestWrapper, null);
     }
 
     /**
@@ -95,30 +101,17 @@ public class TaskHandlerExecutorRepository extends AbstractExecutorRepository<Ta
      * @param requestWrapper requestWrapper
      * @param decoder decoder passed by the client
      * @return The executor corresponding to the commandName.
-     * @throws UnsupportedOperationException if doesn't find a TaskHandler in the registry corresponding to the command name
+     * @throws UnsupportedOperationException if doesn't find a TaskHandler in the registry corresponding to the command name, or the TaskHandler is
+     * not active
      */
     public Executor<TaskRequestWrapper,TaskResult> getExecutor(String commandName,String proxyName, TaskRequestWrapper requestWrapper, Decoder decoder) {
-    	Executor<TaskRequestWrapper,TaskResult> executor = null;
-        //Regex matching of threadPoolName and commandName
-        //(Hystrix dashboard requires names to be alphanumeric)    	
-    	String refinedCommandName = this.getRefinedName(commandName);
-    	String refinedProxyName = this.getRefinedName(proxyName);
-    	TaskHandler taskHandler = this.getTaskHandler(commandName, refinedCommandName, proxyName, refinedProxyName, requestWrapper);
-    	int maxConcurrency = this.getMaxConcurrency(taskHandler, proxyName);
-    	int executionTimeout = this.getExecutionTimeout(taskHandler, commandName);
-        if(taskHandler instanceof HystrixTaskHandler) {
-	        if(((HystrixTaskHandler)taskHandler).getIsolationStrategy()==ExecutionIsolationStrategy.SEMAPHORE) {
-	        	executor = getTaskHandlerExecutorWithSemaphoreIsolationAndDecoder(requestWrapper, refinedCommandName, 
-	        			taskHandler, maxConcurrency, decoder);
-	        } else {
-	        	executor = getTaskHandlerExecutorWithDecoder(requestWrapper, refinedCommandName,
-	                refinedProxyName, maxConcurrency,executionTimeout, taskHandler, decoder);
-	        }
-        } else { 
-        	executor = getTaskHandlerExecutorWithDecoder(requestWrapper, refinedCommandName, refinedProxyName,
-        			maxConcurrency, executionTimeout, taskHandler, decoder);
+        TaskExecutionPlan executionPlan = ((TaskHandlerRegistry)getRegistry()).getExecutionPlan(commandName, proxyName);
+        TaskHandler taskHandler = executionPlan.getTaskHandler();
+        if (!taskHandler.isActive()) {
+            LOGGER.error("TaskHandler: "+taskHandler.getName()+" is not yet active. Command: "+commandName+" will not be processed");
+            throw new UnsupportedOperationException("TaskHandler: "+taskHandler.getName()+" is not yet active. Command: "+commandName+" will not be processed");
         }
-        return this.wrapExecutorWithInterceptors(executor, taskHandler);
+        return this.wrapExecutorWithInterceptors(executionPlan.createExecutor(this.getTaskContext(), requestWrapper, decoder), taskHandler);
     }
 
     /**
@@ -132,25 +125,61 @@ public class TaskHandlerExecutorRepository extends AbstractExecutorRepository<Ta
         return this.getExecutor(commandName, commandName, requestWrapper);
     }
 
-    private Future<TaskResult> executeAsyncCommand(final long receiveTime, final TaskHandlerExecutor command,
+    /**
+     * Helper method to execute the specified command without blocking the calling thread. The returned future is completed, and the event for the
+     * command is published, by the thread that completes the command
+     */
+    private ListenableFuture<TaskResult> executeAsyncCommand(final long receiveTime, final TaskHandlerExecutor command,
                                                    final String commandName, final TaskRequestWrapper requestWrapper) {
         if(command==null) {
             throw new UnsupportedOperationException("Invoked unsupported command : " + commandName);
         } else {
-            final Future<TaskResult> future = command.queue();
-            MoreExecutors.sameThreadExecutor().submit(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        future.get();
-                    } catch (Exception e) {
-                        throw new RuntimeException("Error in processing command " + command.getServiceName() + ": " + e.getMessage(), e);
-                    } finally {
+            TaskResult cachedResult = command.getCachedResult();
+            if (cachedResult != null) {
+                publishEvent(command, receiveTime, requestWrapper);
+                return Futures.immediateFuture(cachedResult);
+            }
+            final SettableFuture<TaskResult> future = SettableFuture.create();
+            final String singleFlightKey = this.getSingleFlightKey(command);
+            if (singleFlightKey != null) {
+                SettableFuture<TaskResult> inFlightResult = this.inFlightCommands.putIfAbsent(singleFlightKey, future);
+                if (inFlightResult != null) {
+                    ProxyMetrics.getInstance(SINGLE_FLIGHT_METRICS_GROUP, command.taskHandler.getName()).increment(COALESCED_COUNT);
+                    return this.getWaiterFuture(inFlightResult, command, receiveTime, requestWrapper);
+                }
+            }
+            try {
+                command.submit(new Observer<TaskResult>() {
+                    private TaskResult result;
+                    public void onNext(TaskResult result) {
+                        this.result = result;
+                    }
+                    public void onCompleted() {
+                        this.complete();
+                        future.set(this.result);
+                    }
+                    public void onError(Throwable e) {
+                        LOGGER.error("Error in processing command " + commandName + ": " + e.getMessage(), e);
+                        this.complete();
+                        future.setException(e);
+                    }
+                    private void complete() {
+                        if (singleFlightKey != null) {
+                            inFlightCommands.remove(singleFlightKey, future);
+                        }
                         publishEvent(command, receiveTime, requestWrapper);
                     }
+                });
+            } catch (RuntimeException e) {
+                // identical requests that attached to the in-flight future must not wait for a command that was never submitted
+                if (singleFlightKey != null) {
+                    this.inFlightCommands.remove(singleFlightKey, future);
                 }
-            });
-            return future;
+                future.setException(e);
+                throw e;
+            }
+            // the in-flight future is shared with identical requests, and is not handed out to be cancelled
+            return singleFlightKey == null ? future : this.getWaiterFuture(future, null, receiveTime, requestWrapper);
         }
     }
 
@@ -162,7 +191,7 @@ public class TaskHandlerExecutorRepository extends AbstractExecutorRepository<Ta
      * @return thrift result
      * @throws UnsupportedOperationException if no handler found for command
      */
-    public Future<TaskResult> executeAsyncCommand(final String commandName, String proxyName, final TaskRequestWrapper requestWrapper) throws UnsupportedOperationException {
+    public ListenableFuture<TaskResult> executeAsyncCommand(final String commandName, String proxyName, final TaskRequestWrapper requestWrapper) throws UnsupportedOperationException {
         final long receiveTime = System.currentTimeMillis();
         final TaskHandlerExecutor command = (TaskHandlerExecutor) getExecutor(commandName, proxyName, requestWrapper);
         return executeAsyncCommand(receiveTime, command, commandName, requestWrapper);
@@ -183,7 +212,15 @@ public class TaskHandlerExecutorRepository extends AbstractExecutorRepository<Ta
             throw new UnsupportedOperationException("Invoked unsupported command : " + commandName);
         } else {
             try {
-                return command.execute();
+                TaskResult cachedResult = command.getCachedResult();
+                if (cachedResult != null) {
+                    return cachedResult;
+                }
+                String singleFlightKey = this.getSingleFlightKey(command);
+                if (singleFlightKey != null) {
+                    return this.executeSingleFlight(command, singleFlightKey);
+                }
+                return command.submitAndWait();
             } catch (Exception e) {
                 throw new RuntimeException("Error in processing command "+commandName+": " + e.getMessage(), e);
             } finally {
@@ -218,7 +255,7 @@ public class TaskHandlerExecutorRepository extends AbstractExecutorRepository<Ta
             throw new UnsupportedOperationException("Invoked unsupported command : " + commandName);
         } else {
             try {
-                return command.execute();
+                return command.submitAndWait();
             } catch (Exception e) {
                 throw new RuntimeException("Error in processing command "+commandName+": " + e.getMessage(), e);
             } finally {
@@ -234,7 +271,7 @@ public class TaskHandlerExecutorRepository extends AbstractExecutorRepository<Ta
      * @return thrift result
      * @throws UnsupportedOperationException if no handler found for command
      */
-    public Future<TaskResult> executeAsyncCommand(String commandName, TaskRequestWrapper requestWrapper, Decoder decoder) throws UnsupportedOperationException {
+    public ListenableFuture<TaskResult> executeAsyncCommand(String commandName, TaskRequestWrapper requestWrapper, Decoder decoder) throws UnsupportedOperationException {
         final long receiveTime = System.currentTimeMillis();
         TaskHandlerExecutor command = (TaskHandlerExecutor) getExecutor(commandName, commandName, requestWrapper, decoder);
         return executeAsyncCommand(receiveTime, command, commandName, requestWrapper);
@@ -247,124 +284,223 @@ public class TaskHandlerExecutorRepository extends AbstractExecutorRepository<Ta
      * @return thrift result
      * @throws UnsupportedOperationException if no handler found for command
      */
-    public Future<TaskResult> executeAsyncCommand(String commandName, TaskRequestWrapper requestWrapper) throws UnsupportedOperationException {
+    public ListenableFuture<TaskResult> executeAsyncCommand(String commandName, TaskRequestWrapper requestWrapper) throws UnsupportedOperationException {
         return this.executeAsyncCommand(commandName,commandName, requestWrapper);
     }
 
     /**
-     * Helper methods to create and return the appropriate TaskHandlerExecutor instance
+     * Executes the specified batch of commands concurrently, each on its respective thread pool - identified by the {@link #POOL_PARAM} param, else the command name. 
+     * Waits for all commands to complete.
+     * @param requestWrappers the requestWrappers of the batched commands, each having the command name, data and params
+     * @return the results in the order of the requestWrappers. Failure of a command does not fail the batch and is reported as an unsuccessful result for the command
+     * @see #executeBatch(List, Observer)
      */
-    private Executor<TaskRequestWrapper,TaskResult> getTaskHandlerExecutorWithSemaphoreIsolation(TaskRequestWrapper requestWrapper, String refinedCommandName,
-                                                                              TaskHandler taskHandler, int maxConcurrentSize) {
-        if (taskHandler instanceof RequestCacheableHystrixTaskHandler){
-            return new RequestCacheableTaskHandlerExecutor((RequestCacheableHystrixTaskHandler)taskHandler,this.getTaskContext(),refinedCommandName,
-                    requestWrapper , maxConcurrentSize);
-        } else {
-            return new TaskHandlerExecutor(taskHandler,this.getTaskContext(),refinedCommandName,requestWrapper , maxConcurrentSize);
+    public List<TaskResult> executeBatch(List<TaskRequestWrapper> requestWrappers) {
+        final CountDownLatch batchCompletion = new CountDownLatch(1);
+        final List<List<TaskResult>> batchResults = new ArrayList<List<TaskResult>>(1);
+        this.executeBatch(requestWrappers, new Observer<List<TaskResult>>() {
+            public void onNext(List<TaskResult> results) {
+                batchResults.add(results);
+            }
+            public void onCompleted() {
+                batchCompletion.countDown();
+            }
+            public void onError(Throwable e) {
+                batchCompletion.countDown(); // not raised for batches
+            }
+        });
+        try {
+            batchCompletion.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for batch of commands to complete", e);
         }
+        return batchResults.get(0);
     }
-    private Executor<TaskRequestWrapper,TaskResult> getTaskHandlerExecutor(TaskRequestWrapper requestWrapper, String refinedCommandName,
-                                                        String refinedProxyName, int maxConcurrentSize, int executorTimeOut, TaskHandler taskHandler) {
-        if (taskHandler instanceof RequestCacheableHystrixTaskHandler) {
-            return new RequestCacheableTaskHandlerExecutor((RequestCacheableHystrixTaskHandler)taskHandler,this.getTaskContext(),
-                    refinedCommandName, executorTimeOut, refinedProxyName,maxConcurrentSize,requestWrapper);
-        } else {
-            return new TaskHandlerExecutor(taskHandler,this.getTaskContext(),refinedCommandName, executorTimeOut,
-                    refinedProxyName,maxConcurrentSize,requestWrapper);
+
+    /**
+     * Executes the specified batch of commands concurrently, each on its respective thread pool - identified by the {@link #POOL_PARAM} param, else the command name.
+     * Does not wait for the commands to complete. The results are passed to the specified Observer, on the thread that completes the last command.
+     * @param requestWrappers the requestWrappers of the batched commands, each having the command name, data and params
+     * @param observer the Observer notified of the results in the order of the requestWrappers. Failure of a command does not fail the batch and is reported 
+     * as an unsuccessful result for the command
+     */
+    public void executeBatch(List<TaskRequestWrapper> requestWrappers, Observer<List<TaskResult>> observer) {
+        TaskResult[] results = new TaskResult[requestWrappers.size()];
+        AtomicInteger pendingCommands = new AtomicInteger(results.length);
+        if (results.length == 0) {
+            observer.onNext(Arrays.asList(results));
+            observer.onCompleted();
+            return;
+        }
+        for (int i = 0; i < results.length; i++) {
+            TaskRequestWrapper requestWrapper = requestWrappers.get(i);
+            String commandName = requestWrapper.getCommandName();
+            String proxyName = (requestWrapper.getParams() == null ? null : requestWrapper.getParams().get(POOL_PARAM));
+            BatchedCommandObserver commandObserver = new BatchedCommandObserver(System.currentTimeMillis(), requestWrapper, results, i, pendingCommands, observer);
+            try {
+                commandObserver.command = (TaskHandlerExecutor) getExecutor(commandName, proxyName == null ? commandName : proxyName, requestWrapper);
+                if (commandObserver.command == null) {
+                    throw new UnsupportedOperationException("Invoked unsupported command : " + commandName);
+                }
+                commandObserver.command.dispatch(commandObserver);
+            } catch (RuntimeException e) {
+                commandObserver.onError(e);
+            }
         }
     }
 
     /**
-     * Helper methods to create and return the appropriate TaskHandlerExecutor instance
+     * Executes the specified commands as a scatter-gather : the commands are executed concurrently, each on its respective thread pool - identified by
+     * the {@link #POOL_PARAM} param, else the command name, and the calling thread waits until all of them complete or the timeout elapses, whichever
+     * is earlier. The wait ends early, and commands not yet started are not executed, if a command marked as required fails.
+     * Commands that have not completed by then are reported as incomplete and are cancelled, and their results are discarded if they complete.
+     * The deadline of each command is the earlier of its own deadline and the end of the wait, and is inherited by calls the command makes.
+     * @param requests the GatherRequests of the commands
+     * @param requestWrappers the requestWrappers of the commands, in the order of the requests
+     * @param timeout the max time in milliseconds to wait for the commands
+     * @return the GatherResult of each command, in the order of the requests
      */
-    private  Executor<TaskRequestWrapper,TaskResult> getTaskHandlerExecutorWithSemaphoreIsolationAndDecoder(TaskRequestWrapper requestWrapper, String refinedCommandName,
-                                                                                         TaskHandler taskHandler, int maxConcurrentSize, Decoder decoder) {
-        if (taskHandler instanceof RequestCacheableHystrixTaskHandler){
-            return  new RequestCacheableTaskHandlerExecutor((RequestCacheableHystrixTaskHandler)taskHandler,this.getTaskContext(),refinedCommandName,
-                    requestWrapper , maxConcurrentSize,decoder);
-        } else {
-            return new TaskHandlerExecutor(taskHandler,this.getTaskContext(),refinedCommandName,requestWrapper , maxConcurrentSize, decoder);
+    public List<GatherResult> executeScatterGather(List<GatherRequest> requests, List<TaskRequestWrapper> requestWrappers, long timeout) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        Optional<Long> gatherDeadline = Optional.of(System.currentTimeMillis() + timeout);
+        AtomicReferenceArray<GatherResult> results = new AtomicReferenceArray<GatherResult>(requests.size());
+        AtomicInteger pendingCommands = new AtomicInteger(requests.size());
+        CountDownLatch gathered = new CountDownLatch(requests.size() == 0 ? 0 : 1);
+        GatheredCommandObserver[] commandObservers = new GatheredCommandObserver[requests.size()];
+        for (int i = 0; i < requests.size() && gathered.getCount() > 0; i++) {
+            TaskRequestWrapper requestWrapper = requestWrappers.get(i);
+            requestWrapper.setDeadline(RequestDeadline.earliest(requestWrapper.getDeadline(), gatherDeadline));
+            String commandName = requestWrapper.getCommandName();
+            String proxyName = (requestWrapper.getParams() == null ? null : requestWrapper.getParams().get(POOL_PARAM));
+            GatheredCommandObserver commandObserver = new GatheredCommandObserver(System.currentTimeMillis(), requests.get(i), requestWrapper, results, i,
+                    pendingCommands, gathered);
+            commandObservers[i] = commandObserver;
+            try {
+                commandObserver.command = (TaskHandlerExecutor) getExecutor(commandName, proxyName == null ? commandName : proxyName, requestWrapper);
+                if (commandObserver.command == null) {
+                    throw new UnsupportedOperationException("Invoked unsupported command : " + commandName);
+                }
+                commandObserver.command.dispatch(commandObserver);
+            } catch (RuntimeException e) {
+                commandObserver.onError(e);
+            }
         }
-    }
-    private Executor<TaskRequestWrapper,TaskResult> getTaskHandlerExecutorWithDecoder(TaskRequestWrapper requestWrapper, String refinedCommandName,
-                                                                   String refinedProxyName, int maxConcurrentSize, int executorTimeOut,
-                                                                   TaskHandler taskHandler, Decoder decoder) {
-        if (taskHandler instanceof RequestCacheableHystrixTaskHandler) {
-            return new RequestCacheableTaskHandlerExecutor((RequestCacheableHystrixTaskHandler)taskHandler,this.getTaskContext(),
-                    refinedCommandName, executorTimeOut, refinedProxyName,maxConcurrentSize,requestWrapper, decoder);
-        } else {
-            return new TaskHandlerExecutor(taskHandler,this.getTaskContext(),refinedCommandName, executorTimeOut,
-                    refinedProxyName,maxConcurrentSize,requestWrapper, decoder);
+        try {
+            gathered.await(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // return the results gathered so far
+        }
+        List<GatherResult> gatherResults = new ArrayList<GatherResult>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            // results are taken once, so that commands completing after this are not reported
+            GatherResult result = results.getAndSet(i, GATHERED);
+            if (result == null && commandObservers[i] != null && commandObservers[i].command != null) {
+                // no one waits for the command any more, free up its thread
+                commandObservers[i].command.cancel();
+            }
+            gatherResults.add(result == null ? new GatherResult(GatherResult.Status.INCOMPLETE, null, null) : result);
         }
+        return gatherResults;
     }
-    
+
     /**
-     * Helper method to wrap the Executor with request and response interceptors 
+     * Abstract method implementation. Returns a ClientRequestInterceptor
+     * @see com.flipkart.phantom.task.impl.repository.AbstractExecutorRepository#createTracingRequestInterceptor()
      */
-    private Executor<TaskRequestWrapper,TaskResult> wrapExecutorWithInterceptors(Executor<TaskRequestWrapper,TaskResult> executor, TaskHandler taskHandler) {
-        ClientRequestInterceptor<TaskRequestWrapper> tracingRequestInterceptor = new ClientRequestInterceptor<TaskRequestWrapper>();
-        CommandClientResponseInterceptor<TaskResult> tracingResponseInterceptor = new CommandClientResponseInterceptor<TaskResult>();
-        return this.wrapExecutorWithInterceptors(executor, taskHandler, tracingRequestInterceptor, tracingResponseInterceptor);
+    protected ClientRequestInterceptor<TaskRequestWrapper> createTracingRequestInterceptor() {
+        return new ClientRequestInterceptor<TaskRequestWrapper>();
     }
-    
+
     /**
-     * Helper method to get the execution timeout
+     * Abstract method implementation. Returns a CommandClientResponseInterceptor
+     * @see com.flipkart.phantom.task.impl.repository.AbstractExecutorRepository#createTracingResponseInterceptor()
      */
-    private int getExecutionTimeout(TaskHandler taskHandler, String commandName) {
-    	int executionTimeout = HystrixTaskHandler.DEFAULT_EXECUTOR_TIMEOUT;
-    	if (taskHandler instanceof HystrixTaskHandler) {
-    		executionTimeout = ((HystrixTaskHandler)taskHandler).getExecutorTimeout(commandName);
-    	}
-    	return executionTimeout;
+    protected AbstractClientResponseInterceptor<TaskResult> createTracingResponseInterceptor() {
+        return new CommandClientResponseInterceptor<TaskResult>();
     }
     
     /**
-     * Helper method to get the max concurrency size for the specified handler
+     * Helper method to return the key that identifies identical requests of the specified command, if single-flight execution is enabled for it
+     * @param command the command to be executed
+     * @return the single-flight key, or null if the command must be executed by itself
      */
-    private int getMaxConcurrency(TaskHandler taskHandler, String proxyName) {
-        int maxConcurrentSize = DEFAULT_THREAD_POOL_SIZE;
-        if(taskHandler instanceof HystrixTaskHandler) {
-            HystrixTaskHandler hystrixTaskHandler = (HystrixTaskHandler) taskHandler;
-            LOGGER.debug("Isolation strategy: "+hystrixTaskHandler.getIsolationStrategy()+" for "+hystrixTaskHandler);
-            if(((TaskHandlerRegistry)getRegistry()).getPoolSize(proxyName)!=null) {
-                LOGGER.debug("Found a predefined pool size for "+proxyName+". Not using default value of "+DEFAULT_THREAD_POOL_SIZE);
-                maxConcurrentSize = ((TaskHandlerRegistry)getRegistry()).getPoolSize(proxyName);
-            }
+    private String getSingleFlightKey(TaskHandlerExecutor command) {
+        if (!(command instanceof RequestCacheableTaskHandlerExecutor) || !((RequestCacheableHystrixTaskHandler) command.taskHandler).isSingleFlight()) {
+            return null;
+        }
+        // results of requests that use a Decoder are typed by it, and streamed data cannot be read for the key
+        if (command.decoder != null || command.taskRequestWrapper.getDataStream() != null) {
+            return null;
         }
-        return maxConcurrentSize;
+        String cacheKey = ((RequestCacheableTaskHandlerExecutor) command).getCacheKey();
+        return cacheKey == null ? null : command.taskHandler.getName() + ":" + command.command + ":" + cacheKey;
     }
-    
+
     /**
-     * Helper method to refine the specified name
+     * Helper method to execute the specified command, unless an identical request is in-flight in which case its result is shared. The wait for the
+     * result of the identical request is bounded by the execution timeout of the command
+     * @param command the command to be executed
+     * @param singleFlightKey the key that identifies identical requests
+     * @return the result of the command or of the identical in-flight request
      */
-    private String getRefinedName(String name) {
-    	return name.replaceAll(ONLY_ALPHANUMERIC_REGEX, "").replaceAll(WHITESPACE_REGEX, "");
+    private TaskResult executeSingleFlight(TaskHandlerExecutor command, String singleFlightKey) {
+        SettableFuture<TaskResult> inFlight = SettableFuture.create();
+        SettableFuture<TaskResult> inFlightResult = this.inFlightCommands.putIfAbsent(singleFlightKey, inFlight);
+        if (inFlightResult != null) {
+            ProxyMetrics.getInstance(SINGLE_FLIGHT_METRICS_GROUP, command.taskHandler.getName()).increment(COALESCED_COUNT);
+            try {
+                return inFlightResult.get(command.getProperties().executionIsolationThreadTimeoutInMilliseconds().get(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for identical in-flight request", e);
+            } catch (TimeoutException e) {
+                throw new RuntimeException("Timed out waiting for identical in-flight request", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+            }
+        }
+        try {
+            TaskResult result = command.submitAndWait();
+            inFlight.set(result);
+            return result;
+        } catch (RuntimeException e) {
+            inFlight.setException(e);
+            throw e;
+        } finally {
+            this.inFlightCommands.remove(singleFlightKey, inFlight);
+        }
     }
-    
+
     /**
-     * Helper method to validate the handler identifications parameters and return a suitable active TaskHandler 
+     * Helper method to return a future of the specified in-flight result for a single caller, so that a caller cancelling its future does not
+     * cancel the result for the other callers
+     * @param inFlightResult the result of the in-flight command
+     * @param coalescedCommand the command of the caller if it shares the result of an identical request, null if the caller executes the command.
+     * The event for a coalesced command is published once the result is available, as is done for coalesced commands that are executed synchronously
+     * @param receiveTime the time the command of the caller was received
+     * @param requestWrapper the request of the caller
+     * @return the future of the caller
      */
-    private TaskHandler getTaskHandler(String commandName, String refinedCommandName, String proxyName, String refinedProxyName, RequestWrapper requestWrapper) {
-        if(!commandName.equals(refinedCommandName)) {
-            LOGGER.debug("Command names are not allowed to have Special characters/ whitespaces. Replacing: "+commandName+" with "+refinedCommandName);
-        }
-        if(!proxyName.equals(refinedProxyName)) {
-            LOGGER.debug("Thread pool names are not allowed to have Special characters/ whitespaces. Replacing: "+proxyName+" with "+refinedProxyName);
-        }
-        if(proxyName.isEmpty()) {
-            proxyName=commandName;
-            LOGGER.debug("null/empty threadPoolName passed. defaulting to commandName: "+commandName);
-        }
-        TaskHandler taskHandler = ((TaskHandlerRegistry)getRegistry()).getTaskHandlerByCommand(commandName);
-        if(taskHandler!=null) {
-            if (!taskHandler.isActive()) {
-                LOGGER.error("TaskHandler: "+taskHandler.getName()+" is not yet active. Command: "+commandName+" will not be processed");
-                return null;
+    private ListenableFuture<TaskResult> getWaiterFuture(ListenableFuture<TaskResult> inFlightResult, final TaskHandlerExecutor coalescedCommand,
+                                                         final long receiveTime, final TaskRequestWrapper requestWrapper) {
+        final SettableFuture<TaskResult> waiterFuture = SettableFuture.create();
+        Futures.addCallback(inFlightResult, new FutureCallback<TaskResult>() {
+            public void onSuccess(TaskResult result) {
+                this.complete();
+                waiterFuture.set(result);
             }
-        } else {
-        	throw new UnsupportedOperationException("Invoked unsupported command : " + commandName);        	
-        }
-        return taskHandler;
+            public void onFailure(Throwable e) {
+                this.complete();
+                waiterFuture.setException(e);
+            }
+            private void complete() {
+                if (coalescedCommand != null) {
+                    publishEvent(coalescedCommand, receiveTime, requestWrapper);
+                }
+            }
+        });
+        return waiterFuture;
     }
 
     /**
@@ -388,6 +524,99 @@ public class TaskHandlerExecutorRepository extends AbstractExecutorRepository<Ta
         }
     }
     
+    /**
+     * Observer of a command executed as part of a batch. Records the result of the command and notifies the batch Observer once all commands 
+     * in the batch have completed.
+     */
+    private class BatchedCommandObserver implements Observer<TaskResult> {
+        private long receiveTime;
+        private TaskRequestWrapper requestWrapper;
+        private TaskResult[] results;
+        private int index;
+        private AtomicInteger pendingCommands;
+        private Observer<List<TaskResult>> batchObserver;
+        private TaskHandlerExecutor command;
+        BatchedCommandObserver(long receiveTime, TaskRequestWrapper requestWrapper, TaskResult[] results, int index, AtomicInteger pendingCommands,
+                Observer<List<TaskResult>> batchObserver) {
+            this.receiveTime = receiveTime;
+            this.requestWrapper = requestWrapper;
+            this.results = results;
+            this.index = index;
+            this.pendingCommands = pendingCommands;
+            this.batchObserver = batchObserver;
+        }
+        public void onNext(TaskResult result) {
+            this.results[this.index] = result;
+        }
+        public void onCompleted() {
+            this.complete();
+        }
+        public void onError(Throwable e) {
+            LOGGER.error("Error in processing batched command " + this.requestWrapper.getCommandName() + ": " + e.getMessage(), e);
+            this.results[this.index] = null;
+            this.complete();
+        }
+        private void complete() {
+            if (this.results[this.index] == null) {
+                this.results[this.index] = new TaskResult(false, null);
+            }
+            if (this.command != null) {
+                publishEvent(this.command, this.receiveTime, this.requestWrapper);
+            }
+            // the decrement publishes the result recorded above to the thread that completes the batch
+            if (this.pendingCommands.decrementAndGet() == 0) {
+                this.batchObserver.onNext(Arrays.asList(this.results));
+                this.batchObserver.onCompleted();
+            }
+        }
+    }
+
+    /**
+     * Observer of a command executed as part of a scatter-gather. Records the outcome of the command unless the results have been gathered already,
+     * and releases the waiting caller once all commands have completed or if a required command failed.
+     */
+    private class GatheredCommandObserver implements Observer<TaskResult> {
+        private long receiveTime;
+        private GatherRequest request;
+        private TaskRequestWrapper requestWrapper;
+        private AtomicReferenceArray<GatherResult> results;
+        private int index;
+        private AtomicInteger pendingCommands;
+        private CountDownLatch gathered;
+        private TaskHandlerExecutor command;
+        private TaskResult result;
+        GatheredCommandObserver(long receiveTime, GatherRequest request, TaskRequestWrapper requestWrapper, AtomicReferenceArray<GatherResult> results,
+                int index, AtomicInteger pendingCommands, CountDownLatch gathered) {
+            this.receiveTime = receiveTime;
+            this.request = request;
+            this.requestWrapper = requestWrapper;
+            this.results = results;
+            this.index = index;
+            this.pendingCommands = pendingCommands;
+            this.gathered = gathered;
+        }
+        public void onNext(TaskResult result) {
+            this.result = result;
+        }
+        public void onCompleted() {
+            boolean success = this.result != null && this.result.isSuccess();
+            this.complete(new GatherResult(success ? GatherResult.Status.SUCCESS : GatherResult.Status.FAILURE, this.result, null));
+        }
+        public void onError(Throwable e) {
+            LOGGER.error("Error in processing gathered command " + this.requestWrapper.getCommandName() + ": " + e.getMessage(), e);
+            this.complete(new GatherResult(GatherResult.Status.FAILURE, null, e));
+        }
+        private void complete(GatherResult gatherResult) {
+            this.results.compareAndSet(this.index, null, gatherResult);
+            if (this.pendingCommands.decrementAndGet() == 0 || (this.request.isRequired() && !gatherResult.isSuccess())) {
+                this.gathered.countDown();
+            }
+            if (this.command != null) {
+                publishEvent(this.command, this.receiveTime, this.requestWrapper);
+            }
+        }
+    }
+
     /** Getter/Setter methods*/
     public void setEventProducer(ServiceProxyEventProducer eventProducer) {
         this.eventProducer = eventProducer;
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.flipkart.phantom.task.impl.metrics.ProxyMetrics;
+import com.flipkart.phantom.task.spi.AbstractHandler;
+import com.netflix.config.ConfigurationManager;
+import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.HystrixCommandProperties.ExecutionIsolationStrategy;
+import com.netflix.hystrix.HystrixThreadPoolProperties;
+
+/**
+ * <code>ThreadPoolQueue</code> has helper methods for configuring the queue of the Hystrix thread pool of a handler and measuring the time that
+ * requests wait in it. Pools have no queue by default i.e. requests are handed off to a pool thread or rejected at once. A handler may configure a
+ * bounded queue using {@link AbstractHandler#setMaxQueueSize(int)} and the queue size at which requests are rejected using
+ * {@link AbstractHandler#setQueueSizeRejectionThreshold(int)}.
+ * Hystrix creates the queue of a pool once, with the max queue size of the first command that uses it, whereas the core size and rejection threshold
+ * are read by the pool as it executes. Changes to the core size and rejection threshold of a handler, say when it is reloaded, are therefore applied
+ * to its existing pools as dynamic Hystrix properties. A change to the max queue size takes effect when a new pool is created.
+ * The total time requests waited in the queue of each pool, and the count of these requests, are recorded as {@link ProxyMetrics} in the
+ * {@value ThreadPoolQueue#METRICS_GROUP} group.
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class ThreadPoolQueue {
+
+	/** The metrics group and metric names*/
+	public static final String METRICS_GROUP = "ThreadPoolQueue";
+	public static final String QUEUE_WAIT_MICROS = "queueWaitMicros";
+	public static final String QUEUE_WAIT_COUNT = "queueWaitCount";
+
+	/** The max queue size of pools that hand off requests to pool threads without queueing*/
+	public static final int NO_QUEUE = -1;
+
+	/** The prefix and suffixes of dynamic Hystrix thread pool properties*/
+	private static final String PROPERTY_PREFIX = "hystrix.threadpool.";
+	private static final String CORE_SIZE_PROPERTY = ".coreSize";
+	private static final String REJECTION_THRESHOLD_PROPERTY = ".queueSizeRejectionThreshold";
+
+	/** The core size and rejection threshold last applied to each pool, keyed by pool name*/
+	private static final ConcurrentMap<String, String> APPLIED_SETTINGS = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * Returns the Hystrix thread pool properties of the specified pool, as per the queue settings of the handler that executes on it. Changes to the
+	 * core size and rejection threshold since the pool was created are applied to it
+	 * @param threadPoolName the Hystrix thread pool name
+	 * @param coreSize the core size of the pool
+	 * @param handler the handler that executes on the pool
+	 * @return the HystrixThreadPoolProperties Setter
+	 */
+	public static HystrixThreadPoolProperties.Setter getThreadPoolProperties(String threadPoolName, int coreSize, AbstractHandler handler) {
+		HystrixThreadPoolProperties.Setter properties = HystrixThreadPoolProperties.Setter().withCoreSize(coreSize);
+		int rejectionThreshold = ThreadPoolQueue.getRejectionThreshold(handler);
+		if (handler.getMaxQueueSize() > 0) {
+			properties.withMaxQueueSize(handler.getMaxQueueSize()).withQueueSizeRejectionThreshold(rejectionThreshold);
+		}
+		String settings = coreSize + "," + rejectionThreshold;
+		String appliedSettings = APPLIED_SETTINGS.get(threadPoolName);
+		if (settings.equals(appliedSettings)) {
+			return properties;
+		}
+		APPLIED_SETTINGS.put(threadPoolName, settings);
+		if (appliedSettings != null) {
+			// the pool exists and its properties defaults are not read again, override them
+			ConfigurationManager.getConfigInstance().setProperty(PROPERTY_PREFIX + threadPoolName + CORE_SIZE_PROPERTY, coreSize);
+			if (handler.getMaxQueueSize() > 0) {
+				ConfigurationManager.getConfigInstance().setProperty(PROPERTY_PREFIX + threadPoolName + REJECTION_THRESHOLD_PROPERTY, rejectionThreshold);
+			}
+		}
+		return properties;
+	}
+
+	/**
+	 * Records the time that the specified command waited in the queue of its thread pool. Commands that are not thread isolated are not recorded
+	 * @param command the Hystrix command, called when it starts to run
+	 * @param queueTime the time in nanos at which the command was submitted to its thread pool i.e. queued for execution
+	 */
+	public static void recordQueueWait(HystrixCommand<?> command, long queueTime) {
+		if (command.getProperties().executionIsolationStrategy().get() != ExecutionIsolationStrategy.THREAD) {
+			return;
+		}
+		ProxyMetrics metrics = ProxyMetrics.getInstance(METRICS_GROUP, command.getThreadPoolKey().name());
+		metrics.add(QUEUE_WAIT_MICROS, (System.nanoTime() - queueTime) / 1000);
+		metrics.increment(QUEUE_WAIT_COUNT);
+	}
+
+	/**
+	 * Helper method to return the queue size at which requests to the pools of the specified handler are rejected
+	 */
+	private static int getRejectionThreshold(AbstractHandler handler) {
+		if (handler.getQueueSizeRejectionThreshold() > 0) {
+			return Math.min(handler.getQueueSizeRejectionThreshold(), Math.max(handler.getMaxQueueSize(), 0));
+		}
+		return Math.max(handler.getMaxQueueSize(), 0);
+	}
+
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl.cache;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.flipkart.phantom.task.impl.metrics.ProxyMetrics;
+import com.flipkart.phantom.task.spi.TaskResult;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+/**
+ * <code>ResultCache</code> is a node level cache of successful {@link TaskResult} instances, shared by all requests to a
+ * {@link com.flipkart.phantom.task.impl.RequestCacheableHystrixTaskHandler}. Only results whose data is a byte array, or that have no data, are 
+ * cached as the size of other data is not known. Unlike the Hystrix request cache that lives only as long as a single
+ * inbound request, results here are retained for a time-to-live and are bounded by the total size of the cached result data in bytes - least recently
+ * used results are evicted first. Reads do not lock as the cache is segmented. The size bound is divided between the segments, and so results larger
+ * than a segment's share of it are not cached.
+ * Results older than the time-to-live are served stale for a further stale time-to-live, during which a single refresh of the result is scheduled.
+ * Hit, stale hit, miss, eviction and refresh counts and the cached bytes are recorded as {@link ProxyMetrics} in the {@value ResultCache#METRICS_GROUP}
+ * group.
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+@SuppressWarnings("rawtypes")
+public class ResultCache {
+
+	/** Logger for this class*/
+	private static final Logger LOGGER = LoggerFactory.getLogger(ResultCache.class);
+
+	/** The metrics group and metric names*/
+	public static final String METRICS_GROUP = "ResultCache";
+	public static final String HIT_COUNT = "hitCount";
+	public static final String STALE_HIT_COUNT = "staleHitCount";
+	public static final String MISS_COUNT = "missCount";
+	public static final String EVICTION_COUNT = "evictionCount";
+	public static final String EXPIRY_COUNT = "expiryCount";
+	public static final String REFRESH_COUNT = "refreshCount";
+	public static final String CACHED_BYTES = "cachedBytes";
+
+	/** Approximate size in bytes of a cache entry, excluding the result data and message*/
+	private static final int ENTRY_OVERHEAD = 64;
+
+	/** The number of cache segments*/
+	private static final int CONCURRENCY_LEVEL = 16;
+
+	/** The pool that runs stale result refreshes. Refreshes that cannot be queued are dropped and retried by a later request*/
+	private static final ThreadPoolExecutor REFRESH_EXECUTOR = new ThreadPoolExecutor(1, 4, 60, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<Runnable>(1000), new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "ResultCacheRefresh-" + this.count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/** The time-to-live and stale time-to-live of results, in milliseconds*/
+	private final long ttl;
+	private final long staleTTL;
+
+	/** The maximum size in bytes of a single cached result i.e. the share of the max bytes of each segment*/
+	private final long maxEntryBytes;
+
+	/** The cached results*/
+	private final Cache<String, CachedResult> cache;
+
+	/** The metrics of this cache*/
+	private final ProxyMetrics metrics;
+
+	/**
+	 * Constructor for this class
+	 * @param name the cache name, used as the metrics name
+	 * @param ttl the time-to-live of results in milliseconds
+	 * @param staleTTL the time in milliseconds for which results are served stale after the time-to-live
+	 * @param maxBytes the maximum total size of cached result data in bytes
+	 */
+	public ResultCache(String name, long ttl, long staleTTL, long maxBytes) {
+		this.ttl = ttl;
+		this.staleTTL = Math.max(staleTTL, 0);
+		this.metrics = ProxyMetrics.getInstance(METRICS_GROUP, name);
+		this.maxEntryBytes = maxBytes / CONCURRENCY_LEVEL;
+		this.cache = CacheBuilder.newBuilder()
+				.concurrencyLevel(CONCURRENCY_LEVEL)
+				.maximumWeight(maxBytes)
+				.weigher(new Weigher<String, CachedResult>() {
+					public int weigh(String key, CachedResult value) {
+						return value.size;
+					}
+				})
+				.expireAfterWrite(this.ttl + this.staleTTL, TimeUnit.MILLISECONDS)
+				.removalListener(new RemovalListener<String, CachedResult>() {
+					public void onRemoval(RemovalNotification<String, CachedResult> notification) {
+						metrics.add(CACHED_BYTES, -notification.getValue().size);
+						if (notification.wasEvicted()) {
+							metrics.increment(notification.getCause() == RemovalCause.SIZE ? EVICTION_COUNT : EXPIRY_COUNT);
+						}
+					}
+				})
+				.build();
+	}
+
+	/**
+	 * Returns the cached result for the specified key
+	 * @param key the cache key
+	 * @return the CachedResult, fresh or stale, or null if there is no result cached for the key
+	 */
+	public CachedResult get(String key) {
+		CachedResult cachedResult = this.cache.getIfPresent(key);
+		if (cachedResult == null) {
+			this.metrics.increment(MISS_COUNT);
+		} else if (cachedResult.isStale()) {
+			this.metrics.increment(STALE_HIT_COUNT);
+		} else {
+			this.metrics.increment(HIT_COUNT);
+		}
+		return cachedResult;
+	}
+
+	/**
+	 * Caches the specified result if it is cacheable, replacing any result cached for the key. Results larger than a segment's share of the max bytes
+	 * are not cached, as the segment would evict them at once, and any result cached for the key is discarded
+	 * @param key the cache key
+	 * @param result the TaskResult
+	 * @return true if the result was cached, false otherwise
+	 */
+	public boolean put(String key, TaskResult result) {
+		if (!ResultCache.isCacheable(result)) {
+			return false;
+		}
+		CachedResult cachedResult = new CachedResult(result, System.currentTimeMillis() + this.ttl);
+		if (cachedResult.size > this.maxEntryBytes) {
+			this.cache.invalidate(key);
+			return false;
+		}
+		this.metrics.add(CACHED_BYTES, cachedResult.size);
+		this.cache.put(key, cachedResult);
+		return true;
+	}
+
+	/**
+	 * Schedules a refresh of the specified stale result, unless one has already been scheduled
+	 * @param cachedResult the stale CachedResult
+	 * @param refresh the refresh task, expected to put a new result for the key when successful
+	 */
+	public void refresh(final CachedResult cachedResult, final Runnable refresh) {
+		if (cachedResult.refreshing.compareAndSet(false, true)) {
+			this.metrics.increment(REFRESH_COUNT);
+			try {
+				REFRESH_EXECUTOR.execute(new Runnable() {
+					public void run() {
+						try {
+							refresh.run();
+						} finally {
+							// a successful refresh replaces the entry, a failed one may be retried by a later request
+							cachedResult.refreshing.set(false);
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				LOGGER.debug("Result cache refresh dropped as the refresh queue is full");
+				cachedResult.refreshing.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Discards all cached results
+	 */
+	public void invalidateAll() {
+		this.cache.invalidateAll();
+	}
+
+	/**
+	 * Returns true if the specified result may be cached i.e. it is successful and its data, if any, is a byte array whose size is known
+	 * @param result the TaskResult
+	 * @return true if the result may be cached
+	 */
+	public static boolean isCacheable(TaskResult result) {
+		return result != null && result.isSuccess() && !result.isDataArray() && (result.getData() == null || result.getData() instanceof byte[]);
+	}
+
+	/**
+	 * A cached result and its freshness
+	 */
+	public static class CachedResult {
+		private final TaskResult result;
+		private final long staleTime;
+		private final int size;
+		private final AtomicBoolean refreshing = new AtomicBoolean();
+		CachedResult(TaskResult result, long staleTime) {
+			this.result = result;
+			this.staleTime = staleTime;
+			int size = ENTRY_OVERHEAD;
+			if (result.getData() != null) {
+				size += ((byte[]) result.getData()).length;
+			}
+			if (result.getMessage() != null) {
+				size += result.getMessage().length() * 2;
+			}
+			if (result.getMetadata() != null) {
+				size += result.getMetadata().length;
+			}
+			this.size = size;
+		}
+		public TaskResult getResult() {
+			return this.result;
+		}
+		public boolean isStale() {
+			return System.currentTimeMillis() >= this.staleTime;
+		}
+	}
+
+	/** Start Getter/Setter methods */
+	public long getTTL() {
+		return this.ttl;
+	}
+	public long getStaleTTL() {
+		return this.staleTTL;
+	}
+	public long getSize() {
+		return this.cache.size();
+	}
+	public long getMaxEntryBytes() {
+		return this.maxEntryBytes;
+	}
+	/** End Getter/Setter methods */
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl.encoder;
+
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flipkart.phantom.task.impl.TaskContextFactory;
+import com.flipkart.phantom.task.spi.Encoder;
+import com.flipkart.phantom.task.spi.TaskContext;
+
+/**
+ * <code>JsonEncoder</code> is an {@link Encoder} that writes objects as JSON. Uses the {@link ObjectMapper} of the {@link TaskContext} unless one is 
+ * explicitly set, and a default ObjectMapper until the TaskContext is initialized.
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class JsonEncoder implements Encoder<Object> {
+
+	/** The ObjectMapper used for writing objects before the TaskContext is initialized*/
+	private static final ObjectMapper DEFAULT_OBJECT_MAPPER = new ObjectMapper();
+
+	/** The ObjectMapper used for writing objects*/
+	private ObjectMapper objectMapper;
+
+	/**
+	 * No-args constructor. The ObjectMapper of the TaskContext is used
+	 */
+	public JsonEncoder() {
+	}
+
+	/**
+	 * Constructor for this class
+	 * @param objectMapper the ObjectMapper used for writing objects
+	 */
+	public JsonEncoder(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * Interface method implementation. Writes the specified object as JSON, leaving the OutputStream open
+	 * @see com.flipkart.phantom.task.spi.Encoder#encode(java.lang.Object, java.io.OutputStream)
+	 */
+	public void encode(Object object, OutputStream outputStream) throws Exception {
+		ObjectMapper mapper = this.getObjectMapper();
+		JsonGenerator generator = mapper.getFactory().createGenerator(outputStream);
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		mapper.writeValue(generator, object);
+		generator.close();
+	}
+
+	/** Start Getter/Setter methods */
+	public ObjectMapper getObjectMapper() {
+		if (this.objectMapper == null) {
+			TaskContext taskContext = TaskContextFactory.getTaskContext();
+			if (taskContext == null) {
+				// not cached, the ObjectMapper of the TaskContext is used once the context is initialized
+				return DEFAULT_OBJECT_MAPPER;
+			}
+			this.objectMapper = taskContext.getObjectMapper();
+		}
+		return this.objectMapper;
+	}
+	public void setObjectMapper(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+	/** End Getter/Setter methods */
+
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl.encoder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * <code>SmileEncoder</code> is a {@link JsonEncoder} that writes objects in Smile, the compact binary JSON format. Needs no schema and may be 
+ * read by any Jackson ObjectMapper created with a SmileFactory.
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class SmileEncoder extends JsonEncoder {
+
+	/**
+	 * No-args constructor
+	 */
+	public SmileEncoder() {
+		super(new ObjectMapper(new SmileFactory()));
+	}
+
+}
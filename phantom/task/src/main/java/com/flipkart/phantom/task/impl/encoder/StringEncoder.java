@@ -0,0 +1,51 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl.encoder;
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import com.flipkart.phantom.task.spi.Encoder;
+
+/**
+ * <code>StringEncoder</code> is an {@link Encoder} that writes the String value of objects in the configured charset, UTF-8 by default.
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class StringEncoder implements Encoder<Object> {
+
+	/** The charset used for writing Strings*/
+	private Charset charset = Charset.forName("UTF-8");
+
+	/**
+	 * Interface method implementation. Writes the String value of the specified object
+	 * @see com.flipkart.phantom.task.spi.Encoder#encode(java.lang.Object, java.io.OutputStream)
+	 */
+	public void encode(Object object, OutputStream outputStream) throws Exception {
+		outputStream.write(object.toString().getBytes(this.charset));
+	}
+
+	/** Start Getter/Setter methods */
+	public String getCharset() {
+		return this.charset.name();
+	}
+	public void setCharset(String charset) {
+		this.charset = Charset.forName(charset);
+	}
+	/** End Getter/Setter methods */
+
+}
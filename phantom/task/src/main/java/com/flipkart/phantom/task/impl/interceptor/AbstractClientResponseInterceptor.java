@@ -41,13 +41,16 @@ public abstract class AbstractClientResponseInterceptor<S> implements ResponseIn
     /** The EventDispatchingSpanCollector instance used in tracing requests*/
     private EventDispatchingSpanCollector eventDispatchingSpanCollector;
     private List<TraceFilter> traceFilters;
+
+    /** The ClientTracer, created on first use as the interceptor is shared across requests*/
+    private volatile ClientTracer clientTracer;
     
 	/**
 	 * Interface method implementation. Interprets the response and submits suitable annotation to the client tracer and also marks receipt of the response on it. 
 	 * @see com.flipkart.phantom.task.spi.interceptor.ResponseInterceptor#process(java.lang.Object)
 	 */
 	public void process(S response, Optional<RuntimeException> transportError) {
-    	ClientTracer clientTracer = Brave.getClientTracer(this.eventDispatchingSpanCollector, this.traceFilters);		
+    	ClientTracer clientTracer = this.getClientTracer();		
 		if (transportError.isPresent()) {
 			clientTracer.submitAnnotation(FAILURE_ANNOTATION);
 		} else {
@@ -77,12 +80,24 @@ public abstract class AbstractClientResponseInterceptor<S> implements ResponseIn
 	 */
 	protected abstract Optional<Integer> getResponseStatusCode(S response);
 	
+	/**
+	 * Helper method to return the ClientTracer. Creation is idempotent and is therefore not synchronized
+	 */
+	private ClientTracer getClientTracer() {
+		if (this.clientTracer == null) {
+			this.clientTracer = Brave.getClientTracer(this.eventDispatchingSpanCollector, this.traceFilters);
+		}
+		return this.clientTracer;
+	}
+
 	/** Getter/Setter methods */
 	public void setEventDispatchingSpanCollector(EventDispatchingSpanCollector eventDispatchingSpanCollector) {
 		this.eventDispatchingSpanCollector = eventDispatchingSpanCollector;
+		this.clientTracer = null;
 	}
 	public void setTraceFilters(List<TraceFilter> traceFilters) {
 		this.traceFilters = traceFilters;
+		this.clientTracer = null;
 	}	
 	
 }
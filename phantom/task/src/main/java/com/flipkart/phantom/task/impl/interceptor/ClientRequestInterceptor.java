@@ -15,7 +15,9 @@
  */
 package com.flipkart.phantom.task.impl.interceptor;
 
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -29,7 +31,6 @@ import com.github.kristofa.brave.ClientTracer;
 import com.github.kristofa.brave.SpanId;
 import com.github.kristofa.brave.TraceFilter;
 import com.google.common.base.Optional;
-import com.google.common.collect.Lists;
 
 /**
  * <code>ClientRequestInterceptor</code> is an implementation of {@link RequestInterceptor} that traces client requests to services and task handlers.
@@ -46,19 +47,26 @@ public class ClientRequestInterceptor<T extends RequestWrapper> implements Reque
     private static final String TRUE = "true";
     private static final String FALSE = "false";
 
+    /** The headers of requests that are not traced*/
+    static final List<Map.Entry<String, String>> NO_TRACING_HEADERS = Collections.<Map.Entry<String, String>>singletonList(
+    		new AbstractMap.SimpleImmutableEntry<String, String>(BraveHttpHeaders.Sampled.getName(), FALSE));
+
     /** The optional Span name filter*/
     private Optional<SpanNameFilter> spanNameFilter = Optional.absent();
 
     /** The EventDispatchingSpanCollector instance used in tracing requests*/
     private EventDispatchingSpanCollector eventDispatchingSpanCollector;
     private List<TraceFilter> traceFilters;
+
+    /** The ClientTracer, created on first use as the interceptor is shared across requests*/
+    private volatile ClientTracer clientTracer;
     
 	/**
 	 * Interface method implementation. Performs client request tracing.
 	 * @see com.flipkart.phantom.task.spi.interceptor.RequestInterceptor#process(com.flipkart.phantom.task.spi.RequestWrapper)
 	 */
 	public void process(T request) {
-    	ClientTracer clientTracer = Brave.getClientTracer(this.eventDispatchingSpanCollector, this.traceFilters);
+    	ClientTracer clientTracer = this.getClientTracer();
 		String spanName = this.getSpanName(request);
 		SpanId newSpanId = clientTracer.startNewSpan(spanName);
 		this.addTracingHeaders(request, newSpanId, spanName);
@@ -111,21 +119,31 @@ public class ClientRequestInterceptor<T extends RequestWrapper> implements Reque
 	 * @param spanName the name of the span
 	 */
 	protected void addTracingHeaders(T request, SpanId spanId, String spanName) {
-		Map<String, String> headers = new HashMap<String, String>();
-        if (spanId != null) {
-        	headers.put(BraveHttpHeaders.Sampled.getName(), TRUE);
-        	headers.put(BraveHttpHeaders.TraceId.getName(), Long.toString(spanId.getTraceId(), 16));
-        	headers.put(BraveHttpHeaders.SpanId.getName(), Long.toString(spanId.getSpanId(), 16));
-            if (spanId.getParentSpanId() != null) {
-            	headers.put(BraveHttpHeaders.ParentSpanId.getName(),Long.toString(spanId.getParentSpanId(), 16));
-            }
-            if (spanName != null) {
-            	headers.put(BraveHttpHeaders.SpanName.getName(), spanName);
-            }
-        } else {
-        	headers.put(BraveHttpHeaders.Sampled.getName(), FALSE);
+        if (spanId == null) {
+        	request.setHeaders(NO_TRACING_HEADERS);
+        	return;
+        }
+		List<Map.Entry<String, String>> headers = new ArrayList<Map.Entry<String, String>>(5);
+		headers.add(new AbstractMap.SimpleImmutableEntry<String, String>(BraveHttpHeaders.Sampled.getName(), TRUE));
+		headers.add(new AbstractMap.SimpleImmutableEntry<String, String>(BraveHttpHeaders.TraceId.getName(), Long.toString(spanId.getTraceId(), 16)));
+		headers.add(new AbstractMap.SimpleImmutableEntry<String, String>(BraveHttpHeaders.SpanId.getName(), Long.toString(spanId.getSpanId(), 16)));
+        if (spanId.getParentSpanId() != null) {
+        	headers.add(new AbstractMap.SimpleImmutableEntry<String, String>(BraveHttpHeaders.ParentSpanId.getName(), Long.toString(spanId.getParentSpanId(), 16)));
         }
-        request.setHeaders(Lists.newArrayList(headers.entrySet()));
+        if (spanName != null) {
+        	headers.add(new AbstractMap.SimpleImmutableEntry<String, String>(BraveHttpHeaders.SpanName.getName(), spanName));
+        }
+        request.setHeaders(headers);
+	}
+
+	/**
+	 * Helper method to return the ClientTracer. Creation is idempotent and is therefore not synchronized
+	 */
+	private ClientTracer getClientTracer() {
+		if (this.clientTracer == null) {
+			this.clientTracer = Brave.getClientTracer(this.eventDispatchingSpanCollector, this.traceFilters);
+		}
+		return this.clientTracer;
 	}
 
 	/** Getter/Setter methods */
@@ -137,9 +155,11 @@ public class ClientRequestInterceptor<T extends RequestWrapper> implements Reque
 	}
 	public void setEventDispatchingSpanCollector(EventDispatchingSpanCollector eventDispatchingSpanCollector) {
 		this.eventDispatchingSpanCollector = eventDispatchingSpanCollector;
+		this.clientTracer = null;
 	}
 	public void setTraceFilters(List<TraceFilter> traceFilters) {
 		this.traceFilters = traceFilters;
+		this.clientTracer = null;
 	}	
 
 }
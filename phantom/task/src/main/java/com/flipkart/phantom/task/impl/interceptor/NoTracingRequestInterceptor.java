@@ -0,0 +1,39 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl.interceptor;
+
+import com.flipkart.phantom.task.spi.RequestWrapper;
+import com.flipkart.phantom.task.spi.interceptor.RequestInterceptor;
+
+/**
+ * <code>NoTracingRequestInterceptor</code> is an implementation of {@link RequestInterceptor} for client requests that are not traced. It does not create
+ * spans and only sets the header that tells services downstream that the request is not traced, same as {@link ClientRequestInterceptor} does for
+ * requests that are not sampled.
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class NoTracingRequestInterceptor<T extends RequestWrapper> implements RequestInterceptor<T> {
+
+	/**
+	 * Interface method implementation. Sets the no tracing header on the request
+	 * @see com.flipkart.phantom.task.spi.interceptor.RequestInterceptor#process(com.flipkart.phantom.task.spi.RequestWrapper)
+	 */
+	public void process(T request) {
+		request.setHeaders(ClientRequestInterceptor.NO_TRACING_HEADERS);
+	}
+
+}
@@ -15,7 +15,6 @@
  */
 package com.flipkart.phantom.task.impl.interceptor;
 
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -26,6 +25,7 @@ import com.flipkart.phantom.task.spi.tracing.TraceData;
 import com.github.kristofa.brave.BraveHttpHeaders;
 import com.github.kristofa.brave.EndPointSubmitter;
 import com.github.kristofa.brave.ServerTracer;
+import com.github.kristofa.brave.TraceFilter;
 import com.google.common.base.Optional;
 
 /**
@@ -52,6 +52,28 @@ public class ServerRequestInterceptor<T extends RequestWrapper, S> implements Re
     
     /** The EndPointSubmitter used for submitting service endpoint details*/
     private EndPointSubmitter endPointSubmitter;
+
+    /** The TraceFilter that samples requests which do not carry a tracing decision. Null, if sampling is left to the ServerTracer*/
+    private TraceFilter traceFilter;
+    
+    /**
+     * Decides if the specified request is to be traced. Requests that carry a tracing decision in their headers are traced as per the decision,
+     * while others are sampled using the TraceFilter. Meant to be called once per request, before {@link #process(RequestWrapper)}, so that
+     * requests that are not traced skip all tracing work. Note that a ServerTracer used along with a TraceFilter must not itself sample requests,
+     * as requests would then be sampled twice.
+     * @param request the request wrapper
+     * @return true if the request is to be traced, false otherwise
+     */
+    public boolean isTraced(T request) {
+    	TraceData traceData = getTraceDataFromHeaders(request);
+    	if (Boolean.FALSE.equals(traceData.shouldBeTraced())) {
+    		return false;
+    	}
+    	if ((traceData.getTraceId() != null && traceData.getSpanId() != null) || this.traceFilter == null) {
+    		return true;
+    	}
+    	return this.traceFilter.trace(this.getSpanName(traceData, request));
+    }
     
     /**
      * Interface method implementation. Sets up the ServerTrace current trace and submits the service enpoint details to EndPointSubmitter
@@ -98,16 +120,22 @@ public class ServerRequestInterceptor<T extends RequestWrapper, S> implements Re
     private TraceData getTraceDataFromHeaders(T request) {
         TraceData traceData = new TraceData();
         if (request.getHeaders().isPresent()) {
-        	Map<String,String> headersMap = new HashMap<String,String>();
+        	// headers are matched in place, as most requests carry no or few headers
         	for (Iterator<Map.Entry<String, String>> headers=request.getHeaders().get().iterator(); headers.hasNext();) {
         		Map.Entry<String, String> entry = headers.next();
-            	headersMap.put(entry.getKey(), entry.getValue());
+        		String name = entry.getKey();
+        		if (BraveHttpHeaders.TraceId.getName().equals(name)) {
+        			traceData.setTraceId(longOrNull(entry.getValue()));
+        		} else if (BraveHttpHeaders.SpanId.getName().equals(name)) {
+        			traceData.setSpanId(longOrNull(entry.getValue()));
+        		} else if (BraveHttpHeaders.ParentSpanId.getName().equals(name)) {
+        			traceData.setParentSpanId(longOrNull(entry.getValue()));
+        		} else if (BraveHttpHeaders.Sampled.getName().equals(name)) {
+        			traceData.setShouldBeSampled(nullOrBoolean(entry.getValue()));
+        		} else if (BraveHttpHeaders.SpanName.getName().equals(name)) {
+        			traceData.setSpanName(entry.getValue());
+        		}
         	}
-	        traceData.setTraceId(longOrNull(headersMap.get(BraveHttpHeaders.TraceId.getName())));
-	        traceData.setSpanId(longOrNull(headersMap.get(BraveHttpHeaders.SpanId.getName())));
-	        traceData.setParentSpanId(longOrNull(headersMap.get(BraveHttpHeaders.ParentSpanId.getName())));
-	        traceData.setShouldBeSampled(nullOrBoolean(headersMap.get(BraveHttpHeaders.Sampled.getName())));
-	        traceData.setSpanName(headersMap.get(BraveHttpHeaders.SpanName.getName()));
         }
         return traceData;
     }
@@ -147,5 +175,8 @@ public class ServerRequestInterceptor<T extends RequestWrapper, S> implements Re
 	public void setServicePort(int servicePort) {
 		this.servicePort = servicePort;
 	}
+	public void setTraceFilter(TraceFilter traceFilter) {
+		this.traceFilter = traceFilter;
+	}
 	
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl.metrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <code>ProxyMetrics</code> holds named counters and gauges of the service proxy that are not tracked by Hystrix, such as overload and load shedding counts.
+ * Instances are identified by a group (the kind of entity measured, say a pool) and a name (the entity). Like the Hystrix metrics, instances are
+ * registered globally and are reported along with the Hystrix metrics snapshot.
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class ProxyMetrics {
+
+	/** All registered ProxyMetrics instances, keyed by group and name*/
+	private static final ConcurrentMap<String, ProxyMetrics> INSTANCES = new ConcurrentHashMap<String, ProxyMetrics>();
+
+	/** The group and name of this instance*/
+	private String group;
+	private String name;
+
+	/** The metric values, keyed by metric name*/
+	private ConcurrentMap<String, AtomicLong> metrics = new ConcurrentHashMap<String, AtomicLong>();
+
+	/**
+	 * Constructor for this class
+	 * @param group the group of the entity measured
+	 * @param name the name of the entity measured
+	 */
+	private ProxyMetrics(String group, String name) {
+		this.group = group;
+		this.name = name;
+	}
+
+	/**
+	 * Returns the ProxyMetrics instance for the specified group and name, creating and registering it if required
+	 * @param group the group of the entity measured
+	 * @param name the name of the entity measured
+	 * @return the ProxyMetrics instance
+	 */
+	public static ProxyMetrics getInstance(String group, String name) {
+		String key = group + "." + name;
+		ProxyMetrics proxyMetrics = INSTANCES.get(key);
+		if (proxyMetrics == null) {
+			INSTANCES.putIfAbsent(key, new ProxyMetrics(group, name));
+			proxyMetrics = INSTANCES.get(key);
+		}
+		return proxyMetrics;
+	}
+
+	/**
+	 * Returns all registered ProxyMetrics instances
+	 * @return unmodifiable collection of ProxyMetrics instances
+	 */
+	public static Collection<ProxyMetrics> getInstances() {
+		return Collections.unmodifiableCollection(INSTANCES.values());
+	}
+
+	/**
+	 * Increments the specified counter by one
+	 * @param metric the counter name
+	 * @return the incremented value
+	 */
+	public long increment(String metric) {
+		return this.add(metric, 1);
+	}
+
+	/**
+	 * Adds the specified delta to the specified counter
+	 * @param metric the counter name
+	 * @param delta the value to add, may be negative
+	 * @return the updated value
+	 */
+	public long add(String metric, long delta) {
+		return this.getMetric(metric).addAndGet(delta);
+	}
+
+	/**
+	 * Sets the specified gauge to the specified value
+	 * @param metric the gauge name
+	 * @param value the current value
+	 */
+	public void set(String metric, long value) {
+		this.getMetric(metric).set(value);
+	}
+
+	/**
+	 * Returns the current value of the specified metric
+	 * @param metric the metric name
+	 * @return the current value, 0 if the metric has not been recorded
+	 */
+	public long get(String metric) {
+		AtomicLong value = this.metrics.get(metric);
+		return value == null ? 0 : value.get();
+	}
+
+	/**
+	 * Returns a snapshot of all the metric values of this instance
+	 * @return Map of metric names to values
+	 */
+	public Map<String, Long> getSnapshot() {
+		Map<String, Long> snapshot = new HashMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> metric : this.metrics.entrySet()) {
+			snapshot.put(metric.getKey(), metric.getValue().get());
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Helper method to return the value holder of the specified metric, creating it if required
+	 * @param metric the metric name
+	 * @return the value holder
+	 */
+	private AtomicLong getMetric(String metric) {
+		AtomicLong value = this.metrics.get(metric);
+		if (value == null) {
+			this.metrics.putIfAbsent(metric, new AtomicLong());
+			value = this.metrics.get(metric);
+		}
+		return value;
+	}
+
+	/** Start Getter/Setter methods */
+	public String getGroup() {
+		return this.group;
+	}
+	public String getName() {
+		return this.name;
+	}
+	/** End Getter/Setter methods */
+
+}
@@ -18,12 +18,15 @@ package com.flipkart.phantom.task.impl.registry;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.trpr.platform.core.impl.logging.LogFactory;
 import org.trpr.platform.core.spi.logging.Logger;
 
 import com.flipkart.phantom.task.impl.HystrixTaskHandler;
+import com.flipkart.phantom.task.impl.TaskExecutionPlan;
 import com.flipkart.phantom.task.impl.TaskHandler;
+import com.flipkart.phantom.task.impl.TaskHandlerExecutor;
 import com.flipkart.phantom.task.spi.registry.AbstractHandlerRegistry;
 
 /**
@@ -44,6 +47,9 @@ public class TaskHandlerRegistry extends AbstractHandlerRegistry<TaskHandler> {
 	/** Map storing the mapping of pool Name to its core threadpool size */
 	private Map<String,Integer> concurrencyPoolSize = new ConcurrentHashMap<String, Integer>();
 
+	/** Map storing the execution plans of a command, keyed by command name and then thread pool name */
+	private ConcurrentMap<String,ConcurrentMap<String,TaskExecutionPlan>> executionPlans = new ConcurrentHashMap<String, ConcurrentMap<String,TaskExecutionPlan>>();
+
     /**
      * Returns the {@link TaskHandler} instance for the given Command String
      * @param commandString The command string
@@ -61,6 +67,40 @@ public class TaskHandlerRegistry extends AbstractHandlerRegistry<TaskHandler> {
     public Integer getPoolSize(String poolOrCommandName) {
         return this.concurrencyPoolSize.get(poolOrCommandName);
     }
+
+    /**
+     * Returns the {@link TaskExecutionPlan} for executing the specified command on the specified thread pool. Plans for the command's own thread
+     * pool are created when the TaskHandler is inited, plans for other configured thread pools are created on first use. Commands are executed on 
+     * their own thread pool when the specified thread pool is not configured, so that pool names sent by clients do not create plans and 
+     * thread pools without bound.
+     * @param commandName the command name
+     * @param proxyName the thread pool name, defaults to the command name if null/empty
+     * @return the TaskExecutionPlan
+     * @throws UnsupportedOperationException if no TaskHandler is registered for the command
+     */
+    public TaskExecutionPlan getExecutionPlan(String commandName, String proxyName) {
+        if (proxyName == null || proxyName.isEmpty()) {
+            proxyName = commandName;
+        }
+        ConcurrentMap<String,TaskExecutionPlan> commandPlans = this.executionPlans.get(commandName);
+        if (commandPlans == null) {
+            throw new UnsupportedOperationException("Invoked unsupported command : " + commandName);
+        }
+        TaskExecutionPlan executionPlan = commandPlans.get(proxyName);
+        if (executionPlan == null) {
+            if (!this.concurrencyPoolSize.containsKey(proxyName)) {
+                LOGGER.debug("Thread pool " + proxyName + " is not configured. Executing command " + commandName + " on its own thread pool");
+                return commandPlans.get(commandName);
+            }
+            TaskHandler taskHandler = this.commandToTaskHandler.get(commandName);
+            if (taskHandler == null) { // handler has been unregistered since the lookup
+                throw new UnsupportedOperationException("Invoked unsupported command : " + commandName);
+            }
+            commandPlans.putIfAbsent(proxyName, this.createExecutionPlan(taskHandler, commandName, proxyName));
+            executionPlan = commandPlans.get(proxyName);
+        }
+        return executionPlan;
+    }
     
 	/**
 	 * Abstract method implementation. Returns the type of {@link TaskHandler}
@@ -86,6 +126,19 @@ public class TaskHandlerRegistry extends AbstractHandlerRegistry<TaskHandler> {
                 throw new IllegalArgumentException("Command " + commandName + " is already registered with handler " + this.commandToTaskHandler.get(commandName).getName());
             }
             this.commandToTaskHandler.put(commandName, taskHandler);
+            this.initializeExecutionPlans(taskHandler, commandName);
+		}
+	}
+
+	/**
+	 * Overridden super class method.
+	 * @see com.flipkart.phantom.task.spi.registry.AbstractHandlerRegistry#postReinitHandler(com.flipkart.phantom.task.spi.AbstractHandler)
+	 * Re-reads the thread pool sizes and recreates the execution plans of all commands supported by the TaskHandler
+	 */
+	protected void postReinitHandler(TaskHandler taskHandler) {
+		this.initializeConcurrencyPoolMap(taskHandler);
+		for (String commandName: taskHandler.getCommands()) {
+			this.initializeExecutionPlans(taskHandler, commandName);
 		}
 	}
 	
@@ -97,9 +150,35 @@ public class TaskHandlerRegistry extends AbstractHandlerRegistry<TaskHandler> {
     protected void postUnregisterHandler(TaskHandler handler) {
 		for (String commandName: handler.getCommands()) {
 			this.commandToTaskHandler.remove(commandName);
+			this.executionPlans.remove(commandName);
 		}
 	}
 	
+    /**
+     * Helper method to (re)create the execution plans of the specified command, discarding any existing ones. 
+     * The plan for the command's own thread pool is created upfront
+     */
+    private void initializeExecutionPlans(TaskHandler taskHandler, String commandName) {
+        ConcurrentMap<String,TaskExecutionPlan> commandPlans = new ConcurrentHashMap<String, TaskExecutionPlan>();
+        commandPlans.put(commandName, this.createExecutionPlan(taskHandler, commandName, commandName));
+        this.executionPlans.put(commandName, commandPlans);
+    }
+
+    /**
+     * Helper method to create the execution plan of the specified command on the specified thread pool
+     */
+    private TaskExecutionPlan createExecutionPlan(TaskHandler taskHandler, String commandName, String proxyName) {
+        int maxConcurrency = TaskHandlerExecutor.DEFAULT_HYSTRIX_THREAD_POOL_SIZE;
+        if (taskHandler instanceof HystrixTaskHandler) {
+            Integer poolSize = this.concurrencyPoolSize.get(proxyName);
+            if (poolSize != null) {
+                LOGGER.debug("Found a predefined pool size for " + proxyName + ". Not using default value of " + TaskHandlerExecutor.DEFAULT_HYSTRIX_THREAD_POOL_SIZE);
+                maxConcurrency = poolSize;
+            }
+        }
+        return new TaskExecutionPlan(taskHandler, commandName, proxyName, maxConcurrency);
+    }
+
     /**
      * Helper method to initialize concurrencyPoolSize from {@link com.flipkart.phantom.task.impl.TaskHandler#getInitializationCommands()} ()}
      * and {@link com.flipkart.phantom.task.impl.HystrixTaskHandler#getConcurrentPoolSizeParams()} ()}
@@ -16,9 +16,13 @@
 
 package com.flipkart.phantom.task.impl.repository;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.util.Assert;
@@ -27,11 +31,13 @@ import com.flipkart.phantom.task.impl.TaskHandler;
 import com.flipkart.phantom.task.impl.collector.EventDispatchingSpanCollector;
 import com.flipkart.phantom.task.impl.interceptor.AbstractClientResponseInterceptor;
 import com.flipkart.phantom.task.impl.interceptor.ClientRequestInterceptor;
+import com.flipkart.phantom.task.impl.interceptor.NoTracingRequestInterceptor;
 import com.flipkart.phantom.task.spi.AbstractHandler;
 import com.flipkart.phantom.task.spi.Executor;
 import com.flipkart.phantom.task.spi.RequestContext;
 import com.flipkart.phantom.task.spi.RequestWrapper;
 import com.flipkart.phantom.task.spi.TaskContext;
+import com.flipkart.phantom.task.spi.interceptor.InterceptorChain;
 import com.flipkart.phantom.task.spi.interceptor.RequestInterceptor;
 import com.flipkart.phantom.task.spi.interceptor.ResponseInterceptor;
 import com.flipkart.phantom.task.spi.registry.AbstractHandlerRegistry;
@@ -63,6 +69,9 @@ public abstract class AbstractExecutorRepository<T extends RequestWrapper,S, R e
     /** The EventDispatchingSpanCollector instance used in tracing requests*/
     protected EventDispatchingSpanCollector eventDispatchingSpanCollector;
 
+    /** The interceptors of each handler, keyed by handler name*/
+    private ConcurrentMap<String, HandlerInterceptors> handlerInterceptors = new ConcurrentHashMap<String, HandlerInterceptors>();
+
     /**
      * Interface method implementation. Checks if all mandatory properties have been set
      * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
@@ -74,49 +83,102 @@ public abstract class AbstractExecutorRepository<T extends RequestWrapper,S, R e
     }
     
     /**
-     * Helper method to wrap the Executor with request and response interceptors 
+     * Creates the client request tracing interceptor for the handlers of this repository. The interceptor is shared by all requests to a handler
+     * @return the ClientRequestInterceptor instance
      */
-    protected Executor<T,S> wrapExecutorWithInterceptors(Executor<T,S> executor, R handler, 
-    		ClientRequestInterceptor<T> tracingRequestInterceptor, AbstractClientResponseInterceptor<S> tracingResponseInterceptor) {
+    protected abstract ClientRequestInterceptor<T> createTracingRequestInterceptor();
+
+    /**
+     * Creates the client response tracing interceptor for the handlers of this repository. The interceptor is shared by all requests to a handler
+     * @return the AbstractClientResponseInterceptor instance
+     */
+    protected abstract AbstractClientResponseInterceptor<S> createTracingResponseInterceptor();
+
+    /**
+     * Helper method to wrap the Executor with the request and response interceptors of the specified handler
+     */
+    protected Executor<T,S> wrapExecutorWithInterceptors(Executor<T,S> executor, R handler) {
         if (executor != null) {
-        	// we'll add the request and response interceptors that were configured on this repository
-        	for (RequestInterceptor<T> requestInterceptor : this.requestInterceptors) {
-        		executor.addRequestInterceptor(requestInterceptor);
-        	}
-        	for (ResponseInterceptor<S> responseInterceptor : this.responseInterceptors) {
-        		executor.addResponseInterceptor(responseInterceptor);
-        	}
-	        // now add the tracing interceptors - has to be an instance specific to each new Executor 
+        	HandlerInterceptors handlerInterceptors = this.getHandlerInterceptors(executor, handler);
 	        Optional<RequestContext> requestContextOptional = executor.getRequestWrapper().getRequestContext();
-	    	List<TraceFilter> traceFilters = Arrays.<TraceFilter>asList(this.registry.getTraceFilterForHandler(handler.getName()));
 	    	// The request did not come through a server/service call i.e. not via Netty Channel handlers 
 	        if (!requestContextOptional.isPresent()) {
 	        	RequestContext newRequestContext = new RequestContext();
 	        	requestContextOptional = Optional.of(newRequestContext);
 	        	executor.getRequestWrapper().setRequestContext(requestContextOptional);
 	        }
-        	final String serviceName = executor.getServiceName().isPresent() ? executor.getServiceName().get() : Executor.DEFAULT_SERVICE_NAME;
-	        if (requestContextOptional.get().getCurrentServerSpan() == null) {
-	        	final ServerTracer serverTracer = Brave.getServerTracer(this.eventDispatchingSpanCollector, traceFilters);
-	        	// we dont know what server trace this request was part of, so set it to unknown 
-	        	serverTracer.setStateUnknown(handler.getName());
-	        	// set the endpoint to default
-	        	Brave.getEndPointSubmitter().submit(TaskHandler.DEFAULT_HOST, TaskHandler.DEFAULT_PORT, serviceName);
-	        	// Set the current server span on the request context 
-	        	requestContextOptional.get().setCurrentServerSpan(Brave.getServerSpanThreadBinder().getCurrentServerSpan());
+	        RequestContext requestContext = requestContextOptional.get();
+	        if (requestContext.isTraced() && requestContext.getCurrentServerSpan() == null) {
+	        	// we dont know what server trace this request was part of, so sample it as an unknown trace 
+	        	requestContext.setTraced(handlerInterceptors.traceFilter == null || handlerInterceptors.traceFilter.trace(handler.getName()));
+	        	if (requestContext.isTraced()) {
+		        	handlerInterceptors.serverTracer.setStateUnknown(handler.getName());
+		        	// set the endpoint to default
+		        	Brave.getEndPointSubmitter().submit(TaskHandler.DEFAULT_HOST, TaskHandler.DEFAULT_PORT, handlerInterceptors.clientEndpoint.getServiceName());
+		        	// Set the current server span on the request context 
+		        	requestContext.setCurrentServerSpan(Brave.getServerSpanThreadBinder().getCurrentServerSpan());
+	        	}
+	        }
+	        if (requestContext.isTraced()) {
+		        // Set the client endpoint on the request context
+	        	requestContext.setCurrentClientEndpoint(handlerInterceptors.clientEndpoint);
+	        	executor.setInterceptorChain(handlerInterceptors.interceptorChain);
+	        } else {
+	        	// the request is not traced, skip all span and annotation work
+	        	executor.setInterceptorChain(handlerInterceptors.noTracingInterceptorChain);
 	        }
-	        // Set the client endpoint on the request context
-        	requestContextOptional.get().setCurrentClientEndpoint(new RequestContext.ServiceEndpoint(handler.getHost(), handler.getPort(), serviceName));
-	    	tracingRequestInterceptor.setEventDispatchingSpanCollector(this.eventDispatchingSpanCollector);
-	    	tracingRequestInterceptor.setTraceFilters(traceFilters);
-	        executor.addRequestInterceptor(tracingRequestInterceptor);
-	        tracingResponseInterceptor.setEventDispatchingSpanCollector(this.eventDispatchingSpanCollector);
-	    	tracingResponseInterceptor.setTraceFilters(traceFilters);
-	        executor.addResponseInterceptor(tracingResponseInterceptor);
         }
         return executor;
     }
-    
+
+    /**
+     * Helper method to return the interceptors of the specified handler, building them if the handler has not been seen before or has been reloaded
+     */
+    private HandlerInterceptors getHandlerInterceptors(Executor<T,S> executor, R handler) {
+    	HandlerInterceptors handlerInterceptors = this.handlerInterceptors.get(handler.getName());
+    	if (handlerInterceptors == null || handlerInterceptors.handler != handler) {
+    		// built without locking as building is idempotent - the last one built is retained
+    		handlerInterceptors = new HandlerInterceptors(executor, handler);
+    		this.handlerInterceptors.put(handler.getName(), handlerInterceptors);
+    	}
+    	return handlerInterceptors;
+    }
+
+    /**
+     * The interceptor chain and tracing state of a handler, built once and shared by all requests to the handler
+     */
+    private class HandlerInterceptors {
+    	private R handler;
+    	private InterceptorChain<T,S> interceptorChain;
+    	private InterceptorChain<T,S> noTracingInterceptorChain;
+    	private TraceFilter traceFilter;
+    	private ServerTracer serverTracer;
+    	private RequestContext.ServiceEndpoint clientEndpoint;
+    	HandlerInterceptors(Executor<T,S> executor, R handler) {
+    		this.traceFilter = registry.getTraceFilterForHandler(handler.getName());
+    		List<TraceFilter> traceFilters = Arrays.<TraceFilter>asList(this.traceFilter);
+    		ClientRequestInterceptor<T> tracingRequestInterceptor = createTracingRequestInterceptor();
+    		tracingRequestInterceptor.setEventDispatchingSpanCollector(eventDispatchingSpanCollector);
+    		tracingRequestInterceptor.setTraceFilters(traceFilters);
+    		AbstractClientResponseInterceptor<S> tracingResponseInterceptor = createTracingResponseInterceptor();
+    		tracingResponseInterceptor.setEventDispatchingSpanCollector(eventDispatchingSpanCollector);
+    		tracingResponseInterceptor.setTraceFilters(traceFilters);
+    		// the request and response interceptors that were configured on this repository, followed by the tracing interceptors
+    		List<RequestInterceptor<T>> chainRequestInterceptors = new ArrayList<RequestInterceptor<T>>(requestInterceptors);
+    		chainRequestInterceptors.add(new NoTracingRequestInterceptor<T>());
+    		this.noTracingInterceptorChain = new InterceptorChain<T,S>(chainRequestInterceptors, responseInterceptors);
+    		chainRequestInterceptors.set(chainRequestInterceptors.size() - 1, tracingRequestInterceptor);
+    		List<ResponseInterceptor<S>> chainResponseInterceptors = new ArrayList<ResponseInterceptor<S>>(responseInterceptors);
+    		chainResponseInterceptors.add(tracingResponseInterceptor);
+    		this.handler = handler;
+    		this.interceptorChain = new InterceptorChain<T,S>(chainRequestInterceptors, chainResponseInterceptors);
+    		// unknown traces are sampled using the trace filter before the server tracer is used
+    		this.serverTracer = Brave.getServerTracer(eventDispatchingSpanCollector, Collections.<TraceFilter>emptyList());
+    		String serviceName = executor.getServiceName().isPresent() ? executor.getServiceName().get() : Executor.DEFAULT_SERVICE_NAME;
+    		this.clientEndpoint = new RequestContext.ServiceEndpoint(handler.getHost(), handler.getPort(), serviceName);
+    	}
+    }
+
     /** Getter/Setter methods */
     public AbstractHandlerRegistry<R> getRegistry() {
         return registry;
@@ -132,9 +194,11 @@ public abstract class AbstractExecutorRepository<T extends RequestWrapper,S, R e
     }
 	public void setRequestInterceptors(List<RequestInterceptor<T>> requestInterceptors) {
 		this.requestInterceptors = requestInterceptors;
+		this.handlerInterceptors.clear();
 	}
 	public void setResponseInterceptors(List<ResponseInterceptor<S>> responseInterceptors) {
 		this.responseInterceptors = responseInterceptors;
+		this.handlerInterceptors.clear();
 	}
 	public void setEventDispatchingSpanCollector(EventDispatchingSpanCollector eventDispatchingSpanCollector) {
 		this.eventDispatchingSpanCollector = eventDispatchingSpanCollector;
@@ -17,9 +17,13 @@ package com.flipkart.phantom.task.spi;
 
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import com.flipkart.phantom.task.impl.HedgingPolicy;
+import com.flipkart.phantom.task.impl.ThreadPoolQueue;
 import com.github.kristofa.brave.FixedSampleRateTraceFilter;
 import com.github.kristofa.brave.TraceFilter;
 
@@ -46,6 +50,15 @@ abstract public class AbstractHandler {
     /** The status showing the TaskHandler is not inted/has been shutdown and should not be used */
     public static final int INACTIVE = 0;
     
+    /** The idempotent commands entry that marks all commands of a handler as idempotent*/
+    public static final String ALL_COMMANDS = "*";
+
+    /** The default latency percentile after which calls to idempotent commands are hedged*/
+    public static final int DEFAULT_HEDGE_PERCENTILE = 95;
+
+    /** The default max ratio of hedged calls to all calls to idempotent commands*/
+    public static final double DEFAULT_HEDGE_BUDGET = 0.05;
+
     /** The default value for tracing frequency. This value indicates that every call is traced if the global tracing is turned on.*/
     public static final TraceFilter TRACING_ON = new FixedSampleRateTraceFilter(1);
 
@@ -63,6 +76,31 @@ abstract public class AbstractHandler {
     /** The request tracing frequency for this handler. Each handler may override this setting*/
     private TraceFilter traceFilter = TRACING_ON;
 
+    /**
+     * The commands of this handler that are idempotent, and are therefore hedged when slow - see {@link HedgingPolicy}. Commands are the
+     * command names for task handlers, the request methods (say GET) for HTTP proxies and the method names for Thrift proxies. 
+     * {@value #ALL_COMMANDS} marks all commands as idempotent. No commands are hedged by default
+     */
+    private Set<String> idempotentCommands = new HashSet<String>();
+
+    /** The latency percentile after which calls to idempotent commands are hedged*/
+    private int hedgePercentile = DEFAULT_HEDGE_PERCENTILE;
+
+    /** The max ratio of hedged calls to all calls to idempotent commands*/
+    private double hedgeBudget = DEFAULT_HEDGE_BUDGET;
+
+    /** The hedging policy of this handler, created when first used*/
+    private volatile HedgingPolicy hedgingPolicy;
+
+    /**
+     * The max number of requests queued on each thread pool of this handler when all pool threads are busy - see {@link ThreadPoolQueue}. Pools
+     * have no queue by default i.e. requests are rejected with the fallback when all pool threads are busy
+     */
+    private int maxQueueSize = ThreadPoolQueue.NO_QUEUE;
+
+    /** The queue size at which requests are rejected, may be changed at runtime. The max queue size if not set*/
+    private int queueSizeRejectionThreshold;
+
     /**
      * Version in used for new thread pool name while reload of handler to have new connection pool effective
      */
@@ -166,7 +204,67 @@ abstract public class AbstractHandler {
         this.callInvocationTypePerCommand = callInvocationTypePerCommand;
     }
 
+    /**
+     * Checks if the specified command of this handler is idempotent
+     * @param command the command name, request method or method name
+     * @return true if the command is idempotent
+     */
+    public boolean isIdempotent(String command) {
+        return !this.idempotentCommands.isEmpty() && (this.idempotentCommands.contains(command) || this.idempotentCommands.contains(ALL_COMMANDS));
+    }
+
+    /**
+     * Returns the policy for hedging calls to the idempotent commands of this handler
+     * @return the HedgingPolicy, or null if this handler has no idempotent commands
+     */
+    public HedgingPolicy getHedgingPolicy() {
+        if (this.idempotentCommands.isEmpty()) {
+            return null;
+        }
+        HedgingPolicy hedgingPolicy = this.hedgingPolicy;
+        if (hedgingPolicy == null) {
+            synchronized (this) {
+                hedgingPolicy = this.hedgingPolicy;
+                if (hedgingPolicy == null) {
+                    hedgingPolicy = new HedgingPolicy(this.getName(), this.hedgePercentile, this.hedgeBudget);
+                    this.hedgingPolicy = hedgingPolicy;
+                }
+            }
+        }
+        return hedgingPolicy;
+    }
+
     /** Getter/Setter methods*/
+	public Set<String> getIdempotentCommands() {
+		return this.idempotentCommands;
+	}
+	public void setIdempotentCommands(Set<String> idempotentCommands) {
+		this.idempotentCommands = idempotentCommands;
+	}
+	public int getHedgePercentile() {
+		return this.hedgePercentile;
+	}
+	public void setHedgePercentile(int hedgePercentile) {
+		this.hedgePercentile = hedgePercentile;
+	}
+	public double getHedgeBudget() {
+		return this.hedgeBudget;
+	}
+	public void setHedgeBudget(double hedgeBudget) {
+		this.hedgeBudget = hedgeBudget;
+	}
+	public int getMaxQueueSize() {
+		return this.maxQueueSize;
+	}
+	public void setMaxQueueSize(int maxQueueSize) {
+		this.maxQueueSize = maxQueueSize;
+	}
+	public int getQueueSizeRejectionThreshold() {
+		return this.queueSizeRejectionThreshold;
+	}
+	public void setQueueSizeRejectionThreshold(int queueSizeRejectionThreshold) {
+		this.queueSizeRejectionThreshold = queueSizeRejectionThreshold;
+	}
 	public int getInitOutcomeStatus() {
 		return initOutcomeStatus;
 	}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.spi;
+
+import java.io.OutputStream;
+
+/**
+ * This interface is to provide handlers the ability to encode non byte array {@link TaskResult} data into the response.
+ * Encoders are registered per {@link com.flipkart.phantom.task.impl.TaskHandler} against the data type they encode, via {@link EncoderRegistry}.
+ * Built-in implementations are available in the com.flipkart.phantom.task.impl.encoder package.
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public interface Encoder<T> {
+
+    /**
+     * Encodes the specified object into the specified OutputStream. Implementations must not close the OutputStream
+     * @param object the Object to encode
+     * @param outputStream the OutputStream to write the encoded bytes to, typically the response buffer
+     * @throws Exception exception that occurs
+     */
+    public void encode(T object, OutputStream outputStream) throws Exception;
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.spi;
+
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <code>EncoderRegistry</code> is a registry of {@link Encoder} instances keyed by the class of the data they encode. An Encoder registered for a
+ * class is also used for its sub-classes and implementations, unless a more specific Encoder is registered. The resolved Encoder for a class is cached.
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+@SuppressWarnings("rawtypes")
+public class EncoderRegistry {
+
+	/** Placeholder for classes that have no registered Encoder, as the cache does not permit null values*/
+	private static final Encoder NO_ENCODER = new Encoder() {
+		public void encode(Object object, OutputStream outputStream) throws Exception {
+			throw new UnsupportedOperationException("No Encoder registered");
+		}
+	};
+
+	/** The registered Encoders*/
+	private Map<Class<?>, Encoder> encoders = new HashMap<Class<?>, Encoder>();
+
+	/** The resolved Encoders, including those resolved for sub-classes and implementations of registered classes*/
+	private ConcurrentMap<Class<?>, Encoder> resolvedEncoders = new ConcurrentHashMap<Class<?>, Encoder>();
+
+	/**
+	 * Constructor for this class
+	 * @param encoders the Encoders keyed by the class of data they encode
+	 */
+	public EncoderRegistry(Map<Class<?>, Encoder> encoders) {
+		this.encoders.putAll(encoders);
+	}
+
+	/**
+	 * Returns the Encoder for the specified data type
+	 * @param dataType the class of the data to encode
+	 * @return the Encoder, null if none is registered for the class, its super classes or interfaces
+	 */
+	public Encoder getEncoder(Class<?> dataType) {
+		Encoder encoder = this.resolvedEncoders.get(dataType);
+		if (encoder == null) {
+			encoder = this.resolveEncoder(dataType);
+			this.resolvedEncoders.putIfAbsent(dataType, encoder == null ? NO_ENCODER : encoder);
+		}
+		return encoder == NO_ENCODER ? null : encoder;
+	}
+
+	/**
+	 * Returns true if no Encoders are registered
+	 * @return true if this registry is empty
+	 */
+	public boolean isEmpty() {
+		return this.encoders.isEmpty();
+	}
+
+	/**
+	 * Helper method to resolve the Encoder for the specified class by looking up the class, its super classes and then its interfaces
+	 * @param dataType the class of the data to encode
+	 * @return the Encoder or null
+	 */
+	private Encoder resolveEncoder(Class<?> dataType) {
+		for (Class<?> type = dataType; type != null; type = type.getSuperclass()) {
+			Encoder encoder = this.encoders.get(type);
+			if (encoder != null) {
+				return encoder;
+			}
+		}
+		for (Class<?> type = dataType; type != null; type = type.getSuperclass()) {
+			for (Class<?> interfaceType : type.getInterfaces()) {
+				Encoder encoder = this.resolveEncoder(interfaceType);
+				if (encoder != null) {
+					return encoder;
+				}
+			}
+		}
+		return null;
+	}
+
+}
@@ -17,6 +17,7 @@
 package com.flipkart.phantom.task.spi;
 
 import com.flipkart.phantom.event.ServiceProxyEvent;
+import com.flipkart.phantom.task.spi.interceptor.InterceptorChain;
 import com.flipkart.phantom.task.spi.interceptor.RequestInterceptor;
 import com.flipkart.phantom.task.spi.interceptor.ResponseInterceptor;
 import com.google.common.base.Optional;
@@ -59,6 +60,12 @@ public interface Executor<T extends RequestWrapper,S> {
      * @param responseInterceptor the ResponseInterceptor to process the response
      */
     public void addResponseInterceptor(ResponseInterceptor<S> responseInterceptor);
+
+    /**
+     * Sets the chain of request and response interceptors, replacing any interceptors added earlier. The chain may be shared with other Executors
+     * @param interceptorChain the InterceptorChain to process the request and response
+     */
+    public void setInterceptorChain(InterceptorChain<T,S> interceptorChain);
     
     /**
      * Returns the service name for this executor
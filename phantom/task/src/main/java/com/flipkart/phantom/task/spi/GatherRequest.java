@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.spi;
+
+import java.util.Map;
+
+/**
+ * <code>GatherRequest</code> is a command executed as part of a scatter-gather. See {@link TaskContext#executeScatterGather(java.util.List, long)}.
+ * A request may be marked as required, in which case its failure fails the scatter-gather fast i.e. the results gathered so far are returned
+ * without waiting for the other commands. Requests are optional by default.
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class GatherRequest {
+
+	/** The command to execute*/
+	private String commandName;
+
+	/** The command processing data*/
+	private byte[] data;
+
+	/** The data parameters*/
+	private Map<String,String> params;
+
+	/** Flag to indicate the scatter-gather fails fast if this command fails*/
+	private boolean required;
+
+	/**
+	 * Constructor for an optional request
+	 * @param commandName the command to execute
+	 * @param data the command processing data
+	 * @param params data parameters
+	 */
+	public GatherRequest(String commandName, byte[] data, Map<String,String> params) {
+		this(commandName, data, params, false);
+	}
+
+	/**
+	 * Constructor for this class
+	 * @param commandName the command to execute
+	 * @param data the command processing data
+	 * @param params data parameters
+	 * @param required true if the scatter-gather must fail fast if this command fails
+	 */
+	public GatherRequest(String commandName, byte[] data, Map<String,String> params, boolean required) {
+		this.commandName = commandName;
+		this.data = data;
+		this.params = params;
+		this.required = required;
+	}
+
+	/** Start Getter/Setter methods */
+	public String getCommandName() {
+		return this.commandName;
+	}
+	public byte[] getData() {
+		return this.data;
+	}
+	public Map<String,String> getParams() {
+		return this.params;
+	}
+	public boolean isRequired() {
+		return this.required;
+	}
+	/** End Getter/Setter methods */
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.spi;
+
+/**
+ * <code>GatherResult</code> is the outcome of a {@link GatherRequest} executed as part of a scatter-gather. The {@link TaskResult} is available
+ * only if the command succeeded, and the error only if it failed with an exception.
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+@SuppressWarnings("rawtypes")
+public class GatherResult {
+
+	/** The status of a command executed as part of a scatter-gather*/
+	public enum Status {
+		/** The command completed successfully within the deadline*/
+		SUCCESS,
+		/** The command failed, or returned an unsuccessful result, within the deadline*/
+		FAILURE,
+		/** The command did not complete within the deadline, or was not executed as a required command failed*/
+		INCOMPLETE
+	}
+
+	/** The status of the command*/
+	private Status status;
+
+	/** The result of the command, may be null*/
+	private TaskResult result;
+
+	/** The failure of the command, may be null*/
+	private Throwable error;
+
+	/**
+	 * Constructor for this class
+	 * @param status the status of the command
+	 * @param result the result of the command, may be null
+	 * @param error the failure of the command, may be null
+	 */
+	public GatherResult(Status status, TaskResult result, Throwable error) {
+		this.status = status;
+		this.result = result;
+		this.error = error;
+	}
+
+	/**
+	 * Returns true if the command completed successfully within the deadline
+	 * @return true if the status is {@link Status#SUCCESS}
+	 */
+	public boolean isSuccess() {
+		return this.status == Status.SUCCESS;
+	}
+
+	/**
+	 * Overriden super class method. Returns the status and result message
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "GatherResult[status=" + this.status + (this.result == null ? "" : ", message=" + this.result.getMessage())
+				+ (this.error == null ? "" : ", error=" + this.error.getMessage()) + "]";
+	}
+
+	/** Start Getter/Setter methods */
+	public Status getStatus() {
+		return this.status;
+	}
+	public TaskResult getResult() {
+		return this.result;
+	}
+	public Throwable getError() {
+		return this.error;
+	}
+	/** End Getter/Setter methods */
+
+}
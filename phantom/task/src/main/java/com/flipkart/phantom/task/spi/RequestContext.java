@@ -32,6 +32,9 @@ public class RequestContext {
 	private ServerSpan currentServerSpan;
 	private ServiceEndpoint currentClientEndpoint;
 
+	/** Flag to indicate if the request is traced. Span and annotation work is skipped for requests that have not been sampled for tracing */
+	private boolean traced = true;
+
 	/** Setter/Getter methods*/
 	public ServerSpan getCurrentServerSpan() {
 		return currentServerSpan;
@@ -45,6 +48,12 @@ public class RequestContext {
 	public void setCurrentClientEndpoint(ServiceEndpoint currentClientEndpoint) {
 		this.currentClientEndpoint = currentClientEndpoint;
 	}
+	public boolean isTraced() {
+		return traced;
+	}
+	public void setTraced(boolean traced) {
+		this.traced = traced;
+	}
 
 	/** Service endpoint details. We dont use the Zipkin Endpoint class as it requires resolved host name which is expensive due to DNS lookups*/
 	public static final class ServiceEndpoint {
@@ -35,6 +35,12 @@ public abstract class RequestWrapper {
 	
 	/** The name of the target service for this request wrapper*/
 	private Optional<String> serviceName = Optional.absent();
+
+	/** The deadline of this request in epoch millis, after which its result will not be read*/
+	private Optional<Long> deadline = Optional.absent();
+
+	/** The identity of the client that sent this request, say the remote address of the connection it was received on*/
+	private Optional<String> clientId = Optional.absent();
 	
 	/**
 	 * Returns a name that best describes the request being executed. For e.g. it could be the URI part of a Http request, the Thrift command being executed
@@ -74,5 +80,17 @@ public abstract class RequestWrapper {
 	public void setServiceName(Optional<String> serviceName) {
 		this.serviceName = serviceName;
 	}
+	public Optional<Long> getDeadline() {
+		return deadline;
+	}
+	public void setDeadline(Optional<Long> deadline) {
+		this.deadline = deadline;
+	}
+	public Optional<String> getClientId() {
+		return clientId;
+	}
+	public void setClientId(Optional<String> clientId) {
+		this.clientId = clientId;
+	}
 	
 }
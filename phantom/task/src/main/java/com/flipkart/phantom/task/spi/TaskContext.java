@@ -19,9 +19,10 @@ package com.flipkart.phantom.task.spi;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.flipkart.phantom.task.spi.TaskRequestWrapper;
 import com.flipkart.phantom.task.spi.TaskResult;
+import com.google.common.util.concurrent.ListenableFuture;
 
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Future;
 
 /**
  * <code>TaskContext</code> provides methods for {@link com.flipkart.phantom.task.impl.TaskHandler} to communicate with it's Component Container - to execute tasks on other TaskHandler instances,
@@ -87,16 +88,27 @@ public interface TaskContext {
      * @param data the command processing data
      * @param params data parameters
      * @param decoder Decoder to be Implemented by clients to process the response
-     * @return a TaskResult instance with the execution outcome
+     * @return a ListenableFuture of the TaskResult, completed when the command completes. Does not block the calling thread
      * @throws UnsupportedOperationException in case none of the registered TaskHandler instances support the specified command
      */
-    public Future<TaskResult> executeAsyncCommand(String commandName, byte[] data, Map<String,String> params, Decoder decoder) throws UnsupportedOperationException;
+    public ListenableFuture<TaskResult> executeAsyncCommand(String commandName, byte[] data, Map<String,String> params, Decoder decoder) throws UnsupportedOperationException;
 
     /**
-     * Executes a command asynchronously and returns a {@link Future} to get the {@link TaskResult} from
+     * Executes a command asynchronously and returns a {@link ListenableFuture} to get the {@link TaskResult} from. Does not block the calling thread. 
+     * Commands may be composed by adding callbacks to the future, say using {@link com.google.common.util.concurrent.Futures#transform}
      * @see TaskContext#executeCommand(String, byte[], java.util.Map)
      */
-    public Future<TaskResult> executeAsyncCommand(String commandName, byte[] data, Map<String, String> params) throws UnsupportedOperationException;
+    public ListenableFuture<TaskResult> executeAsyncCommand(String commandName, byte[] data, Map<String, String> params) throws UnsupportedOperationException;
+
+    /**
+     * Executes the specified commands concurrently, each on its respective thread pool, and waits until all of them complete or the timeout elapses,
+     * whichever is earlier. The wait ends early if a command marked as required fails. Commands that have not completed by then are reported as
+     * incomplete and their results, if any, are discarded.
+     * @param requests the commands to execute
+     * @param timeout the max time in milliseconds to wait for the commands
+     * @return the GatherResult of each command, in the order of the requests
+     */
+    public List<GatherResult> executeScatterGather(List<GatherRequest> requests, long timeout);
 
     /** Gets the ObjectMapper instance for result serialization to JSON*/
     public ObjectMapper getObjectMapper();
@@ -16,6 +16,7 @@
 
 package com.flipkart.phantom.task.spi;
 
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -25,6 +26,7 @@ import com.google.common.base.Optional;
 /**
  *
  * <code>TaskRequestWrapper</code> has the data bytes and the parameters map for the Command protocol-request.
+ * Large data may be streamed instead, in which case the data stream is set and the data bytes are not.
  *
  * @author : arya.ketan
  * @version : 1.0
@@ -35,6 +37,9 @@ public class TaskRequestWrapper extends RequestWrapper {
     /** Data bytes */
     private byte[] data;
 
+    /** Data stream, set instead of the data bytes when data is streamed to the TaskHandler. See TaskHandler#executeStreaming */
+    private InputStream dataStream;
+
     /** Map of parameters */
     private Map<String,String> params;
     
@@ -80,6 +85,12 @@ public class TaskRequestWrapper extends RequestWrapper {
     public void setData(byte[] data){
         this.data = data;
     }
+    public InputStream getDataStream(){
+        return dataStream;
+    }
+    public void setDataStream(InputStream dataStream){
+        this.dataStream = dataStream;
+    }
     public Map<String, String> getParams(){
         return params;
     }
@@ -36,6 +36,7 @@ public class TaskResult<T> {
     private int length = DEFAULT_LENGTH;
     private boolean profilingDone = false;
     private byte[] metadata;
+    private EncoderRegistry encoderRegistry;
 
     /** Various constructors for this class*/
 
@@ -167,6 +168,12 @@ public class TaskResult<T> {
     public byte[] getMetadata() {
         return metadata;
     }
+    public EncoderRegistry getEncoderRegistry() {
+        return encoderRegistry;
+    }
+    public void setEncoderRegistry(EncoderRegistry encoderRegistry) {
+        this.encoderRegistry = encoderRegistry;
+    }
     /** End Getter/Setter methods*/
 
 }
\ No newline at end of file
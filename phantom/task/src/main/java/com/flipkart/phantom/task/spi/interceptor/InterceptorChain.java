@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.spi.interceptor;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.flipkart.phantom.task.spi.RequestWrapper;
+import com.google.common.base.Optional;
+
+/**
+ * <code>InterceptorChain</code> is an immutable sequence of {@link RequestInterceptor} and {@link ResponseInterceptor} instances that are invoked in order.
+ * Chains hold no per-request state and are therefore built once (say, per handler) and shared by all Executors. Per-request state, if any, is carried
+ * in the {@link com.flipkart.phantom.task.spi.RequestContext} of the request. Adding an interceptor returns a new chain and leaves this chain unchanged.
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public final class InterceptorChain<T extends RequestWrapper, S> {
+
+	/** The chain without any interceptors*/
+	private static final InterceptorChain EMPTY_CHAIN = new InterceptorChain(new RequestInterceptor[0], new ResponseInterceptor[0]);
+
+	/** The request and response interceptors*/
+	private final RequestInterceptor[] requestInterceptors;
+	private final ResponseInterceptor[] responseInterceptors;
+
+	/**
+	 * Constructor for this class
+	 * @param requestInterceptors the request interceptors, in invocation order
+	 * @param responseInterceptors the response interceptors, in invocation order
+	 */
+	public InterceptorChain(List<RequestInterceptor<T>> requestInterceptors, List<ResponseInterceptor<S>> responseInterceptors) {
+		this(requestInterceptors.toArray(new RequestInterceptor[requestInterceptors.size()]),
+				responseInterceptors.toArray(new ResponseInterceptor[responseInterceptors.size()]));
+	}
+
+	/**
+	 * Constructor for this class
+	 * @param requestInterceptors the request interceptors, not copied
+	 * @param responseInterceptors the response interceptors, not copied
+	 */
+	private InterceptorChain(RequestInterceptor[] requestInterceptors, ResponseInterceptor[] responseInterceptors) {
+		this.requestInterceptors = requestInterceptors;
+		this.responseInterceptors = responseInterceptors;
+	}
+
+	/**
+	 * Returns the chain without any interceptors
+	 * @return the empty InterceptorChain
+	 */
+	public static <T extends RequestWrapper, S> InterceptorChain<T, S> emptyChain() {
+		return EMPTY_CHAIN;
+	}
+
+	/**
+	 * Invokes the request interceptors of this chain on the specified request
+	 * @param request the request
+	 */
+	public void processRequest(T request) {
+		for (RequestInterceptor requestInterceptor : this.requestInterceptors) {
+			requestInterceptor.process(request);
+		}
+	}
+
+	/**
+	 * Invokes the response interceptors of this chain on the specified response
+	 * @param response the response, may be null
+	 * @param transportError the error in obtaining the response, if any
+	 */
+	public void processResponse(S response, Optional<RuntimeException> transportError) {
+		for (ResponseInterceptor responseInterceptor : this.responseInterceptors) {
+			responseInterceptor.process(response, transportError);
+		}
+	}
+
+	/**
+	 * Returns a chain that has the specified request interceptor added at the end of the request interceptors of this chain
+	 * @param requestInterceptor the request interceptor to add
+	 * @return the new InterceptorChain
+	 */
+	public InterceptorChain<T, S> withRequestInterceptor(RequestInterceptor<T> requestInterceptor) {
+		RequestInterceptor[] interceptors = Arrays.copyOf(this.requestInterceptors, this.requestInterceptors.length + 1);
+		interceptors[this.requestInterceptors.length] = requestInterceptor;
+		return new InterceptorChain<T, S>(interceptors, this.responseInterceptors);
+	}
+
+	/**
+	 * Returns a chain that has the specified response interceptor added at the end of the response interceptors of this chain
+	 * @param responseInterceptor the response interceptor to add
+	 * @return the new InterceptorChain
+	 */
+	public InterceptorChain<T, S> withResponseInterceptor(ResponseInterceptor<S> responseInterceptor) {
+		ResponseInterceptor[] interceptors = Arrays.copyOf(this.responseInterceptors, this.responseInterceptors.length + 1);
+		interceptors[this.responseInterceptors.length] = responseInterceptor;
+		return new InterceptorChain<T, S>(this.requestInterceptors, interceptors);
+	}
+
+}
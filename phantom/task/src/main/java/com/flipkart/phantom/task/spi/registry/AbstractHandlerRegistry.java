@@ -111,6 +111,7 @@ public abstract class AbstractHandlerRegistry<T extends AbstractHandler> {
                 handler.deactivate();
                 handler.shutdown(taskContext);
                 handler.init(taskContext);
+                this.postReinitHandler(handler);
                 handler.activate();
             } catch (Exception e) {
                 LOGGER.error("Error initializing " + this.getHandlerType().getName() + " : {}. Error is: " + e.getMessage(), handler.getName(), e);
@@ -187,6 +188,14 @@ public abstract class AbstractHandlerRegistry<T extends AbstractHandler> {
     	// no op
     }
     
+    /**
+     * Callback method after re-initing handler. Subtypes may override to refresh state derived from the handler's configuration
+     * @param handler the AbstractHandler that was re-inited
+     */
+    protected void postReinitHandler(T handler) {
+    	// no op
+    }
+    
     /**
      * Callback method after unregistering handler. Subtypes may override to perform custom post unregister operations
      * @param handler the AbstractHandler that was unregistered
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.flipkart.phantom.task.impl.metrics.ProxyMetrics;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link ConcurrencyLimit}
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class ConcurrencyLimitTest {
+
+	/** The latency threshold in millis, and latencies within and beyond it in nanos*/
+	private static final long LATENCY_THRESHOLD = 100;
+	private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+	private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(200);
+
+	@Test
+	public void testFixedLimit() {
+		ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit("ConcurrencyLimitTest.fixed", 2, false, LATENCY_THRESHOLD);
+		assertTrue(concurrencyLimit.tryAcquire() && concurrencyLimit.tryAcquire());
+		assertTrue(!concurrencyLimit.tryAcquire());
+		assertTrue(ProxyMetrics.getInstance(ConcurrencyLimit.METRICS_GROUP, "ConcurrencyLimitTest.fixed").get(ConcurrencyLimit.REJECTED_COUNT) == 1);
+		// failed and slow requests do not change a fixed limit
+		concurrencyLimit.release(SLOW, false);
+		assertTrue(concurrencyLimit.getLimit() == 2 && concurrencyLimit.getInFlight() == 1);
+		assertTrue(concurrencyLimit.tryAcquire());
+	}
+
+	@Test
+	public void testAdaptiveBackoffAndRecovery() {
+		ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit("ConcurrencyLimitTest.adaptive", 10, true, LATENCY_THRESHOLD);
+		this.execute(concurrencyLimit, FAST, false);
+		assertTrue(concurrencyLimit.getLimit() == 9);
+		this.execute(concurrencyLimit, SLOW, true);
+		assertTrue(concurrencyLimit.getLimit() < 9);
+		double reducedLimit = concurrencyLimit.getLimit();
+		this.execute(concurrencyLimit, FAST, true);
+		assertTrue(concurrencyLimit.getLimit() > reducedLimit);
+		for (int i = 0; i < 100; i++) {
+			this.execute(concurrencyLimit, FAST, true);
+		}
+		assertTrue(concurrencyLimit.getLimit() == 10);
+	}
+
+	@Test
+	public void testAdaptiveLimitBounds() {
+		ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit("ConcurrencyLimitTest.bounds", 10, true, LATENCY_THRESHOLD);
+		for (int i = 0; i < 100; i++) {
+			this.execute(concurrencyLimit, FAST, false);
+		}
+		// one request is always admitted so that the limit may recover
+		assertTrue(concurrencyLimit.getLimit() == 1);
+		assertTrue(concurrencyLimit.tryAcquire());
+		assertTrue(!concurrencyLimit.tryAcquire());
+		// releasing a request that was not executed does not adapt the limit
+		concurrencyLimit.release();
+		assertTrue(concurrencyLimit.getLimit() == 1 && concurrencyLimit.getInFlight() == 0);
+	}
+
+	/**
+	 * Helper method to acquire a permit and release it with the specified outcome
+	 */
+	private void execute(ConcurrencyLimit concurrencyLimit, long latencyNanos, boolean success) {
+		assertTrue(concurrencyLimit.tryAcquire());
+		concurrencyLimit.release(latencyNanos, success);
+	}
+
+}
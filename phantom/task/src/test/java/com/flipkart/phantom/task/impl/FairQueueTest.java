@@ -0,0 +1,138 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import rx.Observer;
+
+import com.flipkart.phantom.task.spi.TaskContext;
+import com.flipkart.phantom.task.spi.TaskRequestWrapper;
+import com.flipkart.phantom.task.spi.TaskResult;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link FairQueue}
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+@SuppressWarnings("rawtypes")
+public class FairQueueTest {
+
+	@Test
+	public void testRoundRobinAcrossClients() throws Exception {
+		FairQueue fairQueue = FairQueue.getInstance("FairQueueTest.roundRobin", 1, 10);
+		OrderRecordingTaskHandler taskHandler = new OrderRecordingTaskHandler();
+		CountDownLatch completed = new CountDownLatch(4);
+		this.dispatch(fairQueue, taskHandler, "A", "A1", 1000, completed);
+		assertTrue(taskHandler.started.await(1, TimeUnit.SECONDS));
+		// queued while the pool is at capacity
+		this.dispatch(fairQueue, taskHandler, "A", "A2", 1000, completed);
+		this.dispatch(fairQueue, taskHandler, "A", "A3", 1000, completed);
+		this.dispatch(fairQueue, taskHandler, "B", "B1", 1000, completed);
+		assertTrue(fairQueue.getWaiting() == 3);
+		taskHandler.gate.countDown();
+		assertTrue(completed.await(5, TimeUnit.SECONDS));
+		assertTrue(taskHandler.executed.toString().equals("[A1, A2, B1, A3]"));
+	}
+
+	@Test
+	public void testCapacityReleasedWhenTimedOutRequestCompletes() throws Exception {
+		FairQueue fairQueue = FairQueue.getInstance("FairQueueTest.timeout", 1, 10);
+		OrderRecordingTaskHandler taskHandler = new OrderRecordingTaskHandler();
+		CountDownLatch completed = new CountDownLatch(1);
+		this.dispatch(fairQueue, taskHandler, "A", "A1", 100, completed);
+		// the fallback is returned on timeout, while the request continues to use its pool thread
+		assertTrue(completed.await(1, TimeUnit.SECONDS));
+		assertTrue(fairQueue.getInFlight() == 1);
+		taskHandler.gate.countDown();
+		long waitUntil = System.currentTimeMillis() + 5000;
+		while (fairQueue.getInFlight() > 0 && System.currentTimeMillis() < waitUntil) {
+			Thread.sleep(10);
+		}
+		assertTrue(fairQueue.getInFlight() == 0);
+	}
+
+	/**
+	 * Helper method to dispatch a request with the specified id from the specified client via the fair queue
+	 */
+	private void dispatch(FairQueue fairQueue, OrderRecordingTaskHandler taskHandler, String clientId, String id, int timeout,
+			final CountDownLatch completed) {
+		// Hystrix caches command properties by command name, the timeout is part of the name for this reason
+		String commandName = "fair" + timeout;
+		TaskRequestWrapper requestWrapper = new TaskRequestWrapper();
+		requestWrapper.setCommandName(commandName);
+		Map<String, String> params = new HashMap<String, String>();
+		params.put("id", id);
+		params.put(FairQueue.CLIENT_ID_PARAM, clientId);
+		requestWrapper.setParams(params);
+		TaskHandlerExecutor executor = new TaskHandlerExecutor(taskHandler, null, commandName, timeout, requestWrapper);
+		executor.setFairQueue(fairQueue, clientId, 1);
+		executor.dispatch(new Observer<TaskResult>() {
+			public void onNext(TaskResult result) {
+			}
+			public void onCompleted() {
+				completed.countDown();
+			}
+			public void onError(Throwable e) {
+				completed.countDown();
+			}
+		});
+	}
+
+	/** HystrixTaskHandler that records the order of executed requests. The first request blocks until the gate is opened, ignoring interrupts*/
+	private static class OrderRecordingTaskHandler extends HystrixTaskHandler {
+		private List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+		private CountDownLatch started = new CountDownLatch(1);
+		private CountDownLatch gate = new CountDownLatch(1);
+		public String getName() {
+			return "OrderRecordingTaskHandler";
+		}
+		public String[] getCommands() {
+			return new String[] {"fair"};
+		}
+		public void shutdown(TaskContext taskContext) throws Exception {
+		}
+		public TaskResult<byte[]> execute(TaskContext taskContext, String command, Map<String,String> params, byte[] data) throws RuntimeException {
+			this.executed.add(params.get("id"));
+			if (this.started.getCount() > 0) {
+				this.started.countDown();
+				while (this.gate.getCount() > 0) {
+					try {
+						this.gate.await();
+					} catch (InterruptedException e) {
+						// ignored, as by handlers blocked on I/O that cannot be interrupted
+					}
+				}
+			}
+			return new TaskResult<byte[]>(true, null);
+		}
+		public TaskResult<byte[]> getFallBack(TaskContext taskContext, String command, Map<String,String> params, byte[] data) {
+			return new TaskResult<byte[]>(false, "fallback");
+		}
+	}
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.netflix.hystrix.strategy.concurrency.HystrixRequestContext;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link HedgingPolicy}
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class HedgingPolicyTest {
+
+	/** The number of calls after which calls are hedged*/
+	private static final int WARM_UP_CALLS = 64;
+
+	@Test
+	public void testLosingCallCancelled() throws Exception {
+		HedgingPolicy hedgingPolicy = this.createWarmedUpPolicy("HedgingPolicyTest.cancel");
+		final CountDownLatch cancelled = new CountDownLatch(1);
+		final AtomicInteger attempts = new AtomicInteger();
+		final HystrixRequestContext requestContext = HystrixRequestContext.initializeContext();
+		final AtomicInteger contextPropagations = new AtomicInteger();
+		try {
+			String result = hedgingPolicy.execute("command", new Callable<String>() {
+				public String call() throws Exception {
+					if (HystrixRequestContext.getContextForCurrentThread() == requestContext) {
+						contextPropagations.incrementAndGet();
+					}
+					if (attempts.incrementAndGet() > 1) {
+						return "hedge";
+					}
+					try {
+						Thread.sleep(5000);
+					} catch (InterruptedException e) {
+						cancelled.countDown();
+						throw e;
+					}
+					return "primary";
+				}
+			});
+			assertTrue(result.equals("hedge"));
+			assertTrue(cancelled.await(1, TimeUnit.SECONDS));
+			assertTrue(contextPropagations.get() == 2);
+		} finally {
+			requestContext.shutdown();
+		}
+	}
+
+	@Test
+	public void testBudgetExhausted() throws Exception {
+		// no budget is earned by calls, only the initial budget of one hedge is available
+		HedgingPolicy hedgingPolicy = this.createWarmedUpPolicy("HedgingPolicyTest.budget");
+		assertTrue(this.executeSlowCall(hedgingPolicy) == 2);
+		assertTrue(this.executeSlowCall(hedgingPolicy) == 1);
+	}
+
+	/**
+	 * Helper method to create a policy that does not earn budget, and to record enough fast calls for calls to be hedged after that
+	 */
+	private HedgingPolicy createWarmedUpPolicy(String name) {
+		HedgingPolicy hedgingPolicy = new HedgingPolicy(name, 50, 0);
+		for (int i = 0; i < WARM_UP_CALLS; i++) {
+			hedgingPolicy.execute("command", new Callable<String>() {
+				public String call() throws Exception {
+					return "fast";
+				}
+			});
+		}
+		return hedgingPolicy;
+	}
+
+	/**
+	 * Helper method to execute a call that is slow the first time it is called, and return the number of times it was called
+	 */
+	private int executeSlowCall(HedgingPolicy hedgingPolicy) {
+		final AtomicInteger attempts = new AtomicInteger();
+		hedgingPolicy.execute("command", new Callable<String>() {
+			public String call() throws Exception {
+				if (attempts.incrementAndGet() == 1) {
+					Thread.sleep(200);
+				}
+				return "result";
+			}
+		});
+		return attempts.get();
+	}
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.flipkart.phantom.task.impl.PriorityAdmission.Priority;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link PriorityAdmission}
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class PriorityAdmissionTest {
+
+	@Test
+	public void testShedLowPriorityFirst() {
+		// low priority requests may use 5 of 10, normal priority requests 8 of 10
+		PriorityAdmission priorityAdmission = PriorityAdmission.getInstance("PriorityAdmissionTest.shed", 10, 0.5, 0.2);
+		for (int i = 0; i < 5; i++) {
+			assertTrue(priorityAdmission.tryAcquire(Priority.LOW));
+		}
+		assertTrue(!priorityAdmission.tryAcquire(Priority.LOW));
+		for (int i = 0; i < 3; i++) {
+			assertTrue(priorityAdmission.tryAcquire(Priority.NORMAL));
+		}
+		assertTrue(!priorityAdmission.tryAcquire(Priority.NORMAL));
+		assertTrue(priorityAdmission.tryAcquire(Priority.HIGH) && priorityAdmission.tryAcquire(Priority.HIGH));
+		assertTrue(priorityAdmission.getInFlight() == 10);
+		priorityAdmission.started(Priority.LOW);
+		priorityAdmission.release(Priority.LOW, true);
+		priorityAdmission.release(Priority.NORMAL, false);
+		priorityAdmission.release(Priority.NORMAL, false);
+		assertTrue(priorityAdmission.getInFlight() == 7);
+		assertTrue(!priorityAdmission.tryAcquire(Priority.LOW));
+		assertTrue(priorityAdmission.tryAcquire(Priority.NORMAL));
+	}
+
+	@Test
+	public void testSettingsRefreshed() {
+		PriorityAdmission priorityAdmission = PriorityAdmission.getInstance("PriorityAdmissionTest.refresh", 10, 0.5, 0.2);
+		assertTrue(priorityAdmission.tryAcquire(Priority.LOW));
+		// say the handler is reloaded with a larger pool, the instance and its in-flight requests are retained
+		PriorityAdmission reloaded = PriorityAdmission.getInstance("PriorityAdmissionTest.refresh", 20, 0.5, 0.1);
+		assertTrue(reloaded == priorityAdmission);
+		assertTrue(reloaded.getLowPriorityLimit() == 10 && reloaded.getNormalPriorityLimit() == 18);
+		assertTrue(reloaded.getInFlight() == 1);
+	}
+
+	@Test
+	public void testRequestPriority() {
+		Map<String, String> params = new HashMap<String, String>();
+		assertTrue(PriorityAdmission.getPriority(params, Priority.NORMAL) == Priority.NORMAL);
+		params.put(PriorityAdmission.PRIORITY_PARAM, "low");
+		assertTrue(PriorityAdmission.getPriority(params, Priority.NORMAL) == Priority.LOW);
+		params.put(PriorityAdmission.PRIORITY_PARAM, "urgent");
+		assertTrue(PriorityAdmission.getPriority(params, Priority.HIGH) == Priority.HIGH);
+	}
+
+}
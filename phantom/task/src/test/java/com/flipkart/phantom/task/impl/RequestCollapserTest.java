@@ -0,0 +1,191 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.flipkart.phantom.task.spi.TaskContext;
+import com.flipkart.phantom.task.spi.TaskResult;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link RequestCollapser} and the validation of batch execution by {@link TaskExecutionPlan}
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class RequestCollapserTest {
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testCollapse() throws Exception {
+		BatchTaskHandler taskHandler = new BatchTaskHandler();
+		RequestCollapser collapser = new RequestCollapser(taskHandler, "batch", 2, 5000, 1000);
+		List<Object> outcomes = this.executeConcurrently(collapser, 2);
+		assertTrue(taskHandler.batchCount.get() == 1);
+		List<String> results = new ArrayList<String>();
+		for (Object outcome : outcomes) {
+			results.add(new String(((TaskResult<byte[]>) outcome).getData()));
+		}
+		Collections.sort(results);
+		assertTrue(results.get(0).equals("0") && results.get(1).equals("1"));
+	}
+
+	@Test
+	public void testBatchError() throws Exception {
+		BatchTaskHandler taskHandler = new BatchTaskHandler();
+		taskHandler.error = new Error("batch error");
+		RequestCollapser collapser = new RequestCollapser(taskHandler, "batch", 2, 5000, 1000);
+		List<Object> outcomes = this.executeConcurrently(collapser, 2);
+		int leaderErrors = 0;
+		int followerErrors = 0;
+		for (Object outcome : outcomes) {
+			if (outcome == taskHandler.error) {
+				leaderErrors += 1;
+			} else if (outcome instanceof RuntimeException && ((RuntimeException) outcome).getCause() == taskHandler.error) {
+				followerErrors += 1;
+			}
+		}
+		assertTrue(leaderErrors == 1 && followerErrors == 1);
+	}
+
+	@Test
+	public void testFollowerTimeout() throws Exception {
+		BatchTaskHandler taskHandler = new BatchTaskHandler();
+		taskHandler.blocker = new CountDownLatch(1);
+		RequestCollapser collapser = new RequestCollapser(taskHandler, "batch", 2, 200, 50);
+		List<Object> outcomes = Collections.synchronizedList(new ArrayList<Object>());
+		List<Thread> threads = this.start(collapser, 2, outcomes);
+		try {
+			long waitUntil = System.currentTimeMillis() + 5000;
+			while (outcomes.isEmpty() && System.currentTimeMillis() < waitUntil) {
+				Thread.sleep(10);
+			}
+			// the leader is held up by the batch, the follower gives up waiting for it
+			assertTrue(outcomes.size() == 1);
+			assertTrue(((RuntimeException) outcomes.get(0)).getMessage().startsWith("Timed out"));
+		} finally {
+			taskHandler.blocker.countDown();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertTrue(outcomes.size() == 2);
+	}
+
+	@Test
+	public void testBatchNotImplemented() {
+		NonBatchTaskHandler taskHandler = new NonBatchTaskHandler();
+		Map<String, Integer> batchSizes = new HashMap<String, Integer>();
+		batchSizes.put("batch", 2);
+		taskHandler.setBatchSizes(batchSizes);
+		try {
+			new TaskExecutionPlan(taskHandler, "batch", "batch", 10);
+			assertTrue(false);
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("does not implement executeBatch"));
+		}
+	}
+
+	/**
+	 * Helper method to execute the specified number of requests concurrently and return the result or throwable of each
+	 */
+	private List<Object> executeConcurrently(RequestCollapser collapser, int count) throws InterruptedException {
+		List<Object> outcomes = Collections.synchronizedList(new ArrayList<Object>());
+		for (Thread thread : this.start(collapser, count, outcomes)) {
+			thread.join();
+		}
+		return outcomes;
+	}
+
+	/**
+	 * Helper method to start threads that execute the specified number of requests and add the result or throwable of each to the outcomes
+	 */
+	private List<Thread> start(final RequestCollapser collapser, int count, final List<Object> outcomes) {
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < count; i++) {
+			final Map<String, String> params = new HashMap<String, String>();
+			params.put("id", String.valueOf(i));
+			Thread thread = new Thread() {
+				public void run() {
+					try {
+						outcomes.add(collapser.execute(null, params, null));
+					} catch (Throwable e) {
+						outcomes.add(e);
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		return threads;
+	}
+
+	/** HystrixTaskHandler that returns the id param of a request, and does not implement batch execution*/
+	private static class NonBatchTaskHandler extends HystrixTaskHandler {
+		public String getName() {
+			return "BatchTaskHandler";
+		}
+		public String[] getCommands() {
+			return new String[] {"batch"};
+		}
+		public void shutdown(TaskContext taskContext) throws Exception {
+		}
+		public TaskResult<byte[]> execute(TaskContext taskContext, String command, Map<String,String> params, byte[] data) throws RuntimeException {
+			return new TaskResult<byte[]>(true, null, params.get("id").getBytes());
+		}
+		public TaskResult<byte[]> getFallBack(TaskContext taskContext, String command, Map<String,String> params, byte[] data) {
+			return null;
+		}
+	}
+
+	/** HystrixTaskHandler that returns the id param of each request in a batch*/
+	private static class BatchTaskHandler extends NonBatchTaskHandler {
+		private AtomicInteger batchCount = new AtomicInteger();
+		private Error error;
+		private CountDownLatch blocker;
+		public List<TaskResult<byte[]>> executeBatch(TaskContext taskContext, String command, List<Map<String,String>> params, List<byte[]> data)
+				throws RuntimeException {
+			this.batchCount.incrementAndGet();
+			if (this.error != null) {
+				throw this.error;
+			}
+			if (this.blocker != null) {
+				try {
+					this.blocker.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			List<TaskResult<byte[]>> results = new ArrayList<TaskResult<byte[]>>();
+			for (Map<String,String> requestParams : params) {
+				results.add(this.execute(taskContext, command, requestParams, null));
+			}
+			return results;
+		}
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import com.flipkart.phantom.task.spi.TaskRequestWrapper;
+import com.google.common.base.Optional;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link RequestDeadline}
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class RequestDeadlineTest {
+
+	@Test
+	public void testNestedBindRestoresOuterDeadline() {
+		TaskRequestWrapper outerRequest = this.createRequestWrapper(Optional.of(1000L));
+		TaskRequestWrapper innerRequest = this.createRequestWrapper(Optional.of(500L));
+		Optional<Long> previousDeadline = RequestDeadline.bind(outerRequest);
+		assertTrue(!previousDeadline.isPresent());
+		// a nested request executed on the same thread i.e. semaphore isolated
+		Optional<Long> outerDeadline = RequestDeadline.bind(innerRequest);
+		assertTrue(outerDeadline.get() == 1000L);
+		assertTrue(RequestDeadline.getCurrent().get() == 500L);
+		RequestDeadline.restore(outerDeadline);
+		assertTrue(RequestDeadline.getCurrent().get() == 1000L);
+		RequestDeadline.restore(previousDeadline);
+		assertTrue(!RequestDeadline.getCurrent().isPresent());
+	}
+
+	@Test
+	public void testBindWithoutDeadline() {
+		Optional<Long> previousDeadline = RequestDeadline.bind(this.createRequestWrapper(Optional.of(1000L)));
+		Optional<Long> outerDeadline = RequestDeadline.bind(this.createRequestWrapper(Optional.<Long>absent()));
+		assertTrue(!RequestDeadline.getCurrent().isPresent());
+		RequestDeadline.restore(outerDeadline);
+		assertTrue(RequestDeadline.getCurrent().get() == 1000L);
+		RequestDeadline.restore(previousDeadline);
+	}
+
+	@Test
+	public void testDeadlineFromParams() {
+		Map<String, String> params = new HashMap<String, String>();
+		params.put(RequestDeadline.BUDGET_PARAM, "250");
+		assertTrue(RequestDeadline.fromParams(params, 1000L).get() == 1250L);
+		params.put(RequestDeadline.DEADLINE_PARAM, "2000");
+		assertTrue(RequestDeadline.fromParams(params, 1000L).get() == 2000L);
+		params.put(RequestDeadline.DEADLINE_PARAM, "invalid");
+		assertTrue(!RequestDeadline.fromParams(params, 1000L).isPresent());
+		assertTrue(RequestDeadline.earliest(Optional.of(2000L), Optional.of(1500L)).get() == 1500L);
+		assertTrue(RequestDeadline.earliest(Optional.<Long>absent(), Optional.of(1500L)).get() == 1500L);
+	}
+
+	@Test
+	public void testExpired() {
+		TaskRequestWrapper expiredRequest = this.createRequestWrapper(Optional.of(System.currentTimeMillis() - 1));
+		try {
+			RequestDeadline.checkExpired(expiredRequest, "RequestDeadlineTest");
+			assertTrue(false);
+		} catch (RejectedExecutionException e) {
+			assertTrue(e.getMessage().startsWith(RequestDeadline.EXPIRED_MESSAGE));
+		}
+		TaskRequestWrapper request = this.createRequestWrapper(Optional.<Long>absent());
+		assertTrue(!RequestDeadline.isExpired(request, "RequestDeadlineTest") && RequestDeadline.getRemaining(request) == Long.MAX_VALUE);
+	}
+
+	/**
+	 * Helper method to create a request with the specified deadline
+	 */
+	private TaskRequestWrapper createRequestWrapper(Optional<Long> deadline) {
+		TaskRequestWrapper requestWrapper = new TaskRequestWrapper();
+		requestWrapper.setDeadline(deadline);
+		return requestWrapper;
+	}
+
+}
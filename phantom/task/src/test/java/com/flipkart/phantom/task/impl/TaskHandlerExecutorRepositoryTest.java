@@ -0,0 +1,296 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import rx.Observer;
+
+import com.flipkart.phantom.task.impl.metrics.ProxyMetrics;
+import com.flipkart.phantom.task.spi.Executor;
+import com.flipkart.phantom.task.spi.GatherRequest;
+import com.flipkart.phantom.task.spi.GatherResult;
+import com.flipkart.phantom.task.spi.TaskContext;
+import com.flipkart.phantom.task.spi.TaskRequestWrapper;
+import com.flipkart.phantom.task.spi.TaskResult;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.netflix.hystrix.strategy.concurrency.HystrixRequestContext;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link TaskHandlerExecutorRepository}
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+@SuppressWarnings("rawtypes")
+public class TaskHandlerExecutorRepositoryTest {
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testSingleFlight() throws Exception {
+		BlockingTaskHandler taskHandler = new BlockingTaskHandler("TaskHandlerExecutorRepositoryTest.singleFlight");
+		DirectExecutorRepository repository = new DirectExecutorRepository(taskHandler);
+		List<Object> outcomes = Collections.synchronizedList(new ArrayList<Object>());
+		Thread leader = this.start(repository, "key", outcomes);
+		assertTrue(taskHandler.started.await(1, TimeUnit.SECONDS));
+		Thread follower = this.start(repository, "key", outcomes);
+		// the identical request waits for the in-flight one instead of executing
+		this.awaitCoalesced(taskHandler, 1);
+		taskHandler.gate.countDown();
+		leader.join();
+		follower.join();
+		assertTrue(taskHandler.executions.get() == 1 && outcomes.size() == 2);
+		for (Object outcome : outcomes) {
+			assertTrue(new String(((TaskResult<byte[]>) outcome).getData()).equals("key"));
+		}
+	}
+
+	@Test
+	public void testCancelledWaiterDoesNotCancelSharedResult() throws Exception {
+		BlockingTaskHandler taskHandler = new BlockingTaskHandler("TaskHandlerExecutorRepositoryTest.waiter");
+		DirectExecutorRepository repository = new DirectExecutorRepository(taskHandler);
+		HystrixRequestContext requestContext = HystrixRequestContext.initializeContext();
+		try {
+			ListenableFuture<TaskResult> leader = repository.executeAsyncCommand(BlockingTaskHandler.COMMAND, BlockingTaskHandler.COMMAND,
+					this.createRequestWrapper("key"));
+			assertTrue(taskHandler.started.await(1, TimeUnit.SECONDS));
+			ListenableFuture<TaskResult> follower = repository.executeAsyncCommand(BlockingTaskHandler.COMMAND, BlockingTaskHandler.COMMAND,
+					this.createRequestWrapper("key"));
+			this.awaitCoalesced(taskHandler, 1);
+			assertTrue(follower.cancel(true));
+			taskHandler.gate.countDown();
+			assertTrue(leader.get(5, TimeUnit.SECONDS).isSuccess());
+			assertTrue(taskHandler.executions.get() == 1);
+		} finally {
+			requestContext.shutdown();
+		}
+	}
+
+	@Test
+	public void testFailedSubmissionNotLeftInFlight() throws Exception {
+		BlockingTaskHandler taskHandler = new BlockingTaskHandler("TaskHandlerExecutorRepositoryTest.submitFailure");
+		taskHandler.gate.countDown();
+		DirectExecutorRepository repository = new DirectExecutorRepository(taskHandler);
+		repository.submitFailures.set(1);
+		HystrixRequestContext requestContext = HystrixRequestContext.initializeContext();
+		try {
+			try {
+				repository.executeAsyncCommand(BlockingTaskHandler.COMMAND, BlockingTaskHandler.COMMAND, this.createRequestWrapper("key"));
+				assertTrue(false);
+			} catch (IllegalStateException e) {
+				// expected
+			}
+			// an identical request executes, instead of waiting for the request that was never submitted
+			ListenableFuture<TaskResult> result = repository.executeAsyncCommand(BlockingTaskHandler.COMMAND, BlockingTaskHandler.COMMAND,
+					this.createRequestWrapper("key"));
+			assertTrue(result.get(5, TimeUnit.SECONDS).isSuccess());
+			assertTrue(taskHandler.executions.get() == 1);
+		} finally {
+			requestContext.shutdown();
+		}
+	}
+
+	@Test
+	public void testScatterGatherCancelsIncompleteCommands() throws Exception {
+		SleepingTaskHandler taskHandler = new SleepingTaskHandler();
+		DirectExecutorRepository repository = new DirectExecutorRepository(taskHandler);
+		List<GatherRequest> requests = new ArrayList<GatherRequest>();
+		List<TaskRequestWrapper> requestWrappers = new ArrayList<TaskRequestWrapper>();
+		this.addGatherRequest(requests, requestWrappers, 0, true, false);
+		this.addGatherRequest(requests, requestWrappers, 5000, true, false);
+		long startTime = System.currentTimeMillis();
+		List<GatherResult> results = repository.executeScatterGather(requests, requestWrappers, 300);
+		assertTrue(results.get(0).isSuccess() && results.get(1).getStatus() == GatherResult.Status.INCOMPLETE);
+		// the command still running is cancelled, and the end of the wait is the deadline of the commands
+		assertTrue(taskHandler.interrupted.await(1, TimeUnit.SECONDS));
+		long deadline = requestWrappers.get(1).getDeadline().get();
+		assertTrue(deadline >= startTime + 300 && deadline <= System.currentTimeMillis());
+	}
+
+	@Test
+	public void testScatterGatherEndsOnRequiredFailure() throws Exception {
+		SleepingTaskHandler taskHandler = new SleepingTaskHandler();
+		DirectExecutorRepository repository = new DirectExecutorRepository(taskHandler);
+		List<GatherRequest> requests = new ArrayList<GatherRequest>();
+		List<TaskRequestWrapper> requestWrappers = new ArrayList<TaskRequestWrapper>();
+		this.addGatherRequest(requests, requestWrappers, 5000, true, false);
+		this.addGatherRequest(requests, requestWrappers, 0, false, true);
+		long startTime = System.currentTimeMillis();
+		List<GatherResult> results = repository.executeScatterGather(requests, requestWrappers, 5000);
+		assertTrue(System.currentTimeMillis() - startTime < 2000);
+		assertTrue(results.get(0).getStatus() == GatherResult.Status.INCOMPLETE && results.get(1).getStatus() == GatherResult.Status.FAILURE);
+		assertTrue(taskHandler.interrupted.await(1, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Helper method to add a scatter-gather request to a command that sleeps for the specified time and returns the specified outcome
+	 */
+	private void addGatherRequest(List<GatherRequest> requests, List<TaskRequestWrapper> requestWrappers, long sleepTime, boolean success,
+			boolean required) {
+		Map<String, String> params = new HashMap<String, String>();
+		params.put("sleep", String.valueOf(sleepTime));
+		params.put("success", String.valueOf(success));
+		requests.add(new GatherRequest(SleepingTaskHandler.COMMAND, null, params, required));
+		TaskRequestWrapper requestWrapper = new TaskRequestWrapper();
+		requestWrapper.setCommandName(SleepingTaskHandler.COMMAND);
+		requestWrapper.setParams(params);
+		requestWrappers.add(requestWrapper);
+	}
+
+	/**
+	 * Helper method to start a thread that executes a request with the specified key and adds its result or throwable to the outcomes
+	 */
+	private Thread start(final DirectExecutorRepository repository, String key, final List<Object> outcomes) {
+		final TaskRequestWrapper requestWrapper = this.createRequestWrapper(key);
+		Thread thread = new Thread() {
+			public void run() {
+				HystrixRequestContext requestContext = HystrixRequestContext.initializeContext();
+				try {
+					outcomes.add(repository.executeCommand(BlockingTaskHandler.COMMAND, BlockingTaskHandler.COMMAND, requestWrapper));
+				} catch (Throwable e) {
+					outcomes.add(e);
+				} finally {
+					requestContext.shutdown();
+				}
+			}
+		};
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Helper method to wait until the specified number of requests to the handler have been coalesced with in-flight requests
+	 */
+	private void awaitCoalesced(BlockingTaskHandler taskHandler, int count) throws InterruptedException {
+		ProxyMetrics metrics = ProxyMetrics.getInstance(TaskHandlerExecutorRepository.SINGLE_FLIGHT_METRICS_GROUP, taskHandler.getName());
+		long waitUntil = System.currentTimeMillis() + 5000;
+		while (metrics.get(TaskHandlerExecutorRepository.COALESCED_COUNT) < count && System.currentTimeMillis() < waitUntil) {
+			Thread.sleep(10);
+		}
+		assertTrue(metrics.get(TaskHandlerExecutorRepository.COALESCED_COUNT) == count);
+	}
+
+	/**
+	 * Helper method to create a request with the specified key
+	 */
+	private TaskRequestWrapper createRequestWrapper(String key) {
+		TaskRequestWrapper requestWrapper = new TaskRequestWrapper();
+		requestWrapper.setCommandName(BlockingTaskHandler.COMMAND);
+		Map<String, String> params = new HashMap<String, String>();
+		params.put("key", key);
+		requestWrapper.setParams(params);
+		return requestWrapper;
+	}
+
+	/** TaskHandlerExecutorRepository that creates executors for its handler directly, without a registry or interceptors. The specified number of
+	 * asynchronous submissions fail*/
+	private static class DirectExecutorRepository extends TaskHandlerExecutorRepository {
+		private HystrixTaskHandler taskHandler;
+		private final AtomicInteger submitFailures = new AtomicInteger();
+		DirectExecutorRepository(HystrixTaskHandler taskHandler) {
+			this.taskHandler = taskHandler;
+		}
+		public Executor<TaskRequestWrapper,TaskResult> getExecutor(String commandName, String proxyName, TaskRequestWrapper requestWrapper) {
+			if (this.taskHandler instanceof RequestCacheableHystrixTaskHandler) {
+				return new RequestCacheableTaskHandlerExecutor((RequestCacheableHystrixTaskHandler) this.taskHandler, null, commandName, 5000, proxyName,
+						10, requestWrapper) {
+					public void submit(Observer<TaskResult> observer) {
+						if (submitFailures.getAndDecrement() > 0) {
+							throw new IllegalStateException("Submission failed");
+						}
+						super.submit(observer);
+					}
+				};
+			}
+			return new TaskHandlerExecutor(this.taskHandler, null, commandName, 5000, proxyName, 10, requestWrapper);
+		}
+	}
+
+	/** Single-flight RequestCacheableHystrixTaskHandler that returns the key param of a request, executions block until the gate is opened*/
+	private static class BlockingTaskHandler extends RequestCacheableHystrixTaskHandler {
+		private static final String COMMAND = "blocking";
+		private String name;
+		private AtomicInteger executions = new AtomicInteger();
+		private CountDownLatch started = new CountDownLatch(1);
+		private CountDownLatch gate = new CountDownLatch(1);
+		BlockingTaskHandler(String name) {
+			this.name = name;
+			this.setSingleFlight(true);
+		}
+		public String getName() {
+			return this.name;
+		}
+		public String[] getCommands() {
+			return new String[] {COMMAND};
+		}
+		public void shutdown(TaskContext taskContext) throws Exception {
+		}
+		public String getCacheKey(Map<String,String> params, byte[] data) {
+			return params.get("key");
+		}
+		public TaskResult<byte[]> execute(TaskContext taskContext, String command, Map<String,String> params, byte[] data) throws RuntimeException {
+			this.executions.incrementAndGet();
+			this.started.countDown();
+			try {
+				this.gate.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new TaskResult<byte[]>(true, null, params.get("key").getBytes());
+		}
+		public TaskResult<byte[]> getFallBack(TaskContext taskContext, String command, Map<String,String> params, byte[] data) {
+			return new TaskResult<byte[]>(false, "fallback");
+		}
+	}
+
+	/** HystrixTaskHandler that sleeps for the time in the sleep param of a request and returns the outcome in its success param*/
+	private static class SleepingTaskHandler extends HystrixTaskHandler {
+		private static final String COMMAND = "sleeping";
+		private CountDownLatch interrupted = new CountDownLatch(1);
+		public String getName() {
+			return "SleepingTaskHandler";
+		}
+		public String[] getCommands() {
+			return new String[] {COMMAND};
+		}
+		public void shutdown(TaskContext taskContext) throws Exception {
+		}
+		public TaskResult<byte[]> execute(TaskContext taskContext, String command, Map<String,String> params, byte[] data) throws RuntimeException {
+			try {
+				Thread.sleep(Long.parseLong(params.get("sleep")));
+			} catch (InterruptedException e) {
+				this.interrupted.countDown();
+				Thread.currentThread().interrupt();
+			}
+			return new TaskResult<byte[]>(Boolean.parseBoolean(params.get("success")), null);
+		}
+		public TaskResult<byte[]> getFallBack(TaskContext taskContext, String command, Map<String,String> params, byte[] data) {
+			return new TaskResult<byte[]>(false, "fallback");
+		}
+	}
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import rx.Observer;
+
+import com.flipkart.phantom.task.impl.metrics.ProxyMetrics;
+import com.flipkart.phantom.task.spi.Decoder;
+import com.flipkart.phantom.task.spi.TaskContext;
+import com.flipkart.phantom.task.spi.TaskRequestWrapper;
+import com.flipkart.phantom.task.spi.TaskResult;
+import com.google.common.base.Optional;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link TaskHandlerExecutor}
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class TaskHandlerExecutorTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStreamedDataWithDecoder() {
+        byte[] data = "streamed command data".getBytes();
+        TaskRequestWrapper requestWrapper = new TaskRequestWrapper();
+        requestWrapper.setCommandName("decode");
+        requestWrapper.setParams(new HashMap<String, String>());
+        requestWrapper.setDataStream(new ByteArrayInputStream(data));
+        TaskHandlerExecutor executor = new TaskHandlerExecutor(new DecodingTaskHandler(), null, "decode", 1000, requestWrapper, new ByteArrayDecoder());
+        TaskResult<byte[]> result = executor.execute();
+        assertTrue(result.isSuccess());
+        assertTrue(new String(result.getData()).equals("streamed command data"));
+        assertTrue(requestWrapper.getDataStream() == null);
+    }
+
+    @Test
+    public void testConcurrencyLimitRejectedBeforeSubmission() {
+        ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit("TaskHandlerExecutorTest.limit", 1, false, 0);
+        assertTrue(concurrencyLimit.tryAcquire());
+        CountingTaskHandler taskHandler = new CountingTaskHandler();
+        TaskHandlerExecutor executor = new TaskHandlerExecutor(taskHandler, null, "count", 1000, this.createRequestWrapper("count"));
+        executor.setConcurrencyLimit(concurrencyLimit);
+        TaskResult result = executor.submitAndWait();
+        // the fallback is returned without the command being submitted, and it is not a failure of the command
+        assertTrue(result.getMessage().equals(CountingTaskHandler.FALLBACK));
+        assertTrue(taskHandler.executions == 0);
+        assertTrue(!executor.isExecutionComplete() && !executor.isFailedExecution());
+        assertTrue(concurrencyLimit.getInFlight() == 1);
+        concurrencyLimit.release();
+        executor = new TaskHandlerExecutor(taskHandler, null, "count", 1000, this.createRequestWrapper("count"));
+        executor.setConcurrencyLimit(concurrencyLimit);
+        result = executor.submitAndWait();
+        assertTrue(result.isSuccess() && taskHandler.executions == 1);
+        assertTrue(concurrencyLimit.getInFlight() == 0);
+    }
+
+    @Test
+    public void testConcurrencyLimitRejectedWhenRun() {
+        ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit("TaskHandlerExecutorTest.runLimit", 1, false, 0);
+        assertTrue(concurrencyLimit.tryAcquire());
+        CountingTaskHandler taskHandler = new CountingTaskHandler();
+        TaskHandlerExecutor executor = new TaskHandlerExecutor(taskHandler, null, "count", 1000, this.createRequestWrapper("count"));
+        executor.setConcurrencyLimit(concurrencyLimit);
+        // executed directly through Hystrix, the request is admitted when it runs and the fallback is returned when rejected
+        TaskResult result = (TaskResult) executor.execute();
+        assertTrue(result.getMessage().equals(CountingTaskHandler.FALLBACK));
+        assertTrue(taskHandler.executions == 0 && !executor.isFailedExecution());
+        assertTrue(concurrencyLimit.getInFlight() == 1);
+        concurrencyLimit.release();
+    }
+
+    @Test
+    public void testExpiredDeadlineRejectedBeforeSubmission() {
+        CountingTaskHandler taskHandler = new CountingTaskHandler();
+        TaskRequestWrapper requestWrapper = this.createRequestWrapper("count");
+        requestWrapper.setDeadline(Optional.of(System.currentTimeMillis() - 1));
+        TaskHandlerExecutor executor = new TaskHandlerExecutor(taskHandler, null, "count", 1000, requestWrapper);
+        TaskResult result = executor.submitAndWait();
+        assertTrue(result.getMessage().equals(CountingTaskHandler.FALLBACK));
+        assertTrue(taskHandler.executions == 0 && !executor.isFailedExecution());
+    }
+
+    @Test
+    public void testCancelledRequestNotRun() {
+        CountingTaskHandler taskHandler = new CountingTaskHandler();
+        TaskHandlerExecutor executor = new TaskHandlerExecutor(taskHandler, null, "count", 1000, this.createRequestWrapper("count"));
+        executor.cancel();
+        TaskResult result = executor.submitAndWait();
+        assertTrue(result.getMessage().equals(CountingTaskHandler.FALLBACK));
+        assertTrue(taskHandler.executions == 0);
+    }
+
+    @Test
+    public void testCancelInterruptsRunningRequest() throws Exception {
+        BlockingTaskHandler taskHandler = new BlockingTaskHandler();
+        TaskHandlerExecutor executor = new TaskHandlerExecutor(taskHandler, null, "block", 5000, this.createRequestWrapper("block"));
+        final CountDownLatch completed = new CountDownLatch(1);
+        executor.submit(new Observer<TaskResult>() {
+            public void onNext(TaskResult result) {
+            }
+            public void onCompleted() {
+                completed.countDown();
+            }
+            public void onError(Throwable e) {
+                completed.countDown();
+            }
+        });
+        assertTrue(taskHandler.started.await(1, TimeUnit.SECONDS));
+        executor.cancel();
+        assertTrue(taskHandler.interrupted.await(1, TimeUnit.SECONDS));
+        assertTrue(completed.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testQueueWaitRecordedFromSubmission() throws Exception {
+        CountingTaskHandler taskHandler = new CountingTaskHandler();
+        TaskHandlerExecutor executor = new TaskHandlerExecutor(taskHandler, null, "count", 1000, "TaskHandlerExecutorTest.queueWait", 1,
+                this.createRequestWrapper("count"));
+        // say the request is held up, as by admission, between creating the executor and submitting it
+        Thread.sleep(500);
+        assertTrue(executor.submitAndWait().isSuccess());
+        ProxyMetrics metrics = ProxyMetrics.getInstance(ThreadPoolQueue.METRICS_GROUP, executor.getThreadPoolKey().name());
+        assertTrue(metrics.get(ThreadPoolQueue.QUEUE_WAIT_COUNT) == 1);
+        assertTrue(metrics.get(ThreadPoolQueue.QUEUE_WAIT_MICROS) < 500000);
+    }
+
+    /**
+     * Helper method to create a request to the specified command
+     */
+    private TaskRequestWrapper createRequestWrapper(String command) {
+        TaskRequestWrapper requestWrapper = new TaskRequestWrapper();
+        requestWrapper.setCommandName(command);
+        requestWrapper.setParams(new HashMap<String, String>());
+        return requestWrapper;
+    }
+
+    /** HystrixTaskHandler that counts its executions and returns a failed result as the fallback*/
+    private static class CountingTaskHandler extends HystrixTaskHandler {
+        private static final String FALLBACK = "fallback";
+        private volatile int executions;
+        public String getName() {
+            return "CountingTaskHandler";
+        }
+        public String[] getCommands() {
+            return new String[] {"count"};
+        }
+        public void shutdown(TaskContext taskContext) throws Exception {
+        }
+        public TaskResult<byte[]> execute(TaskContext taskContext, String command, Map<String,String> params, byte[] data) throws RuntimeException {
+            this.executions += 1;
+            return new TaskResult<byte[]>(true, null);
+        }
+        public TaskResult<byte[]> getFallBack(TaskContext taskContext, String command, Map<String,String> params, byte[] data) {
+            return new TaskResult<byte[]>(false, FALLBACK);
+        }
+    }
+
+    /** HystrixTaskHandler whose executions block until they are interrupted*/
+    private static class BlockingTaskHandler extends CountingTaskHandler {
+        private CountDownLatch started = new CountDownLatch(1);
+        private CountDownLatch interrupted = new CountDownLatch(1);
+        public TaskResult<byte[]> execute(TaskContext taskContext, String command, Map<String,String> params, byte[] data) throws RuntimeException {
+            this.started.countDown();
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                this.interrupted.countDown();
+                throw new RuntimeException("Interrupted", e);
+            }
+            return new TaskResult<byte[]>(true, null);
+        }
+    }
+
+    /** TaskHandler that returns the request data as decoded by the Decoder of the request*/
+    private static class DecodingTaskHandler extends TaskHandler {
+        public String getName() {
+            return "DecodingTaskHandler";
+        }
+        public String[] getCommands() {
+            return new String[] {"decode"};
+        }
+        public void shutdown(TaskContext taskContext) throws Exception {
+        }
+        public TaskResult<byte[]> execute(TaskContext taskContext, String command, Map<String,String> params, byte[] data) throws RuntimeException {
+            throw new UnsupportedOperationException("Requests to this handler use a decoder");
+        }
+        public <T> TaskResult<T> execute(TaskContext taskContext, String command, TaskRequestWrapper taskRequestWrapper, Decoder<T> decoder)
+                throws RuntimeException {
+            try {
+                return new TaskResult<T>(true, null, decoder.decode(taskRequestWrapper.getData()));
+            } catch (Exception e) {
+                throw new RuntimeException("Error decoding data", e);
+            }
+        }
+    }
+
+}
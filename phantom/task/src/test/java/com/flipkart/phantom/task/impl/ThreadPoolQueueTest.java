@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.flipkart.phantom.task.spi.TaskContext;
+import com.flipkart.phantom.task.spi.TaskResult;
+import com.netflix.config.ConfigurationManager;
+import com.netflix.hystrix.HystrixThreadPoolProperties;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link ThreadPoolQueue}
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class ThreadPoolQueueTest {
+
+	@Test
+	public void testQueueSettings() {
+		QueueingTaskHandler taskHandler = new QueueingTaskHandler();
+		taskHandler.setMaxQueueSize(100);
+		taskHandler.setQueueSizeRejectionThreshold(500);
+		HystrixThreadPoolProperties.Setter properties = ThreadPoolQueue.getThreadPoolProperties("ThreadPoolQueueTest.settings", 10, taskHandler);
+		// the rejection threshold may not exceed the max queue size
+		assertTrue(properties.getCoreSize() == 10 && properties.getMaxQueueSize() == 100 && properties.getQueueSizeRejectionThreshold() == 100);
+		taskHandler.setMaxQueueSize(ThreadPoolQueue.NO_QUEUE);
+		properties = ThreadPoolQueue.getThreadPoolProperties("ThreadPoolQueueTest.noQueue", 10, taskHandler);
+		assertTrue(properties.getMaxQueueSize() == null);
+	}
+
+	@Test
+	public void testChangedSettingsApplied() {
+		QueueingTaskHandler taskHandler = new QueueingTaskHandler();
+		taskHandler.setMaxQueueSize(100);
+		taskHandler.setQueueSizeRejectionThreshold(50);
+		ThreadPoolQueue.getThreadPoolProperties("ThreadPoolQueueTest.changed", 10, taskHandler);
+		String propertyPrefix = "hystrix.threadpool.ThreadPoolQueueTest.changed";
+		assertTrue(!ConfigurationManager.getConfigInstance().containsKey(propertyPrefix + ".coreSize"));
+		// say the handler is reloaded with a larger pool and threshold, the existing pool is reconfigured
+		taskHandler.setQueueSizeRejectionThreshold(80);
+		ThreadPoolQueue.getThreadPoolProperties("ThreadPoolQueueTest.changed", 20, taskHandler);
+		assertTrue(ConfigurationManager.getConfigInstance().getInt(propertyPrefix + ".coreSize") == 20);
+		assertTrue(ConfigurationManager.getConfigInstance().getInt(propertyPrefix + ".queueSizeRejectionThreshold") == 80);
+	}
+
+	/** HystrixTaskHandler whose queue settings are set by the tests*/
+	private static class QueueingTaskHandler extends HystrixTaskHandler {
+		public String getName() {
+			return "QueueingTaskHandler";
+		}
+		public String[] getCommands() {
+			return new String[] {"queue"};
+		}
+		public void shutdown(TaskContext taskContext) throws Exception {
+		}
+		public TaskResult<byte[]> execute(TaskContext taskContext, String command, Map<String,String> params, byte[] data) throws RuntimeException {
+			return new TaskResult<byte[]>(true, null);
+		}
+		public TaskResult<byte[]> getFallBack(TaskContext taskContext, String command, Map<String,String> params, byte[] data) {
+			return null;
+		}
+	}
+
+}
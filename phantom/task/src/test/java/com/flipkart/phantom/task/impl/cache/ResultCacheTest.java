@@ -0,0 +1,115 @@
+/*
+ * Copyright 2012-2015, the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flipkart.phantom.task.impl.cache;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.flipkart.phantom.task.impl.cache.ResultCache.CachedResult;
+import com.flipkart.phantom.task.impl.metrics.ProxyMetrics;
+import com.flipkart.phantom.task.spi.TaskResult;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link ResultCache}
+ *
+ * @author agent
+ * @version 1.0, 18 Oct 2026
+ */
+public class ResultCacheTest {
+
+	@Test
+	public void testOnlySuccessfulResultsCached() {
+		ResultCache resultCache = new ResultCache("ResultCacheTest.cacheable", 10000, 0, 1024 * 1024);
+		assertTrue(resultCache.get("key") == null);
+		assertTrue(!resultCache.put("key", new TaskResult<byte[]>(false, "failed")));
+		assertTrue(resultCache.get("key") == null);
+		TaskResult<byte[]> result = new TaskResult<byte[]>(true, null, "data".getBytes());
+		assertTrue(resultCache.put("key", result));
+		CachedResult cachedResult = resultCache.get("key");
+		assertTrue(cachedResult.getResult() == result && !cachedResult.isStale());
+		ProxyMetrics metrics = ProxyMetrics.getInstance(ResultCache.METRICS_GROUP, "ResultCacheTest.cacheable");
+		assertTrue(metrics.get(ResultCache.HIT_COUNT) == 1 && metrics.get(ResultCache.MISS_COUNT) == 2);
+	}
+
+	@Test
+	public void testStaleResultServedUntilExpiry() throws Exception {
+		ResultCache resultCache = new ResultCache("ResultCacheTest.stale", 100, 300, 1024 * 1024);
+		resultCache.put("key", new TaskResult<byte[]>(true, null, "data".getBytes()));
+		Thread.sleep(150);
+		CachedResult cachedResult = resultCache.get("key");
+		assertTrue(cachedResult != null && cachedResult.isStale());
+		Thread.sleep(300);
+		assertTrue(resultCache.get("key") == null);
+	}
+
+	@Test
+	public void testSingleRefreshOfStaleResult() throws Exception {
+		ResultCache resultCache = new ResultCache("ResultCacheTest.refresh", 0, 10000, 1024 * 1024);
+		resultCache.put("key", new TaskResult<byte[]>(true, null, "data".getBytes()));
+		CachedResult cachedResult = resultCache.get("key");
+		final AtomicInteger refreshes = new AtomicInteger();
+		final CountDownLatch blocker = new CountDownLatch(1);
+		final CountDownLatch refreshed = new CountDownLatch(1);
+		Runnable refresh = new Runnable() {
+			public void run() {
+				refreshes.incrementAndGet();
+				try {
+					blocker.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				refreshed.countDown();
+			}
+		};
+		resultCache.refresh(cachedResult, refresh);
+		resultCache.refresh(cachedResult, refresh);
+		blocker.countDown();
+		assertTrue(refreshed.await(1, TimeUnit.SECONDS));
+		assertTrue(refreshes.get() == 1);
+	}
+
+	@Test
+	public void testSizeBounded() {
+		long maxBytes = 64 * 1024;
+		ResultCache resultCache = new ResultCache("ResultCacheTest.size", 10000, 0, maxBytes);
+		for (int i = 0; i < 256; i++) {
+			resultCache.put("key" + i, new TaskResult<byte[]>(true, null, new byte[1024]));
+		}
+		ProxyMetrics metrics = ProxyMetrics.getInstance(ResultCache.METRICS_GROUP, "ResultCacheTest.size");
+		// least recently used results are evicted when the cached bytes exceed the max
+		assertTrue(resultCache.getSize() < 256 && metrics.get(ResultCache.EVICTION_COUNT) > 0);
+		assertTrue(metrics.get(ResultCache.CACHED_BYTES) <= maxBytes);
+		resultCache.invalidateAll();
+		assertTrue(resultCache.getSize() == 0 && metrics.get(ResultCache.CACHED_BYTES) == 0);
+	}
+
+	@Test
+	public void testOversizedResultNotCached() {
+		ResultCache resultCache = new ResultCache("ResultCacheTest.oversized", 10000, 0, 64 * 1024);
+		assertTrue(resultCache.put("key", new TaskResult<byte[]>(true, null, new byte[1024])));
+		// a result larger than a segment's share of the max bytes is not cached, and replaces the result cached for the key
+		assertTrue(!resultCache.put("key", new TaskResult<byte[]>(true, null, new byte[(int) resultCache.getMaxEntryBytes()])));
+		assertTrue(resultCache.get("key") == null);
+		ProxyMetrics metrics = ProxyMetrics.getInstance(ResultCache.METRICS_GROUP, "ResultCacheTest.oversized");
+		assertTrue(metrics.get(ResultCache.EVICTION_COUNT) == 0 && metrics.get(ResultCache.CACHED_BYTES) == 0);
+	}
+
+}